@@ -45,6 +45,14 @@ import java.util.Map;
  * references might be a future enhancement to this class.
  * </p>
  * 
+ * <p>
+ * The list is populated once, also if it is used by several threads, e.g.,
+ * by concurrent Saiku requests: The first thread populates the list, other
+ * threads wait until it is populated or get the failure of the population.
+ * Different lists, e.g., the levels of different hierarchies, are populated
+ * independently of each other.
+ * </p>
+ * 
  * @author jhyde, bkaempgen
  * @version $Id: DeferredNamedListImpl.java 470 2011-08-02 19:30:41Z jhyde $
  * @since Dec 4, 2007
@@ -52,7 +60,18 @@ import java.util.Map;
 class DeferredNamedListImpl<T extends Named> extends AbstractList<T> implements
 		NamedList<T> {
 	private final NamedList<T> list = new NamedListImpl<T>();
-	private State state = State.NEW;
+	// Written while holding the lock of the list, read without if POPULATED
+	private volatile State state = State.NEW;
+
+	// Thread populating the list, if POPULATING
+	private Thread populatingThread = null;
+
+	// Number of populations started so far
+	private int population = 0;
+
+	// Number of the population that failed last and its failure
+	private int failedPopulation = 0;
+	private Throwable failure = null;
 
 	protected final Olap4ldConnection.MetadataRequest metadataRequest;
 	protected final Olap4ldConnection.Context context;
@@ -72,47 +91,107 @@ class DeferredNamedListImpl<T extends Named> extends AbstractList<T> implements
 	/**
 	 * Flushes the contents of the list. Next access will re-populate.
 	 */
-	void reset() {
+	synchronized void reset() {
+		// Do not clear the list while another thread populates it
+		while (state == State.POPULATING
+				&& populatingThread != Thread.currentThread()) {
+			awaitPopulation();
+		}
 		state = State.NEW;
 		list.clear();
 	}
 
 	private NamedList<T> getList() {
-
-		// No real solution, better is catch/try, but Saiku forces us
-		while (state == State.POPULATING) {
-			;
-			System.out.println("still populating...");
+		// Once populated, the list is read without locking
+		if (state == State.POPULATED) {
+			return list;
 		}
 
-		switch (state) {
-		case POPULATING:
-			// return new NamedListImpl<T>();
-			throw new RuntimeException("recursive population");
-		case NEW:
-			try {
-				state = State.POPULATING;
-				populateList(list);
-				state = State.POPULATED;
-			} catch (OlapException e) {
-				state = State.NEW;
-				// TODO: fetch metadata on getCollection() method, so we
-				// can't get an exception while traversing the list
-				throw new RuntimeException(e);
+		synchronized (this) {
+			while (state == State.POPULATING) {
+				if (populatingThread == Thread.currentThread()) {
+					throw new RuntimeException("recursive population");
+				}
+				int awaitedPopulation = population;
+				awaitPopulation();
+				if (state == State.NEW
+						&& failedPopulation == awaitedPopulation) {
+					throw new RuntimeException(failure);
+				}
 			}
-			// fall through
-		case POPULATED:
-		default:
-			return list;
+			if (state == State.POPULATED) {
+				return list;
+			}
+			state = State.POPULATING;
+			populatingThread = Thread.currentThread();
+			population++;
+		}
+
+		// The lock is not held while populating, so that populating other
+		// lists does not need to wait for this one.
+		Throwable populationFailure = null;
+		try {
+			populateList(list);
+		} catch (OlapException e) {
+			populationFailure = e;
+			// TODO: fetch metadata on getCollection() method, so we
+			// can't get an exception while traversing the list
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			populationFailure = e;
+			throw e;
+		} catch (Error e) {
+			populationFailure = e;
+			throw e;
+		} finally {
+			finishPopulation(populationFailure);
+		}
+		return list;
+	}
+
+	/**
+	 * Waits until the list has been notified of the end of a population.
+	 */
+	private synchronized void awaitPopulation() {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while populating", e);
 		}
 	}
 
 	/**
-	 * If someone is asking isEmpty
+	 * Ends the population and wakes up waiting threads.
+	 * 
+	 * @param populationFailure
+	 *            null if the list has been populated
+	 */
+	private synchronized void finishPopulation(Throwable populationFailure) {
+		populatingThread = null;
+		if (populationFailure == null) {
+			state = State.POPULATED;
+		} else {
+			// Later requests try again.
+			list.clear();
+			failedPopulation = population;
+			failure = populationFailure;
+			state = State.NEW;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * If someone is asking isEmpty. While the list is being populated, e.g.,
+	 * during bootstrap, the populating thread sees an empty list.
 	 */
 	public boolean isEmpty() {
 		if (state == State.POPULATING) {
-			return true;
+			synchronized (this) {
+				if (populatingThread == Thread.currentThread()) {
+					return true;
+				}
+			}
 		}
 		return getList().isEmpty();
 	}
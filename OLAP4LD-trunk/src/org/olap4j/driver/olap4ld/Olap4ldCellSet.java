@@ -80,6 +80,7 @@ import org.olap4j.driver.olap4ld.linkeddata.LogicalOlapQueryPlan;
 import org.olap4j.driver.olap4ld.linkeddata.ProjectionOp;
 import org.olap4j.driver.olap4ld.linkeddata.QueryException;
 import org.olap4j.driver.olap4ld.linkeddata.ReconciliationCorrespondence;
+import org.olap4j.driver.olap4ld.linkeddata.ResultCursor;
 import org.olap4j.driver.olap4ld.linkeddata.Restrictions;
 import org.olap4j.driver.olap4ld.linkeddata.RollupOp;
 import org.olap4j.driver.olap4ld.linkeddata.SliceOp;
@@ -175,14 +176,19 @@ abstract class Olap4ldCellSet implements CellSet {
 		/*
 		 * Now, execute Logical OLAP Operator Query Tree in LinkedDataEngine
 		 */
-		List<Node[]> olapQueryResult = olap4jStatement.olap4jConnection.myLinkedData
-				.executeOlapQuery(queryplan);
+		ResultCursor olapQueryResult = olap4jStatement.olap4jConnection.myLinkedData
+				.executeOlapQueryCursor(queryplan);
 
 		Olap4ldUtil._log.info("Execute logical query plan: Cache results.");
 		long time = System.currentTimeMillis();
 
-		// Important part, we need to allow efficient access to the results
-		cacheDataFromOlapQuery(olapQueryResult);
+		// Important part, we need to allow efficient access to the results.
+		// Observations are cached while they are streamed from the engine.
+		try {
+			cacheDataFromOlapQuery(olapQueryResult);
+		} finally {
+			olapQueryResult.close();
+		}
 
 		areCellsPopulated = true;
 		// We track the time it takes to prepare the query
@@ -1166,7 +1172,7 @@ abstract class Olap4ldCellSet implements CellSet {
 	 * 
 	 * @param olapQueryResult
 	 */
-	private void cacheDataFromOlapQuery(List<Node[]> olapQueryResult) {
+	private void cacheDataFromOlapQuery(Iterator<Node[]> olapQueryResult) {
 
 		// Now, insert into hash map
 
@@ -1186,7 +1192,8 @@ abstract class Olap4ldCellSet implements CellSet {
 
 		boolean first = true;
 		String concatNr;
-		for (Node[] node : olapQueryResult) {
+		while (olapQueryResult.hasNext()) {
+			Node[] node = olapQueryResult.next();
 			concatNr = "";
 			if (first) {
 				// The first is not interesting, the variable names are not
@@ -18,6 +18,7 @@
  */
 package org.olap4j.driver.olap4ld;
 
+import java.io.File;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -201,6 +202,23 @@ abstract class Olap4ldConnection implements OlapConnection {
 
 	private ArrayList<String> datastructuredefinitions;
 
+	/**
+	 * Triple store options of the embedded engine, see
+	 * Olap4ldDriver.Property.STORE.
+	 */
+	private String storeName;
+
+	private String storeDirectory;
+
+	private String storeIndexes;
+
+	private boolean storeClearOnRollback;
+
+	/**
+	 * Snapshot file of the embedded engine, null if not used.
+	 */
+	private File snapshotFile;
+
 	/**
 	 * Creates an Olap4j connection an XML/A provider.
 	 * 
@@ -296,6 +314,19 @@ abstract class Olap4ldConnection implements OlapConnection {
 			datastructuredefinitions.add(urltokenizer1.nextToken());
 		}
 
+		// Triple store of the embedded engine
+		this.storeName = map.get(Olap4ldDriver.Property.STORE.name());
+		this.storeDirectory = map.get(Olap4ldDriver.Property.STOREDIRECTORY
+				.name());
+		this.storeIndexes = map.get(Olap4ldDriver.Property.STOREINDEXES
+				.name());
+		this.storeClearOnRollback = Boolean.parseBoolean(map
+				.get(Olap4ldDriver.Property.STORECLEARONROLLBACK.name()));
+		String snapshot = map.get(Olap4ldDriver.Property.SNAPSHOT.name());
+		if (snapshot != null) {
+			this.snapshotFile = new File(snapshot);
+		}
+
 		initLinkedDataEngine();
 
 		// Initialize the SOAP cache if needed
@@ -372,7 +403,14 @@ abstract class Olap4ldConnection implements OlapConnection {
 		}
 		if (databaseName.equals("EMBEDDEDSESAME")) {
 			myLinkedData = new EmbeddedSesameEngine(serverUrlObject,
-					datastructuredefinitions, datasets, databaseName);
+					datastructuredefinitions, datasets, databaseName,
+					storeName, storeDirectory, storeIndexes);
+			((EmbeddedSesameEngine) myLinkedData)
+					.setClearNativeStoreOnRollback(storeClearOnRollback);
+			if (snapshotFile != null && snapshotFile.exists()) {
+				((EmbeddedSesameEngine) myLinkedData)
+						.restoreSnapshot(snapshotFile);
+			}
 		}
 	}
 
@@ -499,8 +537,18 @@ abstract class Olap4ldConnection implements OlapConnection {
 
 	public void close() throws SQLException {
 		closed = true;
-		// For me this means we also have to rollback first
-		rollback();
+		if (snapshotFile != null
+				&& myLinkedData instanceof EmbeddedSesameEngine) {
+			((EmbeddedSesameEngine) myLinkedData).saveSnapshot(snapshotFile);
+		}
+		if (myLinkedData instanceof EmbeddedSesameEngine) {
+			// Closing keeps a native store, only an explicit rollback
+			// empties it.
+			((EmbeddedSesameEngine) myLinkedData).close();
+		} else {
+			// For me this means we also have to rollback first
+			rollback();
+		}
 	}
 
 	public boolean isClosed() throws SQLException {
@@ -524,6 +524,13 @@ class Olap4ldCube implements Cube, Named {
 		 */
 		private void genericMembersLookup(List<String> memberUniqueNames,
 				Map<String, Olap4ldMember> memberMap) throws OlapException {
+			// Some engines resolve several members with one query
+			if (memberUniqueNames.size() > 1
+					&& olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData.olap4jConnection.myLinkedData
+							.isMemberUniqueNamesSupported()) {
+				batchMembersLookup(memberUniqueNames, memberMap);
+				return;
+			}
 			// Iterates through member names
 			for (String currentMemberName : memberUniqueNames) {
 				// Only lookup if it is not in the map yet
@@ -538,6 +545,50 @@ class Olap4ldCube implements Cube, Named {
 			}
 		}
 
+		/**
+		 * Looks up the members that are not in the map yet with one request.
+		 * 
+		 * @param memberUniqueNames
+		 *            A list of the members to lookup
+		 * @param memberMap
+		 *            Output map of members keyed by unique name
+		 * @throws OlapException
+		 *             Gets thrown for communication errors
+		 */
+		private void batchMembersLookup(List<String> memberUniqueNames,
+				Map<String, Olap4ldMember> memberMap) throws OlapException {
+			final List<String> remainingMemberUniqueNames = new ArrayList<String>();
+			for (String currentMemberName : memberUniqueNames) {
+				if (!memberMap.containsKey(currentMemberName)) {
+					remainingMemberUniqueNames.add(currentMemberName);
+				}
+			}
+			if (remainingMemberUniqueNames.isEmpty()) {
+				return;
+			}
+			final Olap4ldConnection.Context context = new Olap4ldConnection.Context(
+					Olap4ldCube.this, null, null, null);
+			final List<Olap4ldMember> memberList = new ArrayList<Olap4ldMember>();
+			olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+					.populateList(
+							memberList,
+							context,
+							Olap4ldConnection.MetadataRequest.MDSCHEMA_MEMBERS,
+							new Olap4ldConnection.MemberHandler(),
+							new Object[] { "CATALOG_NAME",
+									olap4jSchema.olap4jCatalog.getName(),
+									"SCHEMA_NAME", olap4jSchema.getName(),
+									"CUBE_NAME", getName(),
+									"MEMBER_UNIQUE_NAME",
+									remainingMemberUniqueNames });
+			// Null members might mean calculated members
+			for (Olap4ldMember member : memberList) {
+				if (member != null) {
+					memberMap.put(member.getUniqueName(), member);
+				}
+			}
+		}
+
 		public void lookupMemberRelatives(Set<Member.TreeOp> treeOps,
 				String memberUniqueName, List<Olap4ldMember> list)
 				throws OlapException {
@@ -381,7 +381,14 @@ public class Olap4ldDriver implements Driver {
 				"Catalog name"), SCHEMA("Name of the schema"), CACHE(
 				"Class name of the SOAP cache implementation"), DATASETS(
 				"Datasets"), DATASTRUCTUREDEFINITIONS(
-				"Datastructuredefinitions");
+				"Datastructuredefinitions"), STORE(
+				"Triple store of the embedded engine: MEMORY (default) or "
+						+ "NATIVE (disk-backed)"), STOREDIRECTORY(
+				"Data directory of a NATIVE store"), STOREINDEXES(
+				"Triple indexes of a NATIVE store, e.g. spoc,posc,opsc"), STORECLEARONROLLBACK(
+				"Whether a rollback also empties a NATIVE store, false by default"), SNAPSHOT(
+				"File of the embedded engine that is restored when connecting "
+						+ "and saved when closing");
 
 		/**
 		 * Creates a property.
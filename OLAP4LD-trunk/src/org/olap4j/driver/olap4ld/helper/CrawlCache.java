@@ -0,0 +1,592 @@
+package org.olap4j.driver.olap4ld.helper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+
+/**
+ * On-disk cache of crawled Linked Data documents. Stores the content of a
+ * document together with its ETag and Last-Modified headers and revalidates
+ * it with a conditional GET. If the document has not changed (304), the
+ * content is read from disk. Also stores the locations (information uris) of
+ * resources found by Olap4ldLinkedDataUtil.askForLocation().
+ * 
+ * This way, a new connection or a rollback of the store does not need to
+ * download all documents again.
+ * 
+ * The cache is only used if a directory is set with the system property
+ * olap4ld.crawlcache.dir. Otherwise, or if the directory cannot be used,
+ * documents are streamed from the connection while they are parsed.
+ */
+public class CrawlCache {
+
+	public static final String DIRECTORY_PROPERTY = "olap4ld.crawlcache.dir";
+
+	private static CrawlCache defaultCache;
+
+	/**
+	 * Null if the cache is disabled.
+	 */
+	private File directory;
+
+	public static final String GZIP = "gzip";
+
+	public static final String BZIP2 = "bzip2";
+
+	public static final String ZIP = "zip";
+
+	/**
+	 * Class of commons-compress to decompress bzip2, only used if on the
+	 * classpath.
+	 */
+	private static final String BZIP2_STREAM_CLASS = "org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream";
+
+	/**
+	 * Result of a request: Response code and content if successful. The
+	 * content is never held in memory but read from a cached file, from the
+	 * location itself if it is a local file or from the open connection if
+	 * it is not cached, so that also large dumps can be streamed into the
+	 * store. Compressed content is stored as is and decompressed while
+	 * reading.
+	 */
+	public static class Response {
+
+		public final int responsecode;
+
+		private final File file;
+
+		private final URL location;
+
+		/**
+		 * Connection whose content is read once, null if not streamed.
+		 */
+		private final URLConnection connection;
+
+		/**
+		 * GZIP, BZIP2, ZIP or null if unknown.
+		 */
+		private final String compression;
+
+		Response(int responsecode) {
+			this(responsecode, null, null, null, null);
+		}
+
+		Response(int responsecode, File file, URL location,
+				URLConnection connection, String compression) {
+			this.responsecode = responsecode;
+			this.file = file;
+			this.location = location;
+			this.connection = connection;
+			this.compression = compression;
+		}
+
+		/**
+		 * @return whether there is content to read.
+		 */
+		public boolean hasContent() {
+			return file != null || location != null || connection != null;
+		}
+
+		/**
+		 * Opens the content, decompressed if needed. The content of a
+		 * connection can only be opened once. The caller has to close the
+		 * stream.
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		public InputStream openStream() throws IOException {
+			InputStream in;
+			if (file != null) {
+				in = new BufferedInputStream(new FileInputStream(file), 65536);
+			} else if (location != null) {
+				in = new BufferedInputStream(location.openStream(), 65536);
+			} else if (connection != null) {
+				in = new BufferedInputStream(connection.getInputStream(),
+						65536);
+			} else {
+				throw new IOException("No content, response code: "
+						+ responsecode);
+			}
+			try {
+				return decompress(in, compression);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Closes the connection of content that is not cached.
+		 */
+		public void release() {
+			if (connection instanceof HttpURLConnection) {
+				((HttpURLConnection) connection).disconnect();
+			}
+		}
+	}
+
+	/**
+	 * The cache in the directory given by olap4ld.crawlcache.dir, disabled if
+	 * no directory is given.
+	 * 
+	 * @return
+	 */
+	public static synchronized CrawlCache getDefault() {
+		if (defaultCache == null) {
+			String directory = System.getProperty(DIRECTORY_PROPERTY);
+			defaultCache = new CrawlCache(directory == null ? null
+					: new File(directory));
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * @param directory
+	 *            or null to disable the cache
+	 */
+	public CrawlCache(File directory) {
+		if (directory == null) {
+			this.directory = null;
+		} else if (directory.isDirectory() || directory.mkdirs()) {
+			this.directory = directory;
+		} else {
+			Olap4ldUtil._log.warning("Crawl cache cannot use directory: "
+					+ directory);
+			this.directory = null;
+		}
+	}
+
+	/**
+	 * Returns the cached location of a resource. The location is only to be
+	 * used if the resource cannot be asked for its location, as a cached
+	 * document is only used if the server cannot be reached.
+	 * 
+	 * @param uri
+	 * @return location or null if not known
+	 */
+	public URL getLocation(URL uri) {
+		if (directory == null) {
+			return null;
+		}
+		File locationfile = new File(directory, hash(uri.toString())
+				+ ".location");
+		if (!locationfile.exists()) {
+			return null;
+		}
+		try {
+			return new URL(new String(readFile(locationfile), "UTF-8"));
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Crawl cache cannot read location of "
+					+ uri + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers the location of a resource.
+	 * 
+	 * @param uri
+	 * @param location
+	 */
+	public void putLocation(URL uri, URL location) {
+		if (directory == null) {
+			return;
+		}
+		try {
+			writeFile(new File(directory, hash(uri.toString()) + ".location"),
+					location.toString().getBytes("UTF-8"));
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Crawl cache cannot write location of "
+					+ uri + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Gets the document at the location. A cached document is revalidated
+	 * and only downloaded again if it has changed. If the server cannot be
+	 * reached, a cached document is returned as is.
+	 * 
+	 * @param location
+	 * @param accept
+	 *            Accept header, the cache distinguishes documents by it
+	 * @param timeout
+	 *            connect and read timeout in milliseconds, so that a stalled
+	 *            server does not block the crawl
+	 * @return
+	 * @throws IOException
+	 *             if there is neither a connection nor a cached document
+	 */
+	public Response get(URL location, String accept, int timeout)
+			throws IOException {
+
+		String protocol = location.getProtocol();
+		if (protocol.equals("file")) {
+			// Local files are read directly
+			return new Response(200, null, location, null,
+					getCompression(null, null, location.getPath()));
+		}
+		if (!protocol.equals("http") && !protocol.equals("https")) {
+			// E.g., ftp: Not cached, streamed while it is read
+			URLConnection connection = location.openConnection();
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			return new Response(200, null, null, connection, getCompression(
+					null, null, location.getPath()));
+		}
+
+		File contentfile = null;
+		File metafile = null;
+		Properties meta = null;
+		if (directory != null) {
+			String key = hash(location + " " + accept);
+			contentfile = new File(directory, key + ".rdf");
+			metafile = new File(directory, key + ".properties");
+			if (contentfile.exists() && metafile.exists()) {
+				meta = new Properties();
+				InputStream in = new FileInputStream(metafile);
+				try {
+					meta.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) location
+				.openConnection();
+		connection.setInstanceFollowRedirects(true);
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		connection.setRequestProperty("Accept", accept);
+		// Saves bandwidth, we decompress while parsing.
+		connection.setRequestProperty("Accept-Encoding", GZIP);
+		if (meta != null) {
+			if (meta.getProperty("etag") != null) {
+				connection.setRequestProperty("If-None-Match",
+						meta.getProperty("etag"));
+			}
+			if (meta.getProperty("lastmodified") != null) {
+				connection.setRequestProperty("If-Modified-Since",
+						meta.getProperty("lastmodified"));
+			}
+		}
+
+		int responsecode;
+		try {
+			responsecode = connection.getResponseCode();
+		} catch (IOException e) {
+			if (meta == null) {
+				throw e;
+			}
+			Olap4ldUtil._log.config("Crawl cache: Offline, use cached "
+					+ location);
+			return new Response(200, contentfile, null, null,
+					meta.getProperty("compression"));
+		}
+
+		if (responsecode == HttpURLConnection.HTTP_NOT_MODIFIED
+				&& meta != null) {
+			connection.disconnect();
+			Olap4ldUtil._log.config("Crawl cache: Not modified " + location);
+			return new Response(200, contentfile, null, null,
+					meta.getProperty("compression"));
+		}
+
+		if (responsecode >= 300) {
+			connection.disconnect();
+			return new Response(responsecode);
+		}
+
+		String compression = getCompression(
+				connection.getHeaderField("Content-Encoding"),
+				connection.getContentType(), connection.getURL().getPath());
+
+		if (directory == null) {
+			// Nothing to cache, the content is parsed while it arrives.
+			return new Response(responsecode, null, null, connection,
+					compression);
+		} else {
+			Properties newmeta = new Properties();
+			newmeta.setProperty("location", location.toString());
+			newmeta.setProperty("accept", accept);
+			String etag = connection.getHeaderField("ETag");
+			if (etag != null) {
+				newmeta.setProperty("etag", etag);
+			}
+			// Without Last-Modified, we ask whether modified since we
+			// downloaded it.
+			String lastmodified = connection.getHeaderField("Last-Modified");
+			if (lastmodified == null) {
+				lastmodified = connection.getHeaderField("Date");
+			}
+			if (lastmodified != null) {
+				newmeta.setProperty("lastmodified", lastmodified);
+			}
+			if (compression != null) {
+				newmeta.setProperty("compression", compression);
+			}
+
+			// Without metafile, the content is not used until it has been
+			// replaced.
+			metafile.delete();
+			try {
+				writeFile(contentfile, connection.getInputStream());
+			} finally {
+				connection.disconnect();
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			newmeta.store(out, null);
+			writeFile(metafile, out.toByteArray());
+
+			return new Response(responsecode, contentfile, null, null,
+					compression);
+		}
+	}
+
+	/**
+	 * Returns the compression of a document from its Content-Encoding, its
+	 * content type or the extension of its path.
+	 * 
+	 * @param encoding
+	 *            or null
+	 * @param contenttype
+	 *            or null
+	 * @param path
+	 *            or null
+	 * @return GZIP, BZIP2, ZIP or null if not known to be compressed
+	 */
+	public static String getCompression(String encoding, String contenttype,
+			String path) {
+		if (encoding != null) {
+			encoding = encoding.trim().toLowerCase();
+			if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+				return GZIP;
+			}
+			if (encoding.equals("bzip2") || encoding.equals("x-bzip2")) {
+				return BZIP2;
+			}
+		}
+		if (contenttype != null) {
+			contenttype = contenttype.toLowerCase();
+			if (contenttype.startsWith("application/gzip")
+					|| contenttype.startsWith("application/x-gzip")) {
+				return GZIP;
+			}
+			if (contenttype.startsWith("application/x-bzip2")) {
+				return BZIP2;
+			}
+			if (contenttype.startsWith("application/zip")) {
+				return ZIP;
+			}
+		}
+		if (path != null) {
+			path = path.toLowerCase();
+			if (path.endsWith(".gz") || path.endsWith(".gzip")) {
+				return GZIP;
+			}
+			if (path.endsWith(".bz2")) {
+				return BZIP2;
+			}
+			if (path.endsWith(".zip")) {
+				return ZIP;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the extension of a compression from a location, so that the RDF
+	 * format can be guessed from the file name, e.g., data.rdf.gz.
+	 * 
+	 * @param location
+	 * @return
+	 */
+	public static String removeCompressionExtension(String location) {
+		String lowercase = location.toLowerCase();
+		for (String extension : new String[] { ".gz", ".gzip", ".bz2",
+				".zip" }) {
+			if (lowercase.endsWith(extension)) {
+				return location.substring(0,
+						location.length() - extension.length());
+			}
+		}
+		return location;
+	}
+
+	/**
+	 * Wraps the stream so that it is decompressed while reading. If the
+	 * compression is not known, it is recognised by the first bytes, since
+	 * servers often do not tell.
+	 * 
+	 * @param in
+	 *            needs to support mark
+	 * @param compression
+	 *            GZIP, BZIP2, ZIP or null
+	 * @return
+	 * @throws IOException
+	 */
+	static InputStream decompress(InputStream in, String compression)
+			throws IOException {
+		if (compression == null) {
+			in.mark(4);
+			byte[] magic = new byte[3];
+			int read = 0;
+			int n;
+			while (read < magic.length
+					&& (n = in.read(magic, read, magic.length - read)) != -1) {
+				read += n;
+			}
+			in.reset();
+			if (read >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+				compression = GZIP;
+			} else if (read >= 3 && magic[0] == 'B' && magic[1] == 'Z'
+					&& magic[2] == 'h') {
+				compression = BZIP2;
+			} else if (read >= 2 && magic[0] == 'P' && magic[1] == 'K') {
+				compression = ZIP;
+			} else {
+				return in;
+			}
+		}
+
+		if (compression.equals(GZIP)) {
+			return new GZIPInputStream(in, 65536);
+		} else if (compression.equals(ZIP)) {
+			// Only the first file of an archive is read
+			ZipInputStream zip = new ZipInputStream(in);
+			ZipEntry entry = zip.getNextEntry();
+			while (entry != null && entry.isDirectory()) {
+				entry = zip.getNextEntry();
+			}
+			if (entry == null) {
+				throw new IOException("Zip archive contains no file.");
+			}
+			Olap4ldUtil._log.config("Read " + entry.getName()
+					+ " from zip archive.");
+			return zip;
+		} else if (compression.equals(BZIP2)) {
+			try {
+				return (InputStream) Class.forName(BZIP2_STREAM_CLASS)
+						.getConstructor(InputStream.class).newInstance(in);
+			} catch (ClassNotFoundException e) {
+				throw new IOException(
+						"Decompressing bzip2 requires commons-compress on the classpath.");
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		} else {
+			return in;
+		}
+	}
+
+	private static String hash(String string) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] bytes = digest.digest(string.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : bytes) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] bytes = new byte[8192];
+			int read;
+			while ((read = in.read(bytes)) != -1) {
+				out.write(bytes, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Copies the stream to the file in blocks and closes the stream.
+	 */
+	private static void copyStream(InputStream in, File file)
+			throws IOException {
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				byte[] bytes = new byte[65536];
+				int read;
+				while ((read = in.read(bytes)) != -1) {
+					out.write(bytes, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes to a temporary file in the same directory first and renames it,
+	 * so that a concurrent reader never sees half a file.
+	 */
+	private static void writeFile(File file, byte[] content)
+			throws IOException {
+		writeFile(file, new ByteArrayInputStream(content));
+	}
+
+	private static void writeFile(File file, InputStream content)
+			throws IOException {
+		File tmpfile;
+		try {
+			tmpfile = File.createTempFile("olap4ld-", ".tmp",
+					file.getParentFile());
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		}
+		try {
+			copyStream(content, tmpfile);
+		} catch (IOException e) {
+			tmpfile.delete();
+			throw e;
+		}
+		if (!tmpfile.renameTo(file)) {
+			// Some platforms do not replace existing files
+			file.delete();
+			if (!tmpfile.renameTo(file)) {
+				tmpfile.delete();
+				throw new IOException("Cannot rename to " + file);
+			}
+		}
+	}
+}
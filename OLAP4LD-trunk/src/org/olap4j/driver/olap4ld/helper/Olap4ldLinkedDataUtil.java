@@ -17,6 +17,7 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -52,6 +53,11 @@ public class Olap4ldLinkedDataUtil {
 	static HashMap<Integer, String> standard_prefix2uri = null;
 	static HashMap<Integer, String> standard_uri2prefix = null;
 
+	/**
+	 * Query templates by name, read in only once.
+	 */
+	private static HashMap<String, String> querytemplates = new HashMap<String, String>();
+
 	/*
 	 * As stated in encodeNode2Mdx
 	 */
@@ -75,7 +81,9 @@ public class Olap4ldLinkedDataUtil {
 	}
 
 	/**
-	 * Helper Method for asking for location
+	 * Helper Method for asking for location. Locations are remembered in the
+	 * CrawlCache and revalidated together with their documents; the cached
+	 * location is only used if the server cannot be reached.
 	 * 
 	 * @param uri
 	 * @return
@@ -95,6 +103,8 @@ public class Olap4ldLinkedDataUtil {
 			connection.setConnectTimeout(5000);
 			// int responsecode = connection.getResponseCode();
 			connection.setRequestProperty("Accept", "application/rdf+xml");
+			// Fails if the server cannot be reached
+			connection.getResponseCode();
 			String header = connection.getHeaderField("location");
 			String domain = uri.getHost();
 			String protocol = uri.getProtocol();
@@ -148,11 +158,19 @@ public class Olap4ldLinkedDataUtil {
 				returnurlstring = returnurlstring.substring(0, index);
 			}
 		} catch (IOException e) {
+			URL cachedlocation = CrawlCache.getDefault().getLocation(uri);
+			if (cachedlocation != null) {
+				Olap4ldUtil._log.config("... offline, cached result: "
+						+ cachedlocation);
+				return cachedlocation;
+			}
 			throw new MalformedURLException(e.getMessage());
 		}
 
 		Olap4ldUtil._log.config("... result: " + returnurlstring);
-		return new URL(returnurlstring);
+		URL location = new URL(returnurlstring);
+		CrawlCache.getDefault().putLocation(uri, location);
+		return location;
 	}
 
 	/**
@@ -249,7 +267,21 @@ public class Olap4ldLinkedDataUtil {
 		return decoded;
 	}
 
+	/**
+	 * Returns the query template with the given name from the classpath. The
+	 * lines are concatenated without line breaks. A template is read only the
+	 * first time it is asked for.
+	 * 
+	 * @param name
+	 * @return
+	 */
 	public static String readInQueryTemplate(String name) {
+		synchronized (querytemplates) {
+			String querytemplate = querytemplates.get(name);
+			if (querytemplate != null) {
+				return querytemplate;
+			}
+		}
 		try {
 			StreamSource stream = new StreamSource(
 					Olap4ldLinkedDataUtil.class.getResourceAsStream("/" + name));
@@ -258,13 +290,17 @@ public class Olap4ldLinkedDataUtil {
 			InputStreamReader reader = new InputStreamReader(inputStream);
 			BufferedReader in = new BufferedReader(reader);
 
-			String querytemplate = "";
+			StringBuilder querytemplate = new StringBuilder();
 			String readString;
 			while ((readString = in.readLine()) != null) {
-				querytemplate += readString;
+				querytemplate.append(readString);
 			}
 			in.close();
-			return querytemplate;
+
+			synchronized (querytemplates) {
+				querytemplates.put(name, querytemplate.toString());
+			}
+			return querytemplate.toString();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -582,6 +618,26 @@ public class Olap4ldLinkedDataUtil {
 		return mapFields;
 	}
 
+	/**
+	 * Key under which a row of a global cube is merged with the rows of other
+	 * datasets: the string values of the given columns. Rows with the same key
+	 * describe the same element of the global cube.
+	 * 
+	 * @param row
+	 * @param map
+	 *            from getNodeResultFields()
+	 * @param columns
+	 * @return
+	 */
+	public static List<String> createMergeKey(Node[] row,
+			Map<String, Integer> map, String... columns) {
+		String[] key = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			key[i] = row[map.get(columns[i])].toString();
+		}
+		return Arrays.asList(key);
+	}
+
 	public static List<List<Node[]>> splitandparseN3rule(String n3rule)
 			throws IOException {
 		// Remove {, }
@@ -0,0 +1,173 @@
+package org.olap4j.driver.olap4ld.helper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+
+/**
+ * On-disk cache of datasets that passed normalisation and the integrity
+ * constraints. A dataset is identified by the fingerprint of the content of
+ * its documents, so that an unchanged dataset does not need to be
+ * normalised and checked again by a new connection. The cache stores the
+ * statements that normalisation has derived for the dataset (the normalised
+ * delta) as binary RDF; that it contains a fingerprint at all means that the
+ * dataset was valid.
+ *
+ * A delta that mentions a blank node cannot be reused, since blank nodes get
+ * new ids each time a document is loaded. For such a dataset only the
+ * verdict is stored: it is normalised again, but not checked again.
+ *
+ * The cache is only used if a directory is set with the system property
+ * olap4ld.validationcache.dir. Otherwise, or if the directory cannot be
+ * used, nothing is cached.
+ */
+public class ValidationCache {
+
+	public static final String DIRECTORY_PROPERTY = "olap4ld.validationcache.dir";
+
+	private static ValidationCache defaultCache;
+
+	/**
+	 * Null if the cache is disabled.
+	 */
+	private File directory;
+
+	/**
+	 * The cache in the directory given by olap4ld.validationcache.dir,
+	 * disabled if no directory is given.
+	 *
+	 * @return
+	 */
+	public static synchronized ValidationCache getDefault() {
+		if (defaultCache == null) {
+			String directory = System.getProperty(DIRECTORY_PROPERTY);
+			defaultCache = new ValidationCache(directory == null ? null
+					: new File(directory));
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * @param directory
+	 *            or null to disable the cache
+	 */
+	public ValidationCache(File directory) {
+		if (directory == null) {
+			this.directory = null;
+		} else if (directory.isDirectory() || directory.mkdirs()) {
+			this.directory = directory;
+		} else {
+			Olap4ldUtil._log.warning("Validation cache cannot use directory: "
+					+ directory);
+			this.directory = null;
+		}
+	}
+
+	/**
+	 * @return whether the cache is used at all.
+	 */
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * Returns the normalised delta of a valid dataset.
+	 *
+	 * @param fingerprint
+	 * @return binary RDF or null if the dataset has not been validated or
+	 *         only its verdict is stored
+	 * @throws IOException
+	 */
+	public InputStream get(long fingerprint) throws IOException {
+		if (directory == null) {
+			return null;
+		}
+		File file = getFile(fingerprint);
+		if (!file.isFile()) {
+			return null;
+		}
+		return new BufferedInputStream(new FileInputStream(file), 65536);
+	}
+
+	/**
+	 * @param fingerprint
+	 * @return whether the dataset has been validated, with or without its
+	 *         delta
+	 */
+	public boolean isValid(long fingerprint) {
+		if (directory == null) {
+			return false;
+		}
+		return getFile(fingerprint).isFile()
+				|| getVerdictFile(fingerprint).isFile();
+	}
+
+	/**
+	 * Creates the file into which the normalised delta of a valid dataset is
+	 * written before it is added with put().
+	 *
+	 * @param fingerprint
+	 * @return file or null if the cache is disabled
+	 */
+	public File createTemporaryFile(long fingerprint) {
+		if (directory == null) {
+			return null;
+		}
+		return new File(directory, getName(fingerprint) + ".tmp");
+	}
+
+	/**
+	 * Marks a dataset as valid. Its delta becomes visible at once, so that
+	 * a concurrent get() never reads a partly written file.
+	 *
+	 * @param fingerprint
+	 * @param delta
+	 *            file from createTemporaryFile()
+	 */
+	public void put(long fingerprint, File delta) {
+		File file = getFile(fingerprint);
+		file.delete();
+		if (!delta.renameTo(file)) {
+			Olap4ldUtil._log.warning("Validation cache cannot write: "
+					+ file);
+			delta.delete();
+		}
+	}
+
+	/**
+	 * Marks a dataset as valid without storing its delta, e.g., since the
+	 * delta mentions blank nodes.
+	 *
+	 * @param fingerprint
+	 */
+	public void putVerdict(long fingerprint) {
+		if (directory == null) {
+			return;
+		}
+		File file = getVerdictFile(fingerprint);
+		try {
+			// Empty file
+			new FileOutputStream(file).close();
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Validation cache cannot write: "
+					+ file);
+		}
+	}
+
+	private File getFile(long fingerprint) {
+		return new File(directory, getName(fingerprint));
+	}
+
+	private File getVerdictFile(long fingerprint) {
+		return new File(directory, Long.toHexString(fingerprint) + ".valid");
+	}
+
+	private static String getName(long fingerprint) {
+		return Long.toHexString(fingerprint) + ".brf";
+	}
+}
@@ -1,7 +1,6 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -28,7 +27,7 @@ public class BaseCubeSparqlDerivedDatasetIterator implements
 	private List<Node[]> members;
 
 	private LinkedDataCubesEngine engine;
-	private Iterator<Node[]> outputiterator;
+	private ResultCursor outputiterator;
 	private String query;
 
 	public BaseCubeSparqlDerivedDatasetIterator(LinkedDataCubesEngine engine,
@@ -181,47 +180,38 @@ public class BaseCubeSparqlDerivedDatasetIterator implements
 	 * We only return always the same thing.
 	 */
 	public boolean hasNext() {
-		if (this.outputiterator == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-
-		return outputiterator.hasNext();
+		return getOutputIterator().hasNext();
 	}
 
 	@Override
 	public Object next() {
+		return getOutputIterator().next();
+	}
+
+	/**
+	 * The query is only issued when the first row is read, so that an
+	 * iterator that is initialised but not read does not hold a connection.
+	 * 
+	 * @return
+	 */
+	private ResultCursor getOutputIterator() {
 		if (this.outputiterator == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			this.outputiterator = sparql(this.query);
 		}
-		return outputiterator.next();
+		return this.outputiterator;
 	}
 
 	/**
 	 * Simply copied over from embedded sesame.
 	 * 
 	 * @param query
-	 * @param caching
-	 * @return
+	 * @return cursor streaming the rows from the engine
 	 */
-	private List<Node[]> sparql(String query) {
+	private ResultCursor sparql(String query) {
 
 		Olap4ldUtil._log.info("SPARQL query: " + query);
 
-		List<Node[]> myBindings = new ArrayList<Node[]>();
-
-		myBindings = engine.executeSparqlSelectQuery(query, false);
-
-		return myBindings;
+		return engine.executeSparqlSelectQueryCursor(query);
 	}
 
 	@Override
@@ -245,13 +235,16 @@ public class BaseCubeSparqlDerivedDatasetIterator implements
 
 		// Does not have input operators, therefore no other init necessary.
 
-		this.outputiterator = sparql(this.query).iterator();
+		// Rewind: Free the old cursor, the query is issued again when read.
+		close();
 	}
 
 	@Override
 	public void close() throws Exception {
-		// TODO Auto-generated method stub
-
+		if (this.outputiterator != null) {
+			this.outputiterator.close();
+			this.outputiterator = null;
+		}
 	}
 
 	@Override
@@ -0,0 +1,84 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Replaces subjects and objects by their canonical resource of a SameAsIndex
+ * while parsing, so that statements about known equivalent resources are
+ * stored only once. Predicates and owl:sameAs statements are passed on
+ * unchanged.
+ */
+public class CanonicalRDFHandler extends RDFHandlerWrapper {
+
+	public static final String OWL_SAMEAS = "http://www.w3.org/2002/07/owl#sameAs";
+
+	private SameAsIndex index;
+
+	private ValueFactory factory;
+
+	public CanonicalRDFHandler(RDFHandler handler, SameAsIndex index,
+			ValueFactory factory) {
+		super(handler);
+		this.index = index;
+		this.factory = factory;
+	}
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		if (OWL_SAMEAS.equals(st.getPredicate().stringValue())) {
+			super.handleStatement(st);
+			return;
+		}
+		Resource subject = (Resource) canonical(st.getSubject());
+		Value object = canonical(st.getObject());
+		if (subject == st.getSubject() && object == st.getObject()) {
+			super.handleStatement(st);
+		} else if (st.getContext() == null) {
+			super.handleStatement(factory.createStatement(subject,
+					st.getPredicate(), object));
+		} else {
+			super.handleStatement(factory.createStatement(subject,
+					st.getPredicate(), object, st.getContext()));
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return the canonical uri of a uri or else the value itself
+	 */
+	private Value canonical(Value value) {
+		if (!(value instanceof URI)) {
+			return value;
+		}
+		String canonical = index.getCanonical(value.stringValue());
+		if (canonical.equals(value.stringValue())) {
+			return value;
+		}
+		return factory.createURI(canonical);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.util.RDFInserter;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * Inserts parsed statements into the store and commits every chunksize
+ * statements. The parser streams into the store, so a large dump is never
+ * held in memory as a whole and neither is one huge transaction. If the
+ * parser fails, only the current chunk is rolled back; the caller needs to
+ * remove the chunks before, e.g., by clearing the context of the document.
+ * 
+ * The caller begins the first transaction and commits the last one.
+ */
+public class ChunkedRDFInserter extends RDFInserter {
+
+	private RepositoryConnection con;
+
+	private int chunksize;
+
+	private String name;
+
+	private long statements = 0;
+
+	private long starttime;
+
+	/**
+	 * 
+	 * @param con
+	 * @param chunksize
+	 *            number of statements per transaction
+	 * @param name
+	 *            of the loaded document for progress reports
+	 */
+	public ChunkedRDFInserter(RepositoryConnection con, int chunksize,
+			String name) {
+		super(con);
+		this.con = con;
+		this.chunksize = chunksize;
+		this.name = name;
+	}
+
+	@Override
+	public void startRDF() throws RDFHandlerException {
+		super.startRDF();
+		starttime = System.currentTimeMillis();
+	}
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		super.handleStatement(st);
+		statements++;
+		if (statements % chunksize == 0) {
+			try {
+				con.commit();
+				con.begin();
+			} catch (RepositoryException e) {
+				throw new RDFHandlerException(e);
+			}
+			long time = System.currentTimeMillis() - starttime;
+			Olap4ldUtil._log.info("Bulk load of " + name + ": " + statements
+					+ " triples committed in " + time + "ms.");
+		}
+	}
+
+	/**
+	 * @return number of statements inserted, committed or not.
+	 */
+	public long getStatements() {
+		return statements;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Streams the results of several SPARQL queries with the same variables as
+ * one result, e.g., the different kinds of members of getMembers().
+ * 
+ * The given header is returned as first row; the header rows of the single
+ * queries are skipped. A query is only issued once the rows of the previous
+ * one have been read.
+ */
+public class ConcatenatedResultCursor implements ResultCursor {
+
+	private LinkedDataCubesEngine engine;
+
+	private Node[] header;
+
+	private Iterator<String> queries;
+
+	private ResultCursor current;
+
+	private boolean closed = false;
+
+	public ConcatenatedResultCursor(Node[] header, List<String> queries,
+			LinkedDataCubesEngine engine) {
+		this.header = header;
+		this.queries = queries.iterator();
+		this.engine = engine;
+	}
+
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (header != null) {
+			return true;
+		}
+		while (current == null || !current.hasNext()) {
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+			if (!queries.hasNext()) {
+				closed = true;
+				return false;
+			}
+			current = open(queries.next());
+			// Skip header of single query
+			if (current.hasNext()) {
+				current.next();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Issues one of the queries. Subclasses may interpret the query strings
+	 * differently, e.g., as names of prepared queries.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	protected ResultCursor open(String query) {
+		return engine.executeSparqlSelectQueryCursor(query);
+	}
+
+	public Node[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		if (header != null) {
+			Node[] result = header;
+			header = null;
+			return result;
+		}
+		return current.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+		header = null;
+		closed = true;
+	}
+}
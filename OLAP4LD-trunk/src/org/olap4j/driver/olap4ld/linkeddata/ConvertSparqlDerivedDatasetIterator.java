@@ -1,9 +1,9 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,7 +42,7 @@ public class ConvertSparqlDerivedDatasetIterator implements
 	Map<String, Integer> levelmap = null;
 	Map<String, Integer> membermap = null;
 
-	private Iterator<Node[]> outputiterator;
+	private ResultCursor outputiterator;
 	private PhysicalOlapIterator inputiterator1;
 	private PhysicalOlapIterator inputiterator2;
 	// private String conversionfunction;
@@ -54,7 +54,7 @@ public class ConvertSparqlDerivedDatasetIterator implements
 	private String dataset1;
 	private String dataset2;
 	private DataFuProgram dataFuProgram;
-	private List<Node[]> results;
+	private String observationquery;
 
 	public ConvertSparqlDerivedDatasetIterator(LinkedDataCubesEngine engine,
 			PhysicalOlapIterator inputiterator1,
@@ -584,10 +584,11 @@ public class ConvertSparqlDerivedDatasetIterator implements
 
 		Olap4ldUtil._log.config("SPARQL SELECT query: " + observationquery);
 
-		this.results = this.engine.executeSparqlSelectQuery(observationquery, false);
+		// The query is issued (and re-issued for every rewind) in init().
+		this.observationquery = observationquery;
 	}
 
-	private void executeSPARQLConstructQuery() {
+	private void executeSPARQLConstructQuery() throws OlapException {
 
 		List<Node[]> bodypatterns = dataFuProgram.bodypatterns;
 		List<Node[]> headpatterns = dataFuProgram.headpatterns;
@@ -670,7 +671,14 @@ public class ConvertSparqlDerivedDatasetIterator implements
 
 		Olap4ldUtil._log.info("SPARQL CONSTRUCT query: " + constructquery);
 
-		this.engine.executeSparqlConstructQuery(constructquery);
+		try {
+			// Loaded for the derived dataset, so that it can be evicted.
+			((EmbeddedSesameEngine) this.engine).executeSparqlConstructQuery(
+					constructquery, new URL(newdataset));
+		} catch (MalformedURLException e) {
+			throw new OlapException("Problem with malformed url: "
+					+ e.getMessage(), e);
+		}
 	}
 
 	// Old
@@ -1555,8 +1563,8 @@ public class ConvertSparqlDerivedDatasetIterator implements
 		// FileOutputStream fos = new
 		// FileOutputStream("/home/benedikt/Workspaces/Git-Repositories/olap4ld/OLAP4LD-trunk/resources/result.srx");
 
-		this.outputiterator = this.engine.executeSparqlSelectQuery(observationquery, false)
-				.iterator();
+		this.outputiterator = this.engine
+				.executeSparqlSelectQueryCursor(observationquery);
 	}
 
 	/**
@@ -1599,28 +1607,38 @@ public class ConvertSparqlDerivedDatasetIterator implements
 	 * Always true.
 	 */
 	public boolean hasNext() {
-		if (this.results == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-		return outputiterator.hasNext();
+		return getOutputIterator().hasNext();
 	}
 
 	public Object next() {
-		if (this.results == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		return getOutputIterator().next();
+	}
+
+	/**
+	 * The derived dataset is created by init(), the query for its
+	 * observations is only issued when the first row is read.
+	 * 
+	 * @return
+	 * @throws RuntimeException
+	 *             if the derived dataset cannot be created
+	 */
+	private ResultCursor getOutputIterator() {
+		if (this.outputiterator == null) {
+			if (this.observationquery == null) {
+				try {
+					init();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new RuntimeException(
+							"Problem with derived dataset: " + e.getMessage(),
+							e);
+				}
 			}
+			this.outputiterator = this.engine
+					.executeSparqlSelectQueryCursor(this.observationquery);
 		}
-
-		return outputiterator.next();
+		return this.outputiterator;
 	}
 
 	@Override
@@ -1635,7 +1653,7 @@ public class ConvertSparqlDerivedDatasetIterator implements
 		// query.
 
 		// Should not be run every time again.
-		if (this.results == null) {
+		if (this.observationquery == null) {
 
 			// Need to make sure that I also init the input operators.
 			inputiterator1.init();
@@ -1643,6 +1661,10 @@ public class ConvertSparqlDerivedDatasetIterator implements
 				inputiterator2.init();
 			}
 
+			// The rows of the inputs are not read. Make sure that they do not
+			// keep reading the store while the derived dataset is written.
+			closeInputIterators();
+
 			// This is specific to EmbeddedSesameEngine.
 			
 			EmbeddedSesameEngine engine_embeddedsesame = (EmbeddedSesameEngine) this.engine;
@@ -1672,14 +1694,28 @@ public class ConvertSparqlDerivedDatasetIterator implements
 
 			executeSPARQLSelectQuery();
 
+		} else if (this.outputiterator != null) {
+			// Rewind: Free the old cursor, the query is issued again when
+			// read.
+			this.outputiterator.close();
+			this.outputiterator = null;
 		}
-		this.outputiterator = this.results.iterator();
 	}
 
 	@Override
 	public void close() throws Exception {
-		// TODO Auto-generated method stub
+		if (this.outputiterator != null) {
+			this.outputiterator.close();
+			this.outputiterator = null;
+		}
+		closeInputIterators();
+	}
 
+	private void closeInputIterators() throws Exception {
+		inputiterator1.close();
+		if (inputiterator2 != null) {
+			inputiterator2.close();
+		}
 	}
 
 	public String toString() {
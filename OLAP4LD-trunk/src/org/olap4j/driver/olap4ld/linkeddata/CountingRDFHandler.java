@@ -0,0 +1,183 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Passes parsed statements on to another handler, e.g., an RDFInserter, and
+ * counts them on the way. This way, we know how many triples and observations
+ * have been loaded without asking the store. Also collects the datasets that
+ * the statements are about, so that only those need to be normalised.
+ * 
+ * Also computes a fingerprint of the content: the sum of well mixed 64-bit
+ * hashes of the statements, which does not depend on the order of the
+ * statements. The parser assigns new ids to blank nodes each time, and
+ * hashing them without their ids would make different graphs collide.
+ * Therefore, the fingerprint of statements with blank nodes must not be used
+ * to identify the content, see hasBlankNodes().
+ * 
+ * Statements are counted as parsed, i.e., a statement that was already
+ * contained in the store is counted again.
+ */
+public class CountingRDFHandler extends RDFHandlerWrapper {
+
+	private static final String QB_DATASET = "http://purl.org/linked-data/cube#dataSet";
+
+	private static final String QB_STRUCTURE = "http://purl.org/linked-data/cube#structure";
+
+	private static final String QB_SLICE = "http://purl.org/linked-data/cube#slice";
+
+	private int triples = 0;
+
+	private int observations = 0;
+
+	private Set<String> datasets = new HashSet<String>();
+
+	private boolean blankDatasets = false;
+
+	private boolean blankNodes = false;
+
+	private long fingerprint = 0;
+
+	public CountingRDFHandler(RDFHandler handler) {
+		super(handler);
+	}
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		super.handleStatement(st);
+		triples++;
+		fingerprint += hash(st);
+		String predicate = st.getPredicate().stringValue();
+		if (QB_DATASET.equals(predicate)) {
+			observations++;
+			if (st.getObject() instanceof URI) {
+				datasets.add(st.getObject().stringValue());
+			} else if (st.getObject() instanceof BNode) {
+				blankDatasets = true;
+			}
+		} else if (QB_STRUCTURE.equals(predicate)
+				|| QB_SLICE.equals(predicate)) {
+			if (st.getSubject() instanceof URI) {
+				datasets.add(st.getSubject().stringValue());
+			} else if (st.getSubject() instanceof BNode) {
+				blankDatasets = true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of statements handled.
+	 */
+	public int getTriples() {
+		return triples;
+	}
+
+	/**
+	 * @return number of qb:dataSet statements handled.
+	 */
+	public int getObservations() {
+		return observations;
+	}
+
+	/**
+	 * @return fingerprint of the statements handled, only identifies them if
+	 *         there are no blank nodes.
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return whether a subject or object of the statements handled is a
+	 *         blank node.
+	 */
+	public boolean hasBlankNodes() {
+		return blankNodes;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of subject, predicate and object, mixed so that
+	 * sums of similar statements do not cancel out.
+	 * 
+	 * @param st
+	 * @return
+	 */
+	private long hash(Statement st) {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, st.getSubject());
+		hash = hash(hash, st.getPredicate());
+		hash = hash(hash, st.getObject());
+		// Finalizer of MurmurHash3
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private long hash(long hash, Value value) {
+		String string;
+		if (value instanceof BNode) {
+			blankNodes = true;
+			string = "_:";
+		} else if (value instanceof URI) {
+			// Not to be confused with a literal of the same label
+			string = "<" + value.stringValue() + ">";
+		} else {
+			string = value.toString();
+		}
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		// Separator
+		hash ^= 0xff;
+		hash *= 0x100000001b3L;
+		return hash;
+	}
+
+	/**
+	 * @return uris of the datasets with an observation, structure or slice
+	 *         among the statements.
+	 */
+	public Set<String> getDatasets() {
+		return datasets;
+	}
+
+	/**
+	 * @return whether a dataset with an observation, structure or slice among
+	 *         the statements is a blank node, i.e., is not contained in
+	 *         getDatasets().
+	 */
+	public boolean hasBlankDatasets() {
+		return blankDatasets;
+	}
+}
@@ -0,0 +1,397 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which documents (each loaded into its own context) belong
+ * to which dataset and which datasets were queried least recently, so that
+ * datasets can be evicted from the store as a unit.
+ * 
+ * Documents such as code lists are often shared between datasets. A
+ * document is only evicted if no remaining dataset uses it. Documents that
+ * were loaded without a dataset, e.g., preloaded ones, are never evicted.
+ * Neither are datasets that are read by an open cursor, see open().
+ */
+public class DatasetContexts {
+
+	/**
+	 * A loaded document.
+	 */
+	public static class Document {
+
+		/**
+		 * Context of the statements of the document, null if not loaded by
+		 * loadInStore yet.
+		 */
+		public String context;
+
+		/**
+		 * Non-information and information uris that lead to the document.
+		 */
+		public final Set<URL> uris = new HashSet<URL>();
+
+		public int triples = 0;
+
+		public int observations = 0;
+
+		/**
+		 * Fingerprint of the content, see CountingRDFHandler.
+		 */
+		public long fingerprint = 0;
+
+		/**
+		 * Whether the content has blank nodes, i.e., the fingerprint does not
+		 * identify it.
+		 */
+		public boolean blankNodes = false;
+
+		/**
+		 * Whether the document was loaded without a dataset.
+		 */
+		boolean pinned = false;
+
+		final Set<String> datasets = new HashSet<String>();
+	}
+
+	/**
+	 * A dataset removed by evictLeastRecentlyUsed().
+	 */
+	public static class Eviction {
+
+		public final String dataset;
+
+		/**
+		 * Documents of the dataset that no other dataset uses.
+		 */
+		public final List<Document> documents;
+
+		Eviction(String dataset, List<Document> documents) {
+			this.dataset = dataset;
+			this.documents = documents;
+		}
+	}
+
+	/**
+	 * Documents by their uris.
+	 */
+	private HashMap<String, Document> documents = new HashMap<String, Document>();
+
+	/**
+	 * Documents of datasets, least recently used first.
+	 */
+	private LinkedHashMap<String, Set<Document>> datasets = new LinkedHashMap<String, Set<Document>>(
+			16, 0.75f, true);
+
+	/**
+	 * Number of open cursors per dataset.
+	 */
+	private HashMap<String, Integer> openDatasets = new HashMap<String, Integer>();
+
+	/**
+	 * Records that a document has been loaded for a dataset.
+	 * 
+	 * @param dataset
+	 *            or null if loaded for no dataset
+	 * @param noninformationuri
+	 * @param informationuri
+	 * @param context
+	 * @param triples
+	 * @param observations
+	 * @param fingerprint
+	 * @param blankNodes
+	 *            whether the content has blank nodes
+	 */
+	public synchronized void addDocument(URL dataset, URL noninformationuri,
+			URL informationuri, String context, int triples, int observations,
+			long fingerprint, boolean blankNodes) {
+		Document document = getDocument(noninformationuri);
+		Document other = documents.get(informationuri.toString());
+		if (other != null && other != document) {
+			// Uses of the information uri before it was known to belong here
+			for (String otherdataset : other.datasets) {
+				document.datasets.add(otherdataset);
+				datasets.get(otherdataset).remove(other);
+				datasets.get(otherdataset).add(document);
+			}
+			document.uris.addAll(other.uris);
+			document.pinned |= other.pinned;
+			document.blankNodes |= other.blankNodes;
+			for (URL uri : other.uris) {
+				documents.put(uri.toString(), document);
+			}
+		}
+		documents.put(informationuri.toString(), document);
+		document.uris.add(informationuri);
+		document.context = context;
+		document.triples += triples;
+		document.observations += observations;
+		document.fingerprint += fingerprint;
+		document.blankNodes |= blankNodes;
+		use(dataset, document);
+	}
+
+	/**
+	 * Records that a dataset uses a document that is already loaded or being
+	 * loaded.
+	 * 
+	 * @param dataset
+	 *            or null
+	 * @param uri
+	 */
+	public synchronized void useDocument(URL dataset, URL uri) {
+		use(dataset, getDocument(uri));
+	}
+
+	/**
+	 * Marks the dataset as most recently used.
+	 * 
+	 * @param dataset
+	 */
+	public synchronized void touch(String dataset) {
+		datasets.get(dataset);
+	}
+
+	/**
+	 * Records that a cursor reads the dataset, so that it is not evicted
+	 * until release() is called.
+	 * 
+	 * @param dataset
+	 */
+	public synchronized void open(String dataset) {
+		Integer count = openDatasets.get(dataset);
+		openDatasets.put(dataset, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Records that a cursor of open() is closed.
+	 * 
+	 * @param dataset
+	 */
+	public synchronized void release(String dataset) {
+		Integer count = openDatasets.get(dataset);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			openDatasets.remove(dataset);
+		} else {
+			openDatasets.put(dataset, count - 1);
+		}
+	}
+
+	/**
+	 * Removes the least recently used dataset that is not open and returns
+	 * its documents that are used by no other dataset.
+	 * 
+	 * @param keep
+	 *            datasets that are not removed, e.g., the ones just loaded
+	 * @return the dataset with the documents to remove from the store or null
+	 *         if there is no dataset to remove
+	 */
+	public synchronized Eviction evictLeastRecentlyUsed(Set<String> keep) {
+		Iterator<Map.Entry<String, Set<Document>>> iterator = datasets
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Set<Document>> entry = iterator.next();
+			if (keep.contains(entry.getKey())
+					|| openDatasets.containsKey(entry.getKey())) {
+				continue;
+			}
+			iterator.remove();
+
+			List<Document> evicted = new ArrayList<Document>();
+			for (Document document : entry.getValue()) {
+				document.datasets.remove(entry.getKey());
+				if (document.datasets.isEmpty() && !document.pinned) {
+					for (URL uri : document.uris) {
+						documents.remove(uri.toString());
+					}
+					evicted.add(document);
+				}
+			}
+			return new Eviction(entry.getKey(), evicted);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the fingerprint of the content of all documents of a dataset.
+	 * 
+	 * @param dataset
+	 * @return fingerprint or null if no documents are known for the dataset,
+	 *         e.g., since it was restored from a snapshot, or if a document
+	 *         has blank nodes
+	 */
+	public synchronized Long getFingerprint(String dataset) {
+		Set<Document> datasetdocuments = datasets.get(dataset);
+		if (datasetdocuments == null || datasetdocuments.isEmpty()) {
+			return null;
+		}
+		List<Long> fingerprints = new ArrayList<Long>();
+		for (Document document : datasetdocuments) {
+			if (document.blankNodes) {
+				return null;
+			}
+			fingerprints.add(document.fingerprint);
+		}
+		Collections.sort(fingerprints);
+		long fingerprint = 17;
+		for (Long documentfingerprint : fingerprints) {
+			fingerprint = 31 * fingerprint + documentfingerprint;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return the loaded documents, each once.
+	 */
+	public synchronized List<Document> getDocuments() {
+		Set<Document> distinct = new HashSet<Document>(documents.values());
+		return new ArrayList<Document>(distinct);
+	}
+
+	/**
+	 * Writes the documents and datasets, e.g., into a snapshot of the store.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public synchronized void write(DataOutput out) throws IOException {
+		// Least recently used first
+		out.writeInt(datasets.size());
+		for (String dataset : datasets.keySet()) {
+			out.writeUTF(dataset);
+		}
+		List<Document> distinct = getDocuments();
+		out.writeInt(distinct.size());
+		for (Document document : distinct) {
+			out.writeBoolean(document.context != null);
+			if (document.context != null) {
+				out.writeUTF(document.context);
+			}
+			out.writeInt(document.uris.size());
+			for (URL uri : document.uris) {
+				out.writeUTF(uri.toString());
+			}
+			out.writeInt(document.triples);
+			out.writeInt(document.observations);
+			out.writeLong(document.fingerprint);
+			out.writeBoolean(document.blankNodes);
+			out.writeBoolean(document.pinned);
+			out.writeInt(document.datasets.size());
+			for (String dataset : document.datasets) {
+				out.writeUTF(dataset);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the documents and datasets with those written by write().
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	public synchronized void read(DataInput in) throws IOException {
+		clear();
+		List<String> order = new ArrayList<String>();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			order.add(in.readUTF());
+		}
+		// Not datasets, since get() would change the order
+		Map<String, Set<Document>> datasetdocuments = new HashMap<String, Set<Document>>();
+		for (String dataset : order) {
+			datasetdocuments.put(dataset, new HashSet<Document>());
+		}
+		size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			Document document = new Document();
+			if (in.readBoolean()) {
+				document.context = in.readUTF();
+			}
+			int uris = in.readInt();
+			for (int j = 0; j < uris; j++) {
+				URL uri = new URL(in.readUTF());
+				document.uris.add(uri);
+				documents.put(uri.toString(), document);
+			}
+			document.triples = in.readInt();
+			document.observations = in.readInt();
+			document.fingerprint = in.readLong();
+			document.blankNodes = in.readBoolean();
+			document.pinned = in.readBoolean();
+			int datasetsize = in.readInt();
+			for (int j = 0; j < datasetsize; j++) {
+				String dataset = in.readUTF();
+				document.datasets.add(dataset);
+				if (!datasetdocuments.containsKey(dataset)) {
+					order.add(dataset);
+					datasetdocuments.put(dataset, new HashSet<Document>());
+				}
+				datasetdocuments.get(dataset).add(document);
+			}
+		}
+		for (String dataset : order) {
+			datasets.put(dataset, datasetdocuments.get(dataset));
+		}
+	}
+
+	public synchronized void clear() {
+		documents.clear();
+		datasets.clear();
+	}
+
+	private Document getDocument(URL uri) {
+		Document document = documents.get(uri.toString());
+		if (document == null) {
+			document = new Document();
+			document.uris.add(uri);
+			documents.put(uri.toString(), document);
+		}
+		return document;
+	}
+
+	private void use(URL dataset, Document document) {
+		if (dataset == null) {
+			document.pinned = true;
+			return;
+		}
+		Set<Document> datasetdocuments = datasets.get(dataset.toString());
+		if (datasetdocuments == null) {
+			datasetdocuments = new HashSet<Document>();
+			datasets.put(dataset.toString(), datasetdocuments);
+		}
+		datasetdocuments.add(document);
+		document.datasets.add(dataset.toString());
+	}
+}
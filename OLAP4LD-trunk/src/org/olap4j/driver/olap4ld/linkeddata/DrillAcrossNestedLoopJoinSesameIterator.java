@@ -1,9 +1,12 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.olap4j.OlapException;
 import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
@@ -13,7 +16,9 @@ import org.semanticweb.yars.nx.Resource;
 
 /**
  * This iterator simply computes the nested-loop join of input iterators
- * (mostly, the Olap2SparqlAlgorithmSesameIterator).
+ * (mostly, the Olap2SparqlAlgorithmSesameIterator). The first input is
+ * streamed; only the rows of the second input are kept, indexed by their
+ * dimension members.
  * 
  * @author benedikt
  * 
@@ -277,41 +282,43 @@ public class DrillAcrossNestedLoopJoinSesameIterator implements
 				boolean allmeasuresthesame = areAllMeasuresTheSame(
 						root1_measures, root2_measures);
 
-				// Nested-loop
-				boolean firstroot1 = true;
-				while (root1.hasNext()) {
-					Node[] root1_node = (Node[]) root1.next();
-					List<Node> result = new ArrayList<Node>();
-					try {
-						root2.init();
-					} catch (Exception e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+				// The outer input is streamed, only the rows of the inner
+				// input are kept. Since rows are compared by the hash of
+				// their dimension members, the inner rows are indexed by it
+				// instead of being scanned once per outer row.
+				List<Node[]> root2_rows = readRows(root2);
+				Map<Integer, Node[]> root2_index = new HashMap<Integer, Node[]>();
+				for (Node[] root2_node : root2_rows) {
+					Integer key = getJoinKey(root2_node,
+							root2_dimensions.size() - 2);
+					// As the scan, an outer row is joined with the first
+					// inner row of the same dimension members.
+					if (!root2_index.containsKey(key)) {
+						root2_index.put(key, root2_node);
 					}
-					while (root2.hasNext()) {
-						Node[] root2_node = (Node[]) root2.next();
+				}
+
+				// Keys of inner rows that have been joined, for the right
+				// outer join
+				Set<Integer> joinedkeys = new HashSet<Integer>();
+				// Added after the joined rows
+				List<Node[]> leftouterresults = new ArrayList<Node[]>();
+
+				// Join
+				boolean firstroot1 = true;
+				try {
+					while (root1.hasNext()) {
+						Node[] root1_node = (Node[]) root1.next();
+						List<Node> result = new ArrayList<Node>();
 
-						// Consider measure dimension and header
-						equal = false;
-						// XXX: Check whether root1_node = root2_node if so,
-						// then...
 						// Currently we assume same dimension ordering and same
 						// members.
-						String concat1 = "";
-						String concat2 = "";
-						for (int i = 0; i < root1_dimensions.size() - 2; i++) {
-							concat1 += root1_node[i].toString();
-						}
-						for (int i = 0; i < root2_dimensions.size() - 2; i++) {
-							concat2 += root2_node[i].toString();
-						}
-
-						if (concat1.hashCode() == concat2.hashCode()) {
-							equal = true;
-						}
+						Integer key = getJoinKey(root1_node,
+								root1_dimensions.size() - 2);
+						Node[] root2_node = root2_index.get(key);
 
-						if (equal) {
-							// Add to result
+						if (root2_node != null) {
+							joinedkeys.add(key);
 
 							// Add dimensions
 							for (int i = 0; i < root1_dimensions.size() - 2; i++) {
@@ -371,79 +378,8 @@ public class DrillAcrossNestedLoopJoinSesameIterator implements
 
 							results.add(result.toArray(new Node[1]));
 
-							/*
-							 * Performance optimisation: Shall we have an outer
-							 * loop join? The problem would be that then for the
-							 * same dimension members, we would have several
-							 * facts. Can we be sure that this really is the
-							 * case? Yes, if we have integrity constraint checks
-							 * on the original data. Therefore, we assume it.
-							 */
-							break;
-
-						}
-
-					}
-				}
-
-				// Outer join
-				if (allmeasuresthesame) {
-
-					// Left outer
-					try {
-						root1.init();
-					} catch (Exception e1) {
-						// TODO Auto-generated catch block
-						e1.printStackTrace();
-					}
-					while (root1.hasNext()) {
-						Node[] root1_node = (Node[]) root1.next();
-						List<Node> result = new ArrayList<Node>();
-						try {
-							root2.init();
-						} catch (Exception e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-						while (root2.hasNext()) {
-							Node[] root2_node = (Node[]) root2.next();
-
-							// Consider measure dimension and header
-							equal = false;
-							// XXX: Check whether root1_node = root2_node if so,
-							// then...
-							// Currently we assume same dimension ordering and
-							// same
-							// members.
-							String concat1 = "";
-							String concat2 = "";
-							for (int i = 0; i < root1_dimensions.size() - 2; i++) {
-								concat1 += root1_node[i].toString();
-							}
-							for (int i = 0; i < root2_dimensions.size() - 2; i++) {
-								concat2 += root2_node[i].toString();
-							}
-
-							if (concat1.hashCode() == concat2.hashCode()) {
-								equal = true;
-							}
-
-							if (equal) {
-								/*
-								 * Performance optimisation: Shall we have an
-								 * outer loop join? The problem would be that
-								 * then for the same dimension members, we would
-								 * have several facts. Can we be sure that this
-								 * really is the case? Yes, if we have integrity
-								 * constraint checks on the original data.
-								 * Therefore, we assume it.
-								 */
-								break;
-
-							}
-
-						}
-						if (!equal) {
+						} else if (allmeasuresthesame) {
+							// Left outer
 
 							// Add dimensions
 							for (int i = 0; i < root1_dimensions.size() - 2; i++) {
@@ -457,87 +393,46 @@ public class DrillAcrossNestedLoopJoinSesameIterator implements
 							}
 
 							// Status: Why geo?
-							results.add(result.toArray(new Node[1]));
+							leftouterresults.add(result.toArray(new Node[1]));
 						}
 					}
+				} finally {
+					close(root1);
+				}
 
-					// Right outer
-					try {
-						root2.init();
-					} catch (Exception e1) {
-						// TODO Auto-generated catch block
-						e1.printStackTrace();
-					}
-					while (root2.hasNext()) {
-						Node[] root2_node = (Node[]) root2.next();
-						List<Node> result = new ArrayList<Node>();
-						try {
-							root1.init();
-						} catch (Exception e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-						while (root1.hasNext()) {
-							Node[] root1_node = (Node[]) root1.next();
-
-							// Consider measure dimension and header
-							equal = false;
-							// XXX: Check whether root1_node = root2_node if so,
-							// then...
-							// Currently we assume same dimension ordering and
-							// same
-							// members.
-							String concat1 = "";
-							String concat2 = "";
-							for (int i = 0; i < root1_dimensions.size() - 2; i++) {
-								concat1 += root1_node[i].toString();
-							}
-							for (int i = 0; i < root2_dimensions.size() - 2; i++) {
-								concat2 += root2_node[i].toString();
-							}
-
-							if (concat1.hashCode() == concat2.hashCode()) {
-								equal = true;
-							}
-
-							if (equal) {
-
-								/*
-								 * Performance optimisation: Shall we have an
-								 * outer loop join? The problem would be that
-								 * then for the same dimension members, we would
-								 * have several facts. Can we be sure that this
-								 * really is the case? Yes, if we have integrity
-								 * constraint checks on the original data.
-								 * Therefore, we assume it.
-								 */
-								break;
+				// Outer join
+				if (allmeasuresthesame) {
 
-							}
+					// Left outer
+					results.addAll(leftouterresults);
 
+					// Right outer
+					for (Node[] root2_node : root2_rows) {
+						if (joinedkeys.contains(getJoinKey(root2_node,
+								root2_dimensions.size() - 2))) {
+							continue;
 						}
-						if (!equal) {
-
-							// Add dimensions
-							for (int i = 0; i < root2_dimensions.size() - 2; i++) {
-								result.add(root2_node[i]);
-							}
+						List<Node> result = new ArrayList<Node>();
 
-							// Add measures of cube two
-							for (int i = root1_dimensions.size() - 2
-									+ root1_measures.size() - 1; i < root1_dimensions
-									.size()
-									- 2
-									+ root1_measures.size()
-									- 1
-									+ root2_measures.size() - 1; i++) {
-								result.add(root2_node[i - root1_measures.size()
-										+ 1]);
-							}
+						// Add dimensions
+						for (int i = 0; i < root2_dimensions.size() - 2; i++) {
+							result.add(root2_node[i]);
+						}
 
-							// Status: Why geo?
-							results.add(result.toArray(new Node[1]));
+						// Add measures of cube two
+						for (int i = root1_dimensions.size() - 2
+								+ root1_measures.size() - 1; i < root1_dimensions
+								.size()
+								- 2
+								+ root1_measures.size()
+								- 1
+								+ root2_measures.size() - 1; i++) {
+							result.add(root2_node[i - root1_measures.size()
+									+ 1]);
 						}
+
+						// Status: Why geo?
+						results.add(result.toArray(new Node[1]));
 					}
 
 				}
@@ -551,6 +446,52 @@ public class DrillAcrossNestedLoopJoinSesameIterator implements
 		this.results = results;
 	}
 
+	/**
+	 * Reads all rows of an input iterator and frees its resources.
+	 * 
+	 * @param root
+	 * @return
+	 * @throws OlapException
+	 */
+	private List<Node[]> readRows(PhysicalOlapIterator root)
+			throws OlapException {
+		List<Node[]> rows = new ArrayList<Node[]>();
+		try {
+			while (root.hasNext()) {
+				rows.add((Node[]) root.next());
+			}
+		} finally {
+			close(root);
+		}
+		return rows;
+	}
+
+	private void close(PhysicalOlapIterator root) throws OlapException {
+		try {
+			root.close();
+		} catch (Exception e) {
+			throw new OlapException("Could not close input " + root + ": "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Rows are joined if the concatenated members of their dimensions have
+	 * the same hash.
+	 * 
+	 * @param row
+	 * @param dimensions
+	 *            number of dimension columns
+	 * @return
+	 */
+	private static Integer getJoinKey(Node[] row, int dimensions) {
+		String concat = "";
+		for (int i = 0; i < dimensions; i++) {
+			concat += row[i].toString();
+		}
+		return concat.hashCode();
+	}
+
 	private boolean areAllMeasuresTheSame(List<Node[]> root1_measures,
 			List<Node[]> root2_measures) {
 		Map<String, Integer> measurenmap = Olap4ldLinkedDataUtil
@@ -629,7 +570,8 @@ public class DrillAcrossNestedLoopJoinSesameIterator implements
 
 	@Override
 	public void close() throws Exception {
-		// something to do?
+		inputiterator1.close();
+		inputiterator2.close();
 	}
 
 	@Override
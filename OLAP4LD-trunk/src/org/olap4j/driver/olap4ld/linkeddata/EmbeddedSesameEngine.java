@@ -18,51 +18,90 @@
  */
 package org.olap4j.driver.olap4ld.linkeddata;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.olap4j.OlapException;
 import org.olap4j.Position;
 import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.olap4j.driver.olap4ld.helper.CrawlCache;
 import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.olap4j.driver.olap4ld.helper.ValidationCache;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Measure;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.GraphQuery;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
 import org.openrdf.query.TupleQueryResultHandlerException;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
-import org.openrdf.query.resultio.sparqlxml.SPARQLResultsXMLWriter;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.impl.MapBindingSet;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailQuery;
 import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
 import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
 import org.semanticweb.yars.nx.Literal;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
 import org.semanticweb.yars.nx.Variable;
-import org.semanticweb.yars.nx.parser.NxParser;
 
 /**
  * The EmbeddedSesameEngine manages an embedded Sesame repository (triple store)
@@ -86,6 +125,53 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 	private static final String TABLE_SCHEM = "LdCatalogSchema";
 
+	/**
+	 * Replaces {{{FILTERS}}} in the prepared query templates. Restrictions
+	 * that cannot be bound directly to the variable of a template are given as
+	 * bindings of the RESTRICTION_ variables, see bindRestrictions(); an
+	 * unbound variable does not restrict the result.
+	 */
+	private static final String RESTRICTION_FILTERS = " FILTER (!bound(?RESTRICTION_CUBE_NAME) || ?CUBE_NAME = ?RESTRICTION_CUBE_NAME) "
+			+ " FILTER (!bound(?RESTRICTION_DIMENSION_UNIQUE_NAME) || str(?DIMENSION_UNIQUE_NAME) = ?RESTRICTION_DIMENSION_UNIQUE_NAME) "
+			+ " FILTER (!bound(?RESTRICTION_HIERARCHY_UNIQUE_NAME) || str(?HIERARCHY_UNIQUE_NAME) = ?RESTRICTION_HIERARCHY_UNIQUE_NAME) "
+			+ " FILTER (!bound(?RESTRICTION_LEVEL_UNIQUE_NAME) || str(?LEVEL_UNIQUE_NAME) = ?RESTRICTION_LEVEL_UNIQUE_NAME) "
+			+ " FILTER (!bound(?RESTRICTION_MEMBER_UNIQUE_NAME) || str(?MEMBER_UNIQUE_NAME) = ?RESTRICTION_MEMBER_UNIQUE_NAME) ";
+
+	/**
+	 * Variables assigned by BIND(... as ?VAR) in a template.
+	 */
+	private static final Pattern BIND_TARGET = Pattern.compile(
+			"\\bas\\s+\\?(\\w+)\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Restrictions of this form can be bound as URIs.
+	 */
+	private static final Pattern ABSOLUTE_URI = Pattern
+			.compile("[A-Za-z][A-Za-z0-9+.-]*:\\S+");
+
+	/**
+	 * Replaces {{{VALUES}}} in the prepared members query templates. The
+	 * members to look up are set as binding sets of this VALUES block before
+	 * each evaluation, see evaluateMembersTemplate().
+	 */
+	private static final String MEMBERS_VALUES = " VALUES ?MEMBER_UNIQUE_NAME { UNDEF } ";
+
+	/**
+	 * Links of members to their parents, see getMemberParents().
+	 */
+	private static final String SKOS_BROADER = "http://www.w3.org/2004/02/skos/core#broader";
+
+	private static final String SKOS_NARROWER = "http://www.w3.org/2004/02/skos/core#narrower";
+
+	/**
+	 * Statements that make a resource a dataset, see getSameAsRank().
+	 */
+	private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+	private static final String QB_DATASET_CLASS = "http://purl.org/linked-data/cube#DataSet";
+
+	private static final String QB_DATASET_PROPERTY = "http://purl.org/linked-data/cube#dataSet";
+
 	public String DATASOURCENAME;
 
 	public String DATASOURCEVERSION;
@@ -100,6 +186,11 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	 */
 	private HashMap<Integer, Boolean> loadedMap = new HashMap<Integer, Boolean>();
 
+	/**
+	 * Locations that are being loaded by some thread, see loadInStore().
+	 */
+	private HashMap<String, Future<Object>> loadingLocations = new HashMap<String, Future<Object>>();
+
 	/**
 	 * The Sesame repository (triple store). Gets filled when asking for cubes.
 	 */
@@ -107,27 +198,250 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 	private Integer MAX_LOAD_TRIPLE_SIZE = 1000000000;
 
-	private Integer MAX_COMPLEX_CONSTRAINTS_TRIPLE_SIZE = 5000;
-
+	/**
+	 * Number of triples and observations in the store: Triples are counted
+	 * while parsing, see addToStore(), and derived triples when they are
+	 * inserted by normalisation and reasoning. Since a triple may be given by
+	 * several documents, this is an estimate of the size of the store.
+	 */
 	private Integer LOADED_TRIPLE_SIZE = 0;
 
+	private Integer LOADED_OBSERVATION_SIZE = 0;
+
+	/**
+	 * Datasets with statements loaded since the last normalisation, see
+	 * runNormalizationAlgorithm().
+	 */
+	private HashSet<String> pendingDatasets = new HashSet<String>();
+
+	/**
+	 * Contexts of the documents loaded since the last normalisation. Their
+	 * slices and observations of slices are typed, see
+	 * runNormalizationAlgorithm().
+	 */
+	private HashSet<String> pendingDocuments = new HashSet<String>();
+
+	/**
+	 * Contexts of the documents among pendingDocuments with statements about
+	 * a blank node dataset. Such datasets are not contained in
+	 * pendingDatasets, therefore, the rules are run on the statements of
+	 * these documents.
+	 */
+	private HashSet<String> pendingBlankDocuments = new HashSet<String>();
+
+	public static final int DEFAULT_BULK_LOAD_CHUNK_SIZE = 100000;
+
+	private static final String SNAPSHOT_MAGIC = "olap4ld-snapshot";
+
+	/**
+	 * Statements derived by normalisation from a dataset are stored in a
+	 * context of this prefix followed by the dataset uri, see
+	 * runNormalizationAlgorithm(). Statements derived from the statements of
+	 * a document without knowing its dataset are stored in a context of this
+	 * prefix followed by the context of the document. Both are removed with
+	 * the dataset or document, see removeDocuments().
+	 */
+	private static final String NORMALISED_CONTEXT_PREFIX = "urn:olap4ld:normalised:";
+
+	/**
+	 * Part of the fingerprints in the validation cache, needs to be changed
+	 * if normalisation or the integrity constraints change.
+	 */
+	private static final int VALIDATION_CACHE_VERSION = 2;
+
+	private static final int SNAPSHOT_VERSION = 5;
+
+	/**
+	 * Number of statements committed at once when loading a document, see
+	 * addToStore().
+	 */
+	private int bulkLoadChunkSize = DEFAULT_BULK_LOAD_CHUNK_SIZE;
+
+	/**
+	 * Rough size of a triple in the in-memory store, including its values.
+	 */
+	private static final int ESTIMATED_BYTES_PER_TRIPLE = 400;
+
+	/**
+	 * Share of the maximum heap that loaded triples may take.
+	 */
+	private static final double HEAP_SHARE_FOR_TRIPLES = 0.6;
+
+	/**
+	 * Number of loaded triples above which least recently queried datasets
+	 * are evicted, see evictDatasets(). By default derived from the maximum
+	 * heap.
+	 */
+	private long tripleBudget = (long) (Runtime.getRuntime().maxMemory()
+			* HEAP_SHARE_FOR_TRIPLES / ESTIMATED_BYTES_PER_TRIPLE);
+
+	/**
+	 * Documents and contexts of the loaded datasets.
+	 */
+	private DatasetContexts datasetContexts = new DatasetContexts();
+
 	private PhysicalOlapQueryPlan execplan;
 
-	// Not needed any more since we use materialisation.
-	// private List<List<Node>> equivalenceList;
+	/**
+	 * Loading of preloaded data, see startPreload().
+	 */
+	private FutureTask<Object> preloading;
+
+	/**
+	 * Results of metadata queries, invalidated by every change of the store.
+	 */
+	private SparqlResultCache sparqlResultCache = new SparqlResultCache();
+
+	/**
+	 * Metadata of the loaded datasets, see executeTemplateQuery().
+	 */
+	private MetadataCatalog metadataCatalog = new MetadataCatalog();
+
+	/**
+	 * Member hierarchies of the loaded datasets, see
+	 * lookupMemberRelatives().
+	 */
+	private HierarchyIndex hierarchyIndex = new HierarchyIndex();
+
+	/**
+	 * Loads independent resources of the directed crawling algorithm in
+	 * parallel.
+	 */
+	private ParallelCrawler crawler = new ParallelCrawler();
+
+	/**
+	 * Metadata query templates prepared on a connection of their own.
+	 * Neither a connection nor the bindings of its prepared queries are
+	 * thread safe, therefore, a template connection is only used by one
+	 * thread at a time, see borrowTemplateConnection().
+	 */
+	private static class TemplateConnection {
+
+		RepositoryConnection con;
+
+		/**
+		 * Value of templateGeneration when the connection was opened.
+		 */
+		int generation;
+
+		/**
+		 * Metadata query templates, parsed once per connection.
+		 */
+		HashMap<String, TupleQuery> templates = new HashMap<String, TupleQuery>();
+
+		/**
+		 * Metadata query templates with a VALUES block for several members.
+		 * Null for templates without a VALUES block.
+		 */
+		HashMap<String, TupleQuery> membersTemplates = new HashMap<String, TupleQuery>();
+
+		/**
+		 * Per template in membersTemplates, the VALUES block of the parsed
+		 * query.
+		 */
+		HashMap<String, BindingSetAssignment> membersValues = new HashMap<String, BindingSetAssignment>();
+	}
+
+	/**
+	 * Template connections that are not in use.
+	 */
+	private LinkedList<TemplateConnection> idleTemplateConnections = new LinkedList<TemplateConnection>();
+
+	/**
+	 * Number of template connections in use.
+	 */
+	private int borrowedTemplateConnections = 0;
+
+	/**
+	 * Increased by closePreparedTemplates(), so that template connections
+	 * in use are closed when they are returned.
+	 */
+	private int templateGeneration = 0;
+
+	private static final int MAX_IDLE_TEMPLATE_CONNECTIONS = ParallelCrawler.DEFAULT_THREADS;
+
+	/**
+	 * Per template, the variables that are assigned by BIND and therefore
+	 * cannot be restricted by a binding.
+	 */
+	private HashMap<String, Set<String>> templateBindTargets = new HashMap<String, Set<String>>();
+
+	public static final String STORE_MEMORY = "MEMORY";
+
+	public static final String STORE_NATIVE = "NATIVE";
+
+	public static final String DEFAULT_NATIVE_INDEXES = "spoc,posc";
+
+	/**
+	 * Data directory of a native store, null for the in-memory store.
+	 */
+	private File storeDirectory = null;
+
+	private String storeIndexes = DEFAULT_NATIVE_INDEXES;
+
+	/**
+	 * Whether rollback() also empties a native store, see
+	 * setClearNativeStoreOnRollback().
+	 */
+	private boolean clearNativeStoreOnRollback = false;
+
+	/**
+	 * Equivalence classes of resources linked by owl:sameAs, see
+	 * consolidateSameAs().
+	 */
+	private SameAsIndex sameAsIndex = new SameAsIndex();
 
 	public EmbeddedSesameEngine(URL serverUrlObject,
 			List<String> datastructuredefinitions, List<String> datasets,
 			String databasename) throws OlapException {
+		this(serverUrlObject, datastructuredefinitions, datasets,
+				databasename, null, null, null);
+	}
+
+	/**
+	 * Creates engine with the triple store given by the connect string.
+	 * 
+	 * @param serverUrlObject
+	 * @param datastructuredefinitions
+	 * @param datasets
+	 * @param databasename
+	 * @param store
+	 *            MEMORY (default if null) or NATIVE, a disk-backed store
+	 *            whose content survives restarts
+	 * @param storedirectory
+	 *            data directory of a NATIVE store
+	 * @param storeindexes
+	 *            triple indexes of a NATIVE store, e.g. "spoc,posc,opsc",
+	 *            DEFAULT_NATIVE_INDEXES if null
+	 * @throws OlapException
+	 */
+	public EmbeddedSesameEngine(URL serverUrlObject,
+			List<String> datastructuredefinitions, List<String> datasets,
+			String databasename, String store, String storedirectory,
+			String storeindexes) throws OlapException {
 
 		// We actually do not need that.
 		URL = serverUrlObject.toString();
 
+		if (store != null && store.equalsIgnoreCase(STORE_NATIVE)) {
+			if (storedirectory == null) {
+				throw new OlapException(
+						"Native store requires a store directory.");
+			}
+			this.storeDirectory = new File(storedirectory);
+			if (storeindexes != null) {
+				this.storeIndexes = storeindexes;
+			}
+		} else if (store != null && !store.equalsIgnoreCase(STORE_MEMORY)) {
+			throw new OlapException("Unknown store: " + store);
+		}
+
 		if (databasename.equals("EMBEDDEDSESAME")) {
 			DATASOURCENAME = databasename;
 			DATASOURCEVERSION = "1.0";
 		}
 		initialize();
+		startPreload();
 	}
 
 	private PhysicalOlapQueryPlan createExecplan(LogicalOlapQueryPlan queryplan)
@@ -163,51 +477,276 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		return this.execplan;
 	}
 
-	private void initialize() {
+	private void initialize() throws OlapException {
 
-		// This seems to hold up a lot. I hope garbage collector works.
-		// TODO: Hopefully, we do not need to close the repo explicitly.
-		if (this.repo != null) {
-			try {
-				this.repo.initialize();
-				// this.repo.shutDown();
-			} catch (RepositoryException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		try {
+
+			if (storeDirectory == null) {
+				this.repo = new SailRepository(new MemoryStore());
+			} else {
+				Olap4ldUtil._log.config("Native store in " + storeDirectory
+						+ " with indexes " + storeIndexes);
+				this.repo = new SailRepository(new NativeStore(storeDirectory,
+						storeIndexes));
 			}
-		} else {
 
-			try {
+			// With inferencing
+			// this.repo = new SailRepository(new
+			// ForwardChainingRDFSInferencer(new MemoryStore()));
 
-				this.repo = new SailRepository(new MemoryStore());
+			/*
+			 * See
+			 * http://rivuli-development.com/further-reading/sesame-cookbook
+			 * /loading-large-file-in-sesame-native/ for chunk-loading of data
+			 * and the NativeStore. Chunk-loading is done by addToStore() with
+			 * a ChunkedRDFInserter.
+			 */
 
-				// With inferencing
-				// this.repo = new SailRepository(new
-				// ForwardChainingRDFSInferencer(new MemoryStore()));
-
-				// File dataDir = new
-				// File("/media/84F01919F0191352/Projects/2014/paper/paper-macro-modelling/experiments/NativeSesameStore/");
-				// // Try another store
-				/*
-				 * See
-				 * http://rivuli-development.com/further-reading/sesame-cookbook
-				 * /loading-large-file-in-sesame-native/ for chunk-loading of
-				 * data and the NativeStore.
-				 */
-				// this.repo = new SailRepository(new NativeStore(dataDir));
-
-				repo.initialize();
-
-				// do something interesting with the values here...
-				// con.close();
-			} catch (RepositoryException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			repo.initialize();
+
+			// do something interesting with the values here...
+			// con.close();
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		}
+
+		clearBookkeeping();
+
+		if (storeDirectory != null) {
+			restoreLoadedLocations();
+		}
+	}
+
+	/**
+	 * Empties the store, also a native one, and forgets what was loaded.
+	 * 
+	 * @throws OlapException
+	 */
+	private void clearStore() throws OlapException {
+		try {
+			RepositoryConnection con = this.repo.getConnection();
+			try {
+				con.clear();
+			} finally {
+				con.close();
 			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		}
+		if (storeDirectory != null) {
+			// Nothing loaded, anymore.
+			getLoadedLocationsFile().delete();
 		}
+		clearBookkeeping();
+	}
 
+	/**
+	 * Forgets what is known about the content of the store, e.g., since it
+	 * has been emptied.
+	 */
+	private synchronized void clearBookkeeping() {
 		// LoadedMap
 		loadedMap.clear();
+		datasetContexts.clear();
+		sameAsIndex.clear();
+		metadataCatalog.clear();
+		hierarchyIndex.clear();
+
+		this.LOADED_TRIPLE_SIZE = 0;
+		this.LOADED_OBSERVATION_SIZE = 0;
+		this.pendingDatasets.clear();
+		this.pendingDocuments.clear();
+		this.pendingBlankDocuments.clear();
+	}
+
+	/**
+	 * A native store still contains what was loaded before a restart, so we
+	 * also remember which locations it contains: One line per loaded document
+	 * with its non-information uri and its information uri (the context of
+	 * its statements), separated by a tab.
+	 */
+	private File getLoadedLocationsFile() {
+		return new File(storeDirectory, "olap4ld-loaded.txt");
+	}
+
+	/**
+	 * Marks the locations of the file as loaded. Entries whose context is not
+	 * in the store (any more), e.g., since the store was deleted or a load did
+	 * not finish, are dropped from the file, so that they are loaded again.
+	 * 
+	 * @throws OlapException
+	 *             if the file or the store cannot be read.
+	 */
+	private void restoreLoadedLocations() throws OlapException {
+		File file = getLoadedLocationsFile();
+		try {
+			RepositoryConnection con = repo.getConnection();
+			try {
+				if (file.exists()) {
+					Set<String> contexts = new HashSet<String>();
+					RepositoryResult<org.openrdf.model.Resource> contextids = con
+							.getContextIDs();
+					try {
+						while (contextids.hasNext()) {
+							contexts.add(contextids.next().stringValue());
+						}
+					} finally {
+						contextids.close();
+					}
+
+					List<String> entries = new ArrayList<String>();
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(new FileInputStream(file),
+									"UTF-8"));
+					try {
+						String line;
+						while ((line = reader.readLine()) != null) {
+							String[] locations = line.split("\t");
+							if (locations.length == 2
+									&& contexts.contains(locations[1])) {
+								setLoaded(new URL(locations[0]));
+								setLoaded(new URL(locations[1]));
+								entries.add(line);
+							}
+						}
+					} finally {
+						reader.close();
+					}
+
+					// Rewrite without the dropped entries
+					writeLoadedLocations(entries);
+				}
+
+				this.LOADED_TRIPLE_SIZE = (int) con.size();
+				// Rebuilds the sameAsIndex from the links in the store
+				consolidateSameAs(con);
+			} finally {
+				con.close();
+			}
+			Olap4ldUtil._log.info("Native store contains "
+					+ this.LOADED_TRIPLE_SIZE + " triples.");
+		} catch (IOException e) {
+			throw new OlapException("Could not read loaded locations from "
+					+ file + ": " + e.getMessage(), e);
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Replaces the file of loaded locations.
+	 * 
+	 * @param entries
+	 *            lines of the file
+	 * @throws IOException
+	 */
+	private synchronized void writeLoadedLocations(List<String> entries)
+			throws IOException {
+		File file = getLoadedLocationsFile();
+		File tmpfile = new File(file.getPath() + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmpfile),
+				"UTF-8");
+		try {
+			for (String entry : entries) {
+				writer.write(entry);
+				writer.write("\n");
+			}
+		} finally {
+			writer.close();
+		}
+		file.delete();
+		tmpfile.renameTo(file);
+	}
+
+	/**
+	 * Remembers a loaded document. Only to be called after its statements
+	 * have been committed.
+	 * 
+	 * @param noninformationuri
+	 * @param informationuri
+	 *            the context of the statements
+	 * @throws OlapException
+	 *             if the file cannot be written.
+	 */
+	private synchronized void storeLoadedLocations(URL noninformationuri,
+			URL informationuri) throws OlapException {
+		if (storeDirectory == null) {
+			return;
+		}
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(
+					getLoadedLocationsFile(), true), "UTF-8");
+			try {
+				writer.write(noninformationuri.toString());
+				writer.write("\t");
+				writer.write(informationuri.toString());
+				writer.write("\n");
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new OlapException("Could not write loaded locations to "
+					+ getLoadedLocationsFile() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Starts loading the preloaded data in the background. Has to be done
+	 * once for every empty store.
+	 */
+	private synchronized void startPreload() {
+		preloading = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				preload();
+				return null;
+			}
+		});
+		Thread thread = new Thread(preloading, "olap4ld-preload");
+		// Should not keep the application alive.
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits until the preloaded data is in the store.
+	 * 
+	 * @throws OlapException
+	 *             if preloading failed or the thread was interrupted.
+	 */
+	private void awaitPreload() throws OlapException {
+		Throwable failure = awaitPreloadEnd();
+		if (failure != null) {
+			throw new OlapException("Could not preload: "
+					+ failure.getMessage(), failure);
+		}
+	}
+
+	/**
+	 * Waits until preloading has ended, also if it failed, e.g., before the
+	 * store is emptied or closed.
+	 * 
+	 * @return the failure of preloading or null.
+	 */
+	private Throwable awaitPreloadEnd() {
+		FutureTask<Object> task;
+		synchronized (this) {
+			task = preloading;
+		}
+		if (task == null) {
+			return null;
+		}
+		try {
+			task.get();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return e;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
 	}
 
 	/**
@@ -225,7 +764,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 			// Load links
 			loadInStore(new URL(
-					"http://people.aifb.kit.edu/bka/Public/cube_additionalRDF.rdf"));
+					"http://people.aifb.kit.edu/bka/Public/cube_additionalRDF.rdf"),
+					null);
 
 			// Seems not to work
 			// loadInStore(new URL("http://pastebin.com/raw.php?i=e1K52uhc"));
@@ -362,7 +902,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// years)
 			// <http://worldbank.270a.info/dataset/GDPPCKN> rdf:type qb:DataSet.
 
-			// Problem: this dataset only is available in a GZIP file
+			// This dataset only is available in a GZIP file, which is
+			// decompressed while loading.
 			// loadInStore(new URL(
 			// "http://localhost:8080/Data-Fu-Engine/datasets/GDPPCKN.rdf"));
 			// loadInStore(new URL(
@@ -387,6 +928,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> INSERT DATA { GRAPH <http://manually> { "
 				+ triples + " } }";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		metadataCatalog.clear();
+		hierarchyIndex.clear();
+		sparqlResultCache.storeChanged();
 	}
 
 	@SuppressWarnings("unused")
@@ -394,6 +938,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> DELETE DATA { "
 				+ triples + " }";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		metadataCatalog.clear();
+		hierarchyIndex.clear();
+		sparqlResultCache.storeChanged();
 	}
 
 	@SuppressWarnings("unused")
@@ -401,6 +948,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		String query = "PREFIX olap4ld:<http://purl.org/olap4ld/> DELETE { "
 				+ triples + " } where { " + where + "}";
 		Olap4ldLinkedDataUtil.sparqlRepoUpdate(repo, query, false);
+		metadataCatalog.clear();
+		hierarchyIndex.clear();
+		sparqlResultCache.storeChanged();
 	}
 
 	/**
@@ -419,6 +969,21 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	public void executeSparqlConstructQuery(String constructquery) {
+		executeSparqlConstructQuery(constructquery, null);
+	}
+
+	/**
+	 * Loads the result of a construct query, e.g., a derived dataset, into
+	 * the store.
+	 * 
+	 * @param constructquery
+	 * @param dataset
+	 *            the derived dataset the result is loaded for or null. Its
+	 *            statements are loaded into a context of their own and
+	 *            recorded as a document of the dataset, so that they count
+	 *            for the triple budget and are evicted with the dataset.
+	 */
+	public void executeSparqlConstructQuery(String constructquery, URL dataset) {
 		// We assume one or two cubes, only.
 
 		try {
@@ -456,11 +1021,24 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// ByteArrayInputStream(w.toString().getBytes());
 
 			// UTF-8 encoding seems important
-			InputStream stream = new ByteArrayInputStream(
-					triples.getBytes("UTF-8"));
-
 			// Add to triple store
-			con.add(stream, "", RDFFormat.RDFXML);
+			if (dataset == null) {
+				addToStore(con,
+						new ByteArrayInputStream(triples.getBytes("UTF-8")),
+						"", RDFFormat.RDFXML);
+				metadataCatalog.clear();
+				hierarchyIndex.clear();
+			} else {
+				CountingRDFHandler counter = addToStore(con,
+						new ByteArrayInputStream(triples.getBytes("UTF-8")),
+						"", RDFFormat.RDFXML, con.getValueFactory().createURI(
+								dataset.toString()));
+				datasetContexts.addDocument(dataset, dataset, dataset,
+						dataset.toString(), counter.getTriples(),
+						counter.getObservations(), counter.getFingerprint(),
+						counter.hasBlankNodes());
+				invalidateMetadata(Collections.singleton(dataset.toString()));
+			}
 
 			// Loaded really?
 			if (Olap4ldUtil._isDebug) {
@@ -494,90 +1072,69 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		} catch (RDFParseException e1) {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
+		} finally {
+			// Store changed
+			sparqlResultCache.storeChanged();
 		}
 	}
 
 	/**
 	 * I think, caching some sparql results would be very useful.
 	 * 
-	 * I create a map between hash value of sparql query and the Nodes.
-	 * 
-	 * If the value is available, I return it.
-	 * 
-	 * However, when to empty the cache? I empty the cache if I populate a new
-	 * cube.
+	 * Results of queries with caching are kept in a bounded cache keyed by
+	 * the normalised query. Every change of the store (loading, construct
+	 * queries, normalisation, reasoning, rollback) invalidates the cache, so
+	 * that we never return results of an older store state.
 	 * 
 	 * @param query
 	 * @param caching
-	 *            (not used)
+	 *            whether the result may be taken from and put into the cache
+	 *            (metadata queries); observation queries should not be cached.
 	 * @return
 	 */
 	public List<Node[]> executeSparqlSelectQuery(String query, boolean caching) {
 
+		if (caching) {
+			List<Node[]> cachedBindings = sparqlResultCache.get(query);
+			if (cachedBindings != null) {
+				Olap4ldUtil._log.config("SPARQL query (cached): " + query);
+				return cachedBindings;
+			}
+		}
+
 		Olap4ldUtil._log.config("SPARQL query: " + query);
 
+		// The epoch of the store when the query is issued.
+		long epoch = sparqlResultCache.getEpoch();
+
 		List<Node[]> myBindings = new ArrayList<Node[]>();
 
 		try {
 			RepositoryConnection con = repo.getConnection();
 
-			ByteArrayOutputStream boas = new ByteArrayOutputStream();
-			// FileOutputStream fos = new
-			// FileOutputStream("/home/benedikt/Workspaces/Git-Repositories/olap4ld/OLAP4LD-trunk/resources/result.srx");
-
-			SPARQLResultsXMLWriter sparqlWriter = new SPARQLResultsXMLWriter(
-					boas);
+			// Bindings are directly transformed into nodes, no detour via
+			// SPARQL/XML and nx.
+			NxTupleQueryResultHandler nxHandler = new NxTupleQueryResultHandler(
+					myBindings);
 
 			TupleQuery tupleQuery = con.prepareTupleQuery(QueryLanguage.SPARQL,
 					query);
-			tupleQuery.evaluate(sparqlWriter);
-
-			ByteArrayInputStream bais = new ByteArrayInputStream(
-					boas.toByteArray());
-
-			// String xmlwriterstreamString =
-			// Olap4ldLinkedDataUtil.convertStreamToString(bais);
-			// System.out.println(xmlwriterstreamString);
-			// Transform sparql xml to nx
-			InputStream nx = Olap4ldLinkedDataUtil.transformSparqlXmlToNx(bais);
+			tupleQuery.evaluate(nxHandler);
 
 			// Only if logging level accordingly
 			if (Olap4ldUtil._isDebug) {
-				String test2 = Olap4ldLinkedDataUtil.convertStreamToString(nx);
-				Olap4ldUtil._log.config("NX output: " + test2);
-				nx.reset();
+				Olap4ldUtil._log.config("Number of results: "
+						+ (myBindings.size() - 1));
 			}
 
-			NxParser nxp = new NxParser(nx);
+			con.close();
 
-			Node[] nxx;
-			while (nxp.hasNext()) {
-				try {
-					nxx = nxp.next();
-					myBindings.add(nxx);
-				} catch (Exception e) {
-
-					// Might happen often, therefore config only
-					Olap4ldUtil._log
-							.config("NxParser: Could not parse properly: "
-									+ e.getMessage());
-				}
-				;
+			if (caching) {
+				sparqlResultCache.put(query, epoch, myBindings);
 			}
-
-			boas.close();
-			con.close();
-			// do something interesting with the values here...
-			// con.close();
 		} catch (RepositoryException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
-		} catch (MalformedURLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		} catch (MalformedQueryException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -588,59 +1145,1344 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
 		}
-
-		return myBindings;
+
+		return myBindings;
+	}
+
+	/**
+	 * Streams the result of a SPARQL query as Node[] rows. As for
+	 * executeSparqlSelectQuery, the first row is the header.
+	 * 
+	 * The cursor holds a connection to the repository until all rows are read
+	 * or it is closed.
+	 * 
+	 * @param query
+	 * @return
+	 * @throws RuntimeException
+	 *             if the query cannot be evaluated, as the cursor does if
+	 *             reading a row fails.
+	 */
+	public ResultCursor executeSparqlSelectQueryCursor(String query) {
+
+		Olap4ldUtil._log.config("SPARQL query: " + query);
+
+		RepositoryConnection con = null;
+		try {
+			con = repo.getConnection();
+
+			TupleQuery tupleQuery = con.prepareTupleQuery(QueryLanguage.SPARQL,
+					query);
+
+			// Cursor closes the connection.
+			return new TupleQueryResultCursor(con, tupleQuery.evaluate());
+
+		} catch (RepositoryException e) {
+			closeConnection(con);
+			throw new RuntimeException("Problem with repository: "
+					+ e.getMessage(), e);
+		} catch (MalformedQueryException e) {
+			closeConnection(con);
+			throw new RuntimeException("Problem with malformed query: "
+					+ e.getMessage(), e);
+		} catch (QueryEvaluationException e) {
+			closeConnection(con);
+			throw new RuntimeException("Problem with query evaluation: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	private static void closeConnection(RepositoryConnection con) {
+		if (con == null) {
+			return;
+		}
+		try {
+			con.close();
+		} catch (RepositoryException e) {
+			Olap4ldUtil._log.warning("Warning: Could not close connection: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns a template connection that only the calling thread uses until
+	 * it is given back by returnTemplateConnection() or taken over by
+	 * detachTemplateConnection().
+	 * 
+	 * @return
+	 * @throws RepositoryException
+	 */
+	private TemplateConnection borrowTemplateConnection()
+			throws RepositoryException {
+		synchronized (this) {
+			borrowedTemplateConnections++;
+			if (!idleTemplateConnections.isEmpty()) {
+				return idleTemplateConnections.removeFirst();
+			}
+		}
+		TemplateConnection templateconnection = new TemplateConnection();
+		try {
+			synchronized (this) {
+				templateconnection.generation = templateGeneration;
+			}
+			templateconnection.con = repo.getConnection();
+		} catch (RepositoryException e) {
+			detachTemplateConnection(templateconnection);
+			throw e;
+		}
+		return templateconnection;
+	}
+
+	/**
+	 * Gives back a template connection, so that other threads may use its
+	 * prepared templates. It is closed if the templates have been closed
+	 * meanwhile.
+	 * 
+	 * @param templateconnection
+	 */
+	private void returnTemplateConnection(TemplateConnection templateconnection) {
+		boolean idle;
+		synchronized (this) {
+			borrowedTemplateConnections--;
+			idle = templateconnection.generation == templateGeneration
+					&& idleTemplateConnections.size() < MAX_IDLE_TEMPLATE_CONNECTIONS;
+			if (idle) {
+				idleTemplateConnections.addFirst(templateconnection);
+			}
+			notifyAll();
+		}
+		if (!idle) {
+			closeTemplateConnection(templateconnection);
+		}
+	}
+
+	/**
+	 * The caller takes over the connection of a borrowed template connection
+	 * and has to close it, e.g., a cursor over a result of the connection.
+	 * 
+	 * @param templateconnection
+	 * @return the connection
+	 */
+	private RepositoryConnection detachTemplateConnection(
+			TemplateConnection templateconnection) {
+		synchronized (this) {
+			borrowedTemplateConnections--;
+			notifyAll();
+		}
+		return templateconnection.con;
+	}
+
+	private static void closeTemplateConnection(
+			TemplateConnection templateconnection) {
+		try {
+			templateconnection.con.close();
+		} catch (RepositoryException e) {
+			Olap4ldUtil._log.warning("Warning: Could not close connection: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the query template with the given name, prepared on the
+	 * template connection. The template is read and parsed only the first
+	 * time it is used on the connection.
+	 * 
+	 * @param templateconnection
+	 * @param name
+	 * @return
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 */
+	private TupleQuery prepareTemplate(TemplateConnection templateconnection,
+			String name) throws RepositoryException, MalformedQueryException {
+		TupleQuery tupleQuery = templateconnection.templates.get(name);
+		if (tupleQuery == null) {
+			String querytemplate = createTemplateQuery(name, "");
+
+			synchronized (this) {
+				if (!templateBindTargets.containsKey(name)) {
+					Set<String> bindtargets = new HashSet<String>();
+					Matcher matcher = BIND_TARGET.matcher(querytemplate);
+					while (matcher.find()) {
+						bindtargets.add(matcher.group(1));
+					}
+					templateBindTargets.put(name, bindtargets);
+				}
+			}
+
+			tupleQuery = templateconnection.con.prepareTupleQuery(
+					QueryLanguage.SPARQL, querytemplate);
+			templateconnection.templates.put(name, tupleQuery);
+		}
+		return tupleQuery;
+	}
+
+	/**
+	 * Returns the query template with the given name and a VALUES block for
+	 * ?MEMBER_UNIQUE_NAME, prepared on the template connection.
+	 * 
+	 * @param templateconnection
+	 * @param name
+	 * @return the prepared query or null if the template has no {{{VALUES}}}
+	 *         or assigns the member unique name by BIND
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 */
+	private TupleQuery prepareMembersTemplate(
+			TemplateConnection templateconnection, String name)
+			throws RepositoryException, MalformedQueryException {
+		if (templateconnection.membersTemplates.containsKey(name)) {
+			return templateconnection.membersTemplates.get(name);
+		}
+		// Also reads the bind targets
+		prepareTemplate(templateconnection, name);
+
+		TupleQuery tupleQuery = null;
+		String querytemplate = Olap4ldLinkedDataUtil.readInQueryTemplate(name);
+		if (querytemplate.contains("{{{VALUES}}}")
+				&& !getTemplateBindTargets(name).contains("MEMBER_UNIQUE_NAME")) {
+			tupleQuery = templateconnection.con.prepareTupleQuery(
+					QueryLanguage.SPARQL,
+					createTemplateQuery(name, MEMBERS_VALUES));
+
+			final List<BindingSetAssignment> values = new ArrayList<BindingSetAssignment>();
+			if (tupleQuery instanceof SailQuery) {
+				((SailQuery) tupleQuery).getParsedQuery().getTupleExpr()
+						.visit(new QueryModelVisitorBase<RuntimeException>() {
+							@Override
+							public void meet(BindingSetAssignment node) {
+								values.add(node);
+							}
+						});
+			}
+			if (values.size() == 1) {
+				templateconnection.membersValues.put(name, values.get(0));
+			} else {
+				tupleQuery = null;
+			}
+		}
+		templateconnection.membersTemplates.put(name, tupleQuery);
+		return tupleQuery;
+	}
+
+	/**
+	 * Returns the query of the template with the given name.
+	 * 
+	 * @param name
+	 * @param values
+	 *            replaces {{{VALUES}}}
+	 * @return
+	 */
+	private String createTemplateQuery(String name, String values) {
+		String querytemplate = Olap4ldLinkedDataUtil.readInQueryTemplate(name);
+		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
+				askForFrom(true));
+		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
+		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
+		querytemplate = querytemplate.replace("{{{FILTERS}}}",
+				RESTRICTION_FILTERS);
+		querytemplate = querytemplate.replace("{{{VALUES}}}", values);
+		return querytemplate;
+	}
+
+	private synchronized Set<String> getTemplateBindTargets(String name) {
+		return templateBindTargets.get(name);
+	}
+
+	/**
+	 * Closes the template connections that are not in use. Template
+	 * connections in use are closed when they are returned, so that no
+	 * running query loses its connection. Templates are prepared again when
+	 * next used.
+	 */
+	private void closePreparedTemplates() {
+		List<TemplateConnection> idle;
+		synchronized (this) {
+			templateGeneration++;
+			idle = new ArrayList<TemplateConnection>(idleTemplateConnections);
+			idleTemplateConnections.clear();
+		}
+		for (TemplateConnection templateconnection : idle) {
+			closeTemplateConnection(templateconnection);
+		}
+	}
+
+	/**
+	 * Waits until no template connection is in use anymore, e.g., before the
+	 * repository is shut down.
+	 */
+	private synchronized void awaitTemplateConnections() {
+		while (borrowedTemplateConnections > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Executes a prepared metadata query template with the restrictions as
+	 * bindings. As for executeSparqlSelectQuery, the first row is the header
+	 * and results are cached.
+	 * 
+	 * @param name
+	 *            of the template in query_templates
+	 * @param restrictions
+	 * @return
+	 */
+	private List<Node[]> executeTemplateQuery(String name,
+			Restrictions restrictions) {
+
+		if (restrictions.cubeNamePattern != null) {
+			List<Node[]> catalogued = useCatalog(name, restrictions);
+			if (catalogued != null) {
+				return catalogued;
+			}
+		}
+
+		String cachekey = name + " " + restrictions;
+		List<Node[]> cachedBindings = sparqlResultCache.get(cachekey);
+		if (cachedBindings != null) {
+			Olap4ldUtil._log.config("SPARQL query template (cached): "
+					+ cachekey);
+			return cachedBindings;
+		}
+
+		Olap4ldUtil._log.config("SPARQL query template: " + cachekey);
+
+		long epoch = sparqlResultCache.getEpoch();
+
+		List<Node[]> myBindings = evaluateTemplate(name, restrictions);
+
+		sparqlResultCache.put(cachekey, epoch, myBindings);
+
+		return myBindings;
+	}
+
+	/**
+	 * Evaluates a prepared metadata query template.
+	 * 
+	 * @param name
+	 * @param restrictions
+	 * @return header and rows
+	 * @throws RuntimeException
+	 *             if the template cannot be evaluated
+	 */
+	private List<Node[]> evaluateTemplate(String name,
+			Restrictions restrictions) {
+
+		List<Node[]> myBindings = new ArrayList<Node[]>();
+
+		TemplateConnection templateconnection = null;
+		try {
+			templateconnection = borrowTemplateConnection();
+			TupleQuery tupleQuery = prepareTemplate(templateconnection, name);
+
+			if (restrictions.memberUniqueNames != null) {
+				evaluateMembersTemplate(templateconnection, name, tupleQuery,
+						restrictions, myBindings);
+			} else {
+				bindRestrictions(tupleQuery, getTemplateBindTargets(name),
+						restrictions);
+				tupleQuery.evaluate(new NxTupleQueryResultHandler(myBindings));
+			}
+
+			// Only if logging level accordingly
+			if (Olap4ldUtil._isDebug) {
+				Olap4ldUtil._log.config("Number of results: "
+						+ (myBindings.size() - 1));
+			}
+
+			return myBindings;
+		} catch (RepositoryException e) {
+			throw new RuntimeException("Problem with repository: "
+					+ e.getMessage(), e);
+		} catch (MalformedQueryException e) {
+			throw new RuntimeException("Problem with malformed query: "
+					+ e.getMessage(), e);
+		} catch (QueryEvaluationException e) {
+			throw new RuntimeException("Problem with query evaluation: "
+					+ e.getMessage(), e);
+		} catch (TupleQueryResultHandlerException e) {
+			throw new RuntimeException("Problem with query result handling: "
+					+ e.getMessage(), e);
+		} finally {
+			if (templateconnection != null) {
+				returnTemplateConnection(templateconnection);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a prepared metadata query template for all members of
+	 * restrictions.memberUniqueNames with one query. The members are set as
+	 * the binding sets of the VALUES block of the prepared members template,
+	 * so that the store looks up the statements of every member as for a
+	 * single bound member. If the template has no VALUES block, assigns the
+	 * member unique name by BIND or a member is no URI, the template is
+	 * evaluated for the other restrictions only and the members are compared
+	 * by string.
+	 * 
+	 * @param templateconnection
+	 *            borrowed by the caller
+	 * @param name
+	 * @param tupleQuery
+	 *            the prepared template
+	 * @param restrictions
+	 * @param myBindings
+	 *            to add header and rows to
+	 * @throws RepositoryException
+	 * @throws MalformedQueryException
+	 * @throws QueryEvaluationException
+	 * @throws TupleQueryResultHandlerException
+	 */
+	private void evaluateMembersTemplate(
+			TemplateConnection templateconnection, String name,
+			TupleQuery tupleQuery, Restrictions restrictions,
+			List<Node[]> myBindings)
+			throws RepositoryException, MalformedQueryException,
+			QueryEvaluationException, TupleQueryResultHandlerException {
+
+		Set<String> bindtargets = getTemplateBindTargets(name);
+		Set<String> members = getCanonicalMembers(restrictions);
+
+		List<BindingSet> values = new ArrayList<BindingSet>();
+		ValueFactory factory = repo.getValueFactory();
+		for (String member : members) {
+			if (!ABSOLUTE_URI.matcher(member).matches()) {
+				values = null;
+				break;
+			}
+			MapBindingSet value = new MapBindingSet(1);
+			value.addBinding("MEMBER_UNIQUE_NAME", factory.createURI(member));
+			values.add(value);
+		}
+
+		TupleQuery membersQuery = (values == null) ? null
+				: prepareMembersTemplate(templateconnection, name);
+		if (membersQuery != null) {
+			// The store evaluates a copy of the parsed query.
+			templateconnection.membersValues.get(name).setBindingSets(values);
+			bindRestrictions(membersQuery, bindtargets, restrictions);
+			membersQuery.evaluate(new NxTupleQueryResultHandler(myBindings));
+			return;
+		}
+
+		List<Node[]> allBindings = new ArrayList<Node[]>();
+		bindRestrictions(tupleQuery, bindtargets, restrictions);
+		tupleQuery.evaluate(new NxTupleQueryResultHandler(allBindings));
+
+		int membercolumn = Olap4ldLinkedDataUtil.getNodeResultFields(
+				allBindings.get(0)).get("?MEMBER_UNIQUE_NAME");
+		boolean first = true;
+		for (Node[] row : allBindings) {
+			if (first || members.contains(row[membercolumn].toString())) {
+				myBindings.add(row);
+			}
+			first = false;
+		}
+	}
+
+	/**
+	 * The canonical unique names of restrictions.memberUniqueNames.
+	 * 
+	 * @param restrictions
+	 * @return
+	 */
+	private Set<String> getCanonicalMembers(Restrictions restrictions) {
+		Set<String> members = new LinkedHashSet<String>();
+		for (Node member : restrictions.memberUniqueNames) {
+			members.add(sameAsIndex.getCanonical(member.toString()));
+		}
+		return members;
+	}
+
+	/**
+	 * Makes sure that the datasets of the restrictions are loaded and answers
+	 * the template from the metadataCatalog. Datasets whose metadata is
+	 * catalogued are in the store already, so that they are only marked as
+	 * most recently queried.
+	 * 
+	 * @param name
+	 * @param restrictions
+	 *            with cubeNamePattern
+	 * @return header and rows or null if not catalogued
+	 */
+	private List<Node[]> useCatalog(String name, Restrictions restrictions) {
+		String cube = restrictions.cubeNamePattern.toString();
+		if (metadataCatalog.contains(cube, name)) {
+			datasetContexts.touch(cube);
+		} else {
+			useDatasets(cube);
+		}
+		return lookupCatalog(name, restrictions);
+	}
+
+	/**
+	 * Answers a metadata query template from the metadataCatalog. If the
+	 * template has not been catalogued for the cube, yet, it is evaluated
+	 * once with the cube as the only restriction.
+	 * 
+	 * @param name
+	 * @param restrictions
+	 *            with cubeNamePattern
+	 * @return header and rows or null if not catalogued, e.g., for several
+	 *         cubes of a drill-across query
+	 */
+	private List<Node[]> lookupCatalog(String name, Restrictions restrictions) {
+		String cube = restrictions.cubeNamePattern.toString();
+		if (cube.contains(",")) {
+			return null;
+		}
+		if (!metadataCatalog.contains(cube, name)) {
+			catalogTemplate(cube, name);
+		}
+		List<Node[]> result;
+		if (restrictions.memberUniqueNames != null) {
+			result = lookupCatalogMembers(cube, name, restrictions);
+		} else {
+			result = metadataCatalog.lookup(cube, name,
+					createCatalogRestrictions(restrictions));
+		}
+		if (result != null) {
+			Olap4ldUtil._log.config("SPARQL query template (catalog): "
+					+ name + " " + restrictions);
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up every member of restrictions.memberUniqueNames in the
+	 * metadataCatalog.
+	 * 
+	 * @param cube
+	 * @param name
+	 * @param restrictions
+	 * @return header and rows or null if not catalogued
+	 */
+	private List<Node[]> lookupCatalogMembers(String cube, String name,
+			Restrictions restrictions) {
+		Map<String, String> columns = createCatalogRestrictions(restrictions);
+		List<Node[]> result = null;
+		for (String member : getCanonicalMembers(restrictions)) {
+			columns.put("?MEMBER_UNIQUE_NAME", member);
+			List<Node[]> memberresult = metadataCatalog.lookup(cube, name,
+					columns);
+			if (memberresult == null) {
+				return null;
+			}
+			if (result == null) {
+				result = memberresult;
+			} else {
+				addToResult(memberresult, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Catalogues the result of a template restricted to the cube only. At
+	 * most one row more than the metadataCatalog takes is read, so that a
+	 * result that is too large is not materialised.
+	 * 
+	 * @param cube
+	 * @param name
+	 */
+	private void catalogTemplate(String cube, String name) {
+		Restrictions cuberestrictions = new Restrictions();
+		cuberestrictions.cubeNamePattern = new Resource(cube);
+
+		long epoch = sparqlResultCache.getEpoch();
+		List<Node[]> result = new ArrayList<Node[]>();
+		ResultCursor cursor = null;
+		try {
+			cursor = evaluateTemplateCursor(name, cuberestrictions);
+			// Header and rows
+			while (result.size() <= metadataCatalog.getMaxRows() + 1
+					&& cursor.hasNext()) {
+				result.add(cursor.next());
+			}
+		} catch (RuntimeException e) {
+			// The template is queried with all restrictions instead.
+			Olap4ldUtil._log.warning("Warning: Could not catalog " + name
+					+ " of " + cube + ": " + e.getMessage());
+			return;
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+		// Store changed meanwhile?
+		if (!result.isEmpty() && epoch == sparqlResultCache.getEpoch()) {
+			metadataCatalog.put(cube, name, result);
+		}
+	}
+
+	/**
+	 * Forgets the catalogued metadata and the hierarchies of datasets whose
+	 * statements have been loaded or removed.
+	 * 
+	 * @param datasets
+	 */
+	private void invalidateMetadata(Collection<String> datasets) {
+		for (String dataset : datasets) {
+			metadataCatalog.invalidate(dataset);
+			hierarchyIndex.invalidate(dataset);
+		}
+	}
+
+	/**
+	 * Answers a TREE_OP restriction from the hierarchyIndex. If the
+	 * hierarchies of the cube have not been indexed, yet, they are indexed
+	 * first.
+	 * 
+	 * @param restrictions
+	 *            with cubeNamePattern of a single cube and memberUniqueName
+	 * @return header and the relatives of the member
+	 * @throws OlapException
+	 */
+	private List<Node[]> lookupMemberRelatives(Restrictions restrictions)
+			throws OlapException {
+		String cube = restrictions.cubeNamePattern.toString();
+
+		Olap4ldUtil._log.config("Hierarchy index: " + restrictions);
+
+		// Level restrictions do not apply to the relatives.
+		Map<String, String> columns = createCatalogRestrictions(restrictions);
+		String dimension = columns.get("?DIMENSION_UNIQUE_NAME");
+		String hierarchy = columns.get("?HIERARCHY_UNIQUE_NAME");
+		String member = sameAsIndex.getCanonical(restrictions.memberUniqueName
+				.toString());
+
+		List<Node[]> result = hierarchyIndex.lookup(cube, dimension,
+				hierarchy, member, restrictions.tree);
+		if (result != null) {
+			datasetContexts.touch(cube);
+			return result;
+		}
+
+		long epoch = sparqlResultCache.getEpoch();
+		List<Node[]> members = getCubeMembers(cube);
+		Map<String, Set<String>> parents = getMemberParents(members);
+		HierarchyIndex index = hierarchyIndex;
+		// Store changed meanwhile?
+		if (epoch != sparqlResultCache.getEpoch()) {
+			// The hierarchies are used for this lookup only.
+			index = new HierarchyIndex();
+		}
+		index.put(cube, members, parents);
+		return index.lookup(cube, dimension, hierarchy, member,
+				restrictions.tree);
+	}
+
+	/**
+	 * Returns the parents of members as given by skos:broader and
+	 * skos:narrower. A member may have several parents. Only the links of
+	 * the given members are looked up, so that the store is not scanned for
+	 * the hierarchies of other cubes.
+	 * 
+	 * @param members
+	 *            header and rows of the members of a cube
+	 * @return parents by member unique name
+	 * @throws OlapException
+	 */
+	private Map<String, Set<String>> getMemberParents(List<Node[]> members)
+			throws OlapException {
+		Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+		if (members.size() < 2) {
+			return parents;
+		}
+		int memberColumn = Olap4ldLinkedDataUtil.getNodeResultFields(
+				members.get(0)).get("?MEMBER_UNIQUE_NAME");
+
+		RepositoryConnection con = null;
+		try {
+			con = repo.getConnection();
+			ValueFactory factory = con.getValueFactory();
+			URI broader = factory.createURI(SKOS_BROADER);
+			URI narrower = factory.createURI(SKOS_NARROWER);
+
+			Set<String> looked = new HashSet<String>();
+			// First row is the header
+			for (Node[] row : members.subList(1, members.size())) {
+				Node member = row[memberColumn];
+				// E.g., degenerated members are literals
+				if (!(member instanceof Resource)
+						|| !looked.add(member.toString())) {
+					continue;
+				}
+				URI child = factory.createURI(member.toString());
+
+				RepositoryResult<Statement> links = con.getStatements(child,
+						broader, null, false);
+				try {
+					while (links.hasNext()) {
+						addParent(parents, member.toString(), links.next()
+								.getObject());
+					}
+				} finally {
+					links.close();
+				}
+
+				links = con.getStatements(null, narrower, child, false);
+				try {
+					while (links.hasNext()) {
+						addParent(parents, member.toString(), links.next()
+								.getSubject());
+					}
+				} finally {
+					links.close();
+				}
+			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage());
+		} finally {
+			if (con != null) {
+				try {
+					con.close();
+				} catch (RepositoryException e) {
+					Olap4ldUtil._log.warning("Warning: " + e.getMessage());
+				}
+			}
+		}
+		return parents;
+	}
+
+	private static void addParent(Map<String, Set<String>> parents,
+			String child, Value parent) {
+		if (!(parent instanceof URI)) {
+			return;
+		}
+		Set<String> childparents = parents.get(child);
+		if (childparents == null) {
+			childparents = new LinkedHashSet<String>();
+			parents.put(child, childparents);
+		}
+		childparents.add(parent.stringValue());
+	}
+
+	private List<Node[]> getCubeMembers(String cube) throws OlapException {
+		Restrictions cuberestrictions = new Restrictions();
+		cuberestrictions.cubeNamePattern = new Resource(cube);
+		return getMembersPerDataSet(cuberestrictions);
+	}
+
+	/**
+	 * Whether the restrictions ask for relatives of a member other than
+	 * itself.
+	 * 
+	 * @param restrictions
+	 * @return
+	 */
+	private boolean isMemberRelativesQueried(Restrictions restrictions) {
+		return restrictions.tree != null
+				&& (restrictions.tree & ~HierarchyIndex.SELF) != 0
+				&& restrictions.cubeNamePattern != null
+				&& restrictions.memberUniqueName != null
+				&& restrictions.memberUniqueNames == null;
+	}
+
+	/**
+	 * The restrictions as compared by bindRestrictions(), by column.
+	 * 
+	 * @param restrictions
+	 * @return
+	 */
+	private Map<String, String> createCatalogRestrictions(
+			Restrictions restrictions) {
+		Map<String, String> columns = new HashMap<String, String>();
+
+		if (restrictions.dimensionUniqueName != null
+				&& !restrictions.dimensionUniqueName.toString().equals(
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
+			columns.put("?DIMENSION_UNIQUE_NAME", sameAsIndex
+					.getCanonical(restrictions.dimensionUniqueName.toString()));
+		}
+
+		// Ranges may be blank nodes, e.g., of ical:dtend
+		boolean isBlankHierarchy = restrictions.hierarchyUniqueName != null
+				&& restrictions.hierarchyUniqueName.toString().startsWith(
+						"node");
+
+		if (restrictions.hierarchyUniqueName != null
+				&& !restrictions.hierarchyUniqueName.toString().equals(
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !isBlankHierarchy) {
+			columns.put("?HIERARCHY_UNIQUE_NAME", sameAsIndex
+					.getCanonical(restrictions.hierarchyUniqueName.toString()));
+		}
+
+		if (restrictions.levelUniqueName != null
+				&& !restrictions.levelUniqueName.toString().equals(
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !isBlankHierarchy) {
+			columns.put("?LEVEL_UNIQUE_NAME", sameAsIndex
+					.getCanonical(restrictions.levelUniqueName.toString()));
+		}
+
+		if (restrictions.memberUniqueName != null
+				&& !restrictions.memberUniqueName.toString().equals(
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
+			columns.put("?MEMBER_UNIQUE_NAME", sameAsIndex
+					.getCanonical(restrictions.memberUniqueName.toString()));
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Streams the result of a prepared metadata query template, see
+	 * executeTemplateQuery().
+	 * 
+	 * @param name
+	 * @param restrictions
+	 * @return
+	 */
+	private ResultCursor executeTemplateQueryCursor(String name,
+			Restrictions restrictions) {
+
+		if (restrictions.cubeNamePattern != null) {
+			List<Node[]> catalogued = useCatalog(name, restrictions);
+			if (catalogued != null) {
+				return new IteratorResultCursor(catalogued);
+			}
+		}
+
+		// Several members are looked up with a query of their own.
+		if (restrictions.memberUniqueNames != null) {
+			return new IteratorResultCursor(executeTemplateQuery(name,
+					restrictions));
+		}
+
+		Olap4ldUtil._log.config("SPARQL query template: " + name + " "
+				+ restrictions);
+
+		return evaluateTemplateCursor(name, restrictions);
+	}
+
+	/**
+	 * Evaluates a prepared metadata query template on the store.
+	 * 
+	 * @param name
+	 * @param restrictions
+	 *            of a single member at most
+	 * @return cursor that owns its connection
+	 * @throws RuntimeException
+	 *             if the template cannot be evaluated
+	 */
+	private ResultCursor evaluateTemplateCursor(String name,
+			Restrictions restrictions) {
+		TemplateConnection templateconnection = null;
+		try {
+			templateconnection = borrowTemplateConnection();
+			TupleQuery tupleQuery = prepareTemplate(templateconnection, name);
+
+			bindRestrictions(tupleQuery, getTemplateBindTargets(name),
+					restrictions);
+			TupleQueryResult result = tupleQuery.evaluate();
+
+			// The result is read while other threads use the other template
+			// connections, so the cursor owns this one and closes it.
+			TupleQueryResultCursor cursor = new TupleQueryResultCursor(
+					templateconnection.con, result);
+			detachTemplateConnection(templateconnection);
+			templateconnection = null;
+			return cursor;
+		} catch (RepositoryException e) {
+			throw new RuntimeException("Problem with repository: "
+					+ e.getMessage(), e);
+		} catch (MalformedQueryException e) {
+			throw new RuntimeException("Problem with malformed query: "
+					+ e.getMessage(), e);
+		} catch (QueryEvaluationException e) {
+			throw new RuntimeException("Problem with query evaluation: "
+					+ e.getMessage(), e);
+		} finally {
+			if (templateconnection != null) {
+				returnTemplateConnection(templateconnection);
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that the datasets of a cube name (several for drill-across
+	 * queries) are loaded and marks each as most recently queried, so that
+	 * datasets in use are evicted last.
+	 * 
+	 * @param cubename
+	 *            dataset uris separated by ","
+	 */
+	private void useDatasets(String cubename) {
+		String[] datasets = cubename.split(",");
+		List<URL> noninformationuris = new ArrayList<URL>();
+		for (String dataset : datasets) {
+			try {
+				noninformationuris.add(new URL(dataset));
+			} catch (MalformedURLException e) {
+				// E.g., wildcards, nothing to load
+				Olap4ldUtil._log.config("Not a dataset uri: " + dataset);
+			}
+		}
+		try {
+			loadCubesIfNotLoaded(noninformationuris);
+		} catch (OlapException e) {
+			// We query what is loaded.
+			Olap4ldUtil._log.warning("Warning: Could not load " + cubename
+					+ ": " + e.getMessage());
+		}
+		for (String dataset : datasets) {
+			datasetContexts.touch(dataset);
+		}
+	}
+
+	/**
+	 * Collects the datasets of the base cubes of a logical query plan.
+	 * 
+	 * @param op
+	 * @param datasets
+	 */
+	private static void collectBaseCubes(LogicalOlapOp op,
+			List<String> datasets) {
+		if (op instanceof BaseCubeOp) {
+			datasets.add(((BaseCubeOp) op).dataseturi);
+		} else if (op instanceof ConvertCubeOp) {
+			collectBaseCubes(((ConvertCubeOp) op).inputOp1, datasets);
+			if (((ConvertCubeOp) op).inputOp2 != null) {
+				collectBaseCubes(((ConvertCubeOp) op).inputOp2, datasets);
+			}
+		} else if (op instanceof DrillAcrossOp) {
+			collectBaseCubes(((DrillAcrossOp) op).inputop1, datasets);
+			collectBaseCubes(((DrillAcrossOp) op).inputop2, datasets);
+		} else if (op instanceof SliceOp) {
+			collectBaseCubes(((SliceOp) op).inputOp, datasets);
+		} else if (op instanceof DiceOp) {
+			collectBaseCubes(((DiceOp) op).inputOp, datasets);
+		} else if (op instanceof RollupOp) {
+			collectBaseCubes(((RollupOp) op).inputOp, datasets);
+		} else if (op instanceof ProjectionOp) {
+			collectBaseCubes(((ProjectionOp) op).inputOp, datasets);
+		}
+	}
+
+	public synchronized boolean isLoaded(URL resource) {
+
+		if (loadedMap.get(resource.toString().hashCode()) != null
+				&& loadedMap.get(resource.toString().hashCode()) == true) {
+			
+			Olap4ldUtil._log
+			.info("Is loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
+			
+			return true;
+		} else {
+			
+			Olap4ldUtil._log
+			.info("Is not yet loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
+			
+			return false;
+		}
+	}
+
+	public synchronized void setLoaded(URL resource) {
+		Olap4ldUtil._log
+		.info("Set loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
+		
+		loadedMap.put(resource.toString().hashCode(), true);
+	}
+
+	private synchronized void setNotLoaded(URL resource) {
+		loadedMap.remove(resource.toString().hashCode());
+	}
+
+	/**
+	 * Registers the load of a location, so that concurrent crawler threads
+	 * do not load the same document several times but wait for the thread
+	 * that loads it.
+	 * 
+	 * @param noninformationuri
+	 * @param informationuri
+	 * @param task
+	 *            that loads the location
+	 * @return null if the location is already loaded, the task if it is to be
+	 *         run by the caller, or the load of another thread to wait for
+	 */
+	private synchronized Future<Object> claimLoading(URL noninformationuri,
+			URL informationuri, FutureTask<Object> task) {
+		if (isLoaded(noninformationuri) || isLoaded(informationuri)) {
+			setLoaded(noninformationuri);
+			setLoaded(informationuri);
+			return null;
+		}
+		Future<Object> loading = loadingLocations.get(informationuri
+				.toString());
+		if (loading == null) {
+			loading = task;
+			loadingLocations.put(informationuri.toString(), task);
+		}
+		return loading;
+	}
+
+	/**
+	 * Sets the number of loaded triples above which least recently queried
+	 * datasets are evicted from an in-memory store.
+	 * 
+	 * @param triples
+	 */
+	public void setTripleBudget(long triples) {
+		this.tripleBudget = triples;
+	}
+
+	/**
+	 * Evicts least recently queried datasets until the loaded triples fit
+	 * into the budget. A dataset is evicted with the contexts of all its
+	 * documents that no other dataset uses, together with the statements
+	 * that normalisation has derived for its observations. Its locations are
+	 * no longer marked as loaded, so that it is loaded again if queried.
+	 * 
+	 * A native store is not evicted, since it does not use the heap.
+	 * 
+	 * @param keep
+	 *            datasets that are not evicted, e.g., the ones just loaded
+	 * @throws OlapException
+	 */
+	private void evictDatasets(List<URL> keep) throws OlapException {
+		if (storeDirectory != null) {
+			return;
+		}
+		Set<String> keepstrings = new HashSet<String>();
+		for (URL dataset : keep) {
+			keepstrings.add(dataset.toString());
+		}
+		while (this.LOADED_TRIPLE_SIZE > tripleBudget) {
+			DatasetContexts.Eviction evicted = datasetContexts
+					.evictLeastRecentlyUsed(keepstrings);
+			if (evicted == null) {
+				Olap4ldUtil._log
+						.warning("Warning: Triple budget exceeded, but no dataset to evict.");
+				return;
+			}
+			removeDocuments(evicted.dataset, evicted.documents);
+		}
+	}
+
+	/**
+	 * Removes an evicted dataset from the store: The contexts of its
+	 * documents, the normalised contexts of the documents and the normalised
+	 * context of the dataset.
+	 * 
+	 * @param dataset
+	 * @param documents
+	 *            that no other dataset uses
+	 * @throws OlapException
+	 */
+	private void removeDocuments(String dataset,
+			List<DatasetContexts.Document> documents) throws OlapException {
+		RepositoryConnection con = null;
+		try {
+			con = repo.getConnection();
+			ValueFactory factory = con.getValueFactory();
+
+			con.begin();
+
+			// Statements derived by normalisation are in the normalised
+			// context of the dataset. They are also counted as loaded.
+			org.openrdf.model.Resource normalisedcontext = factory
+					.createURI(getNormalisedContext(dataset));
+			long normalised = con.size(normalisedcontext);
+			con.clear(normalisedcontext);
+
+			for (DatasetContexts.Document document : documents) {
+				if (document.context == null) {
+					continue;
+				}
+				org.openrdf.model.Resource context = factory
+						.createURI(document.context);
+
+				// Unless the document is named like the dataset
+				normalisedcontext = factory
+						.createURI(getNormalisedContext(document.context));
+				normalised += con.size(normalisedcontext);
+				con.clear(normalisedcontext);
+
+				con.clear(context);
+				Olap4ldUtil._log.info("Evicted " + document.context + " with "
+						+ document.triples + " triples.");
+			}
+			con.commit();
+			invalidateMetadata(Collections.singleton(dataset));
+
+			synchronized (this) {
+				this.LOADED_TRIPLE_SIZE -= (int) normalised;
+				for (DatasetContexts.Document document : documents) {
+					for (URL uri : document.uris) {
+						setNotLoaded(uri);
+					}
+					this.LOADED_TRIPLE_SIZE -= document.triples;
+					this.LOADED_OBSERVATION_SIZE -= document.observations;
+				}
+			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		} finally {
+			if (con != null) {
+				closeConnection(con);
+				sparqlResultCache.storeChanged();
+			}
+		}
 	}
 
-	public boolean isLoaded(URL resource) {
+	/**
+	 * Sets the number of statements that are committed at once when loading
+	 * a document.
+	 * 
+	 * @param chunksize
+	 */
+	public void setBulkLoadChunkSize(int chunksize) {
+		if (chunksize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive: "
+					+ chunksize);
+		}
+		this.bulkLoadChunkSize = chunksize;
+	}
 
-		if (loadedMap.get(resource.toString().hashCode()) != null
-				&& loadedMap.get(resource.toString().hashCode()) == true) {
-			
-			Olap4ldUtil._log
-			.info("Is loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
-			
-			return true;
+	/**
+	 * Streams RDF from the input into the store and commits every
+	 * bulkLoadChunkSize statements. This way, large dumps are loaded with
+	 * constant memory. The triples and observations are counted while
+	 * parsing, so we do not need to count them in the store afterwards.
+	 * 
+	 * Documents are loaded into a context of their own. If parsing fails, the
+	 * context is cleared again, so that the chunks committed so far do not
+	 * stay in the store and the document can be loaded afresh, e.g., in
+	 * another format. Without a context, committed chunks stay in the store.
+	 * 
+	 * Cached documents are read from disk. A document that is not cached is
+	 * parsed while it is downloaded, the read timeout of the CrawlCache
+	 * bounds how long a chunk waits for the network.
+	 * 
+	 * @param con
+	 * @param in
+	 *            closed afterwards
+	 * @param baseuri
+	 * @param format
+	 * @param contexts
+	 *            context only used by this document, if none, the contexts of
+	 *            the statements are kept
+	 * @return the counts of the loaded triples and observations
+	 * @throws IOException
+	 * @throws RDFParseException
+	 * @throws RepositoryException
+	 */
+	private CountingRDFHandler addToStore(RepositoryConnection con,
+			InputStream in, String baseuri, RDFFormat format,
+			org.openrdf.model.Resource... contexts) throws IOException,
+			RDFParseException, RepositoryException {
+
+		RDFParser parser = Rio.createParser(format, con.getValueFactory());
+		ChunkedRDFInserter inserter = new ChunkedRDFInserter(con,
+				bulkLoadChunkSize, baseuri);
+		inserter.enforceContext(contexts);
+		CountingRDFHandler counter = new CountingRDFHandler(inserter);
+		if (sameAsIndex.isEmpty()) {
+			parser.setRDFHandler(counter);
 		} else {
-			
-			Olap4ldUtil._log
-			.info("Is not yet loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
-			
-			return false;
+			parser.setRDFHandler(new CanonicalRDFHandler(counter, sameAsIndex,
+					con.getValueFactory()));
+		}
+
+		boolean loaded = false;
+		con.begin();
+		try {
+			parser.parse(in, baseuri);
+			con.commit();
+			loaded = true;
+		} catch (RDFHandlerException e) {
+			con.rollback();
+			// The inserter wraps problems of the repository.
+			if (e.getCause() instanceof RepositoryException) {
+				throw (RepositoryException) e.getCause();
+			}
+			throw new RepositoryException(e);
+		} catch (RDFParseException e) {
+			con.rollback();
+			throw e;
+		} catch (IOException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			in.close();
+
+			boolean cleared = false;
+			if (!loaded && contexts.length > 0) {
+				try {
+					con.clear(contexts);
+					cleared = true;
+				} catch (RepositoryException e) {
+					Olap4ldUtil._log.warning("Warning: Could not remove "
+							+ baseuri + " after failed load: "
+							+ e.getMessage());
+				}
+			}
+
+			synchronized (this) {
+				if (!cleared) {
+					// Also committed chunks of a failed load are in the
+					// store.
+					this.LOADED_TRIPLE_SIZE += counter.getTriples();
+					this.LOADED_OBSERVATION_SIZE += counter.getObservations();
+					this.pendingDatasets.addAll(counter.getDatasets());
+					// Not derived statements, e.g., from the validation
+					// cache
+					if (contexts.length > 0
+							&& contexts[0] != null
+							&& !contexts[0].stringValue().startsWith(
+									NORMALISED_CONTEXT_PREFIX)) {
+						this.pendingDocuments.add(contexts[0].stringValue());
+						if (counter.hasBlankDatasets()) {
+							this.pendingBlankDocuments.add(contexts[0]
+									.stringValue());
+						}
+					}
+				}
+				// Statements of other datasets, e.g., a shared code list, are
+				// invalidated with the dataset they are loaded for.
+				if (counter.hasBlankDatasets()) {
+					metadataCatalog.clear();
+					hierarchyIndex.clear();
+				} else {
+					invalidateMetadata(counter.getDatasets());
+				}
+			}
+		}
+
+		if (inserter.getStatements() >= bulkLoadChunkSize) {
+			Olap4ldUtil._log.info("Bulk load of " + baseuri + " finished: "
+					+ inserter.getStatements() + " triples.");
 		}
+		return counter;
 	}
 
-	public void setLoaded(URL resource) {
-		Olap4ldUtil._log
-		.info("Set loaded: "+resource.toString()+", Hash: "+resource.toString().hashCode());
-		
-		loadedMap.put(resource.toString().hashCode(), true);
+	/**
+	 * Loads the content of a response into the store and closes its
+	 * connection afterwards.
+	 */
+	private CountingRDFHandler addToStore(RepositoryConnection con,
+			CrawlCache.Response response, String baseuri, RDFFormat format,
+			org.openrdf.model.Resource... contexts) throws IOException,
+			RDFParseException, RepositoryException {
+		try {
+			return addToStore(con, response.openStream(), baseuri, format,
+					contexts);
+		} finally {
+			response.release();
+		}
 	}
 
 	/**
 	 * Loads resource in store if 1) URI and location of resource not already
 	 * loaded 2) number of triples has not reached maximum.
 	 * 
+	 * The statements of a document are loaded into a context named by its
+	 * information uri, so that they can be evicted with the dataset, see
+	 * evictDatasets().
+	 * 
+	 * If another thread is loading the same document, we wait until it has
+	 * finished.
+	 * 
 	 * @param location
+	 * @param dataset
+	 *            the dataset the resource is loaded for, null if the resource
+	 *            shall never be evicted
 	 * @throws OlapException
 	 */
-	private void loadInStore(URL noninformationuri) throws OlapException {
-		RepositoryConnection con = null;
+	private void loadInStore(final URL noninformationuri, final URL dataset)
+			throws OlapException {
 
+		// No network access if already loaded
+		if (isLoaded(noninformationuri)) {
+			datasetContexts.useDocument(dataset, noninformationuri);
+			return;
+		}
+
+		final URL informationuri;
 		try {
+			informationuri = Olap4ldLinkedDataUtil
+					.askForLocation(noninformationuri);
+		} catch (MalformedURLException e) {
+			throw new OlapException("Problem with malformed url: "
+					+ e.getMessage(), e);
+		}
+
+		FutureTask<Object> task = new FutureTask<Object>(
+				new Callable<Object>() {
+					public Object call() throws Exception {
+						loadDocument(noninformationuri, informationuri,
+								dataset);
+						return null;
+					}
+				});
+		Future<Object> loading = claimLoading(noninformationuri,
+				informationuri, task);
+		if (loading == null) {
+			// Already loaded
+			datasetContexts.useDocument(dataset, informationuri);
+			return;
+		}
 
-			URL informationuri = Olap4ldLinkedDataUtil.askForLocation(noninformationuri);
-			if (isLoaded(noninformationuri) || isLoaded(informationuri)) {
-				setLoaded(noninformationuri);
-				setLoaded(informationuri);
-				// Already loaded
+		if (loading == task) {
+			try {
+				task.run();
+			} finally {
+				synchronized (this) {
+					loadingLocations.remove(informationuri.toString());
+				}
+			}
+		}
+
+		try {
+			loading.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OlapException("Loading was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (loading != task) {
+				// The problem is reported to the thread that loaded it.
+				Olap4ldUtil._log.config("Loading by other thread failed: "
+						+ informationuri);
 				return;
 			}
+			if (e.getCause() instanceof OlapException) {
+				throw (OlapException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new OlapException("Problem while loading: "
+					+ e.getCause().getMessage(), e.getCause());
+		}
+
+		if (loading != task) {
+			// Loaded by another crawler thread
+			datasetContexts.useDocument(dataset, informationuri);
+		}
+	}
+
+	/**
+	 * Loads the document of a location, see loadInStore().
+	 * 
+	 * @param noninformationuri
+	 * @param informationuri
+	 * @param dataset
+	 * @throws OlapException
+	 */
+	private void loadDocument(URL noninformationuri, URL informationuri,
+			URL dataset) throws OlapException {
+		RepositoryConnection con = null;
+
+		try {
 
 			// Check max loaded
-			String query = "select (count(?s) as ?count) where {?s ?p ?o}";
-			List<Node[]> result = executeSparqlSelectQuery(query, false);
-			this.LOADED_TRIPLE_SIZE = new Integer(result.get(1)[0].toString());
 			Olap4ldUtil._log.config("Number of loaded triples before: "
 					+ this.LOADED_TRIPLE_SIZE);
 
@@ -655,6 +2497,13 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			Olap4ldUtil._log.config("Load in store: " + informationuri);
 
 			con = repo.getConnection();
+			org.openrdf.model.Resource context = con.getValueFactory()
+					.createURI(locationstring);
+			int triples = 0;
+			int observations = 0;
+			long fingerprint = 0;
+			boolean blanknodes = false;
+			CountingRDFHandler counter = null;
 
 			// Would not work since we cannot ask for the file size without
 			// downloading the file
@@ -684,36 +2533,47 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// return;
 			// }
 
-			// Guess file format
-			RDFFormat format = RDFFormat.forFileName(locationstring);
+			// Guess file format, also of compressed files such as
+			// data.rdf.gz. Compressed content is decompressed while parsing.
+			RDFFormat format = RDFFormat.forFileName(CrawlCache
+					.removeCompressionExtension(locationstring));
+			// Documents are revalidated with the crawl cache and only
+			// downloaded if changed.
+			CrawlCache crawlcache = CrawlCache.getDefault();
 			if (format != null) {
-				con.add(informationuri, locationstring, format);
+				CrawlCache.Response response = crawlcache.get(informationuri,
+						format.getDefaultMIMEType(), 5000);
+				if (!response.hasContent()) {
+					throw new IOException("Server returned HTTP response code: "
+							+ response.responsecode + " for URL: "
+							+ informationuri);
+				}
+				counter = addToStore(con, response, locationstring, format,
+						context);
+				triples += counter.getTriples();
+				observations += counter.getObservations();
+				fingerprint += counter.getFingerprint();
+				blanknodes |= counter.hasBlankNodes();
 			} else {
 				// Heuristics
 
-				// InputStream is;
-				HttpURLConnection connection = (HttpURLConnection) informationuri
-						.openConnection();
 				// We always try to get rdf/xml
-				connection.setRequestProperty("Accept", "application/rdf+xml");
 				format = RDFFormat.RDFXML;
 
 				// Not acceptable time
-				connection.setConnectTimeout(5000);
-				int responsecode = connection.getResponseCode();
+				CrawlCache.Response response = crawlcache.get(informationuri,
+						"application/rdf+xml", 5000);
 
 				// Not acceptable format?
-				if (responsecode == 406) {
-					connection.disconnect();
-					connection = (HttpURLConnection) informationuri.openConnection();
-					connection.setRequestProperty("Accept", "text/turtle");
+				if (response.responsecode == 406) {
 					format = RDFFormat.TURTLE;
-					responsecode = connection.getResponseCode();
+					response = crawlcache.get(informationuri, "text/turtle",
+							5000);
 				}
 
-				// Error
+				// Error or redirect that was not followed
 				// Seems to not work, anymore, since we use Repository.
-				if (responsecode >= 400) {
+				if (!response.hasContent()) {
 					// is = connection.getErrorStream();
 					//
 					// BufferedReader rd = new BufferedReader(
@@ -774,9 +2634,12 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					// in.close();
 					// is.close();
 					try {
-						InputStream inputstream = connection.getInputStream();
-						con.add(inputstream, locationstring, format);
-						connection.disconnect();
+						counter = addToStore(con, response, locationstring,
+								format, context);
+						triples += counter.getTriples();
+						observations += counter.getObservations();
+						fingerprint += counter.getFingerprint();
+						blanknodes |= counter.hasBlankNodes();
 
 					} catch (RDFParseException e) {
 						// Try to continue on next line?
@@ -790,13 +2653,20 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 							Olap4ldUtil._log
 									.config("RDFParseException, but try afresh.");
 
-							// Try with in-built loading functionality
-							if (format == RDFFormat.RDFXML) {
-								con.add(informationuri, locationstring,
-										RDFFormat.TURTLE);
-							} else {
-								con.add(informationuri, locationstring,
-										RDFFormat.RDFXML);
+							// Try with the other format
+							RDFFormat otherformat = (format == RDFFormat.RDFXML) ? RDFFormat.TURTLE
+									: RDFFormat.RDFXML;
+							CrawlCache.Response otherresponse = crawlcache
+									.get(informationuri,
+											otherformat.getDefaultMIMEType(),
+											5000);
+							if (otherresponse.hasContent()) {
+								counter = addToStore(con, otherresponse,
+										locationstring, otherformat, context);
+								triples += counter.getTriples();
+								observations += counter.getObservations();
+								fingerprint += counter.getFingerprint();
+								blanknodes |= counter.hasBlankNodes();
 							}
 
 						}
@@ -811,11 +2681,25 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// Make sure we set it loaded
 			setLoaded(noninformationuri);
 			setLoaded(informationuri);
-			
+			if (counter != null) {
+				// The statements have been committed.
+				storeLoadedLocations(noninformationuri, informationuri);
+			}
+			datasetContexts.addDocument(dataset, noninformationuri,
+					informationuri, locationstring, triples, observations,
+					fingerprint, blanknodes);
+			if (dataset != null) {
+				invalidateMetadata(Collections.singleton(dataset.toString()));
+			} else {
+				// E.g., a vocabulary that any dataset may use
+				metadataCatalog.clear();
+				hierarchyIndex.clear();
+			}
+
 			// Log content only if log level accordingly
 			if (Olap4ldUtil._isDebug) {
 
-				query = "select * where {?s ?p ?o}";
+				String query = "select * where {?s ?p ?o}";
 				Olap4ldUtil._log.config("Check loaded data (10 triples): "
 						+ query);
 				executeSparqlSelectQuery(query, false);
@@ -823,10 +2707,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 			con.close();
 
-			// Check max loaded
-			query = "select (count(?s) as ?count) where {?s ?p ?o}";
-			result = executeSparqlSelectQuery(query, false);
-			this.LOADED_TRIPLE_SIZE = new Integer(result.get(1)[0].toString());
 			Olap4ldUtil._log.info("Number of loaded triples after: "
 					+ this.LOADED_TRIPLE_SIZE);
 
@@ -842,35 +2722,159 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		} catch (RDFParseException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+		} finally {
+			// If we have started loading, the store changed.
+			if (con != null) {
+				sparqlResultCache.storeChanged();
+			}
 		}
 	}
 
 	/**
-	 * We load all data for a cube. We also normalise and do integrity checks.
+	 * Loads the cubes that are not loaded, yet, and makes room for them by
+	 * evicting other datasets.
 	 * 
-	 * @param location
+	 * @param noninformationuris
+	 * @throws OlapException
 	 */
-	private void loadCube(URL noninformationuri) throws OlapException {
-
+	private void loadCubesIfNotLoaded(List<URL> noninformationuris)
+			throws OlapException {
+		List<URL> toload = new ArrayList<URL>();
+		List<URL> locations = new ArrayList<URL>();
 		try {
-			// We crawl the data
-			Olap4ldUtil._log
-					.info("Run directed crawling algorithm on datasets");
+			for (URL noninformationuri : noninformationuris) {
+				// Only ask for the location if not loaded, yet.
+				if (!isLoaded(noninformationuri)) {
+					URL informationuri = Olap4ldLinkedDataUtil
+							.askForLocation(noninformationuri);
+					if (!isLoaded(informationuri)) {
+						toload.add(noninformationuri);
+					}
+					locations.add(noninformationuri);
+					locations.add(informationuri);
+				}
+			}
+		} catch (MalformedURLException e) {
+			throw new OlapException("Problem with malformed url: "
+					+ e.getMessage(), e);
+		}
 
-			long time = System.currentTimeMillis();
+		if (locations.isEmpty()) {
+			return;
+		}
 
-			runDirectedCrawlingAlgorithm(noninformationuri);
+		loadCubes(toload);
 
-			// Load other metadata objects?
-			time = System.currentTimeMillis() - time;
-			Olap4ldUtil._log
-					.info("Load dataset: directed crawling algorithm finished in "
-							+ time + "ms.");
+		for (URL location : locations) {
+			setLoaded(location);
+		}
+
+		// Make room for the next cubes
+		evictDatasets(noninformationuris);
+	}
+
+	/**
+	 * We load all data for a set of cubes. We also normalise and do integrity
+	 * checks.
+	 * 
+	 * The cubes are crawled in parallel. Each crawled document is in its own
+	 * context, so the datasets do not interfere while crawling; the store
+	 * queries the union of the contexts. Normalisation, reasoning and the
+	 * integrity checks run on the whole store, so they run once after all
+	 * cubes are crawled instead of once per cube.
+	 * 
+	 * @param noninformationuris
+	 */
+	private void loadCubes(List<URL> noninformationuris) throws OlapException {
+		if (noninformationuris.isEmpty()) {
+			return;
+		}
+
+		// We crawl the data
+		Olap4ldUtil._log.info("Run directed crawling algorithm on "
+				+ noninformationuris.size() + " datasets");
+
+		long time = System.currentTimeMillis();
+
+		OlapException problem = null;
+		if (noninformationuris.size() == 1) {
+			try {
+				runDirectedCrawlingAlgorithm(noninformationuris.get(0));
+			} catch (OlapException e) {
+				problem = e;
+			}
+		} else {
+			// Separate threads, since the crawling of a dataset waits for
+			// the crawler threads.
+			int threads = Math.min(noninformationuris.size(),
+					ParallelCrawler.DEFAULT_THREADS);
+			ParallelCrawler datasetcrawler = new ParallelCrawler(threads,
+					threads);
+			try {
+				datasetcrawler.loadAll(noninformationuris,
+						new ParallelCrawler.Loader() {
+							public void load(URL uri) throws OlapException {
+								runDirectedCrawlingAlgorithm(uri);
+							}
+						});
+			} catch (OlapException e) {
+				problem = e;
+			} finally {
+				datasetcrawler.shutdown();
+			}
+		}
+
+		// Load other metadata objects?
+		time = System.currentTimeMillis() - time;
+		Olap4ldUtil._log
+				.info("Load dataset: directed crawling algorithm finished in "
+						+ time + "ms.");
+
+		if (problem != null) {
+			// The datasets that could be crawled should not stay
+			// unnormalised.
+			try {
+				prepareCubes();
+			} catch (OlapException e) {
+				Olap4ldUtil._log.warning("Warning: " + e.getMessage());
+			}
+			throw problem;
+		}
+		prepareCubes();
+	}
+
+	/**
+	 * Normalises the crawled cubes, materialises reasoning and checks
+	 * integrity constraints.
+	 * 
+	 * @throws OlapException
+	 */
+	private void prepareCubes() throws OlapException {
+
+		try {
+			long time;
+
+			// Normalisation needs the preloaded links.
+			awaitPreload();
 
 			// We need to materialise implicit information
 			Olap4ldUtil._log.info("Run normalisation algorithm on datasets");
 
 			time = System.currentTimeMillis();
+
+			List<String> loaded;
+			synchronized (this) {
+				loaded = new ArrayList<String>(pendingDatasets);
+			}
+
+			// Unchanged datasets that were valid before do not need to be
+			// normalised and checked again.
+			boolean validated = restoreValidatedDatasets();
+			List<String> normalised;
+			synchronized (this) {
+				normalised = new ArrayList<String>(pendingDatasets);
+			}
+
 			runNormalizationAlgorithm();
 
 			// Own normalization and inferencing.
@@ -888,7 +2892,13 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			Olap4ldUtil._log.info("Check integrity constraints on datasets.");
 			time = System.currentTimeMillis();
 
-			checkIntegrityConstraints();
+			if (validated) {
+				Olap4ldUtil._log
+						.info("Check integrity constraints on datasets: all datasets were valid before.");
+			} else {
+				checkIntegrityConstraints();
+				cacheValidatedDatasets(normalised);
+			}
 
 			// Own checks:
 			RepositoryConnection con = repo.getConnection();
@@ -921,6 +2931,10 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					.info("Check integrity constraints on dataset: finished in "
 							+ time + "ms.");
 
+			// Normalisation has changed the metadata of the datasets, it is
+			// catalogued again once queried.
+			invalidateMetadata(loaded);
+
 		} catch (RepositoryException e) {
 			throw new OlapException("Problem with repository: "
 					+ e.getMessage());
@@ -933,10 +2947,193 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		} 
 	}
 
+	/**
+	 * Loads the normalised delta of the pending datasets that have been
+	 * normalised and found valid before with the same content, see
+	 * cacheValidatedDatasets(), and removes them from the pending datasets.
+	 * Datasets of which only the verdict is cached stay pending, since they
+	 * still need to be normalised.
+	 * 
+	 * @return whether all pending datasets were valid before, i.e., whether
+	 *         integrity constraints do not need to be checked
+	 * @throws OlapException
+	 */
+	private boolean restoreValidatedDatasets() throws OlapException {
+		List<String> datasets;
+		synchronized (this) {
+			datasets = new ArrayList<String>(pendingDatasets);
+		}
+		if (datasets.isEmpty()) {
+			return false;
+		}
+
+		ValidationCache cache = ValidationCache.getDefault();
+		if (!cache.isEnabled()) {
+			return false;
+		}
+		boolean valid = true;
+		RepositoryConnection con = null;
+		try {
+			con = repo.getConnection();
+			for (String dataset : datasets) {
+				Long fingerprint = getFingerprint(dataset);
+				if (fingerprint == null || !cache.isValid(fingerprint)) {
+					valid = false;
+					continue;
+				}
+				try {
+					InputStream in = cache.get(fingerprint);
+					if (in == null) {
+						// Only the verdict
+						continue;
+					}
+					// Closes the stream
+					addToStore(con, in, "", RDFFormat.BINARY, con
+							.getValueFactory().createURI(
+									getNormalisedContext(dataset)));
+					synchronized (this) {
+						pendingDatasets.remove(dataset);
+					}
+					Olap4ldUtil._log.config("Dataset was valid before: "
+							+ dataset);
+				} catch (IOException e) {
+					// Normalise and check again
+					valid = false;
+					Olap4ldUtil._log.warning("Warning: Validation cache: "
+							+ e.getMessage());
+				} catch (RDFParseException e) {
+					// Normalise and check again
+					valid = false;
+					Olap4ldUtil._log.warning("Warning: Validation cache: "
+							+ e.getMessage());
+				}
+			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		} finally {
+			if (con != null) {
+				closeConnection(con);
+				sparqlResultCache.storeChanged();
+			}
+		}
+
+		synchronized (this) {
+			return valid && pendingBlankDocuments.isEmpty();
+		}
+	}
+
+	/**
+	 * Stores the normalised delta of datasets that passed the integrity
+	 * constraints in the validation cache under the fingerprint of their
+	 * content. If the delta mentions a blank node, only the verdict is
+	 * stored. A delta that cannot be written is not cached.
+	 * 
+	 * @param datasets
+	 * @throws OlapException
+	 */
+	private void cacheValidatedDatasets(List<String> datasets)
+			throws OlapException {
+		ValidationCache cache = ValidationCache.getDefault();
+		if (!cache.isEnabled()) {
+			return;
+		}
+		RepositoryConnection con = null;
+		try {
+			con = repo.getConnection();
+			for (String dataset : datasets) {
+				Long fingerprint = getFingerprint(dataset);
+				if (fingerprint == null) {
+					continue;
+				}
+				URI context = con.getValueFactory().createURI(
+						getNormalisedContext(dataset));
+				if (mentionsBlankNode(con, context)) {
+					cache.putVerdict(fingerprint);
+					continue;
+				}
+				File file = cache.createTemporaryFile(fingerprint);
+				try {
+					OutputStream out = new BufferedOutputStream(
+							new FileOutputStream(file), 65536);
+					try {
+						con.export(Rio.createWriter(RDFFormat.BINARY, out),
+								context);
+					} finally {
+						out.close();
+					}
+				} catch (IOException e) {
+					Olap4ldUtil._log.warning("Warning: Validation cache: "
+							+ e.getMessage());
+					file.delete();
+					continue;
+				} catch (RDFHandlerException e) {
+					Olap4ldUtil._log.warning("Warning: Validation cache: "
+							+ e.getMessage());
+					file.delete();
+					continue;
+				}
+				cache.put(fingerprint, file);
+			}
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		} finally {
+			closeConnection(con);
+		}
+	}
+
+	/**
+	 * @param con
+	 * @param context
+	 * @return whether a statement in the context has a blank node as subject
+	 *         or object
+	 * @throws RepositoryException
+	 */
+	private static boolean mentionsBlankNode(RepositoryConnection con,
+			org.openrdf.model.Resource context) throws RepositoryException {
+		RepositoryResult<Statement> statements = con.getStatements(null,
+				null, null, false, context);
+		try {
+			while (statements.hasNext()) {
+				Statement statement = statements.next();
+				if (statement.getSubject() instanceof BNode
+						|| statement.getObject() instanceof BNode) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			statements.close();
+		}
+	}
+
+	/**
+	 * @param dataset
+	 * @return fingerprint of the content of the documents of the dataset or
+	 *         null if not known
+	 */
+	private Long getFingerprint(String dataset) {
+		Long fingerprint = datasetContexts.getFingerprint(dataset);
+		if (fingerprint == null) {
+			return null;
+		}
+		return 31 * fingerprint + VALIDATION_CACHE_VERSION;
+	}
+
+	private static String getNormalisedContext(String dataset) {
+		return NORMALISED_CONTEXT_PREFIX + dataset;
+	}
+
 	/**
 	 * Duplication strategy of deduction rules as in
 	 * http://semanticweb.org/OWLLD/#Rules are executed, but only once which may
-	 * not do full materialisation.
+	 * not do full materialisation. owl:sameAs is not materialised but
+	 * consolidated, see consolidateSameAs().
+	 * 
+	 * An inferred statement is inserted into the normalised context of the
+	 * document of the statement it is inferred from, so that it is evicted
+	 * with the document.
 	 * 
 	 * @throws OlapException
 	 */
@@ -961,61 +3158,232 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// QueryLanguage.SPARQL, updateQuery);
 			// updateQueryQuery.execute();
 
-			// Here, subPropertyOf reasoning is done.
-			String updateQuery = TYPICALPREFIXES
-					+ " INSERT { ?dimension rdfs:range ?range.} WHERE { ?dimension rdfs:subPropertyOf ?superdimension. ?superdimension rdfs:range ?range. }; ";
-			Update updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
-					updateQuery);
-			updateQueryQuery.execute();
+			// Here, subPropertyOf reasoning is done.
+			int inferred = inferSubPropertyRanges(con);
+			synchronized (this) {
+				this.LOADED_TRIPLE_SIZE += inferred;
+			}
+			if (inferred > 0) {
+				// Any dataset may use the dimension properties.
+				metadataCatalog.clear();
+				hierarchyIndex.clear();
+			}
+
+			// Here, owl:sameAs reasoning is done.
+			consolidateSameAs(con);
+
+			con.close();
+
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage());
+		} finally {
+			// Store changed
+			sparqlResultCache.storeChanged();
+		}
+	}
+
+	/**
+	 * ?dimension rdfs:subPropertyOf ?superdimension. ?superdimension
+	 * rdfs:range ?range. => ?dimension rdfs:range ?range.
+	 * 
+	 * The inferred statement is inserted into the normalised context of the
+	 * document with the rdfs:subPropertyOf statement, or into the default
+	 * context if that statement has no context.
+	 * 
+	 * @param con
+	 * @return number of inferred statements not contained before
+	 * @throws RepositoryException
+	 */
+	private static int inferSubPropertyRanges(RepositoryConnection con)
+			throws RepositoryException {
+		ValueFactory factory = con.getValueFactory();
+		URI subpropertyof = factory
+				.createURI("http://www.w3.org/2000/01/rdf-schema#subPropertyOf");
+		URI range = factory
+				.createURI("http://www.w3.org/2000/01/rdf-schema#range");
+
+		List<Statement> subproperties = new ArrayList<Statement>();
+		addStatements(con.getStatements(null, subpropertyof, null, false),
+				subproperties);
+
+		int inferred = 0;
+		con.begin();
+		try {
+			for (Statement subproperty : subproperties) {
+				if (!(subproperty.getObject() instanceof org.openrdf.model.Resource)) {
+					continue;
+				}
+				List<Statement> ranges = new ArrayList<Statement>();
+				addStatements(con.getStatements(
+						(org.openrdf.model.Resource) subproperty.getObject(),
+						range, null, false), ranges);
+				org.openrdf.model.Resource context = null;
+				if (subproperty.getContext() != null) {
+					context = factory.createURI(getNormalisedContext(subproperty
+							.getContext().stringValue()));
+				}
+				for (Statement superrange : ranges) {
+					if (!con.hasStatement(subproperty.getSubject(), range,
+							superrange.getObject(), false, context)) {
+						con.add(subproperty.getSubject(), range,
+								superrange.getObject(), context);
+						inferred++;
+					}
+				}
+			}
+			con.commit();
+		} catch (RepositoryException e) {
+			con.rollback();
+			throw e;
+		}
+		return inferred;
+	}
+
+	/**
+	 * Consolidates resources linked by owl:sameAs (eq-sym, eq-trans,
+	 * eq-rep-s/o): All links of the store are added to the sameAsIndex, and
+	 * the statements about resources that are not canonical any more are
+	 * rewritten to the canonical resource. Statements loaded later are
+	 * rewritten while parsing, see addToStore(). Queries are asked with the
+	 * canonical resources, see bindRestriction(), and members are returned
+	 * with the names they were asked for, see restoreRequestedMembers().
+	 * 
+	 * The canonical resource of a class is chosen by the rank of its
+	 * resources when they are first linked, see getSameAsRank(), so that
+	 * vocabulary terms, properties and datasets keep their names. Predicates
+	 * are never rewritten.
+	 * 
+	 * This way, the store does not grow with the number of links and chains
+	 * of links of any length are consolidated. A rewritten statement stays in
+	 * the context of the statement it replaces, i.e., it is evicted with the
+	 * same document or dataset.
+	 * 
+	 * @param con
+	 * @throws RepositoryException
+	 */
+	private void consolidateSameAs(RepositoryConnection con)
+			throws RepositoryException {
+		ValueFactory factory = con.getValueFactory();
+		URI sameas = factory.createURI(CanonicalRDFHandler.OWL_SAMEAS);
+
+		List<Statement> links = new ArrayList<Statement>();
+		addStatements(con.getStatements(null, sameas, null, false), links);
+		for (Statement link : links) {
+			if (link.getSubject() instanceof URI
+					&& link.getObject() instanceof URI) {
+				URI subject = (URI) link.getSubject();
+				URI object = (URI) link.getObject();
+				if (!sameAsIndex.contains(subject.stringValue())) {
+					sameAsIndex.setRank(subject.stringValue(),
+							getSameAsRank(con, subject));
+				}
+				if (!sameAsIndex.contains(object.stringValue())) {
+					sameAsIndex.setRank(object.stringValue(),
+							getSameAsRank(con, object));
+				}
+				sameAsIndex.union(subject.stringValue(), object.stringValue());
+			}
+		}
+
+		Map<String, String> rewrites = sameAsIndex.takeRewrites();
+		if (rewrites.isEmpty()) {
+			return;
+		}
 
-			// Here, owl:sameAs reasoning is done.
+		int rewritten = 0;
+		con.begin();
+		try {
+			for (String resource : rewrites.keySet()) {
+				URI uri = factory.createURI(resource);
+				List<Statement> statements = new ArrayList<Statement>();
+				addStatements(con.getStatements(uri, null, null, false),
+						statements);
+				addStatements(con.getStatements(null, null, uri, false),
+						statements);
+
+				for (Statement st : statements) {
+					if (st.getPredicate().equals(sameas)) {
+						continue;
+					}
+					con.remove(st, st.getContext());
+					org.openrdf.model.Resource subject = st.getSubject();
+					URI predicate = st.getPredicate();
+					Value object = st.getObject();
+					if (subject instanceof URI) {
+						subject = factory.createURI(sameAsIndex
+								.getCanonical(subject.stringValue()));
+					}
+					if (object instanceof URI) {
+						object = factory.createURI(sameAsIndex
+								.getCanonical(object.stringValue()));
+					}
+					if (st.getContext() == null) {
+						con.add(subject, predicate, object);
+					} else {
+						con.add(subject, predicate, object, st.getContext());
+					}
+					rewritten++;
+				}
+			}
+			con.commit();
+		} catch (RepositoryException e) {
+			con.rollback();
+			throw e;
+		}
 
-			// eq-sym
-			String updateQueryEqSym = TYPICALPREFIXES
-					+ " INSERT { ?y owl:sameAs ?x.} WHERE { ?x owl:sameAs ?y }; ";
-			Update updateQueryQueryEqSym = con.prepareUpdate(
-					QueryLanguage.SPARQL, updateQueryEqSym);
-			updateQueryQueryEqSym.execute();
-
-			// eq-trans
-			String updateQueryEqTrans = TYPICALPREFIXES
-					+ " INSERT { ?x owl:sameAs ?z . } WHERE { ?x owl:sameAs ?y . ?y owl:sameAs ?z . }; ";
-			Update updateQueryQueryEqTrans = con.prepareUpdate(
-					QueryLanguage.SPARQL, updateQueryEqTrans);
-			updateQueryQueryEqTrans.execute();
-
-			// eq-rep-s
-			String updateQueryEqRepS = TYPICALPREFIXES
-					+ " INSERT { ?s0 ?p ?o . } WHERE { ?s owl:sameAs ?s0 . ?s ?p ?o . }; ";
-			Update updateQueryQueryEqRepS = con.prepareUpdate(
-					QueryLanguage.SPARQL, updateQueryEqRepS);
-			updateQueryQueryEqRepS.execute();
-
-			// eq-rep-p
-			String updateQueryEqRepP = TYPICALPREFIXES
-					+ " INSERT { ?s ?p0 ?o . } WHERE { ?p owl:sameAs ?p0 . ?s ?p ?o . }; ";
-			Update updateQueryQueryEqRepP = con.prepareUpdate(
-					QueryLanguage.SPARQL, updateQueryEqRepP);
-			updateQueryQueryEqRepP.execute();
-
-			// eq-rep-o
-			String updateQueryEqRepO = TYPICALPREFIXES
-					+ " INSERT { ?s ?p ?o0 . } WHERE { ?o owl:sameAs ?o0 . ?s ?p ?o . }; ";
-			Update updateQueryQueryEqRepO = con.prepareUpdate(
-					QueryLanguage.SPARQL, updateQueryEqRepO);
-			updateQueryQueryEqRepO.execute();
+		// Catalogued metadata may use resources that are not canonical
+		// any more.
+		metadataCatalog.clear();
+		hierarchyIndex.clear();
 
-			con.close();
+		Olap4ldUtil._log.info("Consolidated " + rewrites.size()
+				+ " equivalent resources in " + rewritten + " statements.");
+	}
 
-		} catch (RepositoryException e) {
-			throw new OlapException("Problem with repository: "
-					+ e.getMessage());
-		} catch (MalformedQueryException e) {
-			throw new OlapException("Problem with malformed query: "
-					+ e.getMessage());
-		} catch (UpdateExecutionException e) {
-			throw new OlapException("Problem with update execution: "
-					+ e.getMessage());
+	/**
+	 * Ranks a linked resource by how the store uses it.
+	 * 
+	 * @param con
+	 * @param uri
+	 * @return rank for SameAsIndex.setRank()
+	 * @throws RepositoryException
+	 */
+	private static int getSameAsRank(RepositoryConnection con, URI uri)
+			throws RepositoryException {
+		ValueFactory factory = con.getValueFactory();
+		if (con.hasStatement(null, uri, null, false)) {
+			return SameAsIndex.TERM;
+		}
+		if (con.hasStatement(uri, factory.createURI(RDF_TYPE),
+				factory.createURI(QB_DATASET_CLASS), false)
+				|| con.hasStatement(null,
+						factory.createURI(QB_DATASET_PROPERTY), uri, false)) {
+			return SameAsIndex.DATASET;
+		}
+		RepositoryResult<Statement> uses = con.getStatements(null, null, uri,
+				false);
+		try {
+			while (uses.hasNext()) {
+				if (!CanonicalRDFHandler.OWL_SAMEAS.equals(uses.next()
+						.getPredicate().stringValue())) {
+					return SameAsIndex.REFERENCED;
+				}
+			}
+		} finally {
+			uses.close();
+		}
+		return SameAsIndex.UNREFERENCED;
+	}
+
+	private static void addStatements(RepositoryResult<Statement> result,
+			List<Statement> statements) throws RepositoryException {
+		try {
+			while (result.hasNext()) {
+				statements.add(result.next());
+			}
+		} finally {
+			result.close();
 		}
 	}
 
@@ -1362,12 +3730,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		// defining an information need. Although we might also just be
 		// interested in all
 		// possible derived datasets of a set of datasets.
-		try {
-			preload();
-		} catch (OlapException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		// The data is preloaded only once and in the background, see
+		// startPreload().
 
 		List<Node[]> result = new ArrayList<Node[]>();
 		// Check whether Drill-across query
@@ -1380,6 +3744,21 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			Olap4ldUtil._log.info("Load dataset: " + datasets.length
 					+ " datasets crawled.");
 
+			// Load all datasets at once, getCubesPerDataSet() then finds
+			// them loaded.
+			if (datasets.length > 1) {
+				List<URL> noninformationuris = new ArrayList<URL>();
+				try {
+					for (String dataset : datasets) {
+						noninformationuris.add(new URL(dataset));
+					}
+				} catch (MalformedURLException e) {
+					throw new OlapException("Problem with malformed url: "
+							+ e.getMessage(), e);
+				}
+				loadCubesIfNotLoaded(noninformationuris);
+			}
+
 			for (int i = 0; i < datasets.length; i++) {
 				String dataset = datasets[i];
 				Restrictions newrestrictions = new Restrictions();
@@ -1428,24 +3807,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		// result.add(nodes);
 		// }
 
-		// We do not do that anymore but use materialisation.
-		// Now that we have loaded all data cubes, we can compute the
-		// equivalence list.
-		/*
-		 * Load equivalence statements from triple store
-		 */
-
-		// Olap4ldUtil._log.info("Load dataset: create equivalence list started.");
-		// long time = System.currentTimeMillis();
-		//
-		// List<Node[]> equivs = getEquivalenceStatements();
-		//
-		// this.equivalenceList = createEquivalenceList(equivs);
-		//
-		// time = System.currentTimeMillis() - time;
-		// Olap4ldUtil._log
-		// .info("Load dataset: create equivalence list finished in "
-		// + time + "ms.");
+		// Equivalent resources are consolidated while loading, see
+		// consolidateSameAs().
 
 		// Now, add "virtual cube"
 		// ?CATALOG_NAME ?SCHEMA_NAME ?CUBE_NAME ?CUBE_TYPE ?CUBE_CAPTION
@@ -1487,15 +3850,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				.info("Load datasets: Number of loaded triples for all datasets: "
 						+ this.LOADED_TRIPLE_SIZE);
 
-		// Check max loaded
-		String query = "PREFIX qb: <http://purl.org/linked-data/cube#> select (count(?s) as ?count) where {?s qb:dataSet ?ds}";
-		List<Node[]> countobservationsresult = executeSparqlSelectQuery(query, false);
-		Integer countobservation = new Integer(
-				countobservationsresult.get(1)[0].toString());
-
 		Olap4ldUtil._log
 				.info("Load datasets: Number of observations for all datasets: "
-						+ countobservation);
+						+ this.LOADED_OBSERVATION_SIZE);
 
 		/*
 		 * Check on restrictions that the interface makes:
@@ -1523,16 +3880,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			} else {
 				noninformationuri = new URL(
 						restrictions.cubeNamePattern.toString());
-				URL informationuri = Olap4ldLinkedDataUtil
-						.askForLocation(noninformationuri);
-				if (!isLoaded(noninformationuri) || !isLoaded(informationuri)) {
-
-					// For now, we simply preload.
-					loadCube(noninformationuri);
-
-				}
-				setLoaded(noninformationuri);
-				setLoaded(informationuri);
+				loadCubesIfNotLoaded(Collections
+						.singletonList(noninformationuri));
 			}
 
 		} catch (MalformedURLException e) {
@@ -1540,31 +3889,35 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			e.printStackTrace();
 		}
 
-		String additionalFilters = createFilterForRestrictions(restrictions);
-
-		String querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getCubes_regular.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		result = executeSparqlSelectQuery(querytemplate, true);
+		result = executeTemplateQuery("sesame_getCubes_regular.txt",
+				restrictions);
 
 		return result;
 	}
 
-	private void runDirectedCrawlingAlgorithm(URL noninformationuri)
+	/**
+	 * Loads the dataset, its data structure definition, components, measures,
+	 * dimensions and code lists. The resources of each of these steps are
+	 * loaded in parallel, since they only depend on the previous steps.
+	 * 
+	 * @param noninformationuri
+	 * @throws OlapException
+	 */
+	private void runDirectedCrawlingAlgorithm(final URL noninformationuri)
 			throws OlapException {
 
+		ParallelCrawler.Loader storeLoader = new ParallelCrawler.Loader() {
+			public void load(URL uri) throws OlapException {
+				loadInStore(uri, noninformationuri);
+			}
+		};
+
 		try {
 
 			// If we have cube uri and location is not loaded, yet, we start
 			// collecting all information
 
-			loadInStore(noninformationuri);
+			loadInStore(noninformationuri, noninformationuri);
 
 			// For everything else: Check whether really cube
 			RepositoryConnection con;
@@ -1598,12 +3951,10 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				} else {
 					// Get the second
 					URL dsduri = new URL(dsd.get(1)[0].toString());
-					loadInStore(dsduri);
+					loadInStore(dsduri, noninformationuri);
 
 				}
 
-				boolean first;
-
 				// Not done. Takes too long.
 				// // If loading ds, also load seeAlso
 				// query =
@@ -1631,17 +3982,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				// There should be a dsd
 				// Note in spec:
 				// "Every qb:DataSet has exactly one associated qb:DataStructureDefinition."
-				first = true;
-				for (Node[] nodes : components) {
-					if (first) {
-						first = false;
-						continue;
-					}
-					if (nodes[0] instanceof Resource) {
-						URL componenturi = new URL(nodes[0].toString());
-						loadInStore(componenturi);
-					}
-				}
+				// Components do not depend on each other
+				crawler.loadAll(collectResources(components), storeLoader);
 
 				// If loading ds, also load measures
 				query = "PREFIX qb: <http://purl.org/linked-data/cube#> SELECT ?measure WHERE {<"
@@ -1651,18 +3993,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				// There should be a dsd
 				// Note in spec:
 				// "Every qb:DataSet has exactly one associated qb:DataStructureDefinition."
-				first = true;
-				for (Node[] nodes : measures) {
-					if (first) {
-						first = false;
-						continue;
-					}
-
-					if (nodes[0] instanceof Resource) {
-						URL measureuri = new URL(nodes[0].toString());
-						loadInStore(measureuri);
-					}
-				}
+				// Measures and dimensions are loaded together
+				List<URL> measuresanddimensions = collectResources(measures);
 
 				// If loading ds, also load dimensions
 				query = "PREFIX qb: <http://purl.org/linked-data/cube#> SELECT ?dimension WHERE {<"
@@ -1675,19 +4007,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				if (dimensions.size() <= 1) {
 					throw new OlapException("A cube should serve a dimension!");
 				} else {
-					first = true;
-					for (Node[] nodes : dimensions) {
-						if (first) {
-							first = false;
-							continue;
-						}
-
-						if (nodes[0] instanceof Resource) {
-							URL dimensionuri = new URL(nodes[0].toString());
-
-							loadInStore(dimensionuri);
-						}
-					}
+					measuresanddimensions.addAll(collectResources(dimensions));
+					crawler.loadAll(measuresanddimensions, storeLoader);
 				}
 
 				// Extra: Not done either.
@@ -1724,19 +4045,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				if (codelists.size() <= 1) {
 					;
 				} else {
-					first = true;
 					// So far, members are not crawled.
-					for (Node[] nodes : codelists) {
-						if (first) {
-							first = false;
-							continue;
-						}
-
-						if (nodes[0] instanceof Resource) {
-							URL codelisturi = new URL(nodes[0].toString());
-							loadInStore(codelisturi);
-						}
-					}
+					crawler.loadAll(collectResources(codelists), storeLoader);
 				}
 
 				// Loading members
@@ -1821,453 +4131,221 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		}
 	}
 
-	private void checkIntegrityConstraints() throws OlapException {
-
-		// Check space for more complex integrity constraints
-
-		boolean doComplexObservationIntegrityConstraints = (this.LOADED_TRIPLE_SIZE < this.MAX_COMPLEX_CONSTRAINTS_TRIPLE_SIZE);
-
-		// Logging
-		Olap4ldUtil._log.config("Run integrity constraints...");
-		Olap4ldUtil._log.config("including complex integrity constraints: "
-				+ doComplexObservationIntegrityConstraints + "...");
-
-		try {
-			// Now, we check the integrity constraints
-			RepositoryConnection con;
-			con = repo.getConnection();
-
-			String testquery;
-			BooleanQuery booleanQuery;
-
-			boolean error = false;
-			String overview = "";
-			String status = "";
-
-			// IC-1. Unique DataSet. Every qb:Observation
-			// has exactly one associated qb:DataSet.
-			// TODO: May take long since all observations tested
-
-			// Since needs to go through all observations, only done if enough
-			// memory
-			if (doComplexObservationIntegrityConstraints) {
-
-				testquery = TYPICALPREFIXES
-						+ "ASK {  {        ?obs a qb:Observation .    FILTER NOT EXISTS { ?obs qb:dataSet ?dataset1 . } } UNION {        ?obs a qb:Observation ;       qb:dataSet ?dataset1, ?dataset2 .    FILTER (?dataset1 != ?dataset2)  }}";
-				booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-						testquery);
-				if (booleanQuery.evaluate() == true) {
-					error = true;
-					status = "Failed specification check: IC-1. Unique DataSet. Every qb:Observation has exactly one associated qb:DataSet.<br/>";
-					Olap4ldUtil._log.config(status);
-					overview += status;
-				} else {
-					status = "Successful specification check: IC-1. Unique DataSet. Every qb:Observation has exactly one associated qb:DataSet.<br/>";
-					Olap4ldUtil._log.config(status);
-					overview += status;
-				}
-			}
-
-			// IC-2. Unique DSD. Every qb:DataSet has
-			// exactly one associated
-			// qb:DataStructureDefinition. <= tested before
-			testquery = TYPICALPREFIXES
-					+ "ASK {  {        ?dataset a qb:DataSet .    FILTER NOT EXISTS { ?dataset qb:structure ?dsd . }  } UNION {    ?dataset a qb:DataSet ;       qb:structure ?dsd1, ?dsd2 .    FILTER (?dsd1 != ?dsd2)  }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-2. Unique DSD. Every qb:DataSet has exactly one associated qb:DataStructureDefinition. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-2. Unique DSD. Every qb:DataSet has exactly one associated qb:DataStructureDefinition.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-3. DSD includes measure
-			testquery = TYPICALPREFIXES
-					+ "ASK {  ?dsd a qb:DataStructureDefinition .  FILTER NOT EXISTS { ?dsd qb:component [qb:componentProperty [a qb:MeasureProperty]] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-3. DSD includes measure. Every qb:DataStructureDefinition must include at least one declared measure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-3. DSD includes measure. Every qb:DataStructureDefinition must include at least one declared measure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-4. Dimensions have range
-			testquery = TYPICALPREFIXES
-					+ "ASK { ?dim a qb:DimensionProperty . FILTER NOT EXISTS { ?dim rdfs:range [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-4. Dimensions have range. Every dimension declared in a qb:DataStructureDefinition must have a declared rdfs:range.\n";
-
-				// Find out what went wrong:
-				String query = TYPICALPREFIXES
-						+ "SELECT ?dim { ?dim a qb:DimensionProperty . FILTER NOT EXISTS { ?dim rdfs:range [] }}";
-				List<Node[]> errordimensions = executeSparqlSelectQuery(query, true);
-				// There should be a dsd
-				// Note in spec:
-				// "Every qb:DataSet has exactly one associated qb:DataStructureDefinition."
-				status += "Wrong dimensions: ";
-				for (Node[] nodes : errordimensions) {
-					// Get the second
-					status += nodes[0].toString() + " ";
-				}
-
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-4. Dimensions have range. Every dimension declared in a qb:DataStructureDefinition must have a declared rdfs:range.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-5. Concept dimensions have code lists
-			testquery = TYPICALPREFIXES
-					+ "ASK { ?dim a qb:DimensionProperty ; rdfs:range skos:Concept . FILTER NOT EXISTS { ?dim qb:codeList [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-5. Concept dimensions have code lists. Every dimension with range skos:Concept must have a qb:codeList. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-5. Concept dimensions have code lists. Every dimension with range skos:Concept must have a qb:codeList. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-6. Only attributes may be optional <= not
-			// important right now. We do not regard
-			// attributes.
-			testquery = TYPICALPREFIXES
-					+ "ASK {  ?dsd qb:component ?componentSpec .  ?componentSpec qb:componentRequired \"false\"^^xsd:boolean ;                 qb:componentProperty ?component .  FILTER NOT EXISTS { ?component a qb:AttributeProperty }} ";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-6. Only attributes may be optional. The only components of a qb:DataStructureDefinition that may be marked as optional, using qb:componentRequired are attributes. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-6. Only attributes may be optional. The only components of a qb:DataStructureDefinition that may be marked as optional, using qb:componentRequired are attributes.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-7. Slice Keys must be declared <= not
-			// important right now. We do not regard slices.
-			testquery = TYPICALPREFIXES
-					+ "ASK {    ?sliceKey a qb:SliceKey .    FILTER NOT EXISTS { [a qb:DataStructureDefinition] qb:sliceKey ?sliceKey }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-7. Slice Keys must be declared. Every qb:SliceKey must be associated with a qb:DataStructureDefinition.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-7. Slice Keys must be declared. Every qb:SliceKey must be associated with a qb:DataStructureDefinition.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-8. Slice Keys consistent with DSD
-			// Spelling error in spec fixed
-			testquery = TYPICALPREFIXES
-					+ "ASK {  ?sliceKey a qb:SliceKey;      qb:componentProperty ?prop .  ?dsd qb:sliceKey ?sliceKey .  FILTER NOT EXISTS { ?dsd qb:component [qb:componentProperty ?prop] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-8. Slice Keys consistent with DSD. Every qb:componentProperty on a qb:SliceKey must also be declared as a qb:component of the associated qb:DataStructureDefinition.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-8. Slice Keys consistent with DSD. Every qb:componentProperty on a qb:SliceKey must also be declared as a qb:component of the associated qb:DataStructureDefinition. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-9. Unique slice structure
-			// Does not seem to work. Returns all slices. Therefore disabled.
-			// String query =
-			// "PREFIX qb: <http://purl.org/linked-data/cube#> select * where {  {    ?slice a qb:Slice .    FILTER NOT EXISTS { ?slice qb:sliceStructure ?key } } UNION {    ?slice a qb:Slice ;           qb:sliceStructure ?key1, ?key2;    FILTER (?key1 != ?key2)  }}";
-			// List<Node[]> result = sparql(query, false);
-			// testquery = TYPICALPREFIXES
-			// +
-			// "ASK {  {    ?slice a qb:Slice .    FILTER NOT EXISTS { ?slice qb:sliceStructure ?key } } UNION {    ?slice a qb:Slice ;           qb:sliceStructure ?key1, ?key2;    FILTER (?key1 != ?key2)  }}";
-			// booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-			// testquery);
-			// if (booleanQuery.evaluate() == true) {
-			// error = true;
-			// status =
-			// "Failed specification check: IC-9. Unique slice structure. Each qb:Slice must have exactly one associated qb:sliceStructure. <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// } else {
-			// status =
-			// "Successful specification check: IC-9. Unique slice structure. Each qb:Slice must have exactly one associated qb:sliceStructure. <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// }
-
-			// IC-10. Slice dimensions complete
-			testquery = TYPICALPREFIXES
-					+ "ASK {  ?slice qb:sliceStructure [qb:componentProperty ?dim] .  FILTER NOT EXISTS { ?slice ?dim [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-10. Slice dimensions complete. Every qb:Slice must have a value for every dimension declared in its qb:sliceStructure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-10. Slice dimensions complete. Every qb:Slice must have a value for every dimension declared in its qb:sliceStructure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// Since needs to go through all observations, only done if enough
-			// memory
-			if (doComplexObservationIntegrityConstraints) {
-
-				// IC-11. All dimensions required <= takes too
-				// long
-				testquery = TYPICALPREFIXES
-						+ "ASK {    ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty;    FILTER NOT EXISTS { ?obs ?dim [] }}";
-				booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-						testquery);
-				if (booleanQuery.evaluate() == true) {
-					error = true;
-					status = "Failed specification check: IC-11. All dimensions required. Every qb:Observation has a value for each dimension declared in its associated qb:DataStructureDefinition. <br/>";
-					Olap4ldUtil._log.config(status);
-					overview += status;
-				} else {
-					status = "Successful specification check: IC-11. All dimensions required. Every qb:Observation has a value for each dimension declared in its associated qb:DataStructureDefinition. <br/>";
-					Olap4ldUtil._log.config(status);
-					overview += status;
-				}
-
-				// IC-12. No duplicate observations <= takes especially
-				// long, expensive quadratic check (IC-12) (see
-				// http://lists.w3.org/Archives/Public/public-gld-wg/2013Jul/0017.html)
-				// Dave Reynolds has implemented a linear time version of it
-				// testquery = TYPICALPREFIXES
-				// +
-				// "ASK {  FILTER( ?allEqual )  {    SELECT (MIN(?equal) AS ?allEqual) WHERE {        ?obs1 qb:dataSet ?dataset .        ?obs2 qb:dataSet ?dataset .        FILTER (?obs1 != ?obs2)        ?dataset qb:structure/qb:component/qb:componentProperty ?dim .        ?dim a qb:DimensionProperty .        ?obs1 ?dim ?value1 .        ?obs2 ?dim ?value2 .        BIND( ?value1 = ?value2 AS ?equal)    } GROUP BY ?obs1 ?obs2  }}";
-				// booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-				// testquery);
-				// if (booleanQuery.evaluate() == true) {
-				// error = true;
-				// status =
-				// "Failed specification check: IC-12. No duplicate observations. No two qb:Observations in the same qb:DataSet may have the same value for all dimensions.<br/>";
-				// Olap4ldUtil._log.config(status);
-				// overview += status;
-				// } else {
-				// status =
-				// "Successful specification check: IC-12. No duplicate observations. No two qb:Observations in the same qb:DataSet may have the same value for all dimensions.<br/>";
-				// Olap4ldUtil._log.config(status);
-				// overview += status;
-				// }
-
-			}
-
-			// IC-13. Required attributes <= We do not
-			// regard attributes
-			testquery = TYPICALPREFIXES
-					+ "ASK { ?obs qb:dataSet/qb:structure/qb:component ?component .   ?component qb:componentRequired \"true\"^^xsd:boolean ;               qb:componentProperty ?attr .    FILTER NOT EXISTS { ?obs ?attr [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-13. Required attributes. Every qb:Observation has a value for each declared attribute that is marked as required.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-13. Required attributes. Every qb:Observation has a value for each declared attribute that is marked as required. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-14. All measures present
-			testquery = TYPICALPREFIXES
-					+ "ASK { ?obs qb:dataSet/qb:structure ?dsd . FILTER NOT EXISTS { ?dsd qb:component/qb:componentProperty qb:measureType } ?dsd qb:component/qb:componentProperty ?measure . ?measure a qb:MeasureProperty; FILTER NOT EXISTS { ?obs ?measure [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-14. All measures present. In a qb:DataSet which does not use a Measure dimension then each individual qb:Observation must have a value for every declared measure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-14. All measures present. In a qb:DataSet which does not use a Measure dimension then each individual qb:Observation must have a value for every declared measure.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-15. Measure dimension consistent <= We do
-			// not support measureType, yet.
-			testquery = TYPICALPREFIXES
-					+ "ASK {    ?obs qb:dataSet/qb:structure ?dsd ;         qb:measureType ?measure .    ?dsd qb:component/qb:componentProperty qb:measureType .    FILTER NOT EXISTS { ?obs ?measure [] }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-15. Measure dimension consistent. In a qb:DataSet which uses a Measure dimension then each qb:Observation must have a value for the measure corresponding to its given qb:measureType.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-15. Measure dimension consistent. In a qb:DataSet which uses a Measure dimension then each qb:Observation must have a value for the measure corresponding to its given qb:measureType.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-16. Single measure on measure dimension
-			// observation
-			testquery = TYPICALPREFIXES
-					+ "ASK {    ?obs qb:dataSet/qb:structure ?dsd ;         qb:measureType ?measure ;         ?omeasure [] .    ?dsd qb:component/qb:componentProperty qb:measureType ;         qb:component/qb:componentProperty ?omeasure .    ?omeasure a qb:MeasureProperty .        FILTER (?omeasure != ?measure)}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-16. Single measure on measure dimension observation. In a qb:DataSet which uses a Measure dimension then each qb:Observation must only have a value for one measure (by IC-15 this will be the measure corresponding to its qb:measureType).<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-16. Single measure on measure dimension observation. In a qb:DataSet which uses a Measure dimension then each qb:Observation must only have a value for one measure (by IC-15 this will be the measure corresponding to its qb:measureType). <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			}
-
-			// IC-17. All measures present in measures dimension cube
-			testquery = TYPICALPREFIXES
-					+ "ASK { {      SELECT ?numMeasures (COUNT(?obs2) AS ?count) WHERE {         {             SELECT ?dsd (COUNT(?m) AS ?numMeasures) WHERE {                 ?dsd qb:component/qb:componentProperty ?m.                  ?m a qb:MeasureProperty .              } GROUP BY ?dsd          }                  ?obs1 qb:dataSet/qb:structure ?dsd;                qb:dataSet ?dataset ;                qb:measureType ?m1 .              ?obs2 qb:dataSet ?dataset ;                qb:measureType ?m2 .          FILTER NOT EXISTS {              ?dsd qb:component/qb:componentProperty ?dim .              FILTER (?dim != qb:measureType)              ?dim a qb:DimensionProperty .              ?obs1 ?dim ?v1 .              ?obs2 ?dim ?v2.              FILTER (?v1 != ?v2)          }                } GROUP BY ?obs1 ?numMeasures        HAVING (?count != ?numMeasures)  }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-17. All measures present in measures dimension cube. In a qb:DataSet which uses a Measure dimension then if there is a Observation for some combination of non-measure dimensions then there must be other Observations with the same non-measure dimension values for each of the declared measures.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-17. All measures present in measures dimension cube. In a qb:DataSet which uses a Measure dimension then if there is a Observation for some combination of non-measure dimensions then there must be other Observations with the same non-measure dimension values for each of the declared measures.<br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
+	/**
+	 * Returns the resources of the first variable of a result.
+	 * 
+	 * @param result
+	 *            with header
+	 * @return
+	 * @throws MalformedURLException
+	 */
+	private List<URL> collectResources(List<Node[]> result)
+			throws MalformedURLException {
+		List<URL> uris = new ArrayList<URL>();
+		boolean first = true;
+		for (Node[] nodes : result) {
+			if (first) {
+				first = false;
+				continue;
 			}
-
-			// IC-18. Consistent data set links
-			testquery = TYPICALPREFIXES
-					+ "ASK { ?dataset qb:slice ?slice . ?slice qb:observation ?obs .FILTER NOT EXISTS { ?obs qb:dataSet ?dataset . }}";
-			booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-					testquery);
-			if (booleanQuery.evaluate() == true) {
-				error = true;
-				status = "Failed specification check: IC-18. If a qb:DataSet D has a qb:slice S, and S has an qb:observation O, then the qb:dataSet corresponding to O must be D. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
-			} else {
-				status = "Successful specification check: IC-18. If a qb:DataSet D has a qb:slice S, and S has an qb:observation O, then the qb:dataSet corresponding to O must be D. <br/>";
-				Olap4ldUtil._log.config(status);
-				overview += status;
+			if (nodes[0] instanceof Resource) {
+				uris.add(new URL(nodes[0].toString()));
 			}
+		}
+		return uris;
+	}
+
+	/**
+	 * Integrity constraints of the QB specification that are checked with an
+	 * ASK query each: constraint, description, query. They mostly concern the
+	 * data structure definitions and are independent of each other.
+	 * 
+	 * Not checked: IC-9. Unique slice structure, since the query returned all
+	 * slices. IC-19. Codes from code list, since it would not fit with
+	 * equivalence reasoning. IC-20. and IC-21. Codes from hierarchy, since
+	 * they need instantiation queries first.
+	 */
+	private static final String[][] INTEGRITY_CONSTRAINT_QUERIES = new String[][] {
+			{
+					"IC-2",
+					"IC-2. Unique DSD. Every qb:DataSet has exactly one associated qb:DataStructureDefinition.",
+					"ASK {  {        ?dataset a qb:DataSet .    FILTER NOT EXISTS { ?dataset qb:structure ?dsd . }  } UNION {    ?dataset a qb:DataSet ;       qb:structure ?dsd1, ?dsd2 .    FILTER (?dsd1 != ?dsd2)  }}" },
+			{
+					"IC-3",
+					"IC-3. DSD includes measure. Every qb:DataStructureDefinition must include at least one declared measure.",
+					"ASK {  ?dsd a qb:DataStructureDefinition .  FILTER NOT EXISTS { ?dsd qb:component [qb:componentProperty [a qb:MeasureProperty]] }}" },
+			{
+					"IC-4",
+					"IC-4. Dimensions have range. Every dimension declared in a qb:DataStructureDefinition must have a declared rdfs:range.",
+					"ASK { ?dim a qb:DimensionProperty . FILTER NOT EXISTS { ?dim rdfs:range [] }}" },
+			{
+					"IC-5",
+					"IC-5. Concept dimensions have code lists. Every dimension with range skos:Concept must have a qb:codeList.",
+					"ASK { ?dim a qb:DimensionProperty ; rdfs:range skos:Concept . FILTER NOT EXISTS { ?dim qb:codeList [] }}" },
+			{
+					"IC-6",
+					"IC-6. Only attributes may be optional. The only components of a qb:DataStructureDefinition that may be marked as optional, using qb:componentRequired are attributes.",
+					"ASK {  ?dsd qb:component ?componentSpec .  ?componentSpec qb:componentRequired \"false\"^^xsd:boolean ;                 qb:componentProperty ?component .  FILTER NOT EXISTS { ?component a qb:AttributeProperty }} " },
+			{
+					"IC-7",
+					"IC-7. Slice Keys must be declared. Every qb:SliceKey must be associated with a qb:DataStructureDefinition.",
+					"ASK {    ?sliceKey a qb:SliceKey .    FILTER NOT EXISTS { [a qb:DataStructureDefinition] qb:sliceKey ?sliceKey }}" },
+			{
+					"IC-8",
+					"IC-8. Slice Keys consistent with DSD. Every qb:componentProperty on a qb:SliceKey must also be declared as a qb:component of the associated qb:DataStructureDefinition.",
+					// Spelling error in spec fixed
+					"ASK {  ?sliceKey a qb:SliceKey;      qb:componentProperty ?prop .  ?dsd qb:sliceKey ?sliceKey .  FILTER NOT EXISTS { ?dsd qb:component [qb:componentProperty ?prop] }}" },
+			{
+					"IC-10",
+					"IC-10. Slice dimensions complete. Every qb:Slice must have a value for every dimension declared in its qb:sliceStructure.",
+					"ASK {  ?slice qb:sliceStructure [qb:componentProperty ?dim] .  FILTER NOT EXISTS { ?slice ?dim [] }}" },
+			{
+					"IC-15",
+					"IC-15. Measure dimension consistent. In a qb:DataSet which uses a Measure dimension then each qb:Observation must have a value for the measure corresponding to its given qb:measureType.",
+					"ASK {    ?obs qb:dataSet/qb:structure ?dsd ;         qb:measureType ?measure .    ?dsd qb:component/qb:componentProperty qb:measureType .    FILTER NOT EXISTS { ?obs ?measure [] }}" },
+			{
+					"IC-16",
+					"IC-16. Single measure on measure dimension observation. In a qb:DataSet which uses a Measure dimension then each qb:Observation must only have a value for one measure (by IC-15 this will be the measure corresponding to its qb:measureType).",
+					"ASK {    ?obs qb:dataSet/qb:structure ?dsd ;         qb:measureType ?measure ;         ?omeasure [] .    ?dsd qb:component/qb:componentProperty qb:measureType ;         qb:component/qb:componentProperty ?omeasure .    ?omeasure a qb:MeasureProperty .        FILTER (?omeasure != ?measure)}" },
+			{
+					"IC-17",
+					"IC-17. All measures present in measures dimension cube. In a qb:DataSet which uses a Measure dimension then if there is a Observation for some combination of non-measure dimensions then there must be other Observations with the same non-measure dimension values for each of the declared measures.",
+					"ASK { {      SELECT ?numMeasures (COUNT(?obs2) AS ?count) WHERE {         {             SELECT ?dsd (COUNT(?m) AS ?numMeasures) WHERE {                 ?dsd qb:component/qb:componentProperty ?m.                  ?m a qb:MeasureProperty .              } GROUP BY ?dsd          }                  ?obs1 qb:dataSet/qb:structure ?dsd;                qb:dataSet ?dataset ;                qb:measureType ?m1 .              ?obs2 qb:dataSet ?dataset ;                qb:measureType ?m2 .          FILTER NOT EXISTS {              ?dsd qb:component/qb:componentProperty ?dim .              FILTER (?dim != qb:measureType)              ?dim a qb:DimensionProperty .              ?obs1 ?dim ?v1 .              ?obs2 ?dim ?v2.              FILTER (?v1 != ?v2)          }                } GROUP BY ?obs1 ?numMeasures        HAVING (?count != ?numMeasures)  }}" },
+			{
+					"IC-18",
+					"IC-18. Consistent data set links. If a qb:DataSet D has a qb:slice S, and S has an qb:observation O, then the qb:dataSet corresponding to O must be D.",
+					"ASK { ?dataset qb:slice ?slice . ?slice qb:observation ?obs .FILTER NOT EXISTS { ?obs qb:dataSet ?dataset . }}" } };
 
-			// Since needs to go through all observations, only done if enough
-			// memory
-			if (doComplexObservationIntegrityConstraints) {
+	/**
+	 * Integrity constraints of the QB specification that are checked by the
+	 * ObservationValidator: constraint, description.
+	 */
+	private static final String[][] INTEGRITY_CONSTRAINT_OBSERVATIONS = new String[][] {
+			{
+					ObservationValidator.IC_1,
+					"IC-1. Unique DataSet. Every qb:Observation has exactly one associated qb:DataSet." },
+			{
+					ObservationValidator.IC_11,
+					"IC-11. All dimensions required. Every qb:Observation has a value for each dimension declared in its associated qb:DataStructureDefinition." },
+			{
+					ObservationValidator.IC_12,
+					"IC-12. No duplicate observations. No two qb:Observations in the same qb:DataSet may have the same value for all dimensions." },
+			{
+					ObservationValidator.IC_13,
+					"IC-13. Required attributes. Every qb:Observation has a value for each declared attribute that is marked as required." },
+			{
+					ObservationValidator.IC_14,
+					"IC-14. All measures present. In a qb:DataSet which does not use a Measure dimension then each individual qb:Observation must have a value for every declared measure." } };
 
-				// Watch out: skos:inScheme has to be used.
-				// String query =
-				// TYPICALPREFIXES+" select * { ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty ;        qb:codeList ?list .    ?list a skos:ConceptScheme .    ?obs ?dim ?v .    FILTER NOT EXISTS { ?v a skos:Concept ; skos:inScheme ?list }}";
-				// List<Node[]> result = sparql(query, false);
+	/**
+	 * Checks the integrity constraints of the QB specification. The ASK
+	 * queries of INTEGRITY_CONSTRAINT_QUERIES are evaluated concurrently,
+	 * meanwhile the ObservationValidator goes through the observations
+	 * dataset by dataset.
+	 * All constraints are checked regardless of the size of the store.
+	 * 
+	 * @throws OlapException
+	 *             if a constraint is violated.
+	 */
+	private void checkIntegrityConstraints() throws OlapException {
 
-				// IC-19. Codes from code list
-				// Probably takes very long since involves property chain and
-				// going through all observations.
+		// Logging
+		Olap4ldUtil._log.config("Run integrity constraints...");
 
-				// Commented, because would not fit with equivalence reasoning
-				// (duplication strategy)
-				// testquery = TYPICALPREFIXES
-				// +
-				// "ASK { ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty ;        qb:codeList ?list .    ?list a skos:ConceptScheme .    ?obs ?dim ?v .    FILTER NOT EXISTS { ?v a skos:Concept ; skos:inScheme ?list }}";
-				// String testquery2 = TYPICALPREFIXES
-				// +
-				// "ASK {   ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty ;        qb:codeList ?list .    ?list a skos:Collection .    ?obs ?dim ?v .    FILTER NOT EXISTS { ?v a skos:Concept . ?list skos:member+ ?v }}";
-				// booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-				// testquery);
-				// BooleanQuery booleanQuery2 = con.prepareBooleanQuery(
-				// QueryLanguage.SPARQL, testquery2);
-				// if (booleanQuery.evaluate() == true
-				// || booleanQuery2.evaluate() == true) {
-				// error = true;
-				// status =
-				// "Failed specification check: IC-19. If a dimension property has a qb:codeList, then the value of the dimension property on every qb:Observation must be in the code list.  <br/>";
-				// Olap4ldUtil._log.config(status);
-				// overview += status;
-				// } else {
-				// status =
-				// "Successful specification check: IC-19. If a dimension property has a qb:codeList, then the value of the dimension property on every qb:Observation must be in the code list.  <br/>";
-				// Olap4ldUtil._log.config(status);
-				// overview += status;
-				// }
+		int threads = Math.min(INTEGRITY_CONSTRAINT_QUERIES.length,
+				ParallelCrawler.DEFAULT_THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"olap4ld-integrity-constraints");
+						// Should not keep the application alive.
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
 
+		try {
+			// Every query has its own connection, since connections are
+			// not thread safe.
+			List<Future<Boolean>> violated = new ArrayList<Future<Boolean>>();
+			for (final String[] constraint : INTEGRITY_CONSTRAINT_QUERIES) {
+				violated.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						RepositoryConnection con = repo.getConnection();
+						try {
+							BooleanQuery booleanQuery = con
+									.prepareBooleanQuery(QueryLanguage.SPARQL,
+											TYPICALPREFIXES + constraint[2]);
+							return booleanQuery.evaluate();
+						} finally {
+							con.close();
+						}
+					}
+				}));
 			}
 
-			// For the next two integrity constraints, we need instantiation
-			// queries first.
-			// XXX: Do them later.
+			ObservationValidator validator;
+			RepositoryConnection con = repo.getConnection();
+			try {
+				validator = new ObservationValidator(con);
+				validator.validate();
+			} finally {
+				con.close();
+			}
+			Olap4ldUtil._log.config("Checked "
+					+ validator.getObservationCount() + " observations.");
 
-			// IC-20. Codes from hierarchy
-			// testquery = prefixbindings
-			// +
-			// "ASK {    ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty ;        qb:codeList ?list .    ?list a qb:HierarchicalCodeList .    ?obs ?dim ?v .    FILTER NOT EXISTS { ?list qb:hierarchyRoot/<$p>* ?v }}";
-			// booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-			// testquery);
-			// if (booleanQuery.evaluate() == true) {
-			// error = true;
-			// status =
-			// "Failed specification check: IC-20. If a dimension property has a qb:HierarchicalCodeList with a non-blank qb:parentChildProperty then the value of that dimension property on every qb:Observation must be reachable from a root of the hierarchy using zero or more hops along the qb:parentChildProperty links.  <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// } else {
-			// status =
-			// "Successful specification check: IC-20. If a dimension property has a qb:HierarchicalCodeList with a non-blank qb:parentChildProperty then the value of that dimension property on every qb:Observation must be reachable from a root of the hierarchy using zero or more hops along the qb:parentChildProperty links.  <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// }
+			boolean error = false;
+			String overview = "";
+			String status = "";
 
-			// IC-21. Codes from hierarchy (inverse)
-			// testquery = prefixbindings
-			// +
-			// "ASK {    ?obs qb:dataSet/qb:structure/qb:component/qb:componentProperty ?dim .    ?dim a qb:DimensionProperty ;        qb:codeList ?list .    ?list a qb:HierarchicalCodeList .    ?obs ?dim ?v .    FILTER NOT EXISTS { ?list qb:hierarchyRoot/<$p>* ?v }}";
-			// booleanQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL,
-			// testquery);
-			// if (booleanQuery.evaluate() == true) {
-			// error = true;
-			// status =
-			// "Failed specification check: IC-21. If a dimension property has a qb:HierarchicalCodeList with an inverse qb:parentChildProperty then the value of that dimension property on every qb:Observation must be reachable from a root of the hierarchy using zero or more hops along the inverse qb:parentChildProperty links.  <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// } else {
-			// status =
-			// "Successful specification check: IC-21. If a dimension property has a qb:HierarchicalCodeList with an inverse qb:parentChildProperty then the value of that dimension property on every qb:Observation must be reachable from a root of the hierarchy using zero or more hops along the inverse qb:parentChildProperty links.  <br/>";
-			// Olap4ldUtil._log.config(status);
-			// overview += status;
-			// }
+			for (String[] constraint : INTEGRITY_CONSTRAINT_OBSERVATIONS) {
+				if (validator.isViolated(constraint[0])) {
+					error = true;
+					status = "Failed specification check: " + constraint[1]
+							+ " Wrong observation: "
+							+ validator.getViolatingObservation(constraint[0])
+							+ "<br/>";
+				} else {
+					status = "Successful specification check: "
+							+ constraint[1] + "<br/>";
+				}
+				Olap4ldUtil._log.config(status);
+				overview += status;
+			}
 
-			// Important!
-			con.close();
+			for (int i = 0; i < INTEGRITY_CONSTRAINT_QUERIES.length; i++) {
+				String[] constraint = INTEGRITY_CONSTRAINT_QUERIES[i];
+				if (violated.get(i).get()) {
+					error = true;
+					status = "Failed specification check: " + constraint[1];
+
+					if ("IC-4".equals(constraint[0])) {
+						// Find out what went wrong:
+						String query = TYPICALPREFIXES
+								+ "SELECT ?dim { ?dim a qb:DimensionProperty . FILTER NOT EXISTS { ?dim rdfs:range [] }}";
+						List<Node[]> errordimensions = executeSparqlSelectQuery(
+								query, true);
+						status += " Wrong dimensions: ";
+						boolean first = true;
+						for (Node[] nodes : errordimensions) {
+							// Skip the header
+							if (first) {
+								first = false;
+								continue;
+							}
+							status += nodes[0].toString() + " ";
+						}
+					}
+					status += "<br/>";
+				} else {
+					status = "Successful specification check: "
+							+ constraint[1] + "<br/>";
+				}
+				Olap4ldUtil._log.config(status);
+				overview += status;
+			}
 
 			if (error) {
 				Olap4ldUtil._log
@@ -2287,12 +4365,15 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		} catch (RepositoryException e) {
 			throw new OlapException("Problem with repository: "
 					+ e.getMessage());
-		} catch (MalformedQueryException e) {
-			throw new OlapException("Problem with malformed query: "
-					+ e.getMessage());
-		} catch (QueryEvaluationException e) {
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OlapException("Integrity constraints were interrupted.",
+					e);
+		} catch (ExecutionException e) {
 			throw new OlapException("Problem with query evaluation: "
-					+ e.getMessage());
+					+ e.getCause().getMessage(), e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
@@ -2301,47 +4382,187 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	 * so that inferences first have to be materialised to properly query a
 	 * cube.
 	 * 
+	 * The rules are only applied to the datasets that have statements loaded
+	 * since the last run (see addToStore()), so that normalising a new cube
+	 * does not depend on how much is loaded already. Every rule starts from a
+	 * dataset: observations and slices belong to a dataset and component
+	 * specifications to the structure of a dataset.
+	 * 
+	 * The derived statements are inserted into the normalised context of the
+	 * dataset, so that they can be stored in the validation cache.
+	 * 
+	 * Exceptions: Slices and observations of slices are typed from the
+	 * documents loaded since the last run, since they do not need to be
+	 * referenced by a dataset. Datasets that are blank nodes cannot be named,
+	 * therefore, the rules are run from the statements about them in the
+	 * documents that mention them. Both insert into the normalised context of
+	 * the document, which is evicted with the document. Statements loaded
+	 * without a context are not among the documents.
+	 * 
 	 * @throws OlapException
 	 */
 	public void runNormalizationAlgorithm() throws OlapException {
 
+		List<String> datasets;
+		List<String> documents;
+		List<String> blankdocuments;
+		synchronized (this) {
+			datasets = new ArrayList<String>(pendingDatasets);
+			documents = new ArrayList<String>(pendingDocuments);
+			blankdocuments = new ArrayList<String>(pendingBlankDocuments);
+		}
+
 		// Logging
-		Olap4ldUtil._log.config("Run normalization algorithm...");
+		Olap4ldUtil._log.config("Run normalization algorithm on "
+				+ datasets.size() + " datasets and " + documents.size()
+				+ " documents (" + blankdocuments.size()
+				+ " with blank node datasets)...");
+
+		if (datasets.isEmpty() && documents.isEmpty()) {
+			return;
+		}
+
+		StringBuilder values = new StringBuilder(
+				"VALUES (?dataset ?normalised) {");
+		for (String dataset : datasets) {
+			values.append(" (<").append(dataset).append("> <")
+					.append(getNormalisedContext(dataset)).append(">)");
+		}
+		values.append(" } ");
+
+		String documentvalues = createDocumentValues(documents);
+		String blankdocumentvalues = createDocumentValues(blankdocuments);
 
 		try {
 			RepositoryConnection con;
 
 			con = repo.getConnection();
 
-			// First, we run normalization algorithm
-			String updateQuery = "PREFIX rdf:            <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { ?o rdf:type qb:Observation .} WHERE {    [] qb:observation ?o .}; INSERT { ?o rdf:type qb:Observation .} WHERE { ?o qb:dataSet [] .}; INSERT {    ?s rdf:type qb:Slice . } WHERE {  [] qb:slice ?s.}; INSERT {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:DimensionProperty .} WHERE {    ?cs qb:dimension ?p .}; INSERT {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:MeasureProperty .} WHERE {    ?cs qb:measure ?p .};INSERT {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:AttributeProperty .} WHERE {    ?cs qb:attribute ?p .}";
-			Update updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
-					updateQuery);
-			updateQueryQuery.execute();
-
-			// # Dataset attachments
-			updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT {    ?obs  ?comp ?value} WHERE {    ?spec    qb:componentProperty ?comp ;            qb:componentAttachment qb:DataSet .    ?dataset qb:structure [qb:component ?spec];             ?comp ?value .    ?obs     qb:dataSet ?dataset.};";
-			con.prepareUpdate(QueryLanguage.SPARQL, updateQuery);
-			updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
-					updateQuery);
-			updateQueryQuery.execute();
-
-			// # Slice attachments
-			updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT {    ?obs  ?comp ?value} WHERE {    ?spec    qb:componentProperty ?comp;             qb:componentAttachment qb:Slice .    ?dataset qb:structure [qb:component ?spec];             qb:slice ?slice .    ?slice ?comp ?value;           qb:observation ?obs .};";
-			con.prepareUpdate(QueryLanguage.SPARQL, updateQuery);
-			updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
-					updateQuery);
-			updateQueryQuery.execute();
-
-			// # Dimension values on slices
-			updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT {    ?obs  ?comp ?value} WHERE {    ?spec    qb:componentProperty ?comp .    ?comp a  qb:DimensionProperty .    ?dataset qb:structure [qb:component ?spec];             qb:slice ?slice .    ?slice ?comp ?value;           qb:observation ?obs .}";
-			con.prepareUpdate(QueryLanguage.SPARQL, updateQuery);
-			updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
-					updateQuery);
-			updateQueryQuery.execute();
+			// The normalised contexts only contain derived statements, so
+			// their sizes tell how many statements were derived.
+			Set<org.openrdf.model.Resource> normalisedcontexts = new LinkedHashSet<org.openrdf.model.Resource>();
+			for (String dataset : datasets) {
+				normalisedcontexts.add(con.getValueFactory().createURI(
+						getNormalisedContext(dataset)));
+			}
+			for (String document : documents) {
+				normalisedcontexts.add(con.getValueFactory().createURI(
+						getNormalisedContext(document)));
+			}
+			org.openrdf.model.Resource[] contexts = normalisedcontexts
+					.toArray(new org.openrdf.model.Resource[normalisedcontexts
+							.size()]);
+			long normalised = con.size(contexts);
+
+			String updateQuery;
+			Update updateQueryQuery;
+
+			if (!documents.isEmpty()) {
+				// Slices and their observations are typed whether a dataset
+				// references the slice or not.
+				updateQuery = "PREFIX rdf:            <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?derived { ?o rdf:type qb:Observation .} } WHERE { "
+						+ documentvalues
+						+ " GRAPH ?document {   [] qb:observation ?o .} }; INSERT { GRAPH ?derived {    ?s rdf:type qb:Slice . } } WHERE { "
+						+ documentvalues
+						+ " GRAPH ?document { [] qb:slice ?s.} }";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+			}
+
+			if (!blankdocuments.isEmpty()) {
+				// Datasets that are blank nodes cannot be bound, therefore,
+				// the rules start from the statements about them in their
+				// documents.
+				updateQuery = "PREFIX rdf:            <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?derived { ?o rdf:type qb:Observation .} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?o qb:dataSet ?dataset .} FILTER(isBlank(?dataset)) }; INSERT { GRAPH ?derived {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:DimensionProperty .} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?dataset qb:structure ?dsd .} FILTER(isBlank(?dataset))    ?dsd qb:component ?cs .    ?cs qb:dimension ?p .}; INSERT { GRAPH ?derived {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:MeasureProperty .} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?dataset qb:structure ?dsd .} FILTER(isBlank(?dataset))    ?dsd qb:component ?cs .    ?cs qb:measure ?p .};INSERT { GRAPH ?derived {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:AttributeProperty .} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?dataset qb:structure ?dsd .} FILTER(isBlank(?dataset))    ?dsd qb:component ?cs .    ?cs qb:attribute ?p .}";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Dataset attachments
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?derived {    ?obs  ?comp ?value} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?obs qb:dataSet ?dataset .} FILTER(isBlank(?dataset))    ?spec    qb:componentProperty ?comp ;            qb:componentAttachment qb:DataSet .    ?dataset qb:structure [qb:component ?spec];             ?comp ?value .};";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Slice attachments
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?derived {    ?obs  ?comp ?value} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?dataset qb:slice ?slice .} FILTER(isBlank(?dataset))    ?spec    qb:componentProperty ?comp;             qb:componentAttachment qb:Slice .    ?dataset qb:structure [qb:component ?spec] .    ?slice ?comp ?value;           qb:observation ?obs .};";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Dimension values on slices
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?derived {    ?obs  ?comp ?value} } WHERE { "
+						+ blankdocumentvalues
+						+ " GRAPH ?document { ?dataset qb:slice ?slice .} FILTER(isBlank(?dataset))    ?spec    qb:componentProperty ?comp .    ?comp a  qb:DimensionProperty .    ?dataset qb:structure [qb:component ?spec] .    ?slice ?comp ?value;           qb:observation ?obs .}";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+			}
+
+			if (!datasets.isEmpty()) {
+				// First, we run normalization algorithm
+				updateQuery = "PREFIX rdf:            <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?normalised { ?o rdf:type qb:Observation .} } WHERE { "
+						+ values
+						+ "?o qb:dataSet ?dataset .}; INSERT { GRAPH ?normalised {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:DimensionProperty .} } WHERE { "
+						+ values
+						+ "?dataset qb:structure [qb:component ?cs] .    ?cs qb:dimension ?p .}; INSERT { GRAPH ?normalised {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:MeasureProperty .} } WHERE { "
+						+ values
+						+ "?dataset qb:structure [qb:component ?cs] .    ?cs qb:measure ?p .};INSERT { GRAPH ?normalised {    ?cs qb:componentProperty ?p .    ?p  rdf:type qb:AttributeProperty .} } WHERE { "
+						+ values
+						+ "?dataset qb:structure [qb:component ?cs] .    ?cs qb:attribute ?p .}";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Dataset attachments
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?normalised {    ?obs  ?comp ?value} } WHERE { "
+						+ values
+						+ "   ?spec    qb:componentProperty ?comp ;            qb:componentAttachment qb:DataSet .    ?dataset qb:structure [qb:component ?spec];             ?comp ?value .    ?obs     qb:dataSet ?dataset.};";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Slice attachments
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?normalised {    ?obs  ?comp ?value} } WHERE { "
+						+ values
+						+ "   ?spec    qb:componentProperty ?comp;             qb:componentAttachment qb:Slice .    ?dataset qb:structure [qb:component ?spec];             qb:slice ?slice .    ?slice ?comp ?value;           qb:observation ?obs .};";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+
+				// # Dimension values on slices
+				updateQuery = "PREFIX qb:             <http://purl.org/linked-data/cube#> INSERT { GRAPH ?normalised {    ?obs  ?comp ?value} } WHERE { "
+						+ values
+						+ "   ?spec    qb:componentProperty ?comp .    ?comp a  qb:DimensionProperty .    ?dataset qb:structure [qb:component ?spec];             qb:slice ?slice .    ?slice ?comp ?value;           qb:observation ?obs .}";
+				updateQueryQuery = con.prepareUpdate(QueryLanguage.SPARQL,
+						updateQuery);
+				updateQueryQuery.execute();
+			}
+
+			normalised = con.size(contexts) - normalised;
 
 			// Important!
 			con.close();
+
+			synchronized (this) {
+				pendingDatasets.removeAll(datasets);
+				pendingDocuments.removeAll(documents);
+				pendingBlankDocuments.removeAll(blankdocuments);
+				this.LOADED_TRIPLE_SIZE += (int) normalised;
+			}
 		} catch (RepositoryException e) {
 			throw new OlapException("Problem with repository: "
 					+ e.getMessage());
@@ -2351,149 +4572,27 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		} catch (UpdateExecutionException e) {
 			throw new OlapException("Problem with update execution: "
 					+ e.getMessage());
+		} finally {
+			// Store changed
+			sparqlResultCache.storeChanged();
 		}
 	}
 
 	/**
-	 * Returns canonical for a node.
-	 * 
-	 * If none is found, simply the node is returned.
-	 * 
-	 * @param canonical
-	 * @return
-	 */
-	@SuppressWarnings("unused")
-	@Deprecated
-	private Node getCanonical(Node canonical) {
-		// for (List<Node> equivalenceClass : equivalenceList) {
-		// for (Node node : equivalenceClass) {
-		//
-		// if (node.equals(canonical)) {
-		// canonical = equivalenceClass.get(0);
-		// break;
-		// }
-		// }
-		// }
-		// return canonical;
-		return null;
-	}
-
-	/**
-	 * 
-	 * @param equivs
-	 *            - equiv[0] first same as and equiv[1] second same as entity.
-	 * @return
+	 * @param documents
+	 *            contexts of documents
+	 * @return VALUES block that binds ?document to the contexts and ?derived
+	 *         to their normalised contexts
 	 */
-	@SuppressWarnings("unused")
-	@Deprecated
-	private List<List<Node>> createEquivalenceList(List<Node[]> equivs) {
-		List<List<Node>> newequivalenceList = new ArrayList<List<Node>>();
-
-		// HashMap<String, Integer> invertedindex = new HashMap<String,
-		// Integer>();
-		//
-		// boolean first = true;
-		// for (Node[] equiv : equivs) {
-		//
-		// // First is header
-		// if (first) {
-		// first = false;
-		// continue;
-		// }
-		//
-		// String A = equiv[0].toString();
-		// String B = equiv[1].toString();
-		//
-		// // Store equiv
-		//
-		// // Find A
-		// Integer rA = invertedindex.get(A);
-		//
-		// // Find B
-		// Integer rB = invertedindex.get(B);
-		//
-		// if (rA == null && rB == null) {
-		// // new row rAB
-		//
-		//
-		// ArrayList<Node> newEquivalenceClass = new ArrayList<Node>();
-		// newEquivalenceClass.add(A);
-		// newEquivalenceClass.add(B);
-		// newequivalenceList.add(newEquivalenceClass);
-		//
-		// } else if (rA != null && rB != null) {
-		// // merge rA and rB
-		//
-		// // We create new list
-		//
-		// List<Node> rAB = new ArrayList<Node>();
-		//
-		// for (Node node : rB) {
-		// rAB.add(node);
-		// }
-		// for (Node node : rA) {
-		// rAB.add(node);
-		// }
-		// newequivalenceList.remove(rB);
-		// newequivalenceList.remove(rA);
-		// newequivalenceList.add(rAB);
-		//
-		// } else if (rA != null) {
-		// // add B to rA
-		//
-		// rA.add(B);
-		//
-		// } else if (rB != null) {
-		// // add A to rB
-		//
-		// rB.add(A);
-		// }
-		//
-		// }
-
-		return newequivalenceList;
-	}
-
-	@Deprecated
-	private List<Node> getEquivalenceClassOfNode(Node resource) {
-		// List<Node> equivalenceClass = new ArrayList<Node>();
-		// equivalenceClass.add(resource);
-		// for (List<Node> iterable_element : this.equivalenceList) {
-		// for (Node node : iterable_element) {
-		// if (resource.equals(node)) {
-		// equivalenceClass = iterable_element;
-		// break;
-		// }
-		// }
-		// }
-		// return equivalenceClass;
-		return null;
-	}
-
-	@Deprecated
-	public List<Node[]> getEquivalenceStatements() {
-
-		// /*
-		// * More directed better?
-		// *
-		// * {$this->getStandardPrefixes()} select ?same1 ?same2
-		// * {$this->getStandardFrom()} where { ?dsd qb:component ?comp. ?comp
-		// * ?componentProp ?same1. ?same1 owl:sameAs ?same2 }
-		// */
-		//
-		// // Same as between dimensions and members.
-		// String query =
-		// "PREFIX owl: <http://www.w3.org/2002/07/owl#> PREFIX qb: <http://purl.org/linked-data/cube#> select ?same1 ?same2 where "
-		// +
-		// "{ { ?dsd qb:component ?comp. ?comp ?componentProp ?same1. ?same1 owl:sameAs ?same2 } UNION { ?obs a qb:Observation. ?obs ?dimension ?same1. ?same1 owl:sameAs ?same2 } }	";
-		//
-		// List<Node[]> myresult = sparql(query, true);
-		//
-		// Olap4ldUtil._log.info("Number of equivalence statements: "
-		// + (myresult.size() - 1));
-		//
-		// return myresult;
-		return null;
+	private static String createDocumentValues(List<String> documents) {
+		StringBuilder values = new StringBuilder(
+				"VALUES (?document ?derived) {");
+		for (String document : documents) {
+			values.append(" (<").append(document).append("> <")
+					.append(getNormalisedContext(document)).append(">)");
+		}
+		values.append(" } ");
+		return values.toString();
 	}
 
 	/**
@@ -2563,9 +4662,16 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 		List<Node[]> result = new ArrayList<Node[]>();
 
+		// Not even a header
+		if (intermediaryresult.isEmpty()) {
+			return result;
+		}
 		Map<String, Integer> dimensionmap = Olap4ldLinkedDataUtil
 				.getNodeResultFields(intermediaryresult.get(0));
 
+		// Dimensions already in the result
+		Set<List<String>> contained = new HashSet<List<String>>();
+
 		// Add to result
 		boolean first = true;
 
@@ -2609,23 +4715,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					.get("?DESCRIPTION")];
 
 			// Only add if not already contained.
-			boolean contained = false;
-			for (Node[] aResult : result) {
-				boolean sameDimension = aResult[dimensionmap
-						.get("?DIMENSION_UNIQUE_NAME")].toString().equals(
-						newnode[dimensionmap.get("?DIMENSION_UNIQUE_NAME")]
-								.toString());
-				boolean sameCube = aResult[dimensionmap.get("?CUBE_NAME")]
-						.toString().equals(
-								newnode[dimensionmap.get("?CUBE_NAME")]
-										.toString());
-
-				if (sameDimension && sameCube) {
-					contained = true;
-				}
-			}
-
-			if (!contained) {
+			if (contained.add(Olap4ldLinkedDataUtil.createMergeKey(newnode,
+					dimensionmap, "?DIMENSION_UNIQUE_NAME", "?CUBE_NAME"))) {
 				result.add(newnode);
 			}
 		}
@@ -2633,7 +4724,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	private List<Node[]> getDimensionsPerDataSet(Restrictions restrictions) {
-		String additionalFilters = createFilterForRestrictions(restrictions);
 		List<Node[]> result = new ArrayList<Node[]>();
 		// Create header
 		Node[] header = new Node[] { new Variable("?CATALOG_NAME"),
@@ -2649,17 +4739,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
 			// Get all dimensions
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getDimensions_regular.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getDimensions_regular.txt", restrictions);
 			// Add all of result2 to result
 			boolean first = true;
 			for (Node[] anIntermediaryresult : myresult) {
@@ -2676,17 +4757,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (true) {
 
 			// In this case, we do ask for a measure dimension.
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getDimensions_measure_dimension.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getDimensions_measure_dimension.txt", restrictions);
 
 			// List<Node[]> result2 = applyRestrictions(memberUris2,
 			// restrictions);
@@ -2702,9 +4774,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			}
 		}
 
-		// Use canonical identifier
-		// result = replaceIdentifiersWithCanonical(result);
-
 		return result;
 	}
 
@@ -2827,8 +4896,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	private List<Node[]> getMeasuresPerDataSet(Restrictions restrictions) {
-		String additionalFilters = createFilterForRestrictions(restrictions);
-
 		// ///////////QUERY//////////////////////////
 		/*
 		 * TODO: How to consider equal measures?
@@ -2836,29 +4903,13 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 		// Boolean values need to be returned as "true" or "false".
 		// Get all measures
-		String querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getMeasures.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		List<Node[]> result = executeSparqlSelectQuery(querytemplate, true);
+		List<Node[]> result = executeTemplateQuery("sesame_getMeasures.txt",
+				restrictions);
 
 		// Here, we also include measures without aggregation function.
 		// We have also added these measures as members to getMembers().
-		querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getMeasures_withoutimplicit.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		List<Node[]> result2 = executeSparqlSelectQuery(querytemplate, true);
+		List<Node[]> result2 = executeTemplateQuery(
+				"sesame_getMeasures_withoutimplicit.txt", restrictions);
 
 		// List<Node[]> result = applyRestrictions(measureUris, restrictions);
 
@@ -2872,9 +4923,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			result.add(nodes);
 		}
 
-		// Use canonical identifier
-		// result = replaceIdentifiersWithCanonical(result);
-
 		return result;
 	}
 
@@ -2944,6 +4992,16 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			List<Node[]> intermediaryresult) {
 		List<Node[]> result = new ArrayList<Node[]>();
 
+		// Not even a header
+		if (intermediaryresult.isEmpty()) {
+			return result;
+		}
+		Map<String, Integer> hierarchymap = Olap4ldLinkedDataUtil
+				.getNodeResultFields(intermediaryresult.get(0));
+
+		// Hierarchies already in the result
+		Set<List<String>> contained = new HashSet<List<String>>();
+
 		boolean first = true;
 		for (Node[] anIntermediaryresult : intermediaryresult) {
 
@@ -2954,9 +5012,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			}
 
 			// Also add hierarchy to global cube
-			Map<String, Integer> hierarchymap = Olap4ldLinkedDataUtil
-					.getNodeResultFields(intermediaryresult.get(0));
-
 			Node[] newnode = new Node[9];
 			newnode[hierarchymap.get("?CATALOG_NAME")] = anIntermediaryresult[hierarchymap
 					.get("?CATALOG_NAME")];
@@ -2984,27 +5039,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					.get("?HIERARCHY_MAX_LEVEL_NUMBER")];
 
 			// Only add if not already contained.
-			boolean contained = false;
-			for (Node[] aResult : result) {
-				boolean sameDimension = aResult[hierarchymap
-						.get("?DIMENSION_UNIQUE_NAME")].toString().equals(
-						newnode[hierarchymap.get("?DIMENSION_UNIQUE_NAME")]
-								.toString());
-				boolean sameHierarchy = aResult[hierarchymap
-						.get("?HIERARCHY_UNIQUE_NAME")].toString().equals(
-						newnode[hierarchymap.get("?HIERARCHY_UNIQUE_NAME")]
-								.toString());
-				boolean sameCube = aResult[hierarchymap.get("?CUBE_NAME")]
-						.toString().equals(
-								newnode[hierarchymap.get("?CUBE_NAME")]
-										.toString());
-
-				if (sameDimension && sameHierarchy && sameCube) {
-					contained = true;
-				}
-			}
-
-			if (!contained) {
+			if (contained.add(Olap4ldLinkedDataUtil.createMergeKey(newnode,
+					hierarchymap, "?DIMENSION_UNIQUE_NAME",
+					"?HIERARCHY_UNIQUE_NAME", "?CUBE_NAME"))) {
 				result.add(newnode);
 			}
 		}
@@ -3012,8 +5049,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	private List<Node[]> getHierarchiesPerDataSet(Restrictions restrictions) {
-		String additionalFilters = createFilterForRestrictions(restrictions);
-
 		List<Node[]> result = new ArrayList<Node[]>();
 
 		// Create header
@@ -3031,17 +5066,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
 			// Get all hierarchies with codeLists
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getHierarchies_regular.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getHierarchies_regular.txt", restrictions);
 
 			// Add all of result to result
 			boolean first = true;
@@ -3062,17 +5088,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (true) {
 
 			// In this case, we do ask for a measure hierarchy.
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getHierarchies_measure_dimension.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getHierarchies_measure_dimension.txt", restrictions);
 
 			// List<Node[]> result2 = applyRestrictions(memberUris2,
 			// restrictions);
@@ -3103,17 +5120,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (!isMeasureQueriedForExplicitly(restrictions.dimensionUniqueName,
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getHierarchies_without_codelist.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getHierarchies_without_codelist.txt", restrictions);
 
 			// List<Node[]> result3 = applyRestrictions(memberUris3,
 			// restrictions);
@@ -3129,29 +5137,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			}
 		}
 
-		// Use canonical identifier
-		// result = replaceIdentifiersWithCanonical(result);
-
 		return result;
 	}
 
-	@Deprecated
-	public List<Node[]> replaceIdentifiersWithCanonical(List<Node[]> result) {
-		//
-		// List<Node[]> newresult = new ArrayList<Node[]>();
-		//
-		// for (Node[] anIntermediaryresult : result) {
-		// Node[] newnode = new Node[anIntermediaryresult.length];
-		// for (int i = 0; i < anIntermediaryresult.length; i++) {
-		// newnode[i] = getCanonical(anIntermediaryresult[i]);
-		// }
-		// newresult.add(newnode);
-		// }
-		//
-		// return newresult;
-		return null;
-	}
-
 	/**
 	 * 
 	 * @param context
@@ -3172,6 +5160,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 			String[] datasets = restrictions.cubeNamePattern.toString().split(
 					",");
+			// Levels already in the result
+			Set<List<String>> contained = new HashSet<List<String>>();
+
 			for (int i = 0; i < datasets.length; i++) {
 				String dataset = datasets[i];
 				// Should make sure that the full restrictions are used.
@@ -3182,6 +5173,13 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 				restrictions.cubeNamePattern = saverestrictioncubePattern;
 
+				// Not even a header
+				if (intermediaryresult.isEmpty()) {
+					continue;
+				}
+				Map<String, Integer> levelmap = Olap4ldLinkedDataUtil
+						.getNodeResultFields(intermediaryresult.get(0));
+
 				// Add to result
 				boolean first = true;
 				for (Node[] anIntermediaryresult : intermediaryresult) {
@@ -3196,8 +5194,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					// result.add(anIntermediaryresult);
 
 					// Also add dimension to global cube
-					Map<String, Integer> levelmap = Olap4ldLinkedDataUtil
-							.getNodeResultFields(intermediaryresult.get(0));
 
 					Node[] newnode = new Node[12];
 					newnode[levelmap.get("?CATALOG_NAME")] = anIntermediaryresult[levelmap
@@ -3225,37 +5221,10 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 							.get("?LEVEL_TYPE")];
 
 					// Only add if not already contained.
-					boolean contained = false;
-					for (Node[] aResult : result) {
-						boolean sameDimension = aResult[levelmap
-								.get("?DIMENSION_UNIQUE_NAME")].toString()
-								.equals(newnode[levelmap
-										.get("?DIMENSION_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameHierarchy = aResult[levelmap
-								.get("?HIERARCHY_UNIQUE_NAME")].toString()
-								.equals(newnode[levelmap
-										.get("?HIERARCHY_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameLevel = aResult[levelmap
-								.get("?LEVEL_UNIQUE_NAME")].toString().equals(
-								newnode[levelmap.get("?LEVEL_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameCube = aResult[levelmap.get("?CUBE_NAME")]
-								.toString().equals(
-										newnode[levelmap.get("?CUBE_NAME")]
-												.toString());
-
-						if (sameDimension && sameHierarchy && sameLevel
-								&& sameCube) {
-							contained = true;
-						}
-					}
-
-					if (!contained) {
+					if (contained.add(Olap4ldLinkedDataUtil.createMergeKey(
+							newnode, levelmap, "?DIMENSION_UNIQUE_NAME",
+							"?HIERARCHY_UNIQUE_NAME", "?LEVEL_UNIQUE_NAME",
+							"?CUBE_NAME"))) {
 						result.add(newnode);
 					}
 				}
@@ -3272,8 +5241,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	private List<Node[]> getLevelsPerDataSet(Restrictions restrictions) {
-		String additionalFilters = createFilterForRestrictions(restrictions);
-
 		List<Node[]> result = new ArrayList<Node[]>();
 
 		// Create header
@@ -3291,17 +5258,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
 			// TODO: Add regularly modeled levels (without using xkos)
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getLevels_regular.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getLevels_regular.txt", restrictions);
 			// Add all of result2 to result
 			boolean first = true;
 			for (Node[] nodes : myresult) {
@@ -3314,17 +5272,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 			// Get all levels of code lists using xkos
 			// TODO: LEVEL_CARDINALITY is not solved, yet.
-			querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getLevels_xkos.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			myresult = executeSparqlSelectQuery(querytemplate, true);
+			myresult = executeTemplateQuery("sesame_getLevels_xkos.txt",
+					restrictions);
 
 			// Add all of result2 to result
 			first = true;
@@ -3346,17 +5295,8 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (true) {
 
 			// In this case, we do ask for a measure dimension.
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getLevels_measure_dimension.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getLevels_measure_dimension.txt", restrictions);
 
 			// List<Node[]> result2 = applyRestrictions(memberUris2,
 			// restrictions);
@@ -3377,18 +5317,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (!isMeasureQueriedForExplicitly(restrictions.dimensionUniqueName,
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getLevels_without_codelist.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
 			// Second, ask for the measures (which are also members)
-			List<Node[]> myresult = executeSparqlSelectQuery(querytemplate, true);
+			List<Node[]> myresult = executeTemplateQuery(
+					"sesame_getLevels_without_codelist.txt", restrictions);
 
 			// List<Node[]> result3 = applyRestrictions(memberUris3,
 			// restrictions);
@@ -3404,9 +5335,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			}
 		}
 
-		// Use canonical identifier
-		// result = replaceIdentifiersWithCanonical(result);
-
 		return result;
 	}
 
@@ -3458,6 +5386,9 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 			String[] datasets = restrictions.cubeNamePattern.toString().split(
 					",");
+			// Members already in the result
+			Set<List<String>> contained = new HashSet<List<String>>();
+
 			for (int i = 0; i < datasets.length; i++) {
 				String dataset = datasets[i];
 				// Should make sure that the full restrictions are used.
@@ -3469,6 +5400,13 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 				restrictions.cubeNamePattern = saverestrictioncubePattern;
 
+				// Not even a header
+				if (intermediaryresult.isEmpty()) {
+					continue;
+				}
+				Map<String, Integer> membermap = Olap4ldLinkedDataUtil
+						.getNodeResultFields(intermediaryresult.get(0));
+
 				// Add to result
 				boolean first = true;
 				for (Node[] anIntermediaryresult : intermediaryresult) {
@@ -3484,8 +5422,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 					// result.add(anIntermediaryresult);
 
 					// Also add dimension to global cube
-					Map<String, Integer> membermap = Olap4ldLinkedDataUtil
-							.getNodeResultFields(intermediaryresult.get(0));
 
 					Node[] newnode = new Node[13];
 					newnode[membermap.get("?CATALOG_NAME")] = anIntermediaryresult[membermap
@@ -3515,62 +5451,178 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 							.get("?PARENT_LEVEL")];
 
 					// Only add if not already contained.
-					boolean contained = false;
-					for (Node[] aResult : result) {
-						boolean sameDimension = aResult[membermap
-								.get("?DIMENSION_UNIQUE_NAME")].toString()
-								.equals(newnode[membermap
-										.get("?DIMENSION_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameHierarchy = aResult[membermap
-								.get("?HIERARCHY_UNIQUE_NAME")].toString()
-								.equals(newnode[membermap
-										.get("?HIERARCHY_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameLevel = aResult[membermap
-								.get("?LEVEL_UNIQUE_NAME")].toString().equals(
-								newnode[membermap.get("?LEVEL_UNIQUE_NAME")]
-										.toString());
-
-						boolean sameMember = aResult[membermap
-								.get("?MEMBER_UNIQUE_NAME")].toString().equals(
-								newnode[membermap.get("?MEMBER_UNIQUE_NAME")]
-										.toString());
-						boolean sameCube = aResult[membermap.get("?CUBE_NAME")]
-								.toString().equals(
-										newnode[membermap.get("?CUBE_NAME")]
-												.toString());
-
-						if (sameDimension && sameHierarchy && sameLevel
-								&& sameMember && sameCube) {
-							contained = true;
-						}
-					}
-
-					if (!contained) {
+					if (contained.add(Olap4ldLinkedDataUtil.createMergeKey(
+							newnode, membermap, "?DIMENSION_UNIQUE_NAME",
+							"?HIERARCHY_UNIQUE_NAME", "?LEVEL_UNIQUE_NAME",
+							"?MEMBER_UNIQUE_NAME", "?CUBE_NAME"))) {
 						result.add(newnode);
 					}
 				}
 
 			}
 
-		} else {
-
-			result = getMembersPerDataSet(restrictions);
+		} else {
+
+			result = getMembersPerDataSet(restrictions);
+
+		}
+
+		return result;
+	}
+
+	private List<Node[]> getMembersPerDataSet(Restrictions restrictions)
+			throws OlapException {
+		// Children, parents etc. are navigated in the hierarchyIndex
+		if (isMemberRelativesQueried(restrictions)) {
+			return restoreRequestedMembers(
+					lookupMemberRelatives(restrictions), restrictions);
+		}
+
+		List<Node[]> result = new ArrayList<Node[]>();
+		List<Node[]> intermediaryresult = null;
+
+		// Create header
+		result.add(createMembersHeader());
+
+		for (String template : createMembersTemplates(restrictions)) {
+			intermediaryresult = executeTemplateQuery(template, restrictions);
+
+			addToResult(intermediaryresult, result);
+		}
+
+		return restoreRequestedMembers(result, restrictions);
+	}
+
+	/**
+	 * Returns the member rows with the unique names that the restrictions
+	 * ask for. The store only knows the canonical resource of resources
+	 * linked by owl:sameAs, but callers look up the members by the names
+	 * they asked for, e.g., in a memberMap.
+	 * 
+	 * @param result
+	 *            header and rows with canonical unique names
+	 * @param restrictions
+	 * @return header and rows, a row once per name asked for
+	 */
+	private List<Node[]> restoreRequestedMembers(List<Node[]> result,
+			Restrictions restrictions) {
+		Map<String, List<String>> aliases = getMemberAliases(restrictions);
+		if (aliases.isEmpty() || result.isEmpty()) {
+			return result;
+		}
+		int column = Olap4ldLinkedDataUtil.getNodeResultFields(result.get(0))
+				.get("?MEMBER_UNIQUE_NAME");
+
+		List<Node[]> restored = new ArrayList<Node[]>(result.size());
+		restored.add(result.get(0));
+		for (Node[] row : result.subList(1, result.size())) {
+			List<String> names = aliases.get(row[column].toString());
+			if (names == null) {
+				restored.add(row);
+				continue;
+			}
+			for (String name : names) {
+				// Rows of the metadataCatalog are shared.
+				Node[] alias = row.clone();
+				alias[column] = new Resource(name);
+				restored.add(alias);
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * The names of members asked for by their canonical resource, only for
+	 * members asked for with another name than the canonical one.
+	 * 
+	 * @param restrictions
+	 * @return
+	 */
+	private Map<String, List<String>> getMemberAliases(
+			Restrictions restrictions) {
+		List<Node> requested = new ArrayList<Node>();
+		if (restrictions.memberUniqueName != null
+				&& !restrictions.memberUniqueName.toString().equals(
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
+			requested.add(restrictions.memberUniqueName);
+		}
+		if (restrictions.memberUniqueNames != null) {
+			requested.addAll(restrictions.memberUniqueNames);
+		}
+
+		Map<String, List<String>> aliases = new HashMap<String, List<String>>();
+		boolean renamed = false;
+		for (Node member : requested) {
+			String name = member.toString();
+			String canonical = sameAsIndex.getCanonical(name);
+			List<String> names = aliases.get(canonical);
+			if (names == null) {
+				names = new ArrayList<String>(1);
+				aliases.put(canonical, names);
+			}
+			if (!names.contains(name)) {
+				names.add(name);
+			}
+			renamed |= !canonical.equals(name);
+		}
+		if (!renamed) {
+			return Collections.emptyMap();
+		}
+		return aliases;
+	}
+
+	/**
+	 * Streams the members. If only one dataset is queried, the rows are read
+	 * from the store while the cursor is read. For several datasets, the
+	 * members need to be merged into the global cube first, therefore, they
+	 * are materialised as in getMembers(). So are relatives of a member from
+	 * the hierarchyIndex and members asked for with a name that is not
+	 * canonical.
+	 * 
+	 * @param restrictions
+	 * @return
+	 * @throws OlapException
+	 */
+	public ResultCursor getMembersCursor(Restrictions restrictions)
+			throws OlapException {
 
+		if ((restrictions.cubeNamePattern != null && restrictions.cubeNamePattern
+				.toString().contains(","))
+				|| isMemberRelativesQueried(restrictions)
+				|| !getMemberAliases(restrictions).isEmpty()) {
+			return new IteratorResultCursor(getMembers(restrictions));
 		}
 
-		return result;
+		Olap4ldUtil._log.config("Linked Data Engine: Get Members...");
+
+		final Restrictions memberrestrictions = restrictions;
+		ResultCursor cursor = new ConcatenatedResultCursor(
+				createMembersHeader(), createMembersTemplates(restrictions),
+				this) {
+			protected ResultCursor open(String template) {
+				return executeTemplateQueryCursor(template, memberrestrictions);
+			}
+		};
+		if (restrictions.cubeNamePattern == null) {
+			return cursor;
+		}
+		// Not evicted while the cursor is read
+		List<String> datasets = Collections.singletonList(restrictions.cubeNamePattern
+				.toString());
+		datasetContexts.open(datasets.get(0));
+		return new OpenDatasetsCursor(cursor, datasetContexts, datasets);
 	}
 
-	private List<Node[]> getMembersPerDataSet(Restrictions restrictions) {
-		List<Node[]> result = new ArrayList<Node[]>();
-		List<Node[]> intermediaryresult = null;
+	/**
+	 * Several members are looked up with one query, see
+	 * evaluateMembersTemplate().
+	 */
+	public boolean isMemberUniqueNamesSupported() {
+		return true;
+	}
 
-		// Create header
-		Node[] header = new Node[] { new Variable("?CATALOG_NAME"),
+	private Node[] createMembersHeader() {
+		return new Node[] { new Variable("?CATALOG_NAME"),
 				new Variable("?SCHEMA_NAME"), new Variable("?CUBE_NAME"),
 				new Variable("?DIMENSION_UNIQUE_NAME"),
 				new Variable("?HIERARCHY_UNIQUE_NAME"),
@@ -3580,23 +5632,28 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 				new Variable("?MEMBER_CAPTION"), new Variable("?MEMBER_TYPE"),
 				new Variable("?PARENT_UNIQUE_NAME"),
 				new Variable("?PARENT_LEVEL") };
-		result.add(header);
+	}
+
+	/**
+	 * Returns the query templates for the different kinds of members of one
+	 * dataset, in the order their results are added.
+	 * 
+	 * @param restrictions
+	 * @return
+	 */
+	private List<String> createMembersTemplates(Restrictions restrictions) {
+		List<String> queries = new ArrayList<String>();
 
 		// Measure Member
 		if (true) {
-			intermediaryresult = getMeasureMembers(restrictions);
-
-			addToResult(intermediaryresult, result);
-
+			queries.add(createMeasureMembersTemplate(restrictions));
 		}
 
 		// Regular members
 		if (!isMeasureQueriedForExplicitly(restrictions.dimensionUniqueName,
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
-			intermediaryresult = getHasTopConceptMembers(restrictions);
-
-			addToResult(intermediaryresult, result);
+			queries.add(createHasTopConceptMembersTemplate(restrictions));
 		}
 
 		// Xkos members
@@ -3604,9 +5661,7 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (!isMeasureQueriedForExplicitly(restrictions.dimensionUniqueName,
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 
-			intermediaryresult = getXkosMembers(restrictions);
-
-			addToResult(intermediaryresult, result);
+			queries.add(createXkosMembersTemplate(restrictions));
 
 		}
 
@@ -3615,21 +5670,14 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		if (!isMeasureQueriedForExplicitly(restrictions.dimensionUniqueName,
 				restrictions.hierarchyUniqueName, restrictions.levelUniqueName)) {
 			// Members without codeList
-			intermediaryresult = getDegeneratedMembers(restrictions);
-
-			addToResult(intermediaryresult, result);
+			queries.add(createDegeneratedMembersTemplate(restrictions));
 
 		}
 
-		// Use canonical identifier
-		// result = replaceIdentifiersWithCanonical(result);
-
-		return result;
+		return queries;
 	}
 
-	private List<Node[]> getMeasureMembers(Restrictions restrictions) {
-
-		String additionalFilters = createFilterForRestrictions(restrictions);
+	private String createMeasureMembersTemplate(Restrictions restrictions) {
 
 		/*
 		 * I would assume that if TREE_OP is set, we have a unique member given
@@ -3652,11 +5700,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			if ((restrictions.tree & 2) == 2) {
 				// SIBLINGS
 				Olap4ldUtil._log.config("TreeOp:SIBLINGS");
-
-				if (restrictions.cubeNamePattern != null) {
-					additionalFilters += " FILTER (?CUBE_NAME = <"
-							+ restrictions.cubeNamePattern + ">) ";
-				}
 			}
 			if ((restrictions.tree & 4) == 4) {
 				// PARENT
@@ -3679,30 +5722,17 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		}
 
 		// Second, ask for the measures (which are also members)
-		String querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getMembers_measure_members.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		List<Node[]> memberUris2 = executeSparqlSelectQuery(querytemplate, true);
-
-		return memberUris2;
+		return "sesame_getMembers_measure_members.txt";
 	}
 
 	/**
-	 * Finds specific typical members.
+	 * Query for specific typical members.
 	 * 
 	 * @param restrictions
 	 * 
 	 * @return
 	 */
-	private List<Node[]> getXkosMembers(Restrictions restrictions) {
-
-		String additionalFilters = createFilterForRestrictions(restrictions);
+	private String createXkosMembersTemplate(Restrictions restrictions) {
 
 		/*
 		 * I would assume that if TREE_OP is set, we have a unique member given
@@ -3720,11 +5750,6 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			if ((restrictions.tree & 1) == 1) {
 				// CHILDREN
 				Olap4ldUtil._log.config("TreeOp:CHILDREN");
-
-				// Here, we need a specific filter
-				additionalFilters = " FILTER (?PARENT_UNIQUE_NAME = <"
-						+ restrictions.memberUniqueName + ">) ";
-
 			}
 			if ((restrictions.tree & 2) == 2) {
 				// SIBLINGS
@@ -3754,22 +5779,11 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 		}
 
-		String querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getMembers_xkos.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		List<Node[]> memberUris2 = executeSparqlSelectQuery(querytemplate, true);
-
-		return memberUris2;
+		return "sesame_getMembers_xkos.txt";
 	}
 
 	/**
-	 * Returns all hasTopConcept members of the cube.
+	 * Query for all hasTopConcept members of the cube.
 	 * 
 	 * @param dimensionUniqueName
 	 * @param cubeNamePattern
@@ -3777,9 +5791,7 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	 * @param cubeNamePattern
 	 * @return
 	 */
-	private List<Node[]> getHasTopConceptMembers(Restrictions restrictions) {
-
-		String additionalFilters = createFilterForRestrictions(restrictions);
+	private String createHasTopConceptMembersTemplate(Restrictions restrictions) {
 
 		/*
 		 * I would assume that if TREE_OP is set, we have a unique member given
@@ -3829,33 +5841,19 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 			// Get all members of hierarchies without levels, that simply
 			// define
 			// skos:hasTopConcept members with skos:notation.
-			String querytemplate = Olap4ldLinkedDataUtil
-					.readInQueryTemplate("sesame_getMembers_topConcept.txt");
-			querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-					askForFrom(true));
-			querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-			querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}",
-					TABLE_SCHEM);
-			querytemplate = querytemplate.replace("{{{FILTERS}}}",
-					additionalFilters);
-
-			List<Node[]> memberUris = executeSparqlSelectQuery(querytemplate, true);
-
-			return memberUris;
+			return "sesame_getMembers_topConcept.txt";
 
 		}
 
 	}
 
 	/**
-	 * For degenerated dimensions, we have to assume that either dim, hier, or
-	 * level are given.
+	 * Query for members of degenerated dimensions. We have to assume that
+	 * either dim, hier, or level are given.
 	 * 
 	 * @return
 	 */
-	private List<Node[]> getDegeneratedMembers(Restrictions restrictions) {
-
-		String additionalFilters = createFilterForRestrictions(restrictions);
+	private String createDegeneratedMembersTemplate(Restrictions restrictions) {
 
 		if (restrictions.tree != null && (restrictions.tree & 8) != 8) {
 
@@ -3898,18 +5896,7 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 
 		}
 
-		String querytemplate = Olap4ldLinkedDataUtil
-				.readInQueryTemplate("sesame_getMembers_degenerated.txt");
-		querytemplate = querytemplate.replace("{{{STANDARDFROM}}}",
-				askForFrom(true));
-		querytemplate = querytemplate.replace("{{{TABLE_CAT}}}", TABLE_CAT);
-		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
-		querytemplate = querytemplate.replace("{{{FILTERS}}}",
-				additionalFilters);
-
-		List<Node[]> memberUris1 = executeSparqlSelectQuery(querytemplate, true);
-
-		return memberUris1;
+		return "sesame_getMembers_degenerated.txt";
 
 	}
 
@@ -3918,107 +5905,87 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		return resource.startsWith("http:");
 	}
 
-	private String createFilterForRestrictions(Restrictions restrictions) {
+	/**
+	 * Gives the restrictions as bindings to a prepared query template. The
+	 * conditions are the same as of the filters we used to add to the query
+	 * string.
+	 * 
+	 * Instead of comparing the string of every candidate, URIs are bound to
+	 * the variable of the template itself, so that the store can look up the
+	 * statements of the bound term. Only if the template assigns the variable
+	 * by BIND or if the restriction is no URI, the string is compared.
+	 * 
+	 * @param query
+	 * @param bindtargets
+	 *            variables assigned by BIND in the template
+	 * @param restrictions
+	 */
+	private void bindRestrictions(TupleQuery query, Set<String> bindtargets,
+			Restrictions restrictions) {
+
+		ValueFactory factory = repo.getValueFactory();
+
+		query.clearBindings();
 
-		String filter = "";
-		// We need to create a filter for the specific restriction
-		filter += (restrictions.cubeNamePattern != null) ? " FILTER (?CUBE_NAME = <"
-				+ restrictions.cubeNamePattern + ">) "
-				: "";
+		if (restrictions.cubeNamePattern != null) {
+			URI cube = factory.createURI(restrictions.cubeNamePattern
+					.toString());
+			if (bindtargets.contains("CUBE_NAME")) {
+				query.setBinding("RESTRICTION_CUBE_NAME", cube);
+			} else {
+				query.setBinding("CUBE_NAME", cube);
+			}
+		}
 
 		if (restrictions.dimensionUniqueName != null
 				&& !restrictions.dimensionUniqueName.toString().equals(
 						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-			// filter += " filter("
-			// + createConditionConsiderEquivalences(
-			// restrictions.dimensionUniqueName, new Variable(
-			// "DIMENSION_UNIQUE_NAME")) + ") ";
-			filter += " filter(str(?DIMENSION_UNIQUE_NAME) = \""
-					+ restrictions.dimensionUniqueName + "\") ";
+			bindRestriction(query, bindtargets, "DIMENSION_UNIQUE_NAME",
+					restrictions.dimensionUniqueName);
 		}
 
+		// Ranges may be blank nodes, e.g., of ical:dtend
+		// XXX: Workaround
+		boolean isBlankHierarchy = restrictions.hierarchyUniqueName != null
+				&& restrictions.hierarchyUniqueName.toString().startsWith(
+						"node");
+
 		if (restrictions.hierarchyUniqueName != null
 				&& !restrictions.hierarchyUniqueName.toString().equals(
-						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// This we do since ranges may be blank nodes, e.g., of ical:dtend
-			// XXX: Workaround
-			if (restrictions.hierarchyUniqueName.toString().startsWith("node")) {
-				filter += "";
-			} else {
-				// filter += " filter("
-				// + createConditionConsiderEquivalences(
-				// restrictions.hierarchyUniqueName, new Variable(
-				// "HIERARCHY_UNIQUE_NAME")) + ") ";
-				filter += " filter(str(?HIERARCHY_UNIQUE_NAME) = \""
-						+ restrictions.hierarchyUniqueName + "\") ";
-			}
-
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !isBlankHierarchy) {
+			bindRestriction(query, bindtargets, "HIERARCHY_UNIQUE_NAME",
+					restrictions.hierarchyUniqueName);
 		}
 
 		if (restrictions.levelUniqueName != null
 				&& !restrictions.levelUniqueName.toString().equals(
-						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// This we do since ranges may be blank nodes, e.g., of ical:dtend
-			// XXX: Workaround
-			if (restrictions.hierarchyUniqueName != null
-					&& restrictions.hierarchyUniqueName.toString().startsWith(
-							"node")) {
-				filter += "";
-			} else {
-
-				// filter += " filter("
-				// + createConditionConsiderEquivalences(
-				// restrictions.levelUniqueName, new Variable(
-				// "LEVEL_UNIQUE_NAME")) + ") ";
-				filter += " filter(str(?LEVEL_UNIQUE_NAME) = \""
-						+ restrictions.levelUniqueName + "\") ";
-
-			}
-
+						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)
+				&& !isBlankHierarchy) {
+			bindRestriction(query, bindtargets, "LEVEL_UNIQUE_NAME",
+					restrictions.levelUniqueName);
 		}
 
 		if (restrictions.memberUniqueName != null
 				&& !restrictions.memberUniqueName.toString().equals(
 						Olap4ldLinkedDataUtil.MEASURE_DIMENSION_NAME)) {
-
-			// filter += " filter("
-			// + createConditionConsiderEquivalences(
-			// restrictions.memberUniqueName, new Variable(
-			// "MEMBER_UNIQUE_NAME")) + ") ";
-			filter += " filter(str(?MEMBER_UNIQUE_NAME) = \""
-					+ restrictions.memberUniqueName + "\") ";
+			bindRestriction(query, bindtargets, "MEMBER_UNIQUE_NAME",
+					restrictions.memberUniqueName);
 		}
-
-		return filter;
 	}
 
-	/**
-	 * This method creates a filter string for a Resource with a specific
-	 * variable for all equivalences.
-	 * 
-	 * @param canonicalResource
-	 * @param variableName
-	 * @return
-	 */
-	@SuppressWarnings("unused")
-	@Deprecated
-	private String createConditionConsiderEquivalences(Node canonicalResource,
-			Variable variable) {
-
-		List<Node> equivalenceClass = getEquivalenceClassOfNode(canonicalResource);
-
-		// Since we sometimes manually build member names, we have to check
-		// on strings
-		String[] filterString = new String[equivalenceClass.size()];
-		for (int i = 0; i < filterString.length; i++) {
-			filterString[i] = "str(?" + variable + ") = \""
-					+ equivalenceClass.get(i) + "\"";
+	private void bindRestriction(TupleQuery query, Set<String> bindtargets,
+			String variable, Node restriction) {
+		ValueFactory factory = repo.getValueFactory();
+		// The store only knows canonical resources.
+		String value = sameAsIndex.getCanonical(restriction.toString());
+		if (!bindtargets.contains(variable)
+				&& ABSOLUTE_URI.matcher(value).matches()) {
+			query.setBinding(variable, factory.createURI(value));
+		} else {
+			query.setBinding("RESTRICTION_" + variable,
+					factory.createLiteral(value));
 		}
-
-		return "(" + Olap4ldLinkedDataUtil.implodeArray(filterString, " || ")
-				+ ")";
 	}
 
 	/**
@@ -4047,30 +6014,12 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	@Override
 	public List<Node[]> executeOlapQuery(LogicalOlapQueryPlan queryplan)
 			throws OlapException {
-		// Log logical query plan
-
-		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan.");
-		long time = System.currentTimeMillis();
-
-		// Create physical query plan
-		this.execplan = createExecplan(queryplan);
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Physical query plan: "
-						+ execplan.toString());
 
-		time = System.currentTimeMillis() - time;
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan finished in "
-						+ time + "ms.");
+		ResultCursor resultCursor = executeOlapQueryCursor(queryplan);
 
 		Olap4ldUtil._log
 				.info("Execute logical query plan: Execute physical query plan.");
-		time = System.currentTimeMillis();
-		PhysicalOlapIterator resultIterator = this.execplan.getIterator();
+		long time = System.currentTimeMillis();
 
 		/*
 		 * We create our own List<Node[]> result with every item
@@ -4079,11 +6028,12 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		 * metadata a member and for each measure in the measure list a value.
 		 */
 		List<Node[]> result = new ArrayList<Node[]>();
-		while (resultIterator.hasNext()) {
-			Object nextObject = resultIterator.next();
-			// Will be Node[]
-			Node[] node = (Node[]) nextObject;
-			result.add(node);
+		try {
+			while (resultCursor.hasNext()) {
+				result.add(resultCursor.next());
+			}
+		} finally {
+			resultCursor.close();
 		}
 
 		time = System.currentTimeMillis() - time;
@@ -4094,6 +6044,60 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 		return result;
 	}
 
+	/**
+	 * Same as executeOlapQuery(queryplan), but the resulting observations are
+	 * pulled through the physical query plan while the cursor is read.
+	 */
+	public ResultCursor executeOlapQueryCursor(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		// Log logical query plan
+
+		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
+
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Generate physical query plan.");
+		long time = System.currentTimeMillis();
+
+		// The queried datasets need to be loaded and are used now.
+		List<String> datasets = new ArrayList<String>();
+		collectBaseCubes(queryplan._root, datasets);
+		for (String dataset : datasets) {
+			useDatasets(dataset);
+		}
+
+		// Not evicted while the cursor is read
+		DatasetContexts contexts = datasetContexts;
+		for (String dataset : datasets) {
+			contexts.open(dataset);
+		}
+		try {
+			// Create physical query plan
+			this.execplan = createExecplan(queryplan);
+		} catch (OlapException e) {
+			for (String dataset : datasets) {
+				contexts.release(dataset);
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			for (String dataset : datasets) {
+				contexts.release(dataset);
+			}
+			throw e;
+		}
+
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Physical query plan: "
+						+ execplan.toString());
+
+		time = System.currentTimeMillis() - time;
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Generate physical query plan finished in "
+						+ time + "ms.");
+
+		return new OpenDatasetsCursor(new PhysicalOlapIteratorCursor(
+				this.execplan.getIterator()), contexts, datasets);
+	}
+
 	@Override
 	public List<Node[]> executeOlapQuery(Cube cube, List<Level> slicesrollups,
 			List<Position> dices, List<Measure> projections)
@@ -4103,10 +6107,269 @@ public class EmbeddedSesameEngine implements LinkedDataCubesEngine {
 	}
 
 	/**
-	 * Empties store and locationMap.
+	 * Saves the store together with the loaded locations as binary RDF, so
+	 * that a restarted engine can restore the crawled, normalised and checked
+	 * cubes with restoreSnapshot() instead of loading them again.
+	 * 
+	 * The file starts with SNAPSHOT_MAGIC, the version, the hashes of the
+	 * loaded locations, the datasets and documents not normalised yet and the
+	 * documents of the datasets (see DatasetContexts), followed by all
+	 * statements in Sesame's binary RDF format.
+	 * 
+	 * @param file
+	 * @throws OlapException
+	 */
+	public void saveSnapshot(File file) throws OlapException {
+		awaitPreload();
+
+		long time = System.currentTimeMillis();
+		File tmpfile = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpfile),
+							65536));
+			RepositoryConnection con = repo.getConnection();
+			try {
+				out.writeUTF(SNAPSHOT_MAGIC);
+				out.writeInt(SNAPSHOT_VERSION);
+				List<Integer> loaded = new ArrayList<Integer>();
+				List<String> pending;
+				List<String> documents;
+				List<String> blankdocuments;
+				synchronized (this) {
+					for (Map.Entry<Integer, Boolean> entry : loadedMap
+							.entrySet()) {
+						if (entry.getValue()) {
+							loaded.add(entry.getKey());
+						}
+					}
+					pending = new ArrayList<String>(pendingDatasets);
+					documents = new ArrayList<String>(pendingDocuments);
+					blankdocuments = new ArrayList<String>(
+							pendingBlankDocuments);
+				}
+				out.writeInt(loaded.size());
+				for (Integer hash : loaded) {
+					out.writeInt(hash);
+				}
+				out.writeInt(pending.size());
+				for (String dataset : pending) {
+					out.writeUTF(dataset);
+				}
+				out.writeInt(documents.size());
+				for (String document : documents) {
+					out.writeUTF(document);
+				}
+				out.writeInt(blankdocuments.size());
+				for (String document : blankdocuments) {
+					out.writeUTF(document);
+				}
+				datasetContexts.write(out);
+				con.export(Rio.createWriter(RDFFormat.BINARY, out));
+			} finally {
+				con.close();
+				out.close();
+			}
+			file.delete();
+			if (!tmpfile.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmpfile + " to "
+						+ file);
+			}
+		} catch (IOException e) {
+			tmpfile.delete();
+			throw new OlapException("Problem with snapshot: " + e.getMessage());
+		} catch (RepositoryException e) {
+			tmpfile.delete();
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage());
+		} catch (RDFHandlerException e) {
+			tmpfile.delete();
+			throw new OlapException("Problem with snapshot: " + e.getMessage());
+		}
+
+		time = System.currentTimeMillis() - time;
+		Olap4ldUtil._log.info("Saved snapshot " + file + " in " + time
+				+ "ms.");
+	}
+
+	/**
+	 * Replaces the content of the store with a snapshot written by
+	 * saveSnapshot(). The locations of the snapshot are marked as loaded, so
+	 * that their cubes are neither crawled nor normalised again, and the
+	 * documents of its datasets are known again, e.g., for eviction and the
+	 * validation cache.
+	 * 
+	 * @param file
+	 * @throws OlapException
+	 */
+	public void restoreSnapshot(File file) throws OlapException {
+		// The preloaded data is also contained in the snapshot
+		awaitPreloadEnd();
+
+		long time = System.currentTimeMillis();
+		RepositoryConnection con = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), 65536));
+			HashSet<Integer> loaded = new HashSet<Integer>();
+			List<String> pending = new ArrayList<String>();
+			List<String> documents = new ArrayList<String>();
+			List<String> blankdocuments = new ArrayList<String>();
+			DatasetContexts contexts = new DatasetContexts();
+			try {
+				if (!SNAPSHOT_MAGIC.equals(in.readUTF())
+						|| in.readInt() != SNAPSHOT_VERSION) {
+					throw new OlapException("Not a snapshot of this version: "
+							+ file);
+				}
+				int size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					loaded.add(in.readInt());
+				}
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					pending.add(in.readUTF());
+				}
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					documents.add(in.readUTF());
+				}
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					blankdocuments.add(in.readUTF());
+				}
+				contexts.read(in);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			} catch (OlapException e) {
+				in.close();
+				throw e;
+			}
+
+			con = repo.getConnection();
+			// The snapshot replaces the content of the store.
+			try {
+				con.clear();
+			} catch (RepositoryException e) {
+				in.close();
+				throw e;
+			}
+			clearBookkeeping();
+
+			// Closes the stream
+			CountingRDFHandler counter = addToStore(con, in, "",
+					RDFFormat.BINARY);
+
+			synchronized (this) {
+				for (Integer hash : loaded) {
+					loadedMap.put(hash, true);
+				}
+				datasetContexts = contexts;
+				// Only the datasets that were not normalised when the
+				// snapshot was taken.
+				pendingDatasets.removeAll(counter.getDatasets());
+				pendingDatasets.addAll(pending);
+				pendingDocuments.addAll(documents);
+				pendingBlankDocuments.addAll(blankdocuments);
+			}
+
+			if (storeDirectory != null) {
+				List<String> entries = new ArrayList<String>();
+				for (DatasetContexts.Document document : contexts
+						.getDocuments()) {
+					if (document.context == null) {
+						continue;
+					}
+					for (URL uri : document.uris) {
+						entries.add(uri + "\t" + document.context);
+					}
+				}
+				writeLoadedLocations(entries);
+			}
+			// Rebuilds the sameAsIndex from the links of the snapshot
+			consolidateSameAs(con);
+		} catch (IOException e) {
+			throw new OlapException("Problem with snapshot: " + e.getMessage(),
+					e);
+		} catch (RDFParseException e) {
+			throw new OlapException("Problem with snapshot: " + e.getMessage(),
+					e);
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		} finally {
+			if (con != null) {
+				closeConnection(con);
+				sparqlResultCache.storeChanged();
+			}
+		}
+
+		time = System.currentTimeMillis() - time;
+		Olap4ldUtil._log.info("Restored snapshot " + file + " with "
+				+ this.LOADED_TRIPLE_SIZE + " triples in " + time + "ms.");
+	}
+
+	/**
+	 * Sets whether rollback() also empties a native store. By default, the
+	 * content of a native store is kept, since it is meant to survive
+	 * restarts.
+	 * 
+	 * @param clear
+	 */
+	public void setClearNativeStoreOnRollback(boolean clear) {
+		this.clearNativeStoreOnRollback = clear;
+	}
+
+	/**
+	 * Empties store and locationMap. A native store is only emptied if
+	 * setClearNativeStoreOnRollback() was set, otherwise only what has been
+	 * derived from its content in memory is dropped.
 	 */
 	public void rollback() {
-		initialize();
+		// Should not load into the emptied store.
+		awaitPreloadEnd();
+		closePreparedTemplates();
+		try {
+			if (storeDirectory != null && !clearNativeStoreOnRollback) {
+				synchronized (this) {
+					metadataCatalog.clear();
+					hierarchyIndex.clear();
+				}
+			} else {
+				clearStore();
+				startPreload();
+			}
+		} catch (OlapException e) {
+			Olap4ldUtil._log.warning("Warning: Could not empty the store: "
+					+ e.getMessage());
+			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			sparqlResultCache.storeChanged();
+		}
+	}
+
+	/**
+	 * Shuts down the store when the connection is closed. The content of a
+	 * native store and its olap4ld-loaded.txt are kept for the next start;
+	 * the in-memory store is discarded. The engine cannot be used afterwards.
+	 * 
+	 * @throws OlapException
+	 */
+	public void close() throws OlapException {
+		// Should not load into the closed store.
+		awaitPreloadEnd();
+		closePreparedTemplates();
+		awaitTemplateConnections();
+		crawler.shutdown();
+		try {
+			repo.shutDown();
+		} catch (RepositoryException e) {
+			throw new OlapException("Problem with repository: "
+					+ e.getMessage(), e);
+		} finally {
+			sparqlResultCache.storeChanged();
+		}
 	}
 
 }
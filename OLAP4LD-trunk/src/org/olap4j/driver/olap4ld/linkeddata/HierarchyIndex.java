@@ -0,0 +1,423 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * In-memory index of the member hierarchies of loaded datasets, so that
+ * TREE_OP restrictions (children, siblings, parent, descendants, ancestors)
+ * are answered without querying the store.
+ * 
+ * For every cube, the members of each dimension and hierarchy are the nodes
+ * of a directed acyclic graph. The parents of a member are given separately,
+ * e.g., from ?child skos:broader ?parent and ?parent skos:narrower ?child. A
+ * member is indexed once per hierarchy and keeps all its parents, so that
+ * the index grows with the number of members and links only. Links that
+ * would close a cycle are dropped.
+ * 
+ * Every member is numbered in pre-order of a depth-first search and knows
+ * the number of the last member that the search reached from it. In a
+ * hierarchy where every member is linked from one parent at most, the
+ * descendants of a member are the interval of members that follow it up to
+ * that number.
+ * Otherwise, descendants and ancestors are collected along the links.
+ * Relatives are returned in pre-order.
+ * 
+ * As the MetadataCatalog, the index is invalidated per dataset if statements
+ * are loaded for or removed with the dataset.
+ */
+public class HierarchyIndex {
+
+	// TREE_OP bits as of Member.TreeOp.xmlaOrdinal()
+	public static final int CHILDREN = 1;
+	public static final int SIBLINGS = 2;
+	public static final int PARENT = 4;
+	public static final int SELF = 8;
+	public static final int DESCENDANTS = 16;
+	public static final int ANCESTORS = 32;
+
+	/**
+	 * Members of one hierarchy of a cube.
+	 */
+	private static class Hierarchy {
+		// Members in pre-order
+		List<HierarchyMember> members = new ArrayList<HierarchyMember>();
+		List<HierarchyMember> roots = new ArrayList<HierarchyMember>();
+		// Whether some member is linked from a member that the search did
+		// not reach it from, e.g., since it has several parents
+		boolean crossLinks;
+	}
+
+	/**
+	 * A member in a hierarchy.
+	 */
+	private static class HierarchyMember {
+		String member;
+		Node[] row;
+		Hierarchy hierarchy;
+		List<HierarchyMember> parents = new ArrayList<HierarchyMember>(1);
+		List<HierarchyMember> children = new ArrayList<HierarchyMember>(0);
+		// Pre-order number, -1 if not yet numbered
+		int pre = -1;
+		// Pre-order number of the last member reached from this one
+		int last;
+		// Whether the search has left the member
+		boolean finished;
+	}
+
+	private static final Comparator<HierarchyMember> PRE_ORDER = new Comparator<HierarchyMember>() {
+		public int compare(HierarchyMember o1, HierarchyMember o2) {
+			return o1.pre - o2.pre;
+		}
+	};
+
+	/**
+	 * Hierarchies of one cube.
+	 */
+	private static class CubeIndex {
+		Node[] header;
+		int dimensionColumn;
+		int hierarchyColumn;
+		// A member unique name in the hierarchies of the cube
+		Map<String, List<HierarchyMember>> members = new HashMap<String, List<HierarchyMember>>();
+	}
+
+	private Map<String, CubeIndex> cubes = new HashMap<String, CubeIndex>();
+
+	/**
+	 * @param cube
+	 * @return whether the hierarchies of the cube have been indexed.
+	 */
+	public synchronized boolean contains(String cube) {
+		return cubes.containsKey(cube);
+	}
+
+	/**
+	 * Indexes the hierarchies of a cube.
+	 * 
+	 * @param cube
+	 * @param members
+	 *            header and rows of all members of the cube
+	 * @param parents
+	 *            parents by member unique name. Parents outside the
+	 *            hierarchy of a member are ignored.
+	 */
+	public synchronized void put(String cube, List<Node[]> members,
+			Map<String, Set<String>> parents) {
+		CubeIndex index = new CubeIndex();
+		index.header = members.get(0);
+
+		Map<String, Integer> fields = Olap4ldLinkedDataUtil
+				.getNodeResultFields(index.header);
+		index.dimensionColumn = fields.get("?DIMENSION_UNIQUE_NAME");
+		index.hierarchyColumn = fields.get("?HIERARCHY_UNIQUE_NAME");
+		int memberColumn = fields.get("?MEMBER_UNIQUE_NAME");
+
+		// Member rows by dimension and hierarchy. A member with several rows
+		// in a hierarchy is returned with the first.
+		Map<List<String>, Map<String, Node[]>> hierarchies = new LinkedHashMap<List<String>, Map<String, Node[]>>();
+		for (Node[] row : members.subList(1, members.size())) {
+			List<String> hierarchy = Arrays.asList(
+					row[index.dimensionColumn].toString(),
+					row[index.hierarchyColumn].toString());
+			Map<String, Node[]> hierarchymembers = hierarchies.get(hierarchy);
+			if (hierarchymembers == null) {
+				hierarchymembers = new LinkedHashMap<String, Node[]>();
+				hierarchies.put(hierarchy, hierarchymembers);
+			}
+			String member = row[memberColumn].toString();
+			if (!hierarchymembers.containsKey(member)) {
+				hierarchymembers.put(member, row);
+			}
+		}
+
+		for (Map<String, Node[]> hierarchymembers : hierarchies.values()) {
+			Hierarchy hierarchy = new Hierarchy();
+
+			Map<String, HierarchyMember> nodes = new LinkedHashMap<String, HierarchyMember>();
+			for (Map.Entry<String, Node[]> entry : hierarchymembers
+					.entrySet()) {
+				HierarchyMember node = new HierarchyMember();
+				node.member = entry.getKey();
+				node.row = entry.getValue();
+				node.hierarchy = hierarchy;
+				nodes.put(node.member, node);
+			}
+
+			// Children of the members of the hierarchy. Members without a
+			// parent in the hierarchy are roots.
+			List<HierarchyMember> roots = new ArrayList<HierarchyMember>();
+			for (HierarchyMember node : nodes.values()) {
+				Set<String> memberparents = parents.get(node.member);
+				boolean root = true;
+				if (memberparents != null) {
+					for (String parent : memberparents) {
+						HierarchyMember parentnode = nodes.get(parent);
+						if (parentnode == null || parentnode == node) {
+							continue;
+						}
+						parentnode.children.add(node);
+						root = false;
+					}
+				}
+				if (root) {
+					roots.add(node);
+				}
+			}
+
+			for (HierarchyMember root : roots) {
+				number(root);
+			}
+
+			// Members on a cycle are not reachable from a root. The cycle is
+			// broken at the first of them.
+			for (HierarchyMember node : nodes.values()) {
+				if (node.pre == -1) {
+					number(node);
+				}
+			}
+
+			for (HierarchyMember node : nodes.values()) {
+				List<HierarchyMember> membernodes = index.members
+						.get(node.member);
+				if (membernodes == null) {
+					membernodes = new ArrayList<HierarchyMember>(1);
+					index.members.put(node.member, membernodes);
+				}
+				membernodes.add(node);
+			}
+		}
+
+		cubes.put(cube, index);
+	}
+
+	/**
+	 * Numbers the members reachable from a root in pre-order. Links to a
+	 * member that the search has entered but not left, yet, would close a
+	 * cycle and are dropped; the other links are kept as parents.
+	 * 
+	 * @param root
+	 */
+	private static void number(HierarchyMember root) {
+		Hierarchy hierarchy = root.hierarchy;
+		hierarchy.roots.add(root);
+
+		// Members entered and the index of their next child
+		LinkedList<HierarchyMember> stack = new LinkedList<HierarchyMember>();
+		LinkedList<Integer> next = new LinkedList<Integer>();
+		root.pre = hierarchy.members.size();
+		hierarchy.members.add(root);
+		stack.push(root);
+		next.push(0);
+		while (!stack.isEmpty()) {
+			HierarchyMember node = stack.peek();
+			int i = next.pop();
+			if (i == node.children.size()) {
+				stack.pop();
+				node.finished = true;
+				node.last = hierarchy.members.size() - 1;
+				continue;
+			}
+			next.push(i + 1);
+
+			HierarchyMember child = node.children.get(i);
+			if (child.pre != -1 && !child.finished) {
+				// Back to an ancestor
+				node.children.remove(i);
+				next.pop();
+				next.push(i);
+				continue;
+			}
+			child.parents.add(node);
+			if (child.pre != -1) {
+				hierarchy.crossLinks = true;
+			} else {
+				child.pre = hierarchy.members.size();
+				hierarchy.members.add(child);
+				stack.push(child);
+				next.push(0);
+			}
+		}
+	}
+
+	/**
+	 * Returns the relatives of a member as given by a TREE_OP.
+	 * 
+	 * @param cube
+	 * @param dimension
+	 *            unique name or null for all dimensions of the member
+	 * @param hierarchy
+	 *            unique name or null for all hierarchies of the member
+	 * @param member
+	 *            unique name
+	 * @param tree
+	 *            TREE_OP bits, e.g., CHILDREN | SELF
+	 * @return header and member rows or null if the cube is not indexed
+	 */
+	public synchronized List<Node[]> lookup(String cube, String dimension,
+			String hierarchy, String member, int tree) {
+		CubeIndex index = cubes.get(cube);
+		if (index == null) {
+			return null;
+		}
+
+		// The same member may be returned for several TREE_OP bits.
+		Set<Node[]> rows = new LinkedHashSet<Node[]>();
+
+		List<HierarchyMember> nodes = index.members.get(member);
+		if (nodes != null) {
+			for (HierarchyMember node : nodes) {
+				if (dimension != null
+						&& !dimension.equals(node.row[index.dimensionColumn]
+								.toString())) {
+					continue;
+				}
+				if (hierarchy != null
+						&& !hierarchy.equals(node.row[index.hierarchyColumn]
+								.toString())) {
+					continue;
+				}
+				addRelatives(node, tree, rows);
+			}
+		}
+
+		List<Node[]> result = new ArrayList<Node[]>(rows.size() + 1);
+		result.add(index.header);
+		result.addAll(rows);
+		return result;
+	}
+
+	private static void addRelatives(HierarchyMember node, int tree,
+			Set<Node[]> rows) {
+		if ((tree & ANCESTORS) == ANCESTORS) {
+			// From the root downwards
+			addRows(collect(node, false), rows);
+		}
+		if ((tree & PARENT) == PARENT) {
+			addRows(node.parents, rows);
+		}
+		if ((tree & SIBLINGS) == SIBLINGS) {
+			List<HierarchyMember> siblings = new ArrayList<HierarchyMember>();
+			if (node.parents.isEmpty()) {
+				// A member on a cycle may be linked after the search started
+				// from it.
+				for (HierarchyMember root : node.hierarchy.roots) {
+					if (root.parents.isEmpty()) {
+						siblings.add(root);
+					}
+				}
+			} else {
+				for (HierarchyMember parent : node.parents) {
+					siblings.addAll(parent.children);
+				}
+			}
+			for (HierarchyMember sibling : siblings) {
+				if (sibling != node) {
+					rows.add(sibling.row);
+				}
+			}
+		}
+		if ((tree & SELF) == SELF) {
+			rows.add(node.row);
+		}
+		if ((tree & CHILDREN) == CHILDREN) {
+			addRows(node.children, rows);
+		}
+		if ((tree & DESCENDANTS) == DESCENDANTS) {
+			if (node.hierarchy.crossLinks) {
+				addRows(collect(node, true), rows);
+			} else {
+				List<HierarchyMember> members = node.hierarchy.members;
+				for (int i = node.pre + 1; i <= node.last; i++) {
+					rows.add(members.get(i).row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the members reachable from a member along the links.
+	 * 
+	 * @param node
+	 * @param down
+	 *            whether to follow the children or the parents
+	 * @return descendants or ancestors in pre-order
+	 */
+	private static List<HierarchyMember> collect(HierarchyMember node,
+			boolean down) {
+		Set<HierarchyMember> reached = new HashSet<HierarchyMember>();
+		LinkedList<HierarchyMember> queue = new LinkedList<HierarchyMember>();
+		queue.add(node);
+		while (!queue.isEmpty()) {
+			HierarchyMember current = queue.poll();
+			for (HierarchyMember relative : down ? current.children
+					: current.parents) {
+				if (reached.add(relative)) {
+					queue.add(relative);
+				}
+			}
+		}
+		List<HierarchyMember> result = new ArrayList<HierarchyMember>(reached);
+		Collections.sort(result, PRE_ORDER);
+		return result;
+	}
+
+	private static void addRows(List<HierarchyMember> nodes, Set<Node[]> rows) {
+		if (nodes.size() > 1) {
+			nodes = new ArrayList<HierarchyMember>(nodes);
+			Collections.sort(nodes, PRE_ORDER);
+		}
+		for (HierarchyMember node : nodes) {
+			rows.add(node.row);
+		}
+	}
+
+	/**
+	 * Removes the hierarchies of a cube, e.g., since statements have been
+	 * loaded for or removed with the dataset.
+	 * 
+	 * @param cube
+	 */
+	public synchronized void invalidate(String cube) {
+		cubes.remove(cube);
+	}
+
+	/**
+	 * Removes all entries, e.g., since statements have been loaded into or
+	 * removed from the store.
+	 */
+	public synchronized void clear() {
+		cubes.clear();
+	}
+}
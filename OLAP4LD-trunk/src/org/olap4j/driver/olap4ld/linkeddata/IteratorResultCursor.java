@@ -0,0 +1,61 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Cursor over rows that are already in memory, e.g., for engines that still
+ * materialise their results.
+ */
+public class IteratorResultCursor implements ResultCursor {
+
+	private Iterator<Node[]> iterator;
+
+	/**
+	 * @param result
+	 *            or null if the engine did not return a result
+	 */
+	public IteratorResultCursor(List<Node[]> result) {
+		this(result == null ? null : result.iterator());
+	}
+
+	public IteratorResultCursor(Iterator<Node[]> iterator) {
+		this.iterator = iterator;
+	}
+
+	public boolean hasNext() {
+		return iterator != null && iterator.hasNext();
+	}
+
+	public Node[] next() {
+		return iterator.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		iterator = null;
+	}
+}
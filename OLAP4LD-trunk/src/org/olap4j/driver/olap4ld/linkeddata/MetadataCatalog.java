@@ -0,0 +1,239 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * In-memory catalog of the metadata of loaded datasets: For every dataset
+ * (cube) and metadata query template, e.g., of dimensions, hierarchies,
+ * levels or members, the result of the template restricted to the cube only.
+ * Further restrictions are answered from hash indexes on the unique names
+ * without accessing the store.
+ * 
+ * Entries are built lazily, once a template is queried for a dataset, and
+ * are invalidated per dataset if statements are loaded for or removed with
+ * the dataset, see invalidate(). Statements that any dataset may use, e.g.,
+ * owl:sameAs links or vocabularies, clear the whole catalog, see clear().
+ * 
+ * Very large results, e.g., of degenerated members of a large dataset, are
+ * not catalogued, so that they are still queried from the store with all
+ * restrictions.
+ */
+public class MetadataCatalog {
+
+	/**
+	 * Columns that restrictions are looked up in, from least to most
+	 * selective.
+	 */
+	public static final String[] INDEXED_COLUMNS = new String[] {
+			"?DIMENSION_UNIQUE_NAME", "?HIERARCHY_UNIQUE_NAME",
+			"?LEVEL_UNIQUE_NAME", "?MEMBER_UNIQUE_NAME" };
+
+	/**
+	 * Default maximum number of rows of a catalogued result.
+	 */
+	public static final int DEFAULT_MAX_ROWS = 100000;
+
+	/**
+	 * Result of a template for one cube with indexes on the indexed columns.
+	 */
+	private static class Table {
+		Node[] header;
+		List<Node[]> rows;
+		Map<String, Map<String, List<Node[]>>> indexes = new HashMap<String, Map<String, List<Node[]>>>();
+	}
+
+	private final int maxRows;
+
+	/**
+	 * Tables by cube and template. A table without rows marks a result that
+	 * was too large to be catalogued.
+	 */
+	private Map<String, Map<String, Table>> cubes = new HashMap<String, Map<String, Table>>();
+
+	public MetadataCatalog() {
+		this(DEFAULT_MAX_ROWS);
+	}
+
+	public MetadataCatalog(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * @return maximum number of rows of a catalogued result
+	 */
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * @param cube
+	 * @param template
+	 * @return whether the result of the template has been added for the cube,
+	 *         even if it was too large.
+	 */
+	public synchronized boolean contains(String cube, String template) {
+		Map<String, Table> tables = cubes.get(cube);
+		return tables != null && tables.containsKey(template);
+	}
+
+	/**
+	 * Adds the result of a template restricted to the cube only.
+	 * 
+	 * @param cube
+	 * @param template
+	 * @param result
+	 *            header and rows, more than getMaxRows() rows mark the
+	 *            result as too large
+	 */
+	public synchronized void put(String cube, String template,
+			List<Node[]> result) {
+		Table table = new Table();
+		if (result.size() <= maxRows + 1) {
+			table.header = result.get(0);
+			table.rows = new ArrayList<Node[]>(result.subList(1,
+					result.size()));
+
+			Map<String, Integer> fields = Olap4ldLinkedDataUtil
+					.getNodeResultFields(table.header);
+			for (String column : INDEXED_COLUMNS) {
+				Integer index = fields.get(column);
+				if (index == null) {
+					continue;
+				}
+				Map<String, List<Node[]>> values = new HashMap<String, List<Node[]>>();
+				for (Node[] row : table.rows) {
+					String value = row[index].toString();
+					List<Node[]> valuerows = values.get(value);
+					if (valuerows == null) {
+						valuerows = new ArrayList<Node[]>(1);
+						values.put(value, valuerows);
+					}
+					valuerows.add(row);
+				}
+				table.indexes.put(column, values);
+			}
+		}
+
+		Map<String, Table> tables = cubes.get(cube);
+		if (tables == null) {
+			tables = new HashMap<String, Table>();
+			cubes.put(cube, tables);
+		}
+		tables.put(template, table);
+	}
+
+	/**
+	 * Returns the rows of the template for the cube that match the
+	 * restrictions. Restrictions of columns that the template does not
+	 * return cannot be answered from the catalog.
+	 * 
+	 * @param cube
+	 * @param template
+	 * @param restrictions
+	 *            values of indexed columns, e.g., ?LEVEL_UNIQUE_NAME
+	 * @return header and matching rows or null if not catalogued or if a
+	 *         restricted column is not returned
+	 */
+	public synchronized List<Node[]> lookup(String cube, String template,
+			Map<String, String> restrictions) {
+		Map<String, Table> tables = cubes.get(cube);
+		if (tables == null) {
+			return null;
+		}
+		Table table = tables.get(template);
+		if (table == null || table.rows == null) {
+			return null;
+		}
+		Map<String, Integer> fields = Olap4ldLinkedDataUtil
+				.getNodeResultFields(table.header);
+		if (!fields.keySet().containsAll(restrictions.keySet())) {
+			// The template restricts the column, the catalog does not know
+			// how.
+			return null;
+		}
+
+		// Start with the most selective index
+		List<Node[]> candidates = table.rows;
+		String indexedcolumn = null;
+		for (String column : INDEXED_COLUMNS) {
+			String value = restrictions.get(column);
+			Map<String, List<Node[]>> index = table.indexes.get(column);
+			if (value == null || index == null) {
+				continue;
+			}
+			List<Node[]> valuerows = index.get(value);
+			if (valuerows == null) {
+				candidates = new ArrayList<Node[]>();
+				indexedcolumn = column;
+				break;
+			}
+			if (valuerows.size() <= candidates.size()) {
+				candidates = valuerows;
+				indexedcolumn = column;
+			}
+		}
+
+		List<Node[]> result = new ArrayList<Node[]>(candidates.size() + 1);
+		result.add(table.header);
+		for (Node[] row : candidates) {
+			boolean matches = true;
+			for (Map.Entry<String, String> restriction : restrictions
+					.entrySet()) {
+				if (restriction.getKey().equals(indexedcolumn)) {
+					continue;
+				}
+				int index = fields.get(restriction.getKey());
+				if (!restriction.getValue().equals(row[index].toString())) {
+					matches = false;
+					break;
+				}
+			}
+			if (matches) {
+				result.add(row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the entries of a cube, e.g., since statements have been loaded
+	 * for or removed with the dataset.
+	 * 
+	 * @param cube
+	 */
+	public synchronized void invalidate(String cube) {
+		cubes.remove(cube);
+	}
+
+	/**
+	 * Removes all entries, e.g., since statements have been loaded into or
+	 * removed from the store.
+	 */
+	public synchronized void clear() {
+		cubes.clear();
+	}
+}
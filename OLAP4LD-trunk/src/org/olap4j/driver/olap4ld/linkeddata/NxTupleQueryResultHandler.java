@@ -0,0 +1,167 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryResultHandlerException;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+/**
+ * Collects the solutions of a Sesame tuple query directly as Node[] rows.
+ *
+ * Before, results were written as SPARQL/XML, transformed to nx via
+ * xml2nx.xsl and parsed again with the NxParser. This handler produces the
+ * same rows without that round-trip: The first row is the header with one
+ * Variable per binding name, every other row contains one Node per binding
+ * name. Unbound values are represented as &lt;null&gt;, as the xslt does.
+ */
+public class NxTupleQueryResultHandler implements TupleQueryResultHandler {
+
+	/**
+	 * Node that xml2nx.xsl used for a variable without binding.
+	 */
+	public static final Node UNBOUND = new Resource("null");
+
+	private List<String> bindingNames;
+
+	private List<Node[]> bindings;
+
+	/**
+	 * Creates handler that adds the rows to a new list.
+	 */
+	public NxTupleQueryResultHandler() {
+		this(new ArrayList<Node[]>());
+	}
+
+	/**
+	 * Creates handler that adds the rows to the given list.
+	 *
+	 * @param bindings
+	 */
+	public NxTupleQueryResultHandler(List<Node[]> bindings) {
+		this.bindings = bindings;
+	}
+
+	/**
+	 * @return header row followed by one row per solution.
+	 */
+	public List<Node[]> getBindings() {
+		return bindings;
+	}
+
+	public void startQueryResult(List<String> bindingNames)
+			throws TupleQueryResultHandlerException {
+		this.bindingNames = bindingNames;
+		bindings.add(createHeader(bindingNames));
+	}
+
+	public void handleSolution(BindingSet bindingSet)
+			throws TupleQueryResultHandlerException {
+		bindings.add(createRow(bindingNames, bindingSet));
+	}
+
+	public void endQueryResult() throws TupleQueryResultHandlerException {
+		;
+	}
+
+	public void handleBoolean(boolean value)
+			throws QueryResultHandlerException {
+		// Only tuple queries are handled.
+		throw new UnsupportedOperationException(
+				"Boolean results cannot be transformed into nx.");
+	}
+
+	public void handleLinks(List<String> linkUrls)
+			throws QueryResultHandlerException {
+		// Links are ignored as by xml2nx.xsl.
+		;
+	}
+
+	/**
+	 * Header row: ?NAME for every binding name.
+	 *
+	 * @param bindingNames
+	 * @return
+	 */
+	public static Node[] createHeader(List<String> bindingNames) {
+		Node[] header = new Node[bindingNames.size()];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = new Variable(bindingNames.get(i));
+		}
+		return header;
+	}
+
+	/**
+	 * One row of a result, in the order of the binding names.
+	 *
+	 * @param bindingNames
+	 * @param bindingSet
+	 * @return
+	 */
+	public static Node[] createRow(List<String> bindingNames,
+			BindingSet bindingSet) {
+		Node[] row = new Node[bindingNames.size()];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = convertValueToNode(bindingSet.getValue(bindingNames
+					.get(i)));
+		}
+		return row;
+	}
+
+	/**
+	 * Converts a Sesame value into the Node the NxParser would have returned
+	 * for the output of xml2nx.xsl.
+	 *
+	 * @param value
+	 *            or null if unbound
+	 * @return
+	 */
+	public static Node convertValueToNode(Value value) {
+		if (value == null) {
+			return UNBOUND;
+		} else if (value instanceof URI) {
+			return new Resource(value.stringValue());
+		} else if (value instanceof BNode) {
+			return new org.semanticweb.yars.nx.BNode(
+					((BNode) value).getID());
+		} else {
+			org.openrdf.model.Literal literal = (org.openrdf.model.Literal) value;
+			if (literal.getDatatype() != null) {
+				return new Literal(literal.getLabel(), null, new Resource(
+						literal.getDatatype().stringValue()));
+			} else if (literal.getLanguage() != null) {
+				return new Literal(literal.getLabel(), literal.getLanguage(),
+						null);
+			} else {
+				return new Literal(literal.getLabel());
+			}
+		}
+	}
+}
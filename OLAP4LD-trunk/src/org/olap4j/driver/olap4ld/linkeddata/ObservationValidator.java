@@ -0,0 +1,466 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+
+/**
+ * Checks the integrity constraints of the QB specification that are about
+ * single observations, streaming the observations of the store dataset by
+ * dataset:
+ * 
+ * IC-1. Unique DataSet, IC-11. All dimensions required, IC-12. No duplicate
+ * observations, IC-13. Required attributes, IC-14. All measures present.
+ * 
+ * The components of a data structure definition are only queried once per
+ * dataset. Duplicate observations are found with a hash set of 64-bit
+ * fingerprints of the dimension values of the observations of the dataset
+ * that is checked, i.e., in linear instead of quadratic time. A fingerprint
+ * seen twice is confirmed in the store. Only the fingerprints of one dataset
+ * are kept in memory at a time, and observations are not remembered: an
+ * observation contained in several contexts is only checked with the first
+ * of its contexts. Thus, the constraints can also be checked for large
+ * cubes.
+ * 
+ * The store needs to be normalised, i.e., observations need to be typed or
+ * linked to their dataset directly.
+ * 
+ */
+public class ObservationValidator {
+
+	private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+	private static final String XSD_BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+
+	private static final String QB = "http://purl.org/linked-data/cube#";
+
+	public static final String IC_1 = "IC-1";
+
+	public static final String IC_11 = "IC-11";
+
+	public static final String IC_12 = "IC-12";
+
+	public static final String IC_13 = "IC-13";
+
+	public static final String IC_14 = "IC-14";
+
+	/**
+	 * Components of the structure of a dataset and the fingerprints of the
+	 * keys of its observations seen so far.
+	 */
+	private class DatasetStructure {
+		List<URI> dimensions = new ArrayList<URI>();
+		List<URI> measures = new ArrayList<URI>();
+		List<URI> requiredAttributes = new ArrayList<URI>();
+		boolean measureDimension = false;
+		Set<Long> keys = new HashSet<Long>();
+	}
+
+	private RepositoryConnection con;
+
+	private URI type;
+	private URI observation;
+	private URI dataset;
+	private URI structure;
+	private URI component;
+	private URI componentProperty;
+	private URI componentRequired;
+	private URI dimensionProperty;
+	private URI measureProperty;
+	private URI measureType;
+	private Literal requiredTrue;
+
+	/**
+	 * Per violated constraint, the first observation that violates it.
+	 */
+	private Map<String, Value> violations = new LinkedHashMap<String, Value>();
+
+	private int observations = 0;
+
+	public ObservationValidator(RepositoryConnection con) {
+		this.con = con;
+
+		ValueFactory factory = con.getValueFactory();
+		type = factory.createURI(RDF_TYPE);
+		observation = factory.createURI(QB + "Observation");
+		dataset = factory.createURI(QB + "dataSet");
+		structure = factory.createURI(QB + "structure");
+		component = factory.createURI(QB + "component");
+		componentProperty = factory.createURI(QB + "componentProperty");
+		componentRequired = factory.createURI(QB + "componentRequired");
+		dimensionProperty = factory.createURI(QB + "DimensionProperty");
+		measureProperty = factory.createURI(QB + "MeasureProperty");
+		measureType = factory.createURI(QB + "measureType");
+		requiredTrue = factory.createLiteral("true",
+				factory.createURI(XSD_BOOLEAN));
+	}
+
+	/**
+	 * Goes through all observations, i.e., resources linked to a dataset, one
+	 * dataset after the other, and then through the resources typed as
+	 * qb:Observation that are not linked to a dataset.
+	 * 
+	 * @throws RepositoryException
+	 */
+	public void validate() throws RepositoryException {
+		// Datasets are few compared to observations.
+		Set<Value> datasets = new HashSet<Value>();
+		RepositoryResult<Statement> linked = con.getStatements(null, dataset,
+				null, false);
+		try {
+			while (linked.hasNext()) {
+				datasets.add(linked.next().getObject());
+			}
+		} finally {
+			linked.close();
+		}
+
+		for (Value ds : datasets) {
+			validateDataset(ds);
+		}
+
+		// IC-1. Unique DataSet, for observations without dataset
+		RepositoryResult<Statement> typed = con.getStatements(null, type,
+				observation, false);
+		try {
+			while (typed.hasNext()) {
+				Statement st = typed.next();
+				Resource obs = st.getSubject();
+				if (isFirstContext(st)
+						&& !con.hasStatement(obs, dataset, null, false)) {
+					observations++;
+					addViolation(IC_1, obs);
+				}
+			}
+		} finally {
+			typed.close();
+		}
+	}
+
+	/**
+	 * Checks the observations of a dataset. The fingerprints of their keys
+	 * are dropped afterwards.
+	 * 
+	 * @param ds
+	 * @throws RepositoryException
+	 */
+	private void validateDataset(Value ds) throws RepositoryException {
+		DatasetStructure dsd = getStructure(ds);
+
+		RepositoryResult<Statement> linked = con.getStatements(null, dataset,
+				ds, false);
+		try {
+			while (linked.hasNext()) {
+				Statement st = linked.next();
+				if (isFirstContext(st)) {
+					validateObservation(st.getSubject(), ds, dsd);
+				}
+			}
+		} finally {
+			linked.close();
+		}
+	}
+
+	private void validateObservation(Resource obs, Value ds,
+			DatasetStructure dsd) throws RepositoryException {
+		Map<URI, Set<Value>> values = getValues(obs);
+
+		// IC-1. Unique DataSet
+		Set<Value> datasets = values.get(dataset);
+		if (datasets.size() != 1) {
+			addViolation(IC_1, obs);
+		}
+		// Counted with the first of its datasets only
+		if (isFirst(ds, datasets)) {
+			observations++;
+		}
+
+		// IC-11. All dimensions required, IC-12. No duplicate observations
+		long key = 0xcbf29ce484222325L;
+		boolean complete = true;
+		for (URI dim : dsd.dimensions) {
+			Set<Value> dimvalues = values.get(dim);
+			if (dimvalues == null) {
+				addViolation(IC_11, obs);
+				complete = false;
+				break;
+			}
+			key = hash(key, dimvalues);
+		}
+		if (complete && !dsd.dimensions.isEmpty() && !dsd.keys.add(key)
+				&& hasDuplicate(obs, ds, dsd, values)) {
+			addViolation(IC_12, obs);
+		}
+
+		// IC-13. Required attributes
+		for (URI attr : dsd.requiredAttributes) {
+			if (!values.containsKey(attr)) {
+				addViolation(IC_13, obs);
+			}
+		}
+
+		// IC-14. All measures present
+		if (!dsd.measureDimension) {
+			for (URI measure : dsd.measures) {
+				if (!values.containsKey(measure)) {
+					addViolation(IC_14, obs);
+				}
+			}
+		}
+	}
+
+	private Map<URI, Set<Value>> getValues(Resource obs)
+			throws RepositoryException {
+		Map<URI, Set<Value>> values = new HashMap<URI, Set<Value>>();
+		RepositoryResult<Statement> statements = con.getStatements(obs, null,
+				null, false);
+		try {
+			while (statements.hasNext()) {
+				Statement st = statements.next();
+				Set<Value> objects = values.get(st.getPredicate());
+				if (objects == null) {
+					objects = new HashSet<Value>(2);
+					values.put(st.getPredicate(), objects);
+				}
+				objects.add(st.getObject());
+			}
+		} finally {
+			statements.close();
+		}
+		return values;
+	}
+
+	/**
+	 * Looks in the store for another observation of the dataset with the
+	 * same dimension values, since fingerprints of different keys may be
+	 * equal.
+	 * 
+	 * @param obs
+	 * @param ds
+	 * @param dsd
+	 * @param values
+	 *            of obs
+	 * @return
+	 * @throws RepositoryException
+	 */
+	private boolean hasDuplicate(Resource obs, Value ds, DatasetStructure dsd,
+			Map<URI, Set<Value>> values) throws RepositoryException {
+		URI first = dsd.dimensions.get(0);
+		Value value = values.get(first).iterator().next();
+		RepositoryResult<Statement> candidates = con.getStatements(null, first,
+				value, false);
+		try {
+			while (candidates.hasNext()) {
+				Resource other = candidates.next().getSubject();
+				if (other.equals(obs)
+						|| !con.hasStatement(other, dataset, ds, false)) {
+					continue;
+				}
+				boolean same = true;
+				for (URI dim : dsd.dimensions) {
+					if (!values.get(dim).equals(getObjects(other, dim))) {
+						same = false;
+						break;
+					}
+				}
+				if (same) {
+					return true;
+				}
+			}
+		} finally {
+			candidates.close();
+		}
+		return false;
+	}
+
+	/**
+	 * @param st
+	 * @return whether the context of the statement is the first of the
+	 *         contexts that contain it.
+	 * @throws RepositoryException
+	 */
+	private boolean isFirstContext(Statement st) throws RepositoryException {
+		if (st.getContext() == null) {
+			return true;
+		}
+		String context = st.getContext().stringValue();
+		RepositoryResult<Statement> same = con.getStatements(st.getSubject(),
+				st.getPredicate(), st.getObject(), false);
+		try {
+			while (same.hasNext()) {
+				Resource other = same.next().getContext();
+				if (other == null
+						|| other.stringValue().compareTo(context) < 0) {
+					return false;
+				}
+			}
+		} finally {
+			same.close();
+		}
+		return true;
+	}
+
+	private static boolean isFirst(Value value, Set<Value> values) {
+		for (Value other : values) {
+			if (other.stringValue().compareTo(value.stringValue()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the values of a dimension to a 64-bit FNV-1a hash, the values of a
+	 * dimension with several values in any order.
+	 * 
+	 * @param hash
+	 * @param values
+	 * @return
+	 */
+	private static long hash(long hash, Set<Value> values) {
+		long sum = 0;
+		for (Value value : values) {
+			// Not to be confused with a literal of the same label
+			String string = value instanceof URI ? "<" + value.stringValue()
+					+ ">" : value.toString();
+			long valuehash = 0xcbf29ce484222325L;
+			for (int i = 0; i < string.length(); i++) {
+				valuehash ^= string.charAt(i);
+				valuehash *= 0x100000001b3L;
+			}
+			sum += valuehash;
+		}
+		for (int i = 0; i < 8; i++) {
+			hash ^= (sum >>> (i * 8)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private DatasetStructure getStructure(Value ds) throws RepositoryException {
+		DatasetStructure dsd = new DatasetStructure();
+		if (!(ds instanceof Resource)) {
+			return dsd;
+		}
+
+		// Sets, since components may be contained in several contexts and
+		// several structures (IC-2 is checked separately).
+		Set<URI> dimensions = new HashSet<URI>();
+		Set<URI> measures = new HashSet<URI>();
+		Set<URI> requiredAttributes = new HashSet<URI>();
+		for (Value struct : getObjects((Resource) ds, structure)) {
+			if (!(struct instanceof Resource)) {
+				continue;
+			}
+			for (Value comp : getObjects((Resource) struct, component)) {
+				if (!(comp instanceof Resource)) {
+					continue;
+				}
+				boolean required = con.hasStatement((Resource) comp,
+						componentRequired, requiredTrue, false);
+				for (Value prop : getObjects((Resource) comp,
+						componentProperty)) {
+					if (!(prop instanceof URI)) {
+						continue;
+					}
+					URI property = (URI) prop;
+					if (property.equals(measureType)) {
+						dsd.measureDimension = true;
+					}
+					if (con.hasStatement(property, type, dimensionProperty,
+							false)) {
+						dimensions.add(property);
+					}
+					if (con.hasStatement(property, type, measureProperty,
+							false)) {
+						measures.add(property);
+					}
+					if (required) {
+						requiredAttributes.add(property);
+					}
+				}
+			}
+		}
+		dsd.dimensions.addAll(dimensions);
+		dsd.measures.addAll(measures);
+		dsd.requiredAttributes.addAll(requiredAttributes);
+		return dsd;
+	}
+
+	private Set<Value> getObjects(Resource subject, URI predicate)
+			throws RepositoryException {
+		Set<Value> objects = new HashSet<Value>();
+		RepositoryResult<Statement> result = con.getStatements(subject,
+				predicate, null, false);
+		try {
+			while (result.hasNext()) {
+				objects.add(result.next().getObject());
+			}
+		} finally {
+			result.close();
+		}
+		return objects;
+	}
+
+	private void addViolation(String constraint, Value obs) {
+		if (!violations.containsKey(constraint)) {
+			violations.put(constraint, obs);
+		}
+	}
+
+	/**
+	 * @param constraint
+	 *            e.g., IC_12
+	 * @return whether some observation violates the constraint.
+	 */
+	public boolean isViolated(String constraint) {
+		return violations.containsKey(constraint);
+	}
+
+	/**
+	 * @param constraint
+	 * @return the first observation that violates the constraint or null.
+	 */
+	public Value getViolatingObservation(String constraint) {
+		return violations.get(constraint);
+	}
+
+	/**
+	 * @return number of observations checked.
+	 */
+	public int getObservationCount() {
+		return observations;
+	}
+}
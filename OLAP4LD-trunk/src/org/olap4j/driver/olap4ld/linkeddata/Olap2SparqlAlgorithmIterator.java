@@ -2,7 +2,6 @@ package org.olap4j.driver.olap4ld.linkeddata;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -36,8 +35,7 @@ public class Olap2SparqlAlgorithmIterator implements PhysicalOlapIterator {
 
 	private LinkedDataCubesEngine engine;
 	private String query;
-	private List<Node[]> result;
-	private Iterator<Node[]> outputiterator;
+	private ResultCursor outputiterator;
 	private HashMap<Integer, Integer> levelHeightMap;
 	private ArrayList<Node[]> newmeasures;
 	private PhysicalOlapIterator inputiterator;
@@ -1036,16 +1034,7 @@ public class Olap2SparqlAlgorithmIterator implements PhysicalOlapIterator {
 	}
 
 	public boolean hasNext() {
-		// Init?
-		if (result == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-		return outputiterator.hasNext();
+		return getOutputIterator().hasNext();
 	}
 
 	/**
@@ -1055,17 +1044,21 @@ public class Olap2SparqlAlgorithmIterator implements PhysicalOlapIterator {
 	 * (List<Node[]>) with each
 	 */
 	public Object next() {
+		return getOutputIterator().next();
+	}
 
-		// Init?
-		if (result == null) {
-			try {
-				init();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+	/**
+	 * The query is only issued when the first row is read, so that an
+	 * iterator that is initialised but not read does not hold a connection.
+	 * 
+	 * @return
+	 */
+	private ResultCursor getOutputIterator() {
+		if (outputiterator == null) {
+			// Rows are streamed from the engine.
+			outputiterator = engine.executeSparqlSelectQueryCursor(query);
 		}
-		return outputiterator.next();
+		return outputiterator;
 	}
 
 	@Override
@@ -1075,29 +1068,27 @@ public class Olap2SparqlAlgorithmIterator implements PhysicalOlapIterator {
 
 	@Override
 	public void init() throws Exception {
-		
-		if (result == null) {
-
-			// We have to init also the input iterators.
-			this.inputiterator.init();
-			
-			this.result = engine.executeSparqlSelectQuery(query, false);
-
-			// Not done, anymore.
-			// After evaluation, we do "entity-consolidation"
-			// this.result = this.engine
-			// .replaceIdentifiersWithCanonical(this.result);
-		}
 
-		// Does not have input operators, therefore no other init necessary.
+		// Rewind: The result is not kept in memory, therefore, we free the
+		// old cursor, the query is issued again when read.
+		close();
 
-		this.outputiterator = this.result.iterator();
+		// We have to init also the input iterators.
+		this.inputiterator.init();
 
+		// Not done, anymore.
+		// After evaluation, we do "entity-consolidation"
+		// this.result = this.engine
+		// .replaceIdentifiersWithCanonical(this.result);
 	}
 
 	@Override
 	public void close() throws Exception {
-		;
+		if (outputiterator != null) {
+			outputiterator.close();
+			outputiterator = null;
+		}
+		this.inputiterator.close();
 	}
 
 	@Override
@@ -0,0 +1,87 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Passes on the rows of a cursor that reads from datasets in the store. The
+ * datasets are opened in DatasetContexts, so that they are not evicted
+ * while the cursor is read, and released once the cursor is closed.
+ */
+public class OpenDatasetsCursor implements ResultCursor {
+
+	private ResultCursor cursor;
+
+	private DatasetContexts contexts;
+
+	private List<String> datasets;
+
+	/**
+	 * @param cursor
+	 * @param contexts
+	 * @param datasets
+	 *            already opened with DatasetContexts.open()
+	 */
+	public OpenDatasetsCursor(ResultCursor cursor, DatasetContexts contexts,
+			List<String> datasets) {
+		this.cursor = cursor;
+		this.contexts = contexts;
+		this.datasets = datasets;
+	}
+
+	public boolean hasNext() {
+		if (cursor == null) {
+			return false;
+		}
+		if (cursor.hasNext()) {
+			return true;
+		}
+		close();
+		return false;
+	}
+
+	public Node[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return cursor.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (cursor == null) {
+			return;
+		}
+		try {
+			cursor.close();
+		} finally {
+			cursor = null;
+			for (String dataset : datasets) {
+				contexts.release(dataset);
+			}
+		}
+	}
+}
@@ -19,7 +19,6 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -41,7 +40,6 @@ import org.semanticweb.yars.nx.Literal;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
 import org.semanticweb.yars.nx.Variable;
-import org.semanticweb.yars.nx.parser.NxParser;
 
 /**
  * The OpenVirtuosoEngine uses an Open Virtuoso SPARQL endpoint for executing
@@ -101,7 +99,10 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 
 	private PhysicalOlapQueryPlan execplan;
 
-	private HashMap<Integer, List<Node[]>> sparqlResultMap;
+	/**
+	 * Results of metadata queries, emptied by rollback().
+	 */
+	private SparqlResultCache sparqlResultCache = new SparqlResultCache();
 
 	// Not needed any more since we use materialisation.
 	// private List<List<Node>> equivalenceList;
@@ -203,36 +204,31 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 	/**
 	 * I think, caching some sparql results would be very useful.
 	 * 
-	 * I create a map between hash value of sparql query and the Nodes.
-	 * 
-	 * If the value is available, I return it.
-	 * 
-	 * However, when to empty the cache? I empty the cache if I populate a new
-	 * cube.
+	 * Results of queries with caching are kept in a bounded cache keyed by
+	 * the normalised query. We do not change the data of the endpoint, so the
+	 * cache is only emptied by rollback().
 	 * 
 	 * @param query
 	 * @param caching
-	 *            (not used)
+	 *            whether the result may be taken from and put into the cache
+	 *            (metadata queries); observation queries should not be cached.
 	 * @return
 	 */
 	public List<Node[]> executeSparqlSelectQuery(String query, boolean caching) {
 
-		Olap4ldUtil._log.config("SPARQL query: " + query);
-	
-		// XXX: Caching false
-		caching = false;
-
-		Integer hash = null;
-		if (caching) {
-			hash = query.hashCode();
-		}
 		if (caching) {
-			if (this.sparqlResultMap.containsKey(hash)) {
-				return this.sparqlResultMap.get(hash);
+			List<Node[]> cachedResult = sparqlResultCache.get(query);
+			if (cachedResult != null) {
+				Olap4ldUtil._log.config("SPARQL query (cached): " + query);
+				return cachedResult;
 			}
 		}
-		
+
 		Olap4ldUtil._log.config("SPARQL query: " + query);
+
+		// The epoch of the cache when the query is issued.
+		long epoch = sparqlResultCache.getEpoch();
+
 		List<Node[]> result;
 		switch (SPARQLSERVERTYPE) {
 		case QCRUMB:
@@ -252,23 +248,47 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		}
 
 		if (caching) {
-			if (this.sparqlResultMap != null
-					&& !this.sparqlResultMap.containsKey(hash)) {
-				this.sparqlResultMap.put(hash, result);
-			} else {
-				// TODO: Problem: If this method is run simultaneously, it could
-				// be that this happens.
-				// throw new UnsupportedOperationException(
-				// "Hash key should not be contained.");
-			}
+			sparqlResultCache.put(query, epoch, result);
 		}
 		return result;
 		
 	}
 	
+	/**
+	 * Streams the result of a SPARQL query as Node[] rows. As for
+	 * executeSparqlSelectQuery, the first row is the header.
+	 * 
+	 * The caller has to close the cursor if not all rows are read.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	public ResultCursor executeSparqlSelectQueryCursor(String query) {
+
+		Olap4ldUtil._log.config("SPARQL query: " + query);
+
+		switch (SPARQLSERVERTYPE) {
+		case OPENVIRTUOSO:
+			return sparqlOpenVirtuosoCursor(query);
+		default:
+			return new IteratorResultCursor(new ArrayList<Node[]>());
+		}
+	}
+
 	private List<Node[]> sparqlOpenVirtuoso(String query) {
 		List<Node[]> myBindings = new ArrayList<Node[]>();
 
+		ResultCursor cursor = sparqlOpenVirtuosoCursor(query);
+		while (cursor.hasNext()) {
+			myBindings.add(cursor.next());
+		}
+		cursor.close();
+
+		return myBindings;
+	}
+
+	private ResultCursor sparqlOpenVirtuosoCursor(String query) {
+
 		try {
 
 			// Better? ISO-8859-1
@@ -298,7 +318,8 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 			// con.setRequestProperty("Accept",
 			// "application/sparql-results+json");
 			// con.setRequestProperty("Accept", "text/n3");
-			con.setRequestProperty("Accept", "application/sparql-results+xml");
+			// We prefer SPARQL/XML but take what the endpoint supports.
+			con.setRequestProperty("Accept", SparqlResultCursor.ACCEPT);
 			con.setRequestMethod("POST");
 
 			if (con.getResponseCode() != 200) {
@@ -307,31 +328,13 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 						+ con.getResponseCode());
 			}
 
-			// InputStream inputStream = con.getInputStream();
-			// String test = XmlaOlap4jUtil.convertStreamToString(inputStream);
-			// _log.config("XML output: " + test);
-
-			// Transform sparql xml to nx
-			InputStream nx = Olap4ldLinkedDataUtil.transformSparqlXmlToNx(con
-					.getInputStream());
-			String test2 = Olap4ldLinkedDataUtil.convertStreamToString(nx);
-			Olap4ldUtil._log.config("NX output: " + test2);
-			nx.reset();
-
-			NxParser nxp = new NxParser(nx);
-
-			Node[] nxx;
-			while (nxp.hasNext()) {
-				try {
-					nxx = nxp.next();
-					myBindings.add(nxx);
-				} catch (Exception e) {
-					Olap4ldUtil._log
-							.warning("NxParser: Could not parse properly: "
-									+ e.getMessage());
-				}
-				;
-			}
+			Olap4ldUtil._log.config("SPARQL result format: "
+					+ con.getContentType());
+
+			// Rows are parsed while the response is arriving.
+			return SparqlResultCursor.create(con.getInputStream(),
+					con.getContentType());
+
 		} catch (UnsupportedEncodingException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -343,7 +346,7 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 			e.printStackTrace();
 		}
 
-		return myBindings;
+		return new IteratorResultCursor(new ArrayList<Node[]>());
 	}
 
 	public boolean isLoaded(URL resource) {
@@ -2154,6 +2157,19 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		return result;
 	}
 
+	/**
+	 * Members are merged per dataset, therefore, they are materialised as in
+	 * getMembers().
+	 */
+	public ResultCursor getMembersCursor(Restrictions restrictions)
+			throws OlapException {
+		return new IteratorResultCursor(getMembers(restrictions));
+	}
+
+	public boolean isMemberUniqueNamesSupported() {
+		return false;
+	}
+
 	private List<Node[]> getMembersPerDataSet(Restrictions restrictions) {
 		List<Node[]> result = new ArrayList<Node[]>();
 		List<Node[]> intermediaryresult = null;
@@ -2354,6 +2370,7 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
 		querytemplate = querytemplate.replace("{{{FILTERS}}}",
 				additionalFilters);
+		querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 		List<Node[]> memberUris2 = executeSparqlSelectQuery(querytemplate, true);
 
@@ -2430,6 +2447,7 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 					TABLE_SCHEM);
 			querytemplate = querytemplate.replace("{{{FILTERS}}}",
 					additionalFilters);
+			querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 			List<Node[]> memberUris = executeSparqlSelectQuery(querytemplate, true);
 
@@ -2498,6 +2516,7 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
 		querytemplate = querytemplate.replace("{{{FILTERS}}}",
 				additionalFilters);
+		querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 		List<Node[]> memberUris1 = executeSparqlSelectQuery(querytemplate, true);
 
@@ -2639,30 +2658,12 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 	@Override
 	public List<Node[]> executeOlapQuery(LogicalOlapQueryPlan queryplan)
 			throws OlapException {
-		// Log logical query plan
-
-		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan.");
-		long time = System.currentTimeMillis();
-
-		// Create physical query plan
-		this.execplan = createExecplan(queryplan);
-
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Physical query plan: "
-						+ execplan.toString());
 
-		time = System.currentTimeMillis() - time;
-		Olap4ldUtil._log
-				.info("Execute logical query plan: Generate physical query plan finished in "
-						+ time + "ms.");
+		ResultCursor resultCursor = executeOlapQueryCursor(queryplan);
 
 		Olap4ldUtil._log
 				.info("Execute logical query plan: Execute physical query plan.");
-		time = System.currentTimeMillis();
-		PhysicalOlapIterator resultIterator = this.execplan.getIterator();
+		long time = System.currentTimeMillis();
 
 		/*
 		 * We create our own List<Node[]> result with every item
@@ -2671,11 +2672,12 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		 * metadata a member and for each measure in the measure list a value.
 		 */
 		List<Node[]> result = new ArrayList<Node[]>();
-		while (resultIterator.hasNext()) {
-			Object nextObject = resultIterator.next();
-			// Will be Node[]
-			Node[] node = (Node[]) nextObject;
-			result.add(node);
+		try {
+			while (resultCursor.hasNext()) {
+				result.add(resultCursor.next());
+			}
+		} finally {
+			resultCursor.close();
 		}
 
 		time = System.currentTimeMillis() - time;
@@ -2686,6 +2688,35 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 		return result;
 	}
 
+	/**
+	 * Same as executeOlapQuery(queryplan), but the resulting observations are
+	 * pulled through the physical query plan while the cursor is read.
+	 */
+	public ResultCursor executeOlapQueryCursor(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		// Log logical query plan
+
+		Olap4ldUtil._log.config("Logical query plan: " + queryplan.toString());
+
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Generate physical query plan.");
+		long time = System.currentTimeMillis();
+
+		// Create physical query plan
+		this.execplan = createExecplan(queryplan);
+
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Physical query plan: "
+						+ execplan.toString());
+
+		time = System.currentTimeMillis() - time;
+		Olap4ldUtil._log
+				.info("Execute logical query plan: Generate physical query plan finished in "
+						+ time + "ms.");
+
+		return new PhysicalOlapIteratorCursor(this.execplan.getIterator());
+	}
+
 	@Override
 	public List<Node[]> executeOlapQuery(Cube cube, List<Level> slicesrollups,
 			List<Position> dices, List<Measure> projections)
@@ -2699,6 +2730,7 @@ public class OpenVirtuosoEngine implements LinkedDataCubesEngine {
 	 */
 	public void rollback() {
 		initialize();
+		sparqlResultCache.storeChanged();
 	}
 
 }
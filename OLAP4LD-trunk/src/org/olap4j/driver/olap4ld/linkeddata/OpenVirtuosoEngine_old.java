@@ -2586,4 +2586,23 @@ public class OpenVirtuosoEngine_old implements LinkedDataCubesEngine {
 		// TODO Auto-generated method stub
 		
 	}
+
+	public ResultCursor executeSparqlSelectQueryCursor(String query) {
+		// Results are not streamed by this engine.
+		return new IteratorResultCursor(executeSparqlSelectQuery(query, false));
+	}
+
+	public ResultCursor getMembersCursor(Restrictions restrictions)
+			throws OlapException {
+		return new IteratorResultCursor(getMembers(restrictions));
+	}
+
+	public boolean isMemberUniqueNamesSupported() {
+		return false;
+	}
+
+	public ResultCursor executeOlapQueryCursor(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		return new IteratorResultCursor(executeOlapQuery(queryplan));
+	}
 }
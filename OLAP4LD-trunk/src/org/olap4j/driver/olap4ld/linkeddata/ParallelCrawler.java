@@ -0,0 +1,172 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.olap4j.OlapException;
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+
+/**
+ * Dereferences Linked Data resources in parallel, e.g., all components of a
+ * data structure definition that the directed crawling algorithm needs to
+ * load. Resources of one crawling step do not depend on each other, so
+ * crawling them takes about one round-trip instead of one per resource.
+ * 
+ * The number of worker threads is bounded and at most a few resources are
+ * requested from the same host at the same time in order to be polite.
+ */
+public class ParallelCrawler {
+
+	/**
+	 * Loads a single resource, e.g., into a triple store. Needs to be thread
+	 * safe.
+	 */
+	public interface Loader {
+		public void load(URL uri) throws OlapException;
+	}
+
+	public static final int DEFAULT_THREADS = 8;
+
+	public static final int DEFAULT_THREADS_PER_HOST = 2;
+
+	private ExecutorService executor;
+
+	private int threadsPerHost;
+
+	private HashMap<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+
+	public ParallelCrawler() {
+		this(DEFAULT_THREADS, DEFAULT_THREADS_PER_HOST);
+	}
+
+	public ParallelCrawler(int threads, int threadsPerHost) {
+		this.threadsPerHost = threadsPerHost;
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"olap4ld-crawler");
+						// Should not keep the application alive.
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Loads all resources and returns once all have been loaded. Every
+	 * resource is only loaded once. If loading fails, the first problem is
+	 * thrown after the other resources have been loaded.
+	 * 
+	 * @param uris
+	 * @param loader
+	 * @throws OlapException
+	 */
+	public void loadAll(Collection<URL> uris, final Loader loader)
+			throws OlapException {
+
+		// URL.equals() would resolve hosts
+		LinkedHashSet<String> distinct = new LinkedHashSet<String>();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (final URL uri : uris) {
+			if (!distinct.add(uri.toString())) {
+				continue;
+			}
+			// We wait for a permit before submitting, so that worker threads
+			// are not blocked by requests to a busy host.
+			final Semaphore permits = getHostPermits(uri.getHost());
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OlapException("Crawling was interrupted.", e);
+			}
+			try {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						try {
+							loader.load(uri);
+						} finally {
+							permits.release();
+						}
+						return null;
+					}
+				}));
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		}
+
+		Olap4ldUtil._log.config("Crawl in parallel: " + futures.size()
+				+ " resources");
+
+		Throwable problem = null;
+		for (Future<Object> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OlapException("Crawling was interrupted.", e);
+			} catch (ExecutionException e) {
+				if (problem == null) {
+					problem = e.getCause();
+				}
+			}
+		}
+
+		if (problem instanceof OlapException) {
+			throw (OlapException) problem;
+		} else if (problem instanceof RuntimeException) {
+			throw (RuntimeException) problem;
+		} else if (problem != null) {
+			throw new OlapException("Problem while crawling: "
+					+ problem.getMessage(), problem);
+		}
+	}
+
+	private synchronized Semaphore getHostPermits(String host) {
+		Semaphore permits = hostPermits.get(host);
+		if (permits == null) {
+			permits = new Semaphore(threadsPerHost);
+			hostPermits.put(host, permits);
+		}
+		return permits;
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.NoSuchElementException;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Cursor over the output of the root of a physical OLAP query plan. Rows are
+ * pulled through the operators one at a time; closing the cursor closes the
+ * operators.
+ */
+public class PhysicalOlapIteratorCursor implements ResultCursor {
+
+	private PhysicalOlapIterator iterator;
+
+	public PhysicalOlapIteratorCursor(PhysicalOlapIterator iterator) {
+		this.iterator = iterator;
+	}
+
+	public boolean hasNext() {
+		if (iterator == null) {
+			return false;
+		}
+		if (iterator.hasNext()) {
+			return true;
+		}
+		close();
+		return false;
+	}
+
+	public Node[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		// Will be Node[]
+		return (Node[]) iterator.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (iterator == null) {
+			return;
+		}
+		try {
+			iterator.close();
+		} catch (Exception e) {
+			Olap4ldUtil._log.warning("Warning: Could not close " + iterator
+					+ ": " + e.getMessage());
+		} finally {
+			iterator = null;
+		}
+	}
+}
@@ -1779,6 +1779,7 @@ public class QcrumbEngine implements LinkedDataCubesEngine {
 		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
 		querytemplate = querytemplate.replace("{{{FILTERS}}}",
 				additionalFilters);
+		querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 		List<Node[]> memberUris2 = executeSparqlSelectQuery(querytemplate, true);
 
@@ -1855,6 +1856,7 @@ public class QcrumbEngine implements LinkedDataCubesEngine {
 					TABLE_SCHEM);
 			querytemplate = querytemplate.replace("{{{FILTERS}}}",
 					additionalFilters);
+			querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 			List<Node[]> memberUris = executeSparqlSelectQuery(querytemplate, true);
 
@@ -1923,6 +1925,7 @@ public class QcrumbEngine implements LinkedDataCubesEngine {
 		querytemplate = querytemplate.replace("{{{TABLE_SCHEM}}}", TABLE_SCHEM);
 		querytemplate = querytemplate.replace("{{{FILTERS}}}",
 				additionalFilters);
+		querytemplate = querytemplate.replace("{{{VALUES}}}", "");
 
 		List<Node[]> memberUris1 = executeSparqlSelectQuery(querytemplate, true);
 
@@ -2058,4 +2061,22 @@ public class QcrumbEngine implements LinkedDataCubesEngine {
 		return null;
 	}
 
+	public ResultCursor executeSparqlSelectQueryCursor(String query) {
+		// Results are not streamed by this engine.
+		return new IteratorResultCursor(executeSparqlSelectQuery(query, false));
+	}
+
+	public ResultCursor getMembersCursor(Restrictions restrictions)
+			throws OlapException {
+		return new IteratorResultCursor(getMembers(restrictions));
+	}
+
+	public boolean isMemberUniqueNamesSupported() {
+		return false;
+	}
+
+	public ResultCursor executeOlapQueryCursor(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		return new IteratorResultCursor(executeOlapQuery(queryplan));
+	}
 }
@@ -1,5 +1,7 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
@@ -22,6 +24,8 @@ public class Restrictions {
 	public Node hierarchyUniqueName = null;
 	public Node levelUniqueName = null;
 	public Node memberUniqueName = null;
+	// Several members looked up at once, instead of memberUniqueName
+	public List<Node> memberUniqueNames = null;
 	public Integer tree = null;
 	public Set<Member.TreeOp> treeOps = null;
 
@@ -38,8 +42,9 @@ public class Restrictions {
 				+ " dimensionUniqueName = " + dimensionUniqueName
 				+ " hierarchyUniqueName = " + hierarchyUniqueName
 				+ " levelUniqueName = " + levelUniqueName
-				+ " memberUniqueName = " + memberUniqueName + " treeOps = "
-				+ tree+")";
+				+ " memberUniqueName = " + memberUniqueName
+				+ (memberUniqueNames == null ? "" : " memberUniqueNames = "
+						+ memberUniqueNames) + " treeOps = " + tree + ")";
 	}
 
 	/**
@@ -83,6 +88,16 @@ public class Restrictions {
 						.convertMDXtoURI((String) restrictions[i + 1]);
 				continue;
 			}
+			if ("MEMBER_UNIQUE_NAME".equals((String) restrictions[i])
+					&& restrictions[i + 1] instanceof List<?>) {
+				// A list of members as in Olap4ldCube.RawMetadataReader
+				memberUniqueNames = new ArrayList<Node>();
+				for (Object member : (List<?>) restrictions[i + 1]) {
+					memberUniqueNames.add(Olap4ldLinkedDataUtil
+							.convertMDXtoURI((String) member));
+				}
+				continue;
+			}
 			if ("MEMBER_UNIQUE_NAME".equals((String) restrictions[i])) {
 				memberUniqueName = Olap4ldLinkedDataUtil
 						.convertMDXtoURI((String) restrictions[i + 1]);
@@ -0,0 +1,44 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.Iterator;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * A pull-based, closeable cursor over the rows of a result.
+ * 
+ * Follows the same contract as the List<Node[]> results of
+ * LinkedDataCubesEngine: The first row is the header with one Variable per
+ * column, every other row contains one Node per column. Rows are only
+ * produced when asked for, so that large results do not have to be kept in
+ * memory.
+ * 
+ * A cursor closes itself once all rows have been read. If a cursor is not
+ * read until the end, close() needs to be called to free the underlying
+ * resources (e.g., a repository connection).
+ */
+public interface ResultCursor extends Iterator<Node[]> {
+
+	/**
+	 * Frees the resources of the cursor. Can be called several times.
+	 */
+	public void close();
+}
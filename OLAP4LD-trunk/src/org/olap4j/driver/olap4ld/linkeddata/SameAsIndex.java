@@ -0,0 +1,261 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Equivalence classes of resources linked by owl:sameAs, kept as a
+ * union-find structure. Every class has one canonical resource: the one of
+ * the best rank, so that terms of vocabularies, properties and datasets keep
+ * the names that queries and the metadata of cubes use, and among those the
+ * lexicographically smallest one, so that the canonical resource does not
+ * depend on the order in which links are found.
+ * 
+ * Instead of materialising all statements for every equivalent resource
+ * (eq-rep-s/p/o), the store only contains statements about the canonical
+ * resources and queries are asked with canonical resources.
+ */
+public class SameAsIndex {
+
+	/**
+	 * Rank of vocabulary terms and properties, the best one.
+	 */
+	public static final int TERM = 0;
+
+	/**
+	 * Rank of datasets.
+	 */
+	public static final int DATASET = 1;
+
+	/**
+	 * Rank of resources that statements other than owl:sameAs links refer
+	 * to, e.g., members used by observations.
+	 */
+	public static final int REFERENCED = 2;
+
+	/**
+	 * Rank of resources without a rank of their own.
+	 */
+	public static final int UNREFERENCED = 3;
+
+	/**
+	 * Namespaces whose resources are terms.
+	 */
+	private static final String[] VOCABULARY_NAMESPACES = new String[] {
+			"http://www.w3.org/1999/02/22-rdf-syntax-ns#",
+			"http://www.w3.org/2000/01/rdf-schema#",
+			"http://www.w3.org/2002/07/owl#",
+			"http://www.w3.org/2001/XMLSchema#",
+			"http://www.w3.org/2004/02/skos/core#",
+			"http://purl.org/linked-data/cube#",
+			"http://purl.org/linked-data/sdmx",
+			"http://rdf-vocabulary.ddialliance.org/xkos#",
+			"http://purl.org/dc/terms/" };
+
+	/**
+	 * Parent of a resource in its tree, the root has no parent.
+	 */
+	private HashMap<String, String> parents = new HashMap<String, String>();
+
+	/**
+	 * Members of the class of a root.
+	 */
+	private HashMap<String, List<String>> members = new HashMap<String, List<String>>();
+
+	/**
+	 * Canonical resource of the class of a root.
+	 */
+	private HashMap<String, String> canonicals = new HashMap<String, String>();
+
+	/**
+	 * Ranks set with setRank().
+	 */
+	private HashMap<String, Integer> ranks = new HashMap<String, Integer>();
+
+	/**
+	 * Resources that are not canonical any more since the last call of
+	 * takeRewrites().
+	 */
+	private HashSet<String> changed = new HashSet<String>();
+
+	/**
+	 * Adds an owl:sameAs link.
+	 * 
+	 * @param a
+	 * @param b
+	 */
+	public synchronized void union(String a, String b) {
+		String roota = findRoot(a);
+		String rootb = findRoot(b);
+		if (roota.equals(rootb)) {
+			return;
+		}
+		// Smaller class is added to larger one.
+		if (members.get(roota).size() < members.get(rootb).size()) {
+			String root = roota;
+			roota = rootb;
+			rootb = root;
+		}
+		String canonicala = canonicals.get(roota);
+		String canonicalb = canonicals.remove(rootb);
+		String canonical = isBetter(canonicalb, canonicala) ? canonicalb
+				: canonicala;
+
+		parents.put(rootb, roota);
+		members.get(roota).addAll(members.remove(rootb));
+		canonicals.put(roota, canonical);
+
+		// Only the statements about the canonical resource that lost are
+		// left to rewrite, the other ones already were rewritten to it.
+		changed.add(canonical.equals(canonicala) ? canonicalb : canonicala);
+	}
+
+	/**
+	 * @param resource
+	 * @return canonical resource of the class or the resource itself if it
+	 *         has no equivalent resources.
+	 */
+	public synchronized String getCanonical(String resource) {
+		if (!parents.containsKey(resource)) {
+			return resource;
+		}
+		return canonicals.get(findRoot(resource));
+	}
+
+	public synchronized boolean isEmpty() {
+		return parents.isEmpty();
+	}
+
+	/**
+	 * @param resource
+	 * @return whether the resource is in a class, i.e., has been linked.
+	 */
+	public synchronized boolean contains(String resource) {
+		return parents.containsKey(resource);
+	}
+
+	/**
+	 * Sets the rank of a resource, a rank is only ever improved. If the
+	 * resource now is better than the canonical resource of its class, it
+	 * becomes the canonical resource.
+	 * 
+	 * @param resource
+	 * @param rank
+	 *            TERM, DATASET, REFERENCED or UNREFERENCED
+	 */
+	public synchronized void setRank(String resource, int rank) {
+		if (getRank(resource) <= rank) {
+			return;
+		}
+		ranks.put(resource, rank);
+		if (!parents.containsKey(resource)) {
+			return;
+		}
+		String root = findRoot(resource);
+		String canonical = canonicals.get(root);
+		if (isBetter(resource, canonical)) {
+			canonicals.put(root, resource);
+			changed.add(canonical);
+		}
+	}
+
+	/**
+	 * @param resource
+	 * @return TERM for resources of the vocabularies, else the rank set
+	 *         with setRank() or UNREFERENCED
+	 */
+	public synchronized int getRank(String resource) {
+		for (String namespace : VOCABULARY_NAMESPACES) {
+			if (resource.startsWith(namespace)) {
+				return TERM;
+			}
+		}
+		Integer rank = ranks.get(resource);
+		return rank == null ? UNREFERENCED : rank;
+	}
+
+	/**
+	 * Returns the resources whose statements need to be rewritten since they
+	 * are not canonical any more, together with their canonical resource.
+	 * 
+	 * @return
+	 */
+	public synchronized Map<String, String> takeRewrites() {
+		Map<String, String> rewrites = new HashMap<String, String>();
+		for (String resource : changed) {
+			String canonical = getCanonical(resource);
+			if (!canonical.equals(resource)) {
+				rewrites.put(resource, canonical);
+			}
+		}
+		changed.clear();
+		return rewrites;
+	}
+
+	public synchronized void clear() {
+		parents.clear();
+		members.clear();
+		canonicals.clear();
+		ranks.clear();
+		changed.clear();
+	}
+
+	/**
+	 * @return whether resource a is to be canonical rather than resource b
+	 */
+	private boolean isBetter(String a, String b) {
+		int ranka = getRank(a);
+		int rankb = getRank(b);
+		if (ranka != rankb) {
+			return ranka < rankb;
+		}
+		return a.compareTo(b) < 0;
+	}
+
+	/**
+	 * Root of the tree of the resource, the resource is added if not known.
+	 * Compresses the path on the way.
+	 */
+	private String findRoot(String resource) {
+		if (!parents.containsKey(resource)) {
+			parents.put(resource, null);
+			List<String> member = new ArrayList<String>();
+			member.add(resource);
+			members.put(resource, member);
+			canonicals.put(resource, resource);
+			return resource;
+		}
+		String root = resource;
+		while (parents.get(root) != null) {
+			root = parents.get(root);
+		}
+		while (!resource.equals(root)) {
+			String parent = parents.get(resource);
+			parents.put(resource, root);
+			resource = parent;
+		}
+		return root;
+	}
+}
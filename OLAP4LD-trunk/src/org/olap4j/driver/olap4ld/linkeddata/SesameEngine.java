@@ -19,7 +19,6 @@
 package org.olap4j.driver.olap4ld.linkeddata;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -33,14 +32,12 @@ import java.util.Map;
 import org.olap4j.OlapException;
 import org.olap4j.Position;
 import org.olap4j.driver.olap4ld.Olap4ldUtil;
-import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Measure;
 import org.semanticweb.yars.nx.Literal;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Variable;
-import org.semanticweb.yars.nx.parser.NxParser;
 
 /**
  * Implements methods of XmlaOlap4jDatabaseMetadata, returning the specified
@@ -230,6 +227,17 @@ public class SesameEngine implements LinkedDataCubesEngine {
 	private List<Node[]> sparql(String query) {
 		List<Node[]> myBindings = new ArrayList<Node[]>();
 
+		ResultCursor cursor = sparqlCursor(query);
+		while (cursor.hasNext()) {
+			myBindings.add(cursor.next());
+		}
+		cursor.close();
+
+		return myBindings;
+	}
+
+	private ResultCursor sparqlCursor(String query) {
+
 		try {
 
 			// Better? ISO-8859-1
@@ -259,40 +267,23 @@ public class SesameEngine implements LinkedDataCubesEngine {
 			// con.setRequestProperty("Accept",
 			// "application/sparql-results+json");
 			// con.setRequestProperty("Accept", "text/n3");
-			con.setRequestProperty("Accept", "application/sparql-results+xml, */*;q=0.5");
+			// We prefer SPARQL/XML but take what the endpoint supports.
+			con.setRequestProperty("Accept", SparqlResultCursor.ACCEPT);
 			con.setRequestMethod("POST");
 
-			 InputStream inputStream = con.getInputStream();
-			 String test = Olap4ldLinkedDataUtil.convertStreamToString(inputStream);
-			 Olap4ldUtil._log.info("XML output: " + test);
-			
 			if (con.getResponseCode() != 200) {
 				throw new RuntimeException("lookup on " + fullurl
 						+ " resulted HTTP in status code "
 						+ con.getResponseCode());
 			}
 
-			// Transform sparql xml to nx
-			InputStream nx = Olap4ldLinkedDataUtil.transformSparqlXmlToNx(con
-					.getInputStream());
-			String test2 = Olap4ldLinkedDataUtil.convertStreamToString(nx);
-			Olap4ldUtil._log.info("NX output: " + test2);
-			nx.reset();
-
-			NxParser nxp = new NxParser(nx);
-
-			Node[] nxx;
-			while (nxp.hasNext()) {
-				try {
-					nxx = nxp.next();
-					myBindings.add(nxx);
-				} catch (Exception e) {
-					Olap4ldUtil._log
-							.warning("NxParser: Could not parse properly: "
-									+ e.getMessage());
-				}
-				;
-			}
+			Olap4ldUtil._log.config("SPARQL result format: "
+					+ con.getContentType());
+
+			// Rows are parsed while the response is arriving.
+			return SparqlResultCursor.create(con.getInputStream(),
+					con.getContentType());
+
 		} catch (UnsupportedEncodingException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -304,7 +295,7 @@ public class SesameEngine implements LinkedDataCubesEngine {
 			e.printStackTrace();
 		}
 
-		return myBindings;
+		return new IteratorResultCursor(new ArrayList<Node[]>());
 	}
 
 	private List<Node[]> applyRestrictions(List<Node[]> result,
@@ -1347,4 +1338,22 @@ public class SesameEngine implements LinkedDataCubesEngine {
 	// return map;
 	// }
 
-}
\ No newline at end of file
+	public ResultCursor executeSparqlSelectQueryCursor(String query) {
+		Olap4ldUtil._log.info("SPARQL query: " + query);
+		return sparqlCursor(query);
+	}
+
+	public ResultCursor getMembersCursor(Restrictions restrictions)
+			throws OlapException {
+		return new IteratorResultCursor(getMembers(restrictions));
+	}
+
+	public boolean isMemberUniqueNamesSupported() {
+		return false;
+	}
+
+	public ResultCursor executeOlapQueryCursor(LogicalOlapQueryPlan queryplan)
+			throws OlapException {
+		return new IteratorResultCursor(executeOlapQuery(queryplan));
+	}
+}
@@ -0,0 +1,258 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryResultHandlerException;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Reads SPARQL query results with the Sesame query result parsers (e.g.,
+ * SPARQL/JSON and SPARQL/TSV) as Node[] rows.
+ * 
+ * The Sesame parsers push the solutions to a TupleQueryResultHandler. The
+ * parser therefore runs in a thread of a shared pool and the handler feeds a
+ * bounded queue from which the cursor reads; the response is still not
+ * buffered entirely. The parser stops once the cursor is closed or if the
+ * cursor is not read for ABANDON_TIMEOUT, so that an abandoned cursor does
+ * not keep a thread and the response open.
+ */
+public class SparqlParsedResultCursor extends SparqlResultCursor {
+
+	/**
+	 * Number of rows the parser may be ahead of the reader.
+	 */
+	private static final int CAPACITY = 1000;
+
+	/**
+	 * Milliseconds the parser waits for the reader to take a row before it
+	 * gives up.
+	 */
+	private static final long ABANDON_TIMEOUT = 60000;
+
+	/**
+	 * Marks the end of the result in the queue.
+	 */
+	private static final Node[] END = new Node[0];
+
+	/**
+	 * Runs the parsers; threads are reused and do not keep the application
+	 * alive.
+	 */
+	private static final ExecutorService PARSERS = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,
+							"SPARQL result parser");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final BlockingQueue<Node[]> rows = new ArrayBlockingQueue<Node[]>(
+			CAPACITY);
+
+	private volatile boolean closed = false;
+
+	private volatile Exception failure;
+
+	private volatile boolean abandoned = false;
+
+	private boolean ended = false;
+
+	public SparqlParsedResultCursor(final InputStream in,
+			final TupleQueryResultFormat format) {
+		super(in);
+
+		PARSERS.execute(new Runnable() {
+			public void run() {
+				try {
+					QueryResultIO.parse(in, format, new QueueHandler(),
+							ValueFactoryImpl.getInstance());
+				} catch (Exception e) {
+					if (!closed && !abandoned) {
+						failure = e;
+					}
+				} finally {
+					if (abandoned) {
+						abandon(in);
+					} else {
+						// Wakes up the reader also if parsing failed.
+						put(END);
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	protected Node[] readHeader() throws IOException {
+		return take();
+	}
+
+	@Override
+	protected Node[] readRow() throws IOException {
+		return take();
+	}
+
+	/**
+	 * @return next row from the parser or null if no more rows.
+	 * @throws IOException
+	 *             if the result could not be parsed.
+	 */
+	private Node[] take() throws IOException {
+		if (ended) {
+			return null;
+		}
+		Node[] row;
+		try {
+			row = rows.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading SPARQL result",
+					e);
+		}
+		if (row == END) {
+			ended = true;
+			if (failure != null) {
+				throw new IOException(failure.getMessage(), failure);
+			}
+			return null;
+		}
+		return row;
+	}
+
+	/**
+	 * Hands a row to the reader; gives up once the cursor is closed, so that
+	 * the parser thread does not wait for a reader that is gone.
+	 * 
+	 * @param row
+	 * @return false if the cursor was closed or abandoned.
+	 */
+	private boolean put(Node[] row) {
+		long waited = 0;
+		try {
+			while (!closed) {
+				if (rows.offer(row, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+				waited += 100;
+				if (waited >= ABANDON_TIMEOUT) {
+					abandoned = true;
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Frees the response of a cursor that was not read anymore. Should the
+	 * reader come back, it gets an error instead of waiting for rows.
+	 * 
+	 * @param in
+	 */
+	private void abandon(InputStream in) {
+		Olap4ldUtil._log.warning("Warning: SPARQL result was not read for "
+				+ ABANDON_TIMEOUT + "ms, stopped parsing.");
+		failure = new IOException("SPARQL result was not read for "
+				+ ABANDON_TIMEOUT + "ms.");
+		// The only producer, so there is room for the end afterwards.
+		rows.clear();
+		rows.offer(END);
+		try {
+			in.close();
+		} catch (IOException e) {
+			Olap4ldUtil._log.warning("Warning: Could not close SPARQL result: "
+					+ e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			// Closing the stream also stops the parser.
+			super.close();
+			rows.clear();
+		}
+	}
+
+	/**
+	 * Converts the solutions as NxTupleQueryResultHandler does.
+	 */
+	private class QueueHandler implements TupleQueryResultHandler {
+
+		private List<String> bindingNames;
+
+		public void startQueryResult(List<String> bindingNames)
+				throws TupleQueryResultHandlerException {
+			this.bindingNames = bindingNames;
+			handle(NxTupleQueryResultHandler.createHeader(bindingNames));
+		}
+
+		public void handleSolution(BindingSet bindingSet)
+				throws TupleQueryResultHandlerException {
+			handle(NxTupleQueryResultHandler.createRow(bindingNames,
+					bindingSet));
+		}
+
+		public void endQueryResult() throws TupleQueryResultHandlerException {
+			;
+		}
+
+		public void handleBoolean(boolean value)
+				throws QueryResultHandlerException {
+			// Only tuple queries are handled.
+			throw new UnsupportedOperationException(
+					"Boolean results cannot be transformed into nx.");
+		}
+
+		public void handleLinks(List<String> linkUrls)
+				throws QueryResultHandlerException {
+			// Links are ignored as by xml2nx.xsl.
+			;
+		}
+
+		private void handle(Node[] row) throws TupleQueryResultHandlerException {
+			if (!put(row)) {
+				throw new TupleQueryResultHandlerException(
+						"SPARQL result cursor was closed.");
+			}
+		}
+	}
+}
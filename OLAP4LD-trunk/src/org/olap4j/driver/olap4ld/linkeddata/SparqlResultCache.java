@@ -0,0 +1,193 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Bounded cache for the results of SPARQL select queries that can be used
+ * from several threads.
+ * 
+ * Entries are keyed by the normalised query text (whitespace collapsed) and
+ * carry the epoch of the store when the query was issued. Every change of
+ * the store increases the epoch (storeChanged()), so that results from an
+ * older store state are never returned. If the store changes while a query
+ * is evaluated, its result is not cached.
+ * 
+ * The least recently used entry is evicted if the cache is full; very large
+ * results (e.g., observations) are not cached at all.
+ */
+public class SparqlResultCache {
+
+	/**
+	 * Default number of cached queries.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 500;
+
+	/**
+	 * Default maximum number of rows of a cached result.
+	 */
+	public static final int DEFAULT_MAX_ROWS = 10000;
+
+	private final AtomicLong epoch = new AtomicLong();
+
+	private final int maxRows;
+
+	private final Map<String, Entry> entries;
+
+	private static class Entry {
+		final long epoch;
+		final List<Node[]> result;
+
+		Entry(long epoch, List<Node[]> result) {
+			this.epoch = epoch;
+			this.result = result;
+		}
+	}
+
+	public SparqlResultCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ROWS);
+	}
+
+	public SparqlResultCache(final int maxEntries, int maxRows) {
+		this.maxRows = maxRows;
+		// Access order for LRU eviction
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return current epoch of the store, to be given to put() for a result
+	 *         of a query that is issued now.
+	 */
+	public long getEpoch() {
+		return epoch.get();
+	}
+
+	/**
+	 * Needs to be called after every change of the store.
+	 */
+	public void storeChanged() {
+		epoch.incrementAndGet();
+		synchronized (entries) {
+			// All entries are stale, therefore, we can free the memory.
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @param query
+	 * @return copy of the cached result or null if not cached for the current
+	 *         store epoch.
+	 */
+	public List<Node[]> get(String query) {
+		String key = normalise(query);
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.epoch != epoch.get()) {
+				entries.remove(key);
+				return null;
+			}
+			// Callers may add to the list.
+			return new ArrayList<Node[]>(entry.result);
+		}
+	}
+
+	/**
+	 * @param query
+	 * @param queryEpoch
+	 *            epoch of the store when the query was issued
+	 * @param result
+	 */
+	public void put(String query, long queryEpoch, List<Node[]> result) {
+		// Without header, the query failed.
+		if (result == null || result.isEmpty() || result.size() > maxRows) {
+			return;
+		}
+		String key = normalise(query);
+		synchronized (entries) {
+			// Store changed meanwhile?
+			if (queryEpoch != epoch.get()) {
+				return;
+			}
+			entries.put(key, new Entry(queryEpoch, new ArrayList<Node[]>(
+					result)));
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Queries that only differ in whitespace (e.g., from templates) share an
+	 * entry. Whitespace within string literals is kept.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	static String normalise(String query) {
+		StringBuilder sb = new StringBuilder(query.length());
+		char quote = 0;
+		boolean whitespace = false;
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			if (quote != 0) {
+				sb.append(c);
+				if (c == '\\' && i + 1 < query.length()) {
+					sb.append(query.charAt(++i));
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (Character.isWhitespace(c)) {
+				whitespace = true;
+			} else {
+				if (whitespace && sb.length() > 0) {
+					sb.append(' ');
+				}
+				whitespace = false;
+				if (c == '"' || c == '\'') {
+					quote = c;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+/**
+ * Streams the SPARQL query results of a remote endpoint as Node[] rows while
+ * the response is arriving; no transformation to nx and no buffering of the
+ * entire response is needed.
+ * 
+ * The rows are the same as with the former xml2nx.xsl + NxParser pipeline:
+ * The first row is the header, unbound values are &lt;null&gt;.
+ */
+public abstract class SparqlResultCursor implements ResultCursor {
+
+	public static final String MIME_TSV = "text/tab-separated-values";
+
+	public static final String MIME_JSON = "application/sparql-results+json";
+
+	public static final String MIME_XML = "application/sparql-results+xml";
+
+	/**
+	 * Accept header: We prefer the compact formats, since they are much
+	 * smaller to transfer and faster to parse than SPARQL/XML, but take what
+	 * the endpoint supports.
+	 */
+	public static final String ACCEPT = MIME_JSON + ", " + MIME_TSV
+			+ ";q=0.9, " + MIME_XML + ";q=0.8";
+
+	private InputStream in;
+
+	private boolean headerReturned = false;
+
+	private Node[] nextRow;
+
+	private int count = 0;
+
+	protected SparqlResultCursor(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Creates the parser for the content type returned by the endpoint.
+	 * 
+	 * @param in
+	 * @param contentType
+	 *            of the response, if unknown, SPARQL/XML is assumed
+	 * @return
+	 */
+	public static SparqlResultCursor create(InputStream in, String contentType) {
+		String mimeType = (contentType == null) ? "" : contentType
+				.split(";")[0].trim().toLowerCase();
+
+		if (mimeType.equals(MIME_TSV)) {
+			return new SparqlParsedResultCursor(in, TupleQueryResultFormat.TSV);
+		} else if (mimeType.equals(MIME_JSON)
+				|| mimeType.equals("application/json")) {
+			return new SparqlParsedResultCursor(in, TupleQueryResultFormat.JSON);
+		} else {
+			return new SparqlXmlResultCursor(in);
+		}
+	}
+
+	/**
+	 * @return header row with one Variable per result variable.
+	 * @throws IOException
+	 */
+	protected abstract Node[] readHeader() throws IOException;
+
+	/**
+	 * @return next row or null if no more rows.
+	 * @throws IOException
+	 */
+	protected abstract Node[] readRow() throws IOException;
+
+	public boolean hasNext() {
+		if (nextRow != null) {
+			return true;
+		}
+		if (in == null) {
+			return false;
+		}
+		try {
+			if (!headerReturned) {
+				nextRow = readHeader();
+				headerReturned = true;
+			} else {
+				nextRow = readRow();
+				if (nextRow != null) {
+					count++;
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException("Could not parse SPARQL result: "
+					+ e.getMessage(), e);
+		}
+		if (nextRow == null) {
+			// All rows read, therefore we can free the connection.
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	public Node[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Node[] result = nextRow;
+		nextRow = null;
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return number of rows read without header.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public void close() {
+		nextRow = null;
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				Olap4ldUtil._log.warning("Warning: Could not close SPARQL result: "
+						+ e.getMessage());
+			} finally {
+				in = null;
+			}
+		}
+	}
+
+	protected static Node[] createHeader(List<String> variables) {
+		Node[] header = new Node[variables.size()];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = new Variable(variables.get(i));
+		}
+		return header;
+	}
+
+	/**
+	 * Creates the node of a literal as the NxParser would have returned.
+	 * 
+	 * @param label
+	 * @param lang
+	 *            or null
+	 * @param datatype
+	 *            or null
+	 * @return
+	 */
+	protected static Node createLiteral(String label, String lang,
+			String datatype) {
+		if (datatype != null) {
+			return new Literal(label, null, new Resource(datatype));
+		} else if (lang != null) {
+			return new Literal(label, lang, null);
+		} else {
+			return new Literal(label);
+		}
+	}
+}
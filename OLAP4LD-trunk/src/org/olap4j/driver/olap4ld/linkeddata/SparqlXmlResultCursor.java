@@ -0,0 +1,163 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.semanticweb.yars.nx.BNode;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+/**
+ * Pull parser (StAX) for the SPARQL Query Results XML Format.
+ */
+public class SparqlXmlResultCursor extends SparqlResultCursor {
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory
+			.newInstance();
+
+	static {
+		// Results come from remote endpoints, therefore, no DTDs and no
+		// external entities are read.
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				false);
+	}
+
+	private XMLStreamReader reader;
+
+	private List<String> variables = new ArrayList<String>();
+
+	private Map<String, Integer> variableIndex = new HashMap<String, Integer>();
+
+	public SparqlXmlResultCursor(InputStream in) {
+		super(in);
+		try {
+			this.reader = FACTORY.createXMLStreamReader(in);
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not parse SPARQL result: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected Node[] readHeader() throws IOException {
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (name.equals("variable")) {
+						String variable = reader.getAttributeValue(null, "name");
+						variableIndex.put(variable, variables.size());
+						variables.add(variable);
+					} else if (name.equals("boolean")) {
+						// Only tuple queries are handled.
+						throw new UnsupportedOperationException(
+								"Boolean results cannot be transformed into nx.");
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT
+						&& reader.getLocalName().equals("head")) {
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return createHeader(variables);
+	}
+
+	@Override
+	protected Node[] readRow() throws IOException {
+		try {
+			Node[] row = null;
+			int index = -1;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (name.equals("result")) {
+						row = new Node[variables.size()];
+					} else if (name.equals("binding")) {
+						Integer i = variableIndex.get(reader.getAttributeValue(
+								null, "name"));
+						index = (i == null) ? -1 : i;
+					} else if (name.equals("uri") || name.equals("bnode")
+							|| name.equals("literal")) {
+						Node value = readValue(name);
+						if (row != null && index >= 0) {
+							row[index] = value;
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT
+						&& reader.getLocalName().equals("result")) {
+					for (int i = 0; i < row.length; i++) {
+						if (row[i] == null) {
+							row[i] = NxTupleQueryResultHandler.UNBOUND;
+						}
+					}
+					return row;
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private Node readValue(String name) throws XMLStreamException {
+		if (name.equals("uri")) {
+			return new Resource(reader.getElementText());
+		} else if (name.equals("bnode")) {
+			return new BNode(reader.getElementText());
+		} else {
+			String datatype = reader.getAttributeValue(null, "datatype");
+			String lang = reader.getAttributeValue(
+					XMLConstants.XML_NS_URI, "lang");
+			return createLiteral(reader.getElementText(), lang, datatype);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				Olap4ldUtil._log.warning("Warning: Could not close SPARQL result: "
+						+ e.getMessage());
+			} finally {
+				reader = null;
+			}
+		}
+		super.close();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+//
+// Licensed to Benedikt Kämpgen under one or more contributor license
+// agreements. See the NOTICE file distributed with this work for
+// additional information regarding copyright ownership.
+//
+// Benedikt Kämpgen licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except in
+// compliance with the License. You may obtain a copy of the License at:
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+ */
+package org.olap4j.driver.olap4ld.linkeddata;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.olap4j.driver.olap4ld.Olap4ldUtil;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.semanticweb.yars.nx.Node;
+
+/**
+ * Streams the solutions of a Sesame tuple query as Node[] rows.
+ * 
+ * The rows are the same as returned by NxTupleQueryResultHandler, but they
+ * are converted one at a time while the store evaluates the query. The
+ * cursor owns the repository connection and closes it together with the
+ * query result, therefore, the connection must not be used by anyone else
+ * while the cursor is open.
+ */
+public class TupleQueryResultCursor implements ResultCursor {
+
+	private RepositoryConnection con;
+
+	private TupleQueryResult result;
+
+	private List<String> bindingNames;
+
+	private boolean headerReturned = false;
+
+	private int count = 0;
+
+	public TupleQueryResultCursor(RepositoryConnection con,
+			TupleQueryResult result) throws QueryEvaluationException {
+		if (con == null) {
+			throw new IllegalArgumentException(
+					"A cursor needs a connection of its own.");
+		}
+		this.con = con;
+		this.result = result;
+		this.bindingNames = result.getBindingNames();
+	}
+
+	public boolean hasNext() {
+		if (result == null) {
+			return false;
+		}
+		if (!headerReturned) {
+			return true;
+		}
+		try {
+			if (result.hasNext()) {
+				return true;
+			}
+		} catch (QueryEvaluationException e) {
+			close();
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		// All rows read, therefore we can free the connection.
+		close();
+		return false;
+	}
+
+	public Node[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		if (!headerReturned) {
+			headerReturned = true;
+			return NxTupleQueryResultHandler.createHeader(bindingNames);
+		}
+		try {
+			count++;
+			return NxTupleQueryResultHandler.createRow(bindingNames,
+					result.next());
+		} catch (QueryEvaluationException e) {
+			close();
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (result == null) {
+			return;
+		}
+
+		// Only if logging level accordingly
+		if (Olap4ldUtil._isDebug) {
+			Olap4ldUtil._log.config("Number of results: " + count);
+		}
+
+		try {
+			result.close();
+		} catch (QueryEvaluationException e) {
+			Olap4ldUtil._log.warning("Warning: Could not close query result: "
+					+ e.getMessage());
+		} finally {
+			result = null;
+			try {
+				con.close();
+			} catch (RepositoryException e) {
+				Olap4ldUtil._log.warning("Warning: Could not close connection: "
+						+ e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.olap4j.driver.olap4ld;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.olap4j.OlapException;
+import org.olap4j.impl.Named;
+import org.olap4j.metadata.NamedList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that DeferredNamedListImpl is populated once by concurrent threads
+ * and that threads waiting for a population get its failure.
+ */
+public class DeferredNamedListImplTest extends TestCase {
+
+	private static class Element implements Named {
+		private final String name;
+
+		Element(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Populated by the test instead of the metadata of a connection.
+	 */
+	private static class TestList extends DeferredNamedListImpl<Element> {
+		private final Object lock = new Object();
+		private int populations = 0;
+		private boolean blocked = false;
+		private OlapException failure = null;
+		private Boolean emptyWhilePopulating = null;
+
+		TestList() {
+			super(null, null, null, null);
+		}
+
+		protected void populateList(NamedList<Element> list)
+				throws OlapException {
+			synchronized (lock) {
+				populations++;
+				lock.notifyAll();
+				while (blocked) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				emptyWhilePopulating = isEmpty();
+				if (failure != null) {
+					throw failure;
+				}
+			}
+			list.add(new Element("a"));
+		}
+
+		void block() {
+			synchronized (lock) {
+				blocked = true;
+			}
+		}
+
+		void release(OlapException failure) {
+			synchronized (lock) {
+				this.failure = failure;
+				blocked = false;
+				lock.notifyAll();
+			}
+		}
+
+		void awaitPopulations(int populations) throws InterruptedException {
+			synchronized (lock) {
+				while (this.populations < populations) {
+					lock.wait();
+				}
+			}
+		}
+
+		int getPopulations() {
+			synchronized (lock) {
+				return populations;
+			}
+		}
+	}
+
+	/**
+	 * Reads the size of the list in another thread.
+	 */
+	private static class Reader extends Thread {
+		private final TestList list;
+		private int size = -1;
+		private Throwable failure = null;
+
+		Reader(TestList list) {
+			this.list = list;
+		}
+
+		public void run() {
+			try {
+				size = list.size();
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+
+	private TestList list;
+
+	protected void setUp() throws Exception {
+		list = new TestList();
+	}
+
+	public void testPopulatedOnce() throws Exception {
+		list.block();
+		List<Reader> readers = startReaders(4);
+		list.awaitPopulations(1);
+		awaitWaiting(readers);
+
+		list.release(null);
+		for (Reader reader : readers) {
+			reader.join(10000);
+			assertNull(reader.failure);
+			assertEquals(1, reader.size);
+		}
+		assertEquals(1, list.getPopulations());
+		assertEquals("a", list.get(0).getName());
+		assertEquals(1, list.getPopulations());
+	}
+
+	public void testWaitingThreadsGetFailure() throws Exception {
+		list.block();
+		List<Reader> readers = startReaders(3);
+		list.awaitPopulations(1);
+		awaitWaiting(readers);
+
+		OlapException failure = new OlapException("failed");
+		list.release(failure);
+		for (Reader reader : readers) {
+			reader.join(10000);
+			assertTrue(reader.failure instanceof RuntimeException);
+			assertSame(failure, reader.failure.getCause());
+		}
+		assertEquals(1, list.getPopulations());
+
+		// Later requests try again.
+		list.release(null);
+		assertEquals(1, list.size());
+		assertEquals(2, list.getPopulations());
+	}
+
+	public void testEmptyWhilePopulating() {
+		assertFalse(list.isEmpty());
+		assertEquals(Boolean.TRUE, list.emptyWhilePopulating);
+	}
+
+	public void testReset() {
+		assertEquals(1, list.size());
+		list.reset();
+		assertEquals(1, list.size());
+		assertEquals(2, list.getPopulations());
+	}
+
+	private List<Reader> startReaders(int count) {
+		List<Reader> readers = new ArrayList<Reader>();
+		for (int i = 0; i < count; i++) {
+			Reader reader = new Reader(list);
+			reader.start();
+			readers.add(reader);
+		}
+		return readers;
+	}
+
+	/**
+	 * Waits until all readers wait, the populating one for the test and the
+	 * others for the list.
+	 */
+	private static void awaitWaiting(List<Reader> readers)
+			throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		for (Reader reader : readers) {
+			while (reader.getState() != Thread.State.WAITING
+					&& System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(Thread.State.WAITING, reader.getState());
+		}
+	}
+
+}
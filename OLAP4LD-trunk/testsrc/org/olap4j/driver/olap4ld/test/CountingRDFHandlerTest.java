@@ -0,0 +1,107 @@
+package org.olap4j.driver.olap4ld.test;
+
+import org.olap4j.driver.olap4ld.linkeddata.CountingRDFHandler;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the counts and the content fingerprint of CountingRDFHandler.
+ */
+public class CountingRDFHandlerTest extends TestCase {
+
+	private static final String EX = "http://example.org/";
+
+	private static final String QB = "http://purl.org/linked-data/cube#";
+
+	private ValueFactory factory = ValueFactoryImpl.getInstance();
+
+	public void testCounts() throws RDFHandlerException {
+		CountingRDFHandler counter = handler();
+		add(counter, uri("obs1"), QB + "dataSet", uri("ds"));
+		add(counter, uri("obs1"), EX + "value", factory.createLiteral(1));
+		add(counter, uri("ds"), QB + "structure", uri("dsd"));
+		add(counter, factory.createBNode(), QB + "dataSet",
+				factory.createBNode());
+
+		assertEquals(4, counter.getTriples());
+		assertEquals(2, counter.getObservations());
+		assertEquals(1, counter.getDatasets().size());
+		assertTrue(counter.getDatasets().contains(EX + "ds"));
+		assertTrue(counter.hasBlankDatasets());
+		assertTrue(counter.hasBlankNodes());
+	}
+
+	public void testFingerprintIndependentOfOrder() throws RDFHandlerException {
+		CountingRDFHandler counter = handler();
+		add(counter, uri("obs1"), EX + "value", factory.createLiteral(1));
+		add(counter, uri("obs2"), EX + "value", factory.createLiteral(2));
+
+		CountingRDFHandler other = handler();
+		add(other, uri("obs2"), EX + "value", factory.createLiteral(2));
+		add(other, uri("obs1"), EX + "value", factory.createLiteral(1));
+
+		assertEquals(counter.getFingerprint(), other.getFingerprint());
+		assertFalse(counter.hasBlankNodes());
+	}
+
+	public void testFingerprintOfOtherContent() throws RDFHandlerException {
+		// The same values in other statements
+		CountingRDFHandler counter = handler();
+		add(counter, uri("obs1"), EX + "value", factory.createLiteral(1));
+		add(counter, uri("obs2"), EX + "value", factory.createLiteral(2));
+
+		CountingRDFHandler other = handler();
+		add(other, uri("obs1"), EX + "value", factory.createLiteral(2));
+		add(other, uri("obs2"), EX + "value", factory.createLiteral(1));
+		assertFalse(counter.getFingerprint() == other.getFingerprint());
+
+		// A uri and a literal with the same label
+		counter = handler();
+		add(counter, uri("obs1"), EX + "unit", uri("euro"));
+		other = handler();
+		add(other, uri("obs1"), EX + "unit", factory.createLiteral(EX
+				+ "euro"));
+		assertFalse(counter.getFingerprint() == other.getFingerprint());
+	}
+
+	public void testBlankNodes() throws RDFHandlerException {
+		// Different graphs that only differ in their blank nodes
+		Resource a = factory.createBNode();
+		Resource b = factory.createBNode();
+		CountingRDFHandler counter = handler();
+		add(counter, a, EX + "value", factory.createLiteral(1));
+		add(counter, b, EX + "value", factory.createLiteral(2));
+
+		CountingRDFHandler other = handler();
+		add(other, a, EX + "value", factory.createLiteral(1));
+		add(other, a, EX + "value", factory.createLiteral(2));
+
+		// The fingerprints must not be used to tell them apart.
+		assertTrue(counter.hasBlankNodes());
+		assertTrue(other.hasBlankNodes());
+	}
+
+	private static CountingRDFHandler handler() throws RDFHandlerException {
+		CountingRDFHandler counter = new CountingRDFHandler(
+				new RDFHandlerBase());
+		counter.startRDF();
+		return counter;
+	}
+
+	private void add(CountingRDFHandler counter, Resource subject,
+			String predicate, Value object) throws RDFHandlerException {
+		counter.handleStatement(factory.createStatement(subject,
+				factory.createURI(predicate), object));
+	}
+
+	private Resource uri(String name) {
+		return factory.createURI(EX + name);
+	}
+
+}
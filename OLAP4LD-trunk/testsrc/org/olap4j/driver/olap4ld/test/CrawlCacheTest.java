@@ -0,0 +1,108 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import org.olap4j.driver.olap4ld.helper.CrawlCache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the CrawlCache streams documents if it is disabled and does not
+ * wait for a stalled server.
+ */
+public class CrawlCacheTest extends TestCase {
+
+	private static final String CONTENT = "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n";
+
+	private HttpServer server;
+
+	protected void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/doc.nt", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] bytes = CONTENT.getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.createContext("/stalled.nt", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				out.write(CONTENT.getBytes("UTF-8"));
+				out.flush();
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					// Server stopped
+				}
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	public void testDisabledStreams() throws IOException {
+		CrawlCache cache = new CrawlCache(null);
+		CrawlCache.Response response = cache.get(url("/doc.nt"),
+				"text/plain", 1000);
+		assertEquals(200, response.responsecode);
+		assertTrue(response.hasContent());
+		try {
+			assertEquals(CONTENT, read(response.openStream()));
+		} finally {
+			response.release();
+		}
+	}
+
+	public void testReadTimeout() throws IOException {
+		CrawlCache cache = new CrawlCache(null);
+		CrawlCache.Response response = cache.get(url("/stalled.nt"),
+				"text/plain", 500);
+		long time = System.currentTimeMillis();
+		try {
+			read(response.openStream());
+			fail("Stalled server was waited for");
+		} catch (SocketTimeoutException e) {
+			assertTrue(System.currentTimeMillis() - time < 4000);
+		} finally {
+			response.release();
+		}
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:" + server.getAddress().getPort()
+				+ path);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] bytes = new byte[8192];
+			int read;
+			while ((read = in.read(bytes)) != -1) {
+				out.write(bytes, 0, read);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.olap4j.driver.olap4ld.linkeddata.DatasetContexts;
+import org.olap4j.driver.olap4ld.linkeddata.DatasetContexts.Document;
+import org.olap4j.driver.olap4ld.linkeddata.DatasetContexts.Eviction;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the least recently used eviction of datasets in DatasetContexts.
+ *
+ * Dataset ds1 uses doc1, the shared code list and the pinned vocabulary,
+ * dataset ds2 uses doc2 and the code list.
+ */
+public class DatasetContextsTest extends TestCase {
+
+	private static final String EX = "http://example.org/";
+
+	private static final Set<String> NONE = Collections.emptySet();
+
+	private DatasetContexts contexts;
+
+	protected void setUp() throws Exception {
+		contexts = new DatasetContexts();
+		// Loaded without a dataset
+		contexts.addDocument(null, url("vocab"), url("vocab.rdf"),
+				EX + "vocab.rdf", 10, 0, 1, false);
+
+		contexts.addDocument(url("ds1"), url("doc1"), url("doc1.rdf"), EX
+				+ "doc1.rdf", 100, 20, 2, false);
+		contexts.addDocument(url("ds1"), url("codelist"),
+				url("codelist.rdf"), EX + "codelist.rdf", 30, 0, 3, false);
+		contexts.useDocument(url("ds1"), url("vocab"));
+
+		contexts.addDocument(url("ds2"), url("doc2"), url("doc2.rdf"), EX
+				+ "doc2.rdf", 200, 40, 4, false);
+		contexts.useDocument(url("ds2"), url("codelist.rdf"));
+	}
+
+	public void testEvictLeastRecentlyUsed() {
+		Eviction eviction = contexts.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds1", eviction.dataset);
+		// The code list is still used by ds2 and the vocabulary is pinned.
+		assertContexts(eviction.documents, "doc1.rdf");
+
+		eviction = contexts.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds2", eviction.dataset);
+		assertContexts(eviction.documents, "doc2.rdf", "codelist.rdf");
+
+		assertNull(contexts.evictLeastRecentlyUsed(NONE));
+		assertContexts(contexts.getDocuments(), "vocab.rdf");
+	}
+
+	public void testTouch() {
+		contexts.touch(EX + "ds1");
+		Eviction eviction = contexts.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds2", eviction.dataset);
+		assertContexts(eviction.documents, "doc2.rdf");
+	}
+
+	public void testKeep() {
+		Set<String> keep = new HashSet<String>();
+		keep.add(EX + "ds1");
+		Eviction eviction = contexts.evictLeastRecentlyUsed(keep);
+		assertEquals(EX + "ds2", eviction.dataset);
+		assertContexts(eviction.documents, "doc2.rdf");
+
+		assertNull(contexts.evictLeastRecentlyUsed(keep));
+	}
+
+	public void testGetDocuments() {
+		List<Document> documents = contexts.getDocuments();
+		assertContexts(documents, "vocab.rdf", "doc1.rdf", "codelist.rdf",
+				"doc2.rdf");
+		for (Document document : documents) {
+			if (document.context.equals(EX + "doc1.rdf")) {
+				assertEquals(2, document.uris.size());
+				assertEquals(100, document.triples);
+				assertEquals(20, document.observations);
+				assertEquals(2, document.fingerprint);
+			}
+		}
+	}
+
+	public void testOpenNotEvicted() {
+		contexts.open(EX + "ds1");
+		contexts.open(EX + "ds1");
+		Eviction eviction = contexts.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds2", eviction.dataset);
+		assertNull(contexts.evictLeastRecentlyUsed(NONE));
+
+		// Still open by the second cursor
+		contexts.release(EX + "ds1");
+		assertNull(contexts.evictLeastRecentlyUsed(NONE));
+
+		contexts.release(EX + "ds1");
+		eviction = contexts.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds1", eviction.dataset);
+	}
+
+	public void testInformationUriUsedBeforeLoaded() throws Exception {
+		// ds3 uses the information uri before it is known to be the
+		// document of doc3.
+		contexts.useDocument(url("ds3"), url("doc3.rdf"));
+		contexts.addDocument(url("ds4"), url("doc3"), url("doc3.rdf"), EX
+				+ "doc3.rdf", 5, 1, 5, false);
+
+		assertContexts(contexts.getDocuments(), "vocab.rdf", "doc1.rdf",
+				"codelist.rdf", "doc2.rdf", "doc3.rdf");
+
+		Set<String> keep = new HashSet<String>();
+		keep.add(EX + "ds1");
+		keep.add(EX + "ds2");
+		keep.add(EX + "ds4");
+		Eviction eviction = contexts.evictLeastRecentlyUsed(keep);
+		assertEquals(EX + "ds3", eviction.dataset);
+		// Still used by ds4
+		assertContexts(eviction.documents);
+
+		keep.remove(EX + "ds4");
+		keep.add(EX + "ds3");
+		eviction = contexts.evictLeastRecentlyUsed(keep);
+		assertEquals(EX + "ds4", eviction.dataset);
+		assertContexts(eviction.documents, "doc3.rdf");
+	}
+
+	public void testGetFingerprint() throws Exception {
+		assertNull(contexts.getFingerprint(EX + "unknown"));
+		Long fingerprint = contexts.getFingerprint(EX + "ds1");
+		assertNotNull(fingerprint);
+
+		// Same content, loaded in another order
+		DatasetContexts other = new DatasetContexts();
+		other.addDocument(url("ds1"), url("codelist"), url("codelist.rdf"),
+				EX + "codelist.rdf", 30, 0, 3, false);
+		other.addDocument(null, url("vocab"), url("vocab.rdf"), EX
+				+ "vocab.rdf", 10, 0, 1, false);
+		other.useDocument(url("ds1"), url("vocab"));
+		other.addDocument(url("ds1"), url("doc1"), url("doc1.rdf"), EX
+				+ "doc1.rdf", 100, 20, 2, false);
+		assertEquals(fingerprint, other.getFingerprint(EX + "ds1"));
+
+		assertFalse(fingerprint.equals(contexts.getFingerprint(EX + "ds2")));
+	}
+
+	public void testNoFingerprintWithBlankNodes() throws Exception {
+		// The blank nodes of doc3 have other ids each time it is loaded.
+		contexts.addDocument(url("ds1"), url("doc3"), url("doc3.rdf"), EX
+				+ "doc3.rdf", 5, 1, 5, true);
+		assertNull(contexts.getFingerprint(EX + "ds1"));
+		assertNotNull(contexts.getFingerprint(EX + "ds2"));
+
+		// Also once restored
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		contexts.write(new DataOutputStream(bytes));
+		DatasetContexts restored = new DatasetContexts();
+		restored.read(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+		assertNull(restored.getFingerprint(EX + "ds1"));
+		assertEquals(contexts.getFingerprint(EX + "ds2"),
+				restored.getFingerprint(EX + "ds2"));
+	}
+
+	public void testWriteRead() throws IOException {
+		contexts.touch(EX + "ds1");
+
+		DatasetContexts restored = new DatasetContexts();
+		restored.addDocument(url("ds5"), url("doc5"), url("doc5.rdf"), EX
+				+ "doc5.rdf", 1, 1, 1, false);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		contexts.write(new DataOutputStream(bytes));
+		restored.read(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+
+		// Replaced, not added
+		assertContexts(restored.getDocuments(), "vocab.rdf", "doc1.rdf",
+				"codelist.rdf", "doc2.rdf");
+
+		// The least recently used dataset is still ds2.
+		Eviction eviction = restored.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds2", eviction.dataset);
+		assertContexts(eviction.documents, "doc2.rdf");
+
+		eviction = restored.evictLeastRecentlyUsed(NONE);
+		assertEquals(EX + "ds1", eviction.dataset);
+		assertContexts(eviction.documents, "doc1.rdf", "codelist.rdf");
+		assertNull(restored.evictLeastRecentlyUsed(NONE));
+
+		// The pinned vocabulary stays with all its uris.
+		restored.useDocument(url("ds6"), url("vocab.rdf"));
+		assertContexts(restored.getDocuments(), "vocab.rdf");
+		assertEquals(2, restored.getDocuments().get(0).uris.size());
+	}
+
+	public void testClear() {
+		contexts.clear();
+		assertTrue(contexts.getDocuments().isEmpty());
+		assertNull(contexts.evictLeastRecentlyUsed(NONE));
+	}
+
+	private void assertContexts(List<Document> documents, String... expected) {
+		Set<String> actual = new HashSet<String>();
+		for (Document document : documents) {
+			actual.add(document.context);
+		}
+		Set<String> expectedcontexts = new HashSet<String>();
+		for (String context : expected) {
+			expectedcontexts.add(EX + context);
+		}
+		assertEquals(expected.length, documents.size());
+		assertEquals(expectedcontexts, actual);
+	}
+
+	private static URL url(String name) {
+		try {
+			return new URL(EX + name);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+}
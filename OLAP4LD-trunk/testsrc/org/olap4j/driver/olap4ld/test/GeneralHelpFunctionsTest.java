@@ -3,12 +3,21 @@ package org.olap4j.driver.olap4ld.test;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 import junit.framework.TestCase;
 
 import org.olap4j.driver.olap4ld.Olap4ldUtil;
 import org.olap4j.driver.olap4ld.helper.Olap4ldLinkedDataUtil;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
 
 public class GeneralHelpFunctionsTest extends TestCase {
 	
@@ -46,4 +55,44 @@ public class GeneralHelpFunctionsTest extends TestCase {
 		URL result = Olap4ldLinkedDataUtil.askForLocation(gdppercapita);
 		assertEquals("http://localhost:8080/Data-Fu-Engine/data-fu/gdp_per_capita_experiment/triples",result.toString());
 	}
+
+	public void testCreateMergeKey() {
+		Node[] header = new Node[] { new Variable("CUBE_NAME"),
+				new Variable("DIMENSION_UNIQUE_NAME"),
+				new Variable("MEMBER_CAPTION") };
+		Map<String, Integer> map = Olap4ldLinkedDataUtil
+				.getNodeResultFields(header);
+
+		Node[] geo = new Node[] { new Resource("http://example.org/ds1"),
+				new Resource("http://example.org/geo"), new Literal("Geo") };
+		// Same dimension and cube, other caption
+		Node[] samegeo = new Node[] { new Resource("http://example.org/ds1"),
+				new Resource("http://example.org/geo"), new Literal("Region") };
+		Node[] othercube = new Node[] { new Resource("http://example.org/ds2"),
+				new Resource("http://example.org/geo"), new Literal("Geo") };
+
+		List<String> key = Olap4ldLinkedDataUtil.createMergeKey(geo, map,
+				"?DIMENSION_UNIQUE_NAME", "?CUBE_NAME");
+		assertEquals(2, key.size());
+		assertEquals("http://example.org/geo", key.get(0));
+		assertEquals("http://example.org/ds1", key.get(1));
+
+		assertEquals(key, Olap4ldLinkedDataUtil.createMergeKey(samegeo, map,
+				"?DIMENSION_UNIQUE_NAME", "?CUBE_NAME"));
+		assertFalse(key.equals(Olap4ldLinkedDataUtil.createMergeKey(othercube,
+				map, "?DIMENSION_UNIQUE_NAME", "?CUBE_NAME")));
+
+		// Merged as by createGlobalDimensions(): the first row is kept.
+		List<Node[]> merged = new ArrayList<Node[]>();
+		Set<List<String>> contained = new HashSet<List<String>>();
+		for (Node[] row : new Node[][] { geo, samegeo, othercube }) {
+			if (contained.add(Olap4ldLinkedDataUtil.createMergeKey(row, map,
+					"?DIMENSION_UNIQUE_NAME", "?CUBE_NAME"))) {
+				merged.add(row);
+			}
+		}
+		assertEquals(2, merged.size());
+		assertSame(geo, merged.get(0));
+		assertSame(othercube, merged.get(1));
+	}
 }
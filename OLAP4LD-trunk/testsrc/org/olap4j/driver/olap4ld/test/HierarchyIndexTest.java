@@ -0,0 +1,219 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.olap4j.driver.olap4ld.linkeddata.HierarchyIndex;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the TREE_OP lookups of HierarchyIndex.
+ *
+ * The hierarchy is r with children a and b, x is a child of both a and b
+ * and y is a child of x.
+ */
+public class HierarchyIndexTest extends TestCase {
+
+	private static final String CUBE = "http://example.org/ds";
+
+	private static final String EX = "http://example.org/";
+
+	private static final String DIMENSION = EX + "geo";
+
+	private static final String HIERARCHY = EX + "geoHierarchy";
+
+	private List<Node[]> members;
+
+	private Map<String, Set<String>> parents;
+
+	private HierarchyIndex index;
+
+	protected void setUp() throws Exception {
+		members = new ArrayList<Node[]>();
+		members.add(new Node[] { new Variable("CUBE_NAME"),
+				new Variable("DIMENSION_UNIQUE_NAME"),
+				new Variable("HIERARCHY_UNIQUE_NAME"),
+				new Variable("MEMBER_UNIQUE_NAME") });
+		addMember(HIERARCHY, "r");
+		addMember(HIERARCHY, "a");
+		addMember(HIERARCHY, "b");
+		addMember(HIERARCHY, "x");
+		addMember(HIERARCHY, "y");
+
+		parents = new HashMap<String, Set<String>>();
+		addParent("a", "r");
+		addParent("b", "r");
+		addParent("x", "a");
+		addParent("x", "b");
+		addParent("y", "x");
+
+		index = new HierarchyIndex();
+	}
+
+	public void testNotIndexed() {
+		assertFalse(index.contains(CUBE));
+		assertNull(index.lookup(CUBE, null, null, EX + "r",
+				HierarchyIndex.CHILDREN));
+	}
+
+	public void testChildren() {
+		index.put(CUBE, members, parents);
+		assertTrue(index.contains(CUBE));
+		assertMembers(lookup("r", HierarchyIndex.CHILDREN), "a", "b");
+		assertMembers(lookup("a", HierarchyIndex.CHILDREN), "x");
+		assertMembers(lookup("y", HierarchyIndex.CHILDREN));
+		assertMembers(lookup("a", HierarchyIndex.CHILDREN
+				| HierarchyIndex.SELF), "a", "x");
+	}
+
+	public void testParentsOfMemberWithSeveralParents() {
+		index.put(CUBE, members, parents);
+		assertMembers(lookup("x", HierarchyIndex.PARENT), "a", "b");
+		assertMembers(lookup("r", HierarchyIndex.PARENT));
+	}
+
+	public void testSiblings() {
+		index.put(CUBE, members, parents);
+		assertMembers(lookup("a", HierarchyIndex.SIBLINGS), "b");
+		assertMembers(lookup("x", HierarchyIndex.SIBLINGS));
+		assertMembers(lookup("r", HierarchyIndex.SIBLINGS));
+	}
+
+	public void testDescendants() {
+		index.put(CUBE, members, parents);
+		assertMembers(lookup("r", HierarchyIndex.DESCENDANTS), "a", "x",
+				"y", "b");
+		assertMembers(lookup("b", HierarchyIndex.DESCENDANTS), "x", "y");
+		assertMembers(lookup("y", HierarchyIndex.DESCENDANTS));
+	}
+
+	public void testAncestors() {
+		index.put(CUBE, members, parents);
+		// Below a first, then below b
+		assertMembers(lookup("y", HierarchyIndex.ANCESTORS), "r", "a", "x",
+				"b");
+		assertMembers(lookup("r", HierarchyIndex.ANCESTORS));
+	}
+
+	public void testDescendantsOfTree() {
+		// Without the second parent of x
+		parents.get(EX + "x").remove(EX + "b");
+		index.put(CUBE, members, parents);
+		assertMembers(lookup("r", HierarchyIndex.DESCENDANTS), "a", "x",
+				"y", "b");
+		assertMembers(lookup("a", HierarchyIndex.DESCENDANTS), "x", "y");
+		assertMembers(lookup("b", HierarchyIndex.DESCENDANTS));
+	}
+
+	public void testManyParents() {
+		// Every member of a level is a child of both members of the level
+		// above, which has as many paths to the root as members below.
+		String previous1 = "r";
+		String previous2 = "r";
+		for (int i = 0; i < 40; i++) {
+			String member1 = "m" + i + "a";
+			String member2 = "m" + i + "b";
+			addMember(HIERARCHY, member1);
+			addMember(HIERARCHY, member2);
+			addParent(member1, previous1);
+			addParent(member1, previous2);
+			addParent(member2, previous1);
+			addParent(member2, previous2);
+			previous1 = member1;
+			previous2 = member2;
+		}
+		index.put(CUBE, members, parents);
+
+		assertEquals(80 + 4 + 1, lookup("r", HierarchyIndex.DESCENDANTS)
+				.size());
+		assertEquals(1 + 1 + 2 * 39, lookup("m39a", HierarchyIndex.ANCESTORS)
+				.size());
+		assertMembers(lookup("m39a", HierarchyIndex.PARENT), "m38a", "m38b");
+		assertMembers(lookup("m39a", HierarchyIndex.SIBLINGS), "m39b");
+	}
+
+	public void testCycle() {
+		// c and d are each other's parent
+		addMember(HIERARCHY, "c");
+		addMember(HIERARCHY, "d");
+		addParent("c", "d");
+		addParent("d", "c");
+		addParent("r", "r");
+		index.put(CUBE, members, parents);
+
+		// The cycle is broken at c.
+		assertMembers(lookup("c", HierarchyIndex.DESCENDANTS), "d");
+		assertMembers(lookup("d", HierarchyIndex.DESCENDANTS));
+		assertMembers(lookup("d", HierarchyIndex.ANCESTORS), "c");
+		// A member is not its own parent
+		assertMembers(lookup("r", HierarchyIndex.PARENT));
+	}
+
+	public void testParentOutsideHierarchy() {
+		addMember(EX + "otherHierarchy", "z");
+		addParent("z", "r");
+		index.put(CUBE, members, parents);
+
+		assertMembers(lookup("z", HierarchyIndex.PARENT));
+		assertMembers(lookup("z", HierarchyIndex.SIBLINGS));
+		assertMembers(lookup("r", HierarchyIndex.CHILDREN), "a", "b");
+	}
+
+	public void testHierarchyRestriction() {
+		index.put(CUBE, members, parents);
+		assertMembers(index.lookup(CUBE, DIMENSION, EX + "otherHierarchy",
+				EX + "r", HierarchyIndex.CHILDREN));
+		assertMembers(index.lookup(CUBE, EX + "otherDimension", null, EX
+				+ "r", HierarchyIndex.CHILDREN));
+		assertMembers(lookup("unknown", HierarchyIndex.SELF));
+	}
+
+	public void testInvalidate() {
+		index.put(CUBE, members, parents);
+		index.put(EX + "other", members, parents);
+		index.invalidate(CUBE);
+		assertFalse(index.contains(CUBE));
+		assertTrue(index.contains(EX + "other"));
+	}
+
+	public void testClear() {
+		index.put(CUBE, members, parents);
+		index.clear();
+		assertFalse(index.contains(CUBE));
+	}
+
+	private List<Node[]> lookup(String member, int tree) {
+		return index.lookup(CUBE, DIMENSION, HIERARCHY, EX + member, tree);
+	}
+
+	private void assertMembers(List<Node[]> result, String... expected) {
+		assertSame(members.get(0), result.get(0));
+		assertEquals(expected.length, result.size() - 1);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(EX + expected[i], result.get(i + 1)[3].toString());
+		}
+	}
+
+	private void addMember(String hierarchy, String member) {
+		members.add(new Node[] { new Resource(CUBE), new Resource(DIMENSION),
+				new Resource(hierarchy), new Resource(EX + member) });
+	}
+
+	private void addParent(String member, String parent) {
+		Set<String> memberparents = parents.get(EX + member);
+		if (memberparents == null) {
+			memberparents = new HashSet<String>();
+			parents.put(EX + member, memberparents);
+		}
+		memberparents.add(EX + parent);
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.olap4j.driver.olap4ld.linkeddata.MetadataCatalog;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.Variable;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the lookups of restricted metadata in MetadataCatalog.
+ */
+public class MetadataCatalogTest extends TestCase {
+
+	private static final String CUBE = "http://example.org/ds";
+
+	private static final String TEMPLATE = "sesame_getMembers_xkos.txt";
+
+	private static final String EX = "http://example.org/";
+
+	public void testNotCatalogued() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		assertFalse(catalog.contains(CUBE, TEMPLATE));
+		assertNull(catalog.lookup(CUBE, TEMPLATE,
+				new HashMap<String, String>()));
+
+		catalog.put(CUBE, TEMPLATE, createMembers());
+		assertFalse(catalog.contains(CUBE, "sesame_getLevels.txt"));
+		assertNull(catalog.lookup(CUBE, "sesame_getLevels.txt",
+				new HashMap<String, String>()));
+		assertNull(catalog.lookup(EX + "other", TEMPLATE,
+				new HashMap<String, String>()));
+	}
+
+	public void testUnrestricted() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		List<Node[]> members = createMembers();
+		catalog.put(CUBE, TEMPLATE, members);
+		assertTrue(catalog.contains(CUBE, TEMPLATE));
+
+		List<Node[]> result = catalog.lookup(CUBE, TEMPLATE,
+				new HashMap<String, String>());
+		assertEquals(members.size(), result.size());
+		assertSame(members.get(0), result.get(0));
+	}
+
+	public void testRestricted() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		catalog.put(CUBE, TEMPLATE, createMembers());
+
+		Map<String, String> restrictions = new HashMap<String, String>();
+		restrictions.put("?LEVEL_UNIQUE_NAME", EX + "country");
+		List<Node[]> result = catalog.lookup(CUBE, TEMPLATE, restrictions);
+		// Header and two countries
+		assertEquals(3, result.size());
+
+		restrictions.put("?MEMBER_UNIQUE_NAME", EX + "de");
+		result = catalog.lookup(CUBE, TEMPLATE, restrictions);
+		assertEquals(2, result.size());
+		assertEquals(EX + "de", result.get(1)[3].toString());
+
+		// Contradicting restrictions
+		restrictions.put("?LEVEL_UNIQUE_NAME", EX + "continent");
+		result = catalog.lookup(CUBE, TEMPLATE, restrictions);
+		assertEquals(1, result.size());
+
+		// Unknown value
+		restrictions.clear();
+		restrictions.put("?MEMBER_UNIQUE_NAME", EX + "fr");
+		result = catalog.lookup(CUBE, TEMPLATE, restrictions);
+		assertEquals(1, result.size());
+	}
+
+	public void testRestrictionOfOtherColumnNotAnswered() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		catalog.put(CUBE, TEMPLATE, createMembers());
+
+		// The template does not return the hierarchy
+		Map<String, String> restrictions = new HashMap<String, String>();
+		restrictions.put("?HIERARCHY_UNIQUE_NAME", EX + "other");
+		restrictions.put("?MEMBER_UNIQUE_NAME", EX + "eu");
+		assertNull(catalog.lookup(CUBE, TEMPLATE, restrictions));
+	}
+
+	public void testTooLarge() {
+		MetadataCatalog catalog = new MetadataCatalog(2);
+		catalog.put(CUBE, TEMPLATE, createMembers());
+		// Known to be too large, the store needs to be queried.
+		assertTrue(catalog.contains(CUBE, TEMPLATE));
+		assertNull(catalog.lookup(CUBE, TEMPLATE,
+				new HashMap<String, String>()));
+
+		catalog = new MetadataCatalog(3);
+		catalog.put(CUBE, TEMPLATE, createMembers());
+		assertNotNull(catalog.lookup(CUBE, TEMPLATE,
+				new HashMap<String, String>()));
+	}
+
+	public void testInvalidate() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		catalog.put(CUBE, TEMPLATE, createMembers());
+		catalog.put(EX + "other", TEMPLATE, createMembers());
+		catalog.invalidate(CUBE);
+		assertFalse(catalog.contains(CUBE, TEMPLATE));
+		assertTrue(catalog.contains(EX + "other", TEMPLATE));
+	}
+
+	public void testClear() {
+		MetadataCatalog catalog = new MetadataCatalog();
+		catalog.put(CUBE, TEMPLATE, createMembers());
+		catalog.clear();
+		assertFalse(catalog.contains(CUBE, TEMPLATE));
+		assertNull(catalog.lookup(CUBE, TEMPLATE,
+				new HashMap<String, String>()));
+	}
+
+	private List<Node[]> createMembers() {
+		List<Node[]> members = new ArrayList<Node[]>();
+		members.add(new Node[] { new Variable("CUBE_NAME"),
+				new Variable("DIMENSION_UNIQUE_NAME"),
+				new Variable("LEVEL_UNIQUE_NAME"),
+				new Variable("MEMBER_UNIQUE_NAME") });
+		members.add(createMember("continent", "eu"));
+		members.add(createMember("country", "de"));
+		members.add(createMember("country", "uk"));
+		return members;
+	}
+
+	private Node[] createMember(String level, String member) {
+		return new Node[] { new Resource(CUBE), new Resource(EX + "geo"),
+				new Resource(EX + level), new Resource(EX + member) };
+	}
+
+}
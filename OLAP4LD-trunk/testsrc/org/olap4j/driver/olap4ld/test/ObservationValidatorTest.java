@@ -0,0 +1,203 @@
+package org.olap4j.driver.olap4ld.test;
+
+import org.olap4j.driver.olap4ld.linkeddata.ObservationValidator;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the integrity constraint checks of ObservationValidator on a small
+ * normalised cube in a memory store.
+ */
+public class ObservationValidatorTest extends TestCase {
+
+	private static final String EX = "http://example.org/";
+
+	private static final String QB = "http://purl.org/linked-data/cube#";
+
+	private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+	private Repository repo;
+
+	private RepositoryConnection con;
+
+	private ValueFactory factory;
+
+	protected void setUp() throws Exception {
+		repo = new SailRepository(new MemoryStore());
+		repo.initialize();
+		con = repo.getConnection();
+		factory = con.getValueFactory();
+
+		// Structure with one dimension, one measure and a required attribute
+		add(EX + "ds", QB + "structure", uri(EX + "dsd"));
+		add(EX + "dsd", QB + "component", uri(EX + "c1"));
+		add(EX + "dsd", QB + "component", uri(EX + "c2"));
+		add(EX + "dsd", QB + "component", uri(EX + "c3"));
+		add(EX + "c1", QB + "componentProperty", uri(EX + "dim"));
+		add(EX + "c2", QB + "componentProperty", uri(EX + "measure"));
+		add(EX + "c3", QB + "componentProperty", uri(EX + "unit"));
+		add(EX + "c3", QB + "componentRequired", factory.createLiteral(true));
+		add(EX + "dim", RDF_TYPE, uri(QB + "DimensionProperty"));
+		add(EX + "measure", RDF_TYPE, uri(QB + "MeasureProperty"));
+		add(EX + "unit", RDF_TYPE, uri(QB + "AttributeProperty"));
+
+		addObservation("obs1", "A", 1);
+		addObservation("obs2", "B", 2);
+	}
+
+	protected void tearDown() throws Exception {
+		con.close();
+		repo.shutDown();
+	}
+
+	public void testValid() throws RepositoryException {
+		ObservationValidator validator = validate();
+		assertEquals(2, validator.getObservationCount());
+		assertFalse(validator.isViolated(ObservationValidator.IC_1));
+		assertFalse(validator.isViolated(ObservationValidator.IC_11));
+		assertFalse(validator.isViolated(ObservationValidator.IC_12));
+		assertFalse(validator.isViolated(ObservationValidator.IC_13));
+		assertFalse(validator.isViolated(ObservationValidator.IC_14));
+		assertNull(validator.getViolatingObservation(ObservationValidator.IC_12));
+	}
+
+	public void testUniqueDataSet() throws RepositoryException {
+		// Typed, but without dataset
+		add(EX + "obs3", RDF_TYPE, uri(QB + "Observation"));
+		// Two datasets
+		addObservation("obs4", "C", 4);
+		add(EX + "obs4", QB + "dataSet", uri(EX + "ds2"));
+
+		ObservationValidator validator = validate();
+		assertEquals(4, validator.getObservationCount());
+		assertTrue(validator.isViolated(ObservationValidator.IC_1));
+	}
+
+	public void testAllDimensionsRequired() throws RepositoryException {
+		add(EX + "obs3", QB + "dataSet", uri(EX + "ds"));
+		add(EX + "obs3", EX + "measure", factory.createLiteral(3));
+		add(EX + "obs3", EX + "unit", uri(EX + "euro"));
+
+		ObservationValidator validator = validate();
+		assertTrue(validator.isViolated(ObservationValidator.IC_11));
+		assertEquals(uri(EX + "obs3"),
+				validator.getViolatingObservation(ObservationValidator.IC_11));
+		// Observations without all dimensions have no key
+		assertFalse(validator.isViolated(ObservationValidator.IC_12));
+	}
+
+	public void testNoDuplicateObservations() throws RepositoryException {
+		addObservation("obs3", "A", 3);
+
+		ObservationValidator validator = validate();
+		assertEquals(3, validator.getObservationCount());
+		assertTrue(validator.isViolated(ObservationValidator.IC_12));
+		Value duplicate = validator
+				.getViolatingObservation(ObservationValidator.IC_12);
+		assertTrue(duplicate.equals(uri(EX + "obs1"))
+				|| duplicate.equals(uri(EX + "obs3")));
+	}
+
+	public void testObservationInSeveralContexts() throws RepositoryException {
+		// obs1 loaded again with another document
+		URI context = uri(EX + "doc2");
+		con.add(uri(EX + "obs1"), uri(RDF_TYPE), uri(QB + "Observation"),
+				context);
+		con.add(uri(EX + "obs1"), uri(QB + "dataSet"), uri(EX + "ds"),
+				context);
+		con.add(uri(EX + "obs1"), uri(EX + "dim"), factory.createLiteral("A"),
+				context);
+
+		ObservationValidator validator = validate();
+		assertEquals(2, validator.getObservationCount());
+		assertFalse(validator.isViolated(ObservationValidator.IC_12));
+	}
+
+	public void testDuplicateWithSeveralDimensionValues()
+			throws RepositoryException {
+		add(EX + "obs1", EX + "dim", factory.createLiteral("B"));
+		addObservation("obs3", "B", 3);
+		add(EX + "obs3", EX + "dim", factory.createLiteral("A"));
+
+		ObservationValidator validator = validate();
+		assertTrue(validator.isViolated(ObservationValidator.IC_12));
+	}
+
+	public void testSameKeyInOtherDataset() throws RepositoryException {
+		add(EX + "ds2", QB + "structure", uri(EX + "dsd"));
+		add(EX + "obs3", QB + "dataSet", uri(EX + "ds2"));
+		add(EX + "obs3", EX + "dim", factory.createLiteral("A"));
+		add(EX + "obs3", EX + "measure", factory.createLiteral(3));
+		add(EX + "obs3", EX + "unit", uri(EX + "euro"));
+
+		ObservationValidator validator = validate();
+		assertFalse(validator.isViolated(ObservationValidator.IC_12));
+	}
+
+	public void testRequiredAttributes() throws RepositoryException {
+		add(EX + "obs3", QB + "dataSet", uri(EX + "ds"));
+		add(EX + "obs3", EX + "dim", factory.createLiteral("C"));
+		add(EX + "obs3", EX + "measure", factory.createLiteral(3));
+
+		ObservationValidator validator = validate();
+		assertTrue(validator.isViolated(ObservationValidator.IC_13));
+		assertEquals(uri(EX + "obs3"),
+				validator.getViolatingObservation(ObservationValidator.IC_13));
+	}
+
+	public void testAllMeasuresPresent() throws RepositoryException {
+		add(EX + "obs3", QB + "dataSet", uri(EX + "ds"));
+		add(EX + "obs3", EX + "dim", factory.createLiteral("C"));
+		add(EX + "obs3", EX + "unit", uri(EX + "euro"));
+
+		ObservationValidator validator = validate();
+		assertTrue(validator.isViolated(ObservationValidator.IC_14));
+		assertEquals(uri(EX + "obs3"),
+				validator.getViolatingObservation(ObservationValidator.IC_14));
+	}
+
+	public void testMeasureDimension() throws RepositoryException {
+		// With qb:measureType, an observation has one of the measures only.
+		add(EX + "dsd", QB + "component", uri(EX + "c4"));
+		add(EX + "c4", QB + "componentProperty", uri(QB + "measureType"));
+		add(EX + "obs3", QB + "dataSet", uri(EX + "ds"));
+		add(EX + "obs3", EX + "dim", factory.createLiteral("C"));
+		add(EX + "obs3", EX + "unit", uri(EX + "euro"));
+
+		ObservationValidator validator = validate();
+		assertFalse(validator.isViolated(ObservationValidator.IC_14));
+	}
+
+	private ObservationValidator validate() throws RepositoryException {
+		ObservationValidator validator = new ObservationValidator(con);
+		validator.validate();
+		return validator;
+	}
+
+	private void addObservation(String name, String dim, int measure)
+			throws RepositoryException {
+		add(EX + name, RDF_TYPE, uri(QB + "Observation"));
+		add(EX + name, QB + "dataSet", uri(EX + "ds"));
+		add(EX + name, EX + "dim", factory.createLiteral(dim));
+		add(EX + name, EX + "measure", factory.createLiteral(measure));
+		add(EX + name, EX + "unit", uri(EX + "euro"));
+	}
+
+	private void add(String subject, String predicate, Value object)
+			throws RepositoryException {
+		con.add(uri(subject), uri(predicate), object);
+	}
+
+	private URI uri(String uri) {
+		return factory.createURI(uri);
+	}
+
+}
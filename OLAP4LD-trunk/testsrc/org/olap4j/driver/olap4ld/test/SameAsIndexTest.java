@@ -0,0 +1,117 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.util.Map;
+
+import org.olap4j.driver.olap4ld.linkeddata.SameAsIndex;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the owl:sameAs classes of SameAsIndex.
+ */
+public class SameAsIndexTest extends TestCase {
+
+	private static final String A = "http://example.org/a";
+	private static final String B = "http://example.org/b";
+	private static final String C = "http://example.org/c";
+	private static final String D = "http://example.org/d";
+
+	public void testUnknownResourceIsCanonical() {
+		SameAsIndex index = new SameAsIndex();
+		assertTrue(index.isEmpty());
+		assertEquals(A, index.getCanonical(A));
+		assertTrue(index.takeRewrites().isEmpty());
+	}
+
+	public void testCanonicalIsSmallest() {
+		SameAsIndex index = new SameAsIndex();
+		index.union(B, A);
+		assertFalse(index.isEmpty());
+		assertEquals(A, index.getCanonical(A));
+		assertEquals(A, index.getCanonical(B));
+		assertEquals(C, index.getCanonical(C));
+	}
+
+	public void testTransitive() {
+		SameAsIndex index = new SameAsIndex();
+		index.union(C, D);
+		index.union(A, B);
+		index.union(D, B);
+		assertEquals(A, index.getCanonical(A));
+		assertEquals(A, index.getCanonical(B));
+		assertEquals(A, index.getCanonical(C));
+		assertEquals(A, index.getCanonical(D));
+
+		// Links within a class change nothing
+		index.takeRewrites();
+		index.union(C, B);
+		assertTrue(index.takeRewrites().isEmpty());
+	}
+
+	public void testTakeRewrites() {
+		SameAsIndex index = new SameAsIndex();
+		index.union(B, C);
+		Map<String, String> rewrites = index.takeRewrites();
+		assertEquals(1, rewrites.size());
+		assertEquals(B, rewrites.get(C));
+
+		// Taken rewrites are not returned again
+		assertTrue(index.takeRewrites().isEmpty());
+
+		// The statements of c already are rewritten to b, only b is left.
+		index.union(C, A);
+		rewrites = index.takeRewrites();
+		assertEquals(1, rewrites.size());
+		assertEquals(A, rewrites.get(B));
+	}
+
+	public void testBetterRankIsCanonical() {
+		SameAsIndex index = new SameAsIndex();
+		index.setRank(B, SameAsIndex.DATASET);
+		index.setRank(C, SameAsIndex.REFERENCED);
+		index.union(A, C);
+		assertEquals(C, index.getCanonical(A));
+		index.union(A, B);
+		assertEquals(B, index.getCanonical(A));
+		assertEquals(B, index.getCanonical(C));
+
+		// A rank is never worsened
+		index.setRank(B, SameAsIndex.UNREFERENCED);
+		assertEquals(SameAsIndex.DATASET, index.getRank(B));
+		assertEquals(B, index.getCanonical(C));
+	}
+
+	public void testVocabularyTermIsCanonical() {
+		String label = "http://www.w3.org/2000/01/rdf-schema#label";
+		SameAsIndex index = new SameAsIndex();
+		assertEquals(SameAsIndex.TERM, index.getRank(label));
+		index.union(label, A);
+		assertEquals(label, index.getCanonical(A));
+		assertEquals(A, index.takeRewrites().keySet().iterator().next());
+	}
+
+	public void testRankChangesCanonical() {
+		SameAsIndex index = new SameAsIndex();
+		index.union(A, B);
+		assertEquals(A, index.getCanonical(B));
+		index.takeRewrites();
+
+		// B is found to be used by a cube after the link was consolidated.
+		index.setRank(B, SameAsIndex.REFERENCED);
+		assertTrue(index.contains(B));
+		assertEquals(B, index.getCanonical(A));
+		Map<String, String> rewrites = index.takeRewrites();
+		assertEquals(1, rewrites.size());
+		assertEquals(B, rewrites.get(A));
+	}
+
+	public void testClear() {
+		SameAsIndex index = new SameAsIndex();
+		index.union(A, B);
+		index.clear();
+		assertTrue(index.isEmpty());
+		assertEquals(B, index.getCanonical(B));
+		assertTrue(index.takeRewrites().isEmpty());
+	}
+
+}
@@ -0,0 +1,193 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.olap4j.driver.olap4ld.linkeddata.NxTupleQueryResultHandler;
+import org.olap4j.driver.olap4ld.linkeddata.SparqlParsedResultCursor;
+import org.olap4j.driver.olap4ld.linkeddata.SparqlResultCursor;
+import org.olap4j.driver.olap4ld.linkeddata.SparqlXmlResultCursor;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the SPARQL result cursors return the same rows for the TSV,
+ * JSON and XML formats.
+ *
+ * The result has the variables obs and value, the second solution leaves
+ * value unbound.
+ */
+public class SparqlParsedResultCursorTest extends TestCase {
+
+	private static final String EX = "http://example.org/";
+
+	private static final String XSD_INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+
+	private static final String TSV = "?obs\t?value\n" + "<" + EX
+			+ "obs1>\t\"3\"^^<" + XSD_INTEGER + ">\n" + "<" + EX + "obs2>\t\n";
+
+	private static final String JSON = "{ \"head\": { \"vars\": [ \"obs\", \"value\" ] },\n"
+			+ "  \"results\": { \"bindings\": [\n"
+			+ "    { \"obs\": { \"type\": \"uri\", \"value\": \""
+			+ EX
+			+ "obs1\" },\n"
+			+ "      \"value\": { \"type\": \"typed-literal\", \"datatype\": \""
+			+ XSD_INTEGER
+			+ "\", \"value\": \"3\" } },\n"
+			+ "    { \"obs\": { \"type\": \"uri\", \"value\": \""
+			+ EX
+			+ "obs2\" } }\n" + "  ] } }";
+
+	private static final String XML = "<?xml version=\"1.0\"?>\n"
+			+ "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n"
+			+ "<head><variable name=\"obs\"/><variable name=\"value\"/></head>\n"
+			+ "<results>\n" + "<result><binding name=\"obs\"><uri>" + EX
+			+ "obs1</uri></binding>" + "<binding name=\"value\"><literal datatype=\""
+			+ XSD_INTEGER + "\">3</literal></binding></result>\n"
+			+ "<result><binding name=\"obs\"><uri>" + EX
+			+ "obs2</uri></binding></result>\n" + "</results>\n" + "</sparql>";
+
+	public void testTsv() {
+		SparqlResultCursor cursor = SparqlResultCursor.create(
+				stream(TSV), SparqlResultCursor.MIME_TSV + "; charset=UTF-8");
+		assertTrue(cursor instanceof SparqlParsedResultCursor);
+		assertRows(cursor);
+	}
+
+	public void testJson() {
+		SparqlResultCursor cursor = SparqlResultCursor.create(stream(JSON),
+				SparqlResultCursor.MIME_JSON);
+		assertTrue(cursor instanceof SparqlParsedResultCursor);
+		assertRows(cursor);
+
+		cursor = SparqlResultCursor.create(stream(JSON), "application/json");
+		assertTrue(cursor instanceof SparqlParsedResultCursor);
+		assertRows(cursor);
+	}
+
+	public void testXml() {
+		SparqlResultCursor cursor = SparqlResultCursor.create(stream(XML),
+				SparqlResultCursor.MIME_XML);
+		assertTrue(cursor instanceof SparqlXmlResultCursor);
+		assertRows(cursor);
+
+		// Unknown content types are read as SPARQL/XML
+		cursor = SparqlResultCursor.create(stream(XML), null);
+		assertTrue(cursor instanceof SparqlXmlResultCursor);
+		assertRows(cursor);
+	}
+
+	public void testEmpty() {
+		SparqlResultCursor cursor = SparqlResultCursor.create(
+				stream("?obs\t?value\n"), SparqlResultCursor.MIME_TSV);
+		Node[] header = cursor.next();
+		assertEquals(2, header.length);
+		assertFalse(cursor.hasNext());
+		assertEquals(0, cursor.getCount());
+	}
+
+	public void testCloseBeforeEnd() {
+		// More rows than the parser may be ahead of the reader
+		StringBuilder tsv = new StringBuilder("?obs\n");
+		for (int i = 0; i < 5000; i++) {
+			tsv.append("<" + EX + "obs" + i + ">\n");
+		}
+		SparqlResultCursor cursor = SparqlResultCursor.create(
+				stream(tsv.toString()), SparqlResultCursor.MIME_TSV);
+		cursor.next();
+		assertEquals(new Resource(EX + "obs0"), cursor.next()[0]);
+		cursor.close();
+		assertFalse(cursor.hasNext());
+		assertEquals(1, cursor.getCount());
+	}
+
+	public void testMalformed() {
+		SparqlResultCursor cursor = SparqlResultCursor.create(
+				stream("{ \"head\": "), SparqlResultCursor.MIME_JSON);
+		try {
+			cursor.hasNext();
+			fail("Malformed result was parsed");
+		} catch (RuntimeException e) {
+			// Expected
+		}
+		assertFalse(cursor.hasNext());
+	}
+
+	public void testAcceptPrefersCompactFormats() {
+		String accept = SparqlResultCursor.ACCEPT;
+		assertTrue(accept.indexOf(SparqlResultCursor.MIME_JSON) < accept
+				.indexOf(SparqlResultCursor.MIME_XML));
+		assertTrue(accept.indexOf(SparqlResultCursor.MIME_TSV) < accept
+				.indexOf(SparqlResultCursor.MIME_XML));
+	}
+
+	public void testExternalEntityNotRead() throws IOException {
+		File secret = File.createTempFile("secret", ".txt");
+		try {
+			FileWriter writer = new FileWriter(secret);
+			writer.write("secret");
+			writer.close();
+
+			String xml = "<?xml version=\"1.0\"?>\n"
+					+ "<!DOCTYPE sparql [ <!ENTITY secret SYSTEM \""
+					+ secret.toURI()
+					+ "\"> ]>\n"
+					+ "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n"
+					+ "<head><variable name=\"value\"/></head>\n"
+					+ "<results><result><binding name=\"value\"><literal>&secret;</literal></binding></result></results>\n"
+					+ "</sparql>";
+			SparqlResultCursor cursor = SparqlResultCursor.create(
+					stream(xml), SparqlResultCursor.MIME_XML);
+			try {
+				while (cursor.hasNext()) {
+					Node[] row = cursor.next();
+					for (Node node : row) {
+						assertFalse(node.toString().contains("secret"));
+					}
+				}
+			} catch (RuntimeException e) {
+				// Rejected, also fine
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			secret.delete();
+		}
+	}
+
+	private void assertRows(SparqlResultCursor cursor) {
+		Node[] header = cursor.next();
+		assertEquals(2, header.length);
+		assertEquals("obs", header[0].toString());
+		assertEquals("value", header[1].toString());
+
+		assertTrue(cursor.hasNext());
+		Node[] row = cursor.next();
+		assertEquals(new Resource(EX + "obs1"), row[0]);
+		assertEquals(new Literal("3", null, new Resource(XSD_INTEGER)),
+				row[1]);
+
+		row = cursor.next();
+		assertEquals(new Resource(EX + "obs2"), row[0]);
+		assertEquals(NxTupleQueryResultHandler.UNBOUND, row[1]);
+
+		assertFalse(cursor.hasNext());
+		assertEquals(2, cursor.getCount());
+		cursor.close();
+	}
+
+	private static ByteArrayInputStream stream(String result) {
+		try {
+			return new ByteArrayInputStream(result.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+}
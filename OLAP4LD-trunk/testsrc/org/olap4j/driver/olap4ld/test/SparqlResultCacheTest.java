@@ -0,0 +1,118 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.olap4j.driver.olap4ld.linkeddata.SparqlResultCache;
+import org.semanticweb.yars.nx.Literal;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Variable;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that SparqlResultCache shares entries of queries that only differ in
+ * whitespace and never returns results of an older store epoch.
+ */
+public class SparqlResultCacheTest extends TestCase {
+
+	private static final String QUERY = "SELECT ?label WHERE { ?s rdfs:label ?label }";
+
+	private SparqlResultCache cache;
+
+	protected void setUp() throws Exception {
+		cache = new SparqlResultCache(2, 3);
+	}
+
+	public void testWhitespaceNormalised() {
+		cache.put(QUERY, cache.getEpoch(), result("a"));
+		assertResult(cache.get("SELECT  ?label\nWHERE {\n\t?s rdfs:label ?label\n}"),
+				"a");
+		assertResult(cache.get("  " + QUERY + "\n"), "a");
+	}
+
+	public void testWhitespaceInLiteralKept() {
+		String query = "SELECT ?s WHERE { ?s rdfs:label \"a  b\" }";
+		cache.put(query, cache.getEpoch(), result("a"));
+		assertNull(cache.get("SELECT ?s WHERE { ?s rdfs:label \"a b\" }"));
+		assertResult(cache.get("SELECT ?s\nWHERE { ?s rdfs:label \"a  b\" }"),
+				"a");
+
+		// An escaped quote does not end the literal.
+		query = "SELECT ?s WHERE { ?s rdfs:label 'it\\'s  a' }";
+		cache.put(query, cache.getEpoch(), result("b"));
+		assertNull(cache.get("SELECT ?s WHERE { ?s rdfs:label 'it\\'s a' }"));
+		assertResult(cache.get(query), "b");
+	}
+
+	public void testStoreChanged() {
+		cache.put(QUERY, cache.getEpoch(), result("a"));
+		cache.storeChanged();
+		assertNull(cache.get(QUERY));
+
+		cache.put(QUERY, cache.getEpoch(), result("b"));
+		assertResult(cache.get(QUERY), "b");
+	}
+
+	public void testStoreChangedWhileQuerying() {
+		long epoch = cache.getEpoch();
+		cache.storeChanged();
+		cache.put(QUERY, epoch, result("a"));
+		assertNull(cache.get(QUERY));
+	}
+
+	public void testCopyReturned() {
+		cache.put(QUERY, cache.getEpoch(), result("a"));
+		List<Node[]> result = cache.get(QUERY);
+		result.add(new Node[] { new Literal("b") });
+		assertResult(cache.get(QUERY), "a");
+	}
+
+	public void testLeastRecentlyUsedEvicted() {
+		cache.put("SELECT ?a WHERE {}", cache.getEpoch(), result("a"));
+		cache.put("SELECT ?b WHERE {}", cache.getEpoch(), result("b"));
+		cache.get("SELECT ?a WHERE {}");
+		cache.put("SELECT ?c WHERE {}", cache.getEpoch(), result("c"));
+
+		assertResult(cache.get("SELECT ?a WHERE {}"), "a");
+		assertNull(cache.get("SELECT ?b WHERE {}"));
+		assertResult(cache.get("SELECT ?c WHERE {}"), "c");
+	}
+
+	public void testNotCached() {
+		// Too large
+		cache.put(QUERY, cache.getEpoch(), result("a", "b", "c"));
+		assertNull(cache.get(QUERY));
+
+		// Failed, without header
+		cache.put(QUERY, cache.getEpoch(), new ArrayList<Node[]>());
+		assertNull(cache.get(QUERY));
+		cache.put(QUERY, cache.getEpoch(), null);
+		assertNull(cache.get(QUERY));
+	}
+
+	public void testClear() {
+		cache.put(QUERY, cache.getEpoch(), result("a"));
+		cache.clear();
+		assertNull(cache.get(QUERY));
+	}
+
+	private static List<Node[]> result(String... labels) {
+		List<Node[]> result = new ArrayList<Node[]>();
+		result.add(new Node[] { new Variable("label") });
+		for (String label : labels) {
+			result.add(new Node[] { new Literal(label) });
+		}
+		return result;
+	}
+
+	private static void assertResult(List<Node[]> result, String... labels) {
+		assertNotNull(result);
+		assertEquals(labels.length + 1, result.size());
+		assertEquals("label", result.get(0)[0].toString());
+		for (int i = 0; i < labels.length; i++) {
+			assertEquals(labels[i], result.get(i + 1)[0].toString());
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.olap4j.driver.olap4ld.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.olap4j.driver.olap4ld.helper.ValidationCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that ValidationCache only reports datasets as valid whose
+ * fingerprint has been put.
+ */
+public class ValidationCacheTest extends TestCase {
+
+	private File directory;
+
+	private ValidationCache cache;
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("validationcache", "");
+		directory.delete();
+		cache = new ValidationCache(directory);
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	public void testDisabled() throws IOException {
+		ValidationCache disabled = new ValidationCache(null);
+		assertFalse(disabled.isEnabled());
+		disabled.putVerdict(1);
+		assertFalse(disabled.isValid(1));
+		assertNull(disabled.get(1));
+		assertNull(disabled.createTemporaryFile(1));
+	}
+
+	public void testNotValidated() throws IOException {
+		assertTrue(cache.isEnabled());
+		assertFalse(cache.isValid(1));
+		assertNull(cache.get(1));
+	}
+
+	public void testVerdict() throws IOException {
+		cache.putVerdict(1);
+		assertTrue(cache.isValid(1));
+		// No delta
+		assertNull(cache.get(1));
+		// Other fingerprints are not valid
+		assertFalse(cache.isValid(2));
+		assertFalse(cache.isValid(-1));
+	}
+
+	public void testDelta() throws IOException {
+		File file = cache.createTemporaryFile(-5);
+		// Not visible while written
+		OutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 1, 2, 3 });
+		out.close();
+		assertFalse(cache.isValid(-5));
+
+		cache.put(-5, file);
+		assertTrue(cache.isValid(-5));
+		assertFalse(file.exists());
+		InputStream in = cache.get(-5);
+		assertEquals(1, in.read());
+		assertEquals(2, in.read());
+		assertEquals(3, in.read());
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	public void testSharedDirectory() {
+		cache.putVerdict(7);
+		assertTrue(new ValidationCache(directory).isValid(7));
+	}
+
+}